@@ -0,0 +1,245 @@
+package eu.bcvsolutions.forest.index.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.bcvsolutions.forest.index.TestApplication;
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.NodeContent;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.service.impl.DefaultForestIndexEntityService;
+import eu.bcvsolutions.forest.index.service.impl.NodeContentService;
+
+/**
+ * Forest index operations on generated tree shapes - embedded H2 database with test {@link ForestIndexEntity} and {@link NodeContent} model.
+ *
+ * Tree is created once per trial (and fork). Each modifying operation runs in rolled back transaction - the same tree is
+ * used for all invocations, rollback is included in measured time.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss512m") // eager index parent is loaded recursively - deep chain needs big stack
+public class ForestIndexBenchmark {
+
+	private static final long SEED = 20210101L; // the same trees are generated for all versions
+	private static final long NEW_CONTENT_ID = -1L; // appended content - operation is rolled back
+	private static final int PAGE_SIZE = 50;
+	//
+	@Param({ "CHAIN", "STAR", "KARY", "ORG_CHART" })
+	private TreeShape shape;
+	@Param({ "1000", "10000", "100000" })
+	private int size;
+	//
+	private ConfigurableApplicationContext context;
+	private DefaultForestIndexEntityService indexService;
+	private ForestIndexEntityRepository indexRepository;
+	private NodeContentService contentService;
+	private TransactionTemplate transactionTemplate;
+	private Random random;
+	//
+	private long[] contentIds; // node - content id
+	private int[] preOrder; // node - position in pre-order
+	private int[] subTreeSizes; // node - sub tree size (including node)
+	private int node; // processed node
+	private int target; // new parent of processed node - target is not in node's sub tree
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(TestApplication.class)
+				.web(WebApplicationType.NONE)
+				.properties(
+						"spring.main.banner-mode=off",
+						"logging.level.root=WARN",
+						"logging.level.eu.bcvsolutions=WARN")
+				.run();
+		indexService = context.getBean(DefaultForestIndexEntityService.class);
+		indexRepository = context.getBean(ForestIndexEntityRepository.class);
+		contentService = context.getBean(NodeContentService.class);
+		transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+		random = new Random(SEED);
+		//
+		int[] parents = shape.parents(size, SEED);
+		createContents(parents, context.getBean(EntityManager.class));
+		countSubTrees(parents);
+		transactionTemplate.execute(status -> {
+			contentService.rebuildIndexes(ForestIndex.DEFAULT_TREE_TYPE);
+			return null;
+		});
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (context != null) {
+			context.close();
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareOperation() {
+		node = 1 + random.nextInt(size - 1);
+		do {
+			target = random.nextInt(size);
+		} while (isInSubTree(target, node));
+	}
+
+	@Benchmark
+	public ForestIndexEntity saveNodeAppend() {
+		return inRolledBackTransaction(() -> {
+			ForestIndexEntity parent = indexRepository.findOneByContentId(contentIds[node]);
+			return indexService.saveNode(new ForestIndexEntity(ForestIndex.DEFAULT_TREE_TYPE, parent, NEW_CONTENT_ID));
+		});
+	}
+
+	@Benchmark
+	public ForestIndexEntity saveNodeMove() {
+		return inRolledBackTransaction(() -> {
+			ForestIndexEntity index = indexRepository.findOneByContentId(contentIds[node]);
+			index.setParent(indexRepository.findOneByContentId(contentIds[target]));
+			return indexService.saveNode(index);
+		});
+	}
+
+	@Benchmark
+	public void deleteNodeCloseGap() {
+		deleteNode(true);
+	}
+
+	@Benchmark
+	public void deleteNodeLeaveGap() {
+		deleteNode(false);
+	}
+
+	@Benchmark
+	public void rebuild() {
+		inRolledBackTransaction(() -> {
+			indexService.rebuild(ForestIndex.DEFAULT_TREE_TYPE);
+			return null;
+		});
+	}
+
+	@Benchmark
+	public Page<NodeContent> findAllChildren() {
+		return transactionTemplate.execute(status -> contentService.findAllChildren(contentIds[target], PageRequest.of(0, PAGE_SIZE)));
+	}
+
+	@Benchmark
+	public List<NodeContent> findAllParents() {
+		return transactionTemplate.execute(status -> contentService.findAllParents(contentIds[node], Sort.unsorted()));
+	}
+
+	private void deleteNode(boolean closeGap) {
+		inRolledBackTransaction(() -> {
+			indexService.deleteNode(indexRepository.findOneByContentId(contentIds[node]), closeGap);
+			return null;
+		});
+	}
+
+	private <T> T inRolledBackTransaction(Supplier<T> operation) {
+		return transactionTemplate.execute(status -> {
+			status.setRollbackOnly();
+			return operation.get();
+		});
+	}
+
+	/**
+	 * Persists node contents - parents are persisted before children.
+	 *
+	 * @param parents
+	 * @param entityManager
+	 */
+	private void createContents(int[] parents, EntityManager entityManager) {
+		contentIds = new long[parents.length];
+		int batchSize = 1000;
+		for (int start = 0; start < parents.length; start += batchSize) {
+			int from = start;
+			int to = Math.min(start + batchSize, parents.length);
+			transactionTemplate.execute(status -> {
+				for (int i = from; i < to; i++) {
+					NodeContent parent = parents[i] < 0 ? null : entityManager.getReference(NodeContent.class, contentIds[parents[i]]);
+					NodeContent content = new NodeContent(parent, String.valueOf(i));
+					entityManager.persist(content);
+					contentIds[i] = content.getId();
+				}
+				entityManager.flush();
+				entityManager.clear();
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * Pre-order positions and sub tree sizes - sub tree membership is evaluated in constant time.
+	 *
+	 * @param parents
+	 */
+	private void countSubTrees(int[] parents) {
+		int count = parents.length;
+		subTreeSizes = new int[count];
+		int[] childrenStart = new int[count + 1];
+		for (int i = count - 1; i >= 0; i--) {
+			subTreeSizes[i]++;
+			if (parents[i] >= 0) {
+				subTreeSizes[parents[i]] += subTreeSizes[i];
+				childrenStart[parents[i] + 1]++;
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			childrenStart[i + 1] += childrenStart[i];
+		}
+		int[] children = new int[count];
+		int[] positions = childrenStart.clone();
+		for (int i = 1; i < count; i++) {
+			children[positions[parents[i]]++] = i;
+		}
+		preOrder = new int[count];
+		Deque<Integer> stack = new ArrayDeque<>();
+		stack.push(0);
+		int position = 0;
+		while (!stack.isEmpty()) {
+			int current = stack.pop();
+			preOrder[current] = position++;
+			for (int i = childrenStart[current + 1] - 1; i >= childrenStart[current]; i--) {
+				stack.push(children[i]);
+			}
+		}
+	}
+
+	private boolean isInSubTree(int candidate, int subTreeRoot) {
+		return preOrder[subTreeRoot] <= preOrder[candidate] && preOrder[candidate] < preOrder[subTreeRoot] + subTreeSizes[subTreeRoot];
+	}
+}
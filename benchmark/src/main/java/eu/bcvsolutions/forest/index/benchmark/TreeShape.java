@@ -0,0 +1,96 @@
+package eu.bcvsolutions.forest.index.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import org.springframework.util.Assert;
+
+/**
+ * Generated tree shapes. Tree is represented by parents array - node {@code i} has parent {@code parents[i]},
+ * node {@code 0} is the tree root (parent {@code -1}). Parent is always generated before its children.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public enum TreeShape {
+
+	/**
+	 * Deep chain - every node has one child.
+	 */
+	CHAIN {
+		@Override
+		protected void generate(int[] parents, Random random) {
+			for (int i = 1; i < parents.length; i++) {
+				parents[i] = i - 1;
+			}
+		}
+	},
+	/**
+	 * Wide star - all nodes are children of the root.
+	 */
+	STAR {
+		@Override
+		protected void generate(int[] parents, Random random) {
+			for (int i = 1; i < parents.length; i++) {
+				parents[i] = 0;
+			}
+		}
+	},
+	/**
+	 * Balanced k-ary tree.
+	 */
+	KARY {
+		@Override
+		protected void generate(int[] parents, Random random) {
+			for (int i = 1; i < parents.length; i++) {
+				parents[i] = (i - 1) / KARY_DEGREE;
+			}
+		}
+	},
+	/**
+	 * Organization chart - the most of nodes are leaves (employees),
+	 * managers have a random span of control.
+	 */
+	ORG_CHART {
+		@Override
+		protected void generate(int[] parents, Random random) {
+			Deque<Integer> managers = new ArrayDeque<>();
+			managers.add(0);
+			int next = 1;
+			while (next < parents.length) {
+				int manager = managers.isEmpty() ? random.nextInt(next) : managers.poll();
+				int span = MIN_SPAN + random.nextInt(MAX_SPAN - MIN_SPAN + 1);
+				for (int i = 0; i < span && next < parents.length; i++, next++) {
+					parents[next] = manager;
+					if (random.nextDouble() < MANAGER_RATIO) {
+						managers.add(next);
+					}
+				}
+			}
+		}
+	};
+
+	public static final int KARY_DEGREE = 4;
+	public static final int MIN_SPAN = 2;
+	public static final int MAX_SPAN = 12;
+	public static final double MANAGER_RATIO = 0.15;
+
+	/**
+	 * Generates tree with given size. The same seed generates the same tree.
+	 *
+	 * @param size number of nodes
+	 * @param seed random seed
+	 * @return parents array
+	 */
+	public int[] parents(int size, long seed) {
+		Assert.isTrue(size > 0, "Tree size has to be positive.");
+		//
+		int[] parents = new int[size];
+		parents[0] = -1;
+		generate(parents, new Random(seed));
+		return parents;
+	}
+
+	protected abstract void generate(int[] parents, Random random);
+}
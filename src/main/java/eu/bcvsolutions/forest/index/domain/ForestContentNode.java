@@ -0,0 +1,78 @@
+package eu.bcvsolutions.forest.index.domain;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * Indexed content position in tree - content identifier with its parent content identifier.
+ *
+ * Used for bulk index operations, when content entities are not needed.
+ *
+ * @author Radek Tomiška
+ * @param <CONTENT_ID> content identifier - e.g. {@code Long} or {@link UUID} is preferred
+ * @since 1.3.0
+ */
+public class ForestContentNode<CONTENT_ID extends Serializable> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	//
+	private final CONTENT_ID contentId;
+	private final CONTENT_ID parentContentId;
+
+	/**
+	 * Content position in tree.
+	 *
+	 * @param contentId content identifier
+	 * @param parentContentId content's parent identifier - {@code null} for content root
+	 */
+	public ForestContentNode(CONTENT_ID contentId, CONTENT_ID parentContentId) {
+		this.contentId = contentId;
+		this.parentContentId = parentContentId;
+	}
+
+	/**
+	 * Content identifier.
+	 *
+	 * @return
+	 */
+	public CONTENT_ID getContentId() {
+		return contentId;
+	}
+
+	/**
+	 * Content's parent identifier.
+	 *
+	 * @return parent identifier or {@code null} for content root
+	 */
+	public CONTENT_ID getParentContentId() {
+		return parentContentId;
+	}
+
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder()
+				.append(contentId)
+				.append(parentContentId)
+				.toHashCode();
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof ForestContentNode<?>)) {
+			return false;
+		}
+		ForestContentNode<?> that = (ForestContentNode<?>) o;
+		return new EqualsBuilder()
+				.append(contentId, that.contentId)
+				.append(parentContentId, that.parentContentId)
+				.isEquals();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Content [%s] parent [%s]", contentId, parentContentId);
+	}
+}
@@ -97,4 +97,62 @@ public interface ForestIndex<IX extends ForestIndex<IX, CONTENT_ID>, CONTENT_ID
 	 * @return
 	 */
 	int getChildrenCount();
+	
+	/**
+	 * Stored all children count (recursively) - used, when indexes are numbered with gaps.
+	 * 
+	 * @param childrenCount children count or {@code null}, when indexes are numbered without gaps
+	 * @since 1.3.0
+	 */
+	void setChildrenCount(Integer childrenCount);
+	
+	/**
+	 * Node depth - distance from tree root (root has depth {@code 0}).
+	 * 
+	 * @return depth or {@code null}, when index is not counted
+	 * @since 1.3.0
+	 */
+	Integer getDepth();
+	
+	/**
+	 * Node depth - distance from tree root (root has depth {@code 0}).
+	 * 
+	 * @param depth
+	 * @since 1.3.0
+	 */
+	void setDepth(Integer depth);
+	
+	/**
+	 * Materialized path - encoded identifiers of all ancestors and node itself. 
+	 * Used by {@link ForestIndexStrategy#MATERIALIZED_PATH} strategy only.
+	 * 
+	 * @return path or {@code null}, when tree is indexed by nested set
+	 * @since 1.3.0
+	 */
+	String getPath();
+	
+	/**
+	 * Materialized path - encoded identifiers of all ancestors and node itself.
+	 * 
+	 * @param path
+	 * @since 1.3.0
+	 */
+	void setPath(String path);
+	
+	/**
+	 * Root scope - identifier of content root index, which tree contains this index. Used, when nested set numbering 
+	 * is scoped by content roots only (each content root tree has its own numbering range).
+	 * 
+	 * @return root index identifier or {@code null}, when numbering is not scoped
+	 * @since 1.3.0
+	 */
+	Long getTreeId();
+	
+	/**
+	 * Root scope - identifier of content root index, which tree contains this index.
+	 * 
+	 * @param treeId
+	 * @since 1.3.0
+	 */
+	void setTreeId(Long treeId);
 }
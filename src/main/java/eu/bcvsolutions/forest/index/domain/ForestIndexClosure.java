@@ -0,0 +1,74 @@
+package eu.bcvsolutions.forest.index.domain;
+
+/**
+ * Closure table row - relation between ancestor and descendant index with distance between them. 
+ * Each index has relation to itself with distance {@code 0}. Used by {@link ForestIndexStrategy#CLOSURE_TABLE} strategy only.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public interface ForestIndexClosure {
+
+	/**
+	 * Internal closure identifier.
+	 * 
+	 * @return identifier
+	 */
+	Long getId();
+	
+	/**
+	 * Tree type.
+	 * 
+	 * @return tree type
+	 */
+	String getForestTreeType();
+	
+	/**
+	 * Tree type.
+	 * 
+	 * @param forestTreeType tree type
+	 */
+	void setForestTreeType(String forestTreeType);
+	
+	/**
+	 * Ancestor index identifier.
+	 * 
+	 * @return index identifier
+	 */
+	Long getAncestorId();
+	
+	/**
+	 * Ancestor index identifier.
+	 * 
+	 * @param ancestorId index identifier
+	 */
+	void setAncestorId(Long ancestorId);
+	
+	/**
+	 * Descendant index identifier.
+	 * 
+	 * @return index identifier
+	 */
+	Long getDescendantId();
+	
+	/**
+	 * Descendant index identifier.
+	 * 
+	 * @param descendantId index identifier
+	 */
+	void setDescendantId(Long descendantId);
+	
+	/**
+	 * Distance between ancestor and descendant ({@code 0} - index itself, {@code 1} - direct child).
+	 * 
+	 * @return distance
+	 */
+	int getDistance();
+	
+	/**
+	 * Distance between ancestor and descendant ({@code 0} - index itself, {@code 1} - direct child).
+	 * 
+	 * @param distance
+	 */
+	void setDistance(int distance);
+}
@@ -0,0 +1,244 @@
+package eu.bcvsolutions.forest.index.domain;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+
+import org.springframework.util.Assert;
+
+/**
+ * Immutable sorted set of disjoint nested set intervals {@code [lft, rgt]} of one tree type - merged sub trees of given indexes.
+ * 
+ * Answers "is index in any of given sub trees" question by binary search - given sub tree roots are members too.
+ * Nested intervals are merged into the outer interval, adjacent intervals are merged into one interval
+ * (no index can start between them), so predicate contains the least ranges.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public final class ForestIndexIntervals {
+	
+	private static final String PROPERTY_LFT = "lft";
+	private static final String PROPERTY_FOREST_TREE_TYPE = "forestTreeType";
+	//
+	private final String forestTreeType;
+	private final int size;
+	private final long[] lft;
+	private final long[] rgt;
+	
+	private ForestIndexIntervals(String forestTreeType, int size, long[] lft, long[] rgt) {
+		this.forestTreeType = forestTreeType;
+		this.size = size;
+		this.lft = lft;
+		this.rgt = rgt;
+	}
+	
+	/**
+	 * Merges sub trees of given indexes. Indexes without lft and rgt are ignored.
+	 * 
+	 * @param forestTreeType tree type
+	 * @param indexes sub tree roots of given tree type
+	 * @return merged intervals
+	 */
+	public static ForestIndexIntervals of(String forestTreeType, Collection<? extends ForestIndex<?, ?>> indexes) {
+		Assert.notNull(indexes, "Indexes are required.");
+		//
+		return of(forestTreeType, indexes
+				.stream()
+				.peek(index -> Assert.isTrue(forestTreeType.equals(index.getForestTreeType()),
+						String.format("Index [%s] has different tree type than [%s].", index.getId(), forestTreeType)))
+				.map(index -> new Object[] { index.getLft(), index.getRgt() }));
+	}
+	
+	/**
+	 * Merges given intervals. Intervals without lft or rgt are ignored.
+	 * 
+	 * @param forestTreeType tree type
+	 * @param intervals {@code [lft, rgt]} in any order
+	 * @return merged intervals
+	 */
+	public static ForestIndexIntervals of(String forestTreeType, Stream<Object[]> intervals) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(intervals, "Intervals are required.");
+		//
+		long[][] sorted = intervals
+				.filter(interval -> interval[0] != null && interval[1] != null)
+				.map(interval -> new long[] { ((Number) interval[0]).longValue(), ((Number) interval[1]).longValue() })
+				.sorted((one, two) -> Long.compare(one[0], two[0]))
+				.toArray(long[][]::new);
+		long[] lft = new long[sorted.length];
+		long[] rgt = new long[sorted.length];
+		int size = 0;
+		for (long[] interval : sorted) {
+			Assert.isTrue(interval[0] <= interval[1], String.format("Interval [%s, %s] is not valid.", interval[0], interval[1]));
+			//
+			if (size > 0 && interval[0] <= rgt[size - 1] + 1) {
+				// nested or adjacent interval
+				rgt[size - 1] = Math.max(rgt[size - 1], interval[1]);
+			} else {
+				lft[size] = interval[0];
+				rgt[size] = interval[1];
+				size++;
+			}
+		}
+		return new ForestIndexIntervals(forestTreeType, size, Arrays.copyOf(lft, size), Arrays.copyOf(rgt, size));
+	}
+	
+	/**
+	 * Tree type.
+	 * 
+	 * @return
+	 */
+	public String getForestTreeType() {
+		return forestTreeType;
+	}
+	
+	/**
+	 * Merged intervals count.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns {@code true}, when no interval is given - nothing is contained.
+	 * 
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Left index of merged interval.
+	 * 
+	 * @param interval interval order
+	 * @return
+	 */
+	public long getLft(int interval) {
+		Assert.isTrue(interval >= 0 && interval < size, String.format("Interval [%s] does not exist.", interval));
+		//
+		return lft[interval];
+	}
+	
+	/**
+	 * Right index of merged interval.
+	 * 
+	 * @param interval interval order
+	 * @return
+	 */
+	public long getRgt(int interval) {
+		Assert.isTrue(interval >= 0 && interval < size, String.format("Interval [%s] does not exist.", interval));
+		//
+		return rgt[interval];
+	}
+	
+	/**
+	 * Returns {@code true}, when index with given lft is in any interval.
+	 * 
+	 * @param lft
+	 * @return
+	 */
+	public boolean contains(long lft) {
+		int index = Arrays.binarySearch(this.lft, lft);
+		if (index >= 0) {
+			return true;
+		}
+		// the last interval starting before given lft
+		int previous = -index - 2;
+		return previous >= 0 && lft <= rgt[previous];
+	}
+	
+	/**
+	 * Returns {@code true}, when given index is in any interval.
+	 * 
+	 * @param forestIndex
+	 * @return false, when index has different tree type or is not indexed
+	 */
+	public boolean contains(ForestIndex<?, ?> forestIndex) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		if (!forestTreeType.equals(forestIndex.getForestTreeType()) || forestIndex.getLft() == null) {
+			return false;
+		}
+		return contains(forestIndex.getLft());
+	}
+	
+	/**
+	 * Batch membership - returns {@code true} on position of each lft, which is in any interval.
+	 * 
+	 * @param lfts left indexes in any order
+	 * @return membership of given lfts
+	 */
+	public boolean[] contains(long[] lfts) {
+		Assert.notNull(lfts, "Left indexes are required.");
+		//
+		boolean[] results = new boolean[lfts.length];
+		for (int i = 0; i < lfts.length; i++) {
+			results[i] = contains(lfts[i]);
+		}
+		return results;
+	}
+	
+	/**
+	 * JPQL condition {@code (alias.lft between a and b or ...)} - can be used in custom queries.
+	 * Tree type is not included in condition - query has to be restricted to the same tree type.
+	 * 
+	 * @param alias forest index alias in query - e.g. {@code i}
+	 * @return condition, {@code 1 = 0} when intervals are empty
+	 */
+	public String toJpql(String alias) {
+		Assert.hasLength(alias, "Alias is required.");
+		//
+		if (size == 0) {
+			return "1 = 0";
+		}
+		StringBuilder jpql = new StringBuilder("(");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				jpql.append(" or ");
+			}
+			if (lft[i] == rgt[i]) {
+				jpql.append(String.format("%s.%s = %s", alias, PROPERTY_LFT, lft[i]));
+			} else {
+				jpql.append(String.format("%s.%s between %s and %s", alias, PROPERTY_LFT, lft[i], rgt[i]));
+			}
+		}
+		return jpql.append(")").toString();
+	}
+	
+	/**
+	 * Criteria predicate - tree type and lft in any interval - can be used in specifications.
+	 * 
+	 * @param forestIndex forest index path - e.g. {@code root.join("forestIndex")}
+	 * @param builder
+	 * @return predicate, always false predicate when intervals are empty
+	 */
+	public Predicate toPredicate(Path<?> forestIndex, CriteriaBuilder builder) {
+		Assert.notNull(forestIndex, "Forest index path is required.");
+		Assert.notNull(builder, "Criteria builder is required.");
+		//
+		if (size == 0) {
+			return builder.disjunction();
+		}
+		Path<Long> lftPath = forestIndex.get(PROPERTY_LFT);
+		Predicate[] ranges = new Predicate[size];
+		for (int i = 0; i < size; i++) {
+			ranges[i] = builder.between(lftPath, lft[i], rgt[i]);
+		}
+		return builder.and(
+				builder.equal(forestIndex.get(PROPERTY_FOREST_TREE_TYPE), forestTreeType),
+				builder.or(ranges));
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Forest index intervals [%s] size [%s]", forestTreeType, size);
+	}
+}
@@ -0,0 +1,138 @@
+package eu.bcvsolutions.forest.index.domain;
+
+/**
+ * Tree type metadata - one row for each tree type maintained by index service in the same transaction as indexes.
+ * Readers (e.g. caches) can check tree size or changes by one primary key lookup instead of scanning index table.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public interface ForestIndexMetadata {
+
+	/**
+	 * Tree type - metadata identifier.
+	 * 
+	 * @return tree type
+	 */
+	String getForestTreeType();
+	
+	/**
+	 * Tree type - metadata identifier.
+	 * 
+	 * @param forestTreeType tree type
+	 */
+	void setForestTreeType(String forestTreeType);
+	
+	/**
+	 * Root index identifier.
+	 * 
+	 * @return root identifier or {@code null}, when tree is empty
+	 */
+	Long getRootId();
+	
+	/**
+	 * Root index identifier.
+	 * 
+	 * @param rootId
+	 */
+	void setRootId(Long rootId);
+	
+	/**
+	 * The greatest rgt in the tree (root rgt).
+	 * 
+	 * @return rgt or {@code null}, when tree is empty or indexes are cleared
+	 */
+	Long getMaxRgt();
+	
+	/**
+	 * The greatest rgt in the tree (root rgt).
+	 * 
+	 * @param maxRgt
+	 */
+	void setMaxRgt(Long maxRgt);
+	
+	/**
+	 * Indexes count (including synthetic root).
+	 * 
+	 * @return
+	 */
+	long getNodeCount();
+	
+	/**
+	 * Indexes count (including synthetic root).
+	 * 
+	 * @param nodeCount
+	 */
+	void setNodeCount(long nodeCount);
+	
+	/**
+	 * Tree version - increased with each write operation.
+	 * 
+	 * @return
+	 */
+	long getVersion();
+	
+	/**
+	 * Tree version - increased with each write operation.
+	 * 
+	 * @param version
+	 */
+	void setVersion(long version);
+	
+	/**
+	 * Returns {@code true}, when tree indexes are rebuilt.
+	 * 
+	 * @return
+	 */
+	boolean isRebuilding();
+	
+	/**
+	 * Tree indexes are rebuilt.
+	 * 
+	 * @param rebuilding
+	 */
+	void setRebuilding(boolean rebuilding);
+	
+	/**
+	 * Chunked rebuild checkpoint - pre-order position of the next node, which shadow index will be written.
+	 * 
+	 * @return position or {@code null}, when chunked rebuild is not running
+	 */
+	Long getCheckpointPosition();
+	
+	/**
+	 * Chunked rebuild checkpoint - pre-order position of the next node, which shadow index will be written.
+	 * 
+	 * @param checkpointPosition
+	 */
+	void setCheckpointPosition(Long checkpointPosition);
+	
+	/**
+	 * Chunked rebuild checkpoint - running lft counter (lft of the next node), used to check the same numbering on resume.
+	 * 
+	 * @return counter or {@code null}, when all nodes are written
+	 */
+	Long getCheckpointCounter();
+	
+	/**
+	 * Chunked rebuild checkpoint - running lft counter (lft of the next node), used to check the same numbering on resume.
+	 * 
+	 * @param checkpointCounter
+	 */
+	void setCheckpointCounter(Long checkpointCounter);
+	
+	/**
+	 * Chunked rebuild checkpoint - tree version, when chunked rebuild was started. Checkpoint is valid, only when 
+	 * tree was not changed after (the same tree version).
+	 * 
+	 * @return version or {@code null}, when chunked rebuild is not running
+	 */
+	Long getCheckpointVersion();
+	
+	/**
+	 * Chunked rebuild checkpoint - tree version, when chunked rebuild was started.
+	 * 
+	 * @param checkpointVersion
+	 */
+	void setCheckpointVersion(Long checkpointVersion);
+}
@@ -0,0 +1,119 @@
+package eu.bcvsolutions.forest.index.domain;
+
+import java.time.Duration;
+
+/**
+ * Immutable progress of chunked rebuild of one tree type - written nodes, rate and estimated time to finish.
+ * 
+ * Rate is computed from nodes written by current run (nodes written before restart are not counted into rate).
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public final class ForestIndexRebuildProgress {
+	
+	private final String forestTreeType;
+	private final long done;
+	private final long total;
+	private final long written;
+	private final long elapsed;
+	private final boolean finished;
+	
+	/**
+	 * Rebuild progress.
+	 * 
+	 * @param forestTreeType tree type
+	 * @param done nodes with written shadow indexes (including nodes written before restart)
+	 * @param total numbered nodes count
+	 * @param written nodes written by current run
+	 * @param elapsed current run duration in nanoseconds
+	 * @param finished shadow indexes are published
+	 */
+	public ForestIndexRebuildProgress(String forestTreeType, long done, long total, long written, long elapsed, boolean finished) {
+		this.forestTreeType = forestTreeType;
+		this.done = done;
+		this.total = total;
+		this.written = written;
+		this.elapsed = elapsed;
+		this.finished = finished;
+	}
+	
+	public String getForestTreeType() {
+		return forestTreeType;
+	}
+	
+	/**
+	 * Nodes with written shadow indexes (including nodes written before restart).
+	 * 
+	 * @return
+	 */
+	public long getDone() {
+		return done;
+	}
+	
+	/**
+	 * Numbered nodes count.
+	 * 
+	 * @return
+	 */
+	public long getTotal() {
+		return total;
+	}
+	
+	/**
+	 * Nodes written by current run.
+	 * 
+	 * @return
+	 */
+	public long getWritten() {
+		return written;
+	}
+	
+	/**
+	 * Current run duration.
+	 * 
+	 * @return
+	 */
+	public Duration getElapsed() {
+		return Duration.ofNanos(elapsed);
+	}
+	
+	/**
+	 * Written nodes per second in current run.
+	 * 
+	 * @return rate or {@code 0}, when nothing was written yet
+	 */
+	public double getRate() {
+		return elapsed <= 0 ? 0 : written * 1_000_000_000d / elapsed;
+	}
+	
+	/**
+	 * Estimated time to write remaining nodes by current rate.
+	 * 
+	 * @return remaining time or {@code null}, when rate is not known yet
+	 */
+	public Duration getEta() {
+		if (done >= total) {
+			return Duration.ZERO;
+		}
+		if (written == 0 || elapsed <= 0) {
+			return null;
+		}
+		return Duration.ofNanos((long) ((total - done) * ((double) elapsed / written)));
+	}
+	
+	/**
+	 * Returns {@code true}, when shadow indexes are published - rebuild is finished.
+	 * 
+	 * @return
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Rebuild of tree type [%s] done [%s/%s] rate [%.1f/s] eta [%s] finished [%s]", 
+				forestTreeType, done, total, getRate(), getEta(), finished);
+	}
+}
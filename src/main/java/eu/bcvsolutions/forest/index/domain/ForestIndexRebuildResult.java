@@ -0,0 +1,76 @@
+package eu.bcvsolutions.forest.index.domain;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable result of rebuild of more tree types - rebuilt tree types and failures per tree type.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public final class ForestIndexRebuildResult {
+	
+	private final Set<String> rebuilt;
+	private final Map<String, Throwable> failures;
+	private final long elapsed;
+	
+	/**
+	 * Rebuild result.
+	 * 
+	 * @param rebuilt successfully rebuilt tree types
+	 * @param failures failure of each not rebuilt tree type
+	 * @param elapsed rebuild duration in nanoseconds
+	 */
+	public ForestIndexRebuildResult(Collection<String> rebuilt, Map<String, Throwable> failures, long elapsed) {
+		this.rebuilt = Collections.unmodifiableSet(new LinkedHashSet<>(rebuilt));
+		this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+		this.elapsed = elapsed;
+	}
+	
+	/**
+	 * Successfully rebuilt tree types.
+	 * 
+	 * @return
+	 */
+	public Set<String> getRebuilt() {
+		return rebuilt;
+	}
+	
+	/**
+	 * Failure of each not rebuilt tree type - changes of failed tree type are rolled back.
+	 * 
+	 * @return
+	 */
+	public Map<String, Throwable> getFailures() {
+		return failures;
+	}
+	
+	/**
+	 * Returns {@code true}, when all tree types were rebuilt.
+	 * 
+	 * @return
+	 */
+	public boolean isSuccess() {
+		return failures.isEmpty();
+	}
+	
+	/**
+	 * Rebuild duration of all tree types.
+	 * 
+	 * @return
+	 */
+	public Duration getElapsed() {
+		return Duration.ofNanos(elapsed);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Rebuilt tree types %s failed %s in [%s]", rebuilt, failures.keySet(), getElapsed());
+	}
+}
@@ -0,0 +1,14 @@
+package eu.bcvsolutions.forest.index.domain;
+
+/**
+ * How tree structure is indexed - index service strategy can be different for each tree type.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public enum ForestIndexStrategy {
+
+	NESTED_SET, // lft, rgt - read optimized, insert and move shifts following indexes
+	MATERIALIZED_PATH, // encoded ancestor path - insert touches one row, move touches moved sub tree only
+	CLOSURE_TABLE; // ancestor - descendant pairs with distance - insert adds depth + 1 rows, nothing is shifted
+}
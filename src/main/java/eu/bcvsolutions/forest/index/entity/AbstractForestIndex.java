@@ -7,7 +7,6 @@ import javax.persistence.Column;
 import javax.persistence.ConstraintMode;
 import javax.persistence.ForeignKey;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -16,6 +15,9 @@ import javax.validation.constraints.NotEmpty;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import eu.bcvsolutions.forest.index.domain.ForestIndex;
 
@@ -31,10 +33,17 @@ public abstract class AbstractForestIndex<IX extends ForestIndex<IX, CONTENT_ID>
 	implements ForestIndex<IX, CONTENT_ID>, Serializable {
 	
 	private static final long serialVersionUID = -8702912114998116552L;
+	public static final String ID_GENERATOR = "forest_index_id_generator";
+	public static final int PATH_LENGTH = 1690; // 130 levels - can be indexed on all supported databases
 
 	@Id
 	@Column(name = "id", precision = 18, scale = 0)
-	@GeneratedValue(strategy= GenerationType.AUTO)
+	@GeneratedValue(generator = ID_GENERATOR)
+	@GenericGenerator(name = ID_GENERATOR, strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+			@Parameter(name = SequenceStyleGenerator.CONFIG_PREFER_SEQUENCE_PER_ENTITY, value = "true"),
+			@Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50"),
+			@Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo")
+	}) // identifiers are allocated in blocks - indexes can be inserted in batch (identity column cannot be batched)
 	private Long id;
 	
 	@Column(name = "lft", precision = 18, scale = 0)
@@ -42,6 +51,30 @@ public abstract class AbstractForestIndex<IX extends ForestIndex<IX, CONTENT_ID>
 	
 	@Column(name = "rgt", precision = 18, scale = 0)
 	private Long rgt;
+	
+	@Column(name = "children_count")
+	private Integer childrenCount; // stored all children count - used, when indexes are numbered with gaps
+	
+	@Column(name = "depth", updatable = false)
+	private Integer depth; // maintained by index service only (bulk updates) - saved node cannot override computed depth
+	
+	@Column(name = "path", length = PATH_LENGTH, updatable = false)
+	private String path; // materialized path - used by materialized path strategy only
+	
+	@Column(name = "tree_id", precision = 18, scale = 0, updatable = false)
+	private Long treeId; // root scope - maintained by index service only, used, when numbering is scoped by content roots
+	
+	@Column(name = "shadow_lft", precision = 18, scale = 0, insertable = false, updatable = false)
+	private Long shadowLft; // shadow rebuild - maintained by index service only (bulk updates), published into lft
+	
+	@Column(name = "shadow_rgt", precision = 18, scale = 0, insertable = false, updatable = false)
+	private Long shadowRgt; // shadow rebuild - maintained by index service only (bulk updates), published into rgt
+	
+	@Column(name = "shadow_children_count", insertable = false, updatable = false)
+	private Integer shadowChildrenCount; // shadow rebuild - maintained by index service only (bulk updates), published into children count
+	
+	@Column(name = "shadow_depth", insertable = false, updatable = false)
+	private Integer shadowDepth; // shadow rebuild - maintained by index service only (bulk updates), published into depth
 
 	@ManyToOne(optional = true)
 	@JoinColumn(name = "parent_id", referencedColumnName = "id", foreignKey = @ForeignKey(value = ConstraintMode.NO_CONSTRAINT))
@@ -111,12 +144,64 @@ public abstract class AbstractForestIndex<IX extends ForestIndex<IX, CONTENT_ID>
 		this.forestTreeType = forestTreeType;
 	}
 	
+	/**
+	 * Returns stored children count, if indexes are numbered with gaps. 
+	 * Children count is computed from lft and rgt otherwise. Interval of synthetic root of tree scoped by content roots 
+	 * contains gaps between root scopes - children count cannot be computed from interval and 0 is returned (count query has to be used).
+	 */
 	@Override
 	public int getChildrenCount() {
+		if (childrenCount != null) {
+			return childrenCount;
+		}
 		if (rgt == null || lft == null) {
 			return 0;
 		}
-		return (int) ((rgt - lft) / 2);
+		if (parent == null && treeId != null) {
+			// synthetic root of tree scoped by content roots
+			return 0;
+		}
+		long count = (rgt - lft) / 2;
+		if (count > Integer.MAX_VALUE) {
+			// interval is not numbered without gaps
+			return 0;
+		}
+		return (int) count;
+	}
+	
+	@Override
+	public void setChildrenCount(Integer childrenCount) {
+		this.childrenCount = childrenCount;
+	}
+	
+	@Override
+	public Integer getDepth() {
+		return depth;
+	}
+	
+	@Override
+	public void setDepth(Integer depth) {
+		this.depth = depth;
+	}
+	
+	@Override
+	public String getPath() {
+		return path;
+	}
+	
+	@Override
+	public void setPath(String path) {
+		this.path = path;
+	}
+	
+	@Override
+	public Long getTreeId() {
+		return treeId;
+	}
+	
+	@Override
+	public void setTreeId(Long treeId) {
+		this.treeId = treeId;
 	}
 	
 	/**
@@ -0,0 +1,117 @@
+package eu.bcvsolutions.forest.index.entity;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.MappedSuperclass;
+import javax.validation.constraints.NotEmpty;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexClosure;
+
+/**
+ * Abstract closure table row - ancestor and descendant are referenced by index identifiers.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+@MappedSuperclass
+public abstract class AbstractForestIndexClosure implements ForestIndexClosure, Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	public static final String ID_GENERATOR = "forest_index_closure_id_generator";
+
+	@Id
+	@Column(name = "id", precision = 18, scale = 0)
+	@GeneratedValue(generator = ID_GENERATOR)
+	@GenericGenerator(name = ID_GENERATOR, strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+			@Parameter(name = SequenceStyleGenerator.CONFIG_PREFER_SEQUENCE_PER_ENTITY, value = "true"),
+			@Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50"),
+			@Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo")
+	}) // closures are inserted in batch
+	private Long id;
+	
+	@NotEmpty
+	@Column(name = "forest_tree_type", nullable = false)
+	private String forestTreeType = ForestIndex.DEFAULT_TREE_TYPE;
+	
+	@Column(name = "ancestor_id", precision = 18, scale = 0, nullable = false)
+	private Long ancestorId;
+	
+	@Column(name = "descendant_id", precision = 18, scale = 0, nullable = false)
+	private Long descendantId;
+	
+	@Column(name = "distance", nullable = false)
+	private int distance;
+	
+	public AbstractForestIndexClosure() {
+	}
+	
+	public AbstractForestIndexClosure(String forestTreeType, Long ancestorId, Long descendantId, int distance) {
+		this.forestTreeType = forestTreeType == null ? ForestIndex.DEFAULT_TREE_TYPE : forestTreeType;
+		this.ancestorId = ancestorId;
+		this.descendantId = descendantId;
+		this.distance = distance;
+	}
+	
+	@Override
+	public Long getId() {
+		return id;
+	}
+	
+	public void setId(Long id) {
+		this.id = id;
+	}
+	
+	@Override
+	public String getForestTreeType() {
+		return forestTreeType;
+	}
+	
+	@Override
+	public void setForestTreeType(String forestTreeType) {
+		this.forestTreeType = forestTreeType;
+	}
+	
+	@Override
+	public Long getAncestorId() {
+		return ancestorId;
+	}
+	
+	@Override
+	public void setAncestorId(Long ancestorId) {
+		this.ancestorId = ancestorId;
+	}
+	
+	@Override
+	public Long getDescendantId() {
+		return descendantId;
+	}
+	
+	@Override
+	public void setDescendantId(Long descendantId) {
+		this.descendantId = descendantId;
+	}
+	
+	@Override
+	public int getDistance() {
+		return distance;
+	}
+	
+	@Override
+	public void setDistance(int distance) {
+		this.distance = distance;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Forest index closure [%s:%s] ancestor [%s] descendant [%s] distance [%s]", 
+				forestTreeType, id, ancestorId, descendantId, distance);
+	}
+}
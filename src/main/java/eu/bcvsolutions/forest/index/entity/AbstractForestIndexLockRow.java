@@ -0,0 +1,43 @@
+package eu.bcvsolutions.forest.index.entity;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Id;
+import javax.persistence.MappedSuperclass;
+import javax.validation.constraints.NotEmpty;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+
+/**
+ * Abstract tree type lock row - tree type is primary key. Row is locked by {@code select ... for update} 
+ * by database tree type lock - see {@link eu.bcvsolutions.forest.index.service.impl.DatabaseForestIndexLock}.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+@MappedSuperclass
+public abstract class AbstractForestIndexLockRow implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@NotEmpty
+	@Column(name = "forest_tree_type", nullable = false)
+	private String forestTreeType = ForestIndex.DEFAULT_TREE_TYPE;
+	
+	public AbstractForestIndexLockRow() {
+	}
+	
+	public AbstractForestIndexLockRow(String forestTreeType) {
+		this.forestTreeType = forestTreeType == null ? ForestIndex.DEFAULT_TREE_TYPE : forestTreeType;
+	}
+	
+	public String getForestTreeType() {
+		return forestTreeType;
+	}
+	
+	public void setForestTreeType(String forestTreeType) {
+		this.forestTreeType = forestTreeType;
+	}
+}
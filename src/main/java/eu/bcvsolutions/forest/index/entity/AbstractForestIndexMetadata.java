@@ -0,0 +1,155 @@
+package eu.bcvsolutions.forest.index.entity;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Id;
+import javax.persistence.MappedSuperclass;
+import javax.validation.constraints.NotEmpty;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexMetadata;
+
+/**
+ * Abstract tree type metadata - tree type is primary key.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+@MappedSuperclass
+public abstract class AbstractForestIndexMetadata implements ForestIndexMetadata, Serializable {
+	
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@NotEmpty
+	@Column(name = "forest_tree_type", nullable = false)
+	private String forestTreeType = ForestIndex.DEFAULT_TREE_TYPE;
+	
+	@Column(name = "root_id", precision = 18, scale = 0)
+	private Long rootId;
+	
+	@Column(name = "max_rgt", precision = 18, scale = 0)
+	private Long maxRgt;
+	
+	@Column(name = "node_count", precision = 18, scale = 0, nullable = false)
+	private long nodeCount;
+	
+	@Column(name = "version", precision = 18, scale = 0, nullable = false)
+	private long version; // maintained by bulk updates - optimistic lock is not used
+	
+	@Column(name = "rebuilding", nullable = false)
+	private boolean rebuilding;
+	
+	@Column(name = "checkpoint_position", precision = 18, scale = 0)
+	private Long checkpointPosition;
+	
+	@Column(name = "checkpoint_counter", precision = 18, scale = 0)
+	private Long checkpointCounter;
+	
+	@Column(name = "checkpoint_version", precision = 18, scale = 0)
+	private Long checkpointVersion;
+	
+	public AbstractForestIndexMetadata() {
+	}
+	
+	public AbstractForestIndexMetadata(String forestTreeType) {
+		this.forestTreeType = forestTreeType == null ? ForestIndex.DEFAULT_TREE_TYPE : forestTreeType;
+	}
+	
+	@Override
+	public String getForestTreeType() {
+		return forestTreeType;
+	}
+	
+	@Override
+	public void setForestTreeType(String forestTreeType) {
+		this.forestTreeType = forestTreeType;
+	}
+	
+	@Override
+	public Long getRootId() {
+		return rootId;
+	}
+	
+	@Override
+	public void setRootId(Long rootId) {
+		this.rootId = rootId;
+	}
+	
+	@Override
+	public Long getMaxRgt() {
+		return maxRgt;
+	}
+	
+	@Override
+	public void setMaxRgt(Long maxRgt) {
+		this.maxRgt = maxRgt;
+	}
+	
+	@Override
+	public long getNodeCount() {
+		return nodeCount;
+	}
+	
+	@Override
+	public void setNodeCount(long nodeCount) {
+		this.nodeCount = nodeCount;
+	}
+	
+	@Override
+	public long getVersion() {
+		return version;
+	}
+	
+	@Override
+	public void setVersion(long version) {
+		this.version = version;
+	}
+	
+	@Override
+	public boolean isRebuilding() {
+		return rebuilding;
+	}
+	
+	@Override
+	public void setRebuilding(boolean rebuilding) {
+		this.rebuilding = rebuilding;
+	}
+	
+	@Override
+	public Long getCheckpointPosition() {
+		return checkpointPosition;
+	}
+	
+	@Override
+	public void setCheckpointPosition(Long checkpointPosition) {
+		this.checkpointPosition = checkpointPosition;
+	}
+	
+	@Override
+	public Long getCheckpointCounter() {
+		return checkpointCounter;
+	}
+	
+	@Override
+	public void setCheckpointCounter(Long checkpointCounter) {
+		this.checkpointCounter = checkpointCounter;
+	}
+	
+	@Override
+	public Long getCheckpointVersion() {
+		return checkpointVersion;
+	}
+	
+	@Override
+	public void setCheckpointVersion(Long checkpointVersion) {
+		this.checkpointVersion = checkpointVersion;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Forest index metadata [%s] root [%s] max rgt [%s] nodes [%s] version [%s]", 
+				forestTreeType, rootId, maxRgt, nodeCount, version);
+	}
+}
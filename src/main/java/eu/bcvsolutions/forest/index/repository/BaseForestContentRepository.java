@@ -1,12 +1,19 @@
 package eu.bcvsolutions.forest.index.repository;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.NoRepositoryBean;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
@@ -16,6 +23,7 @@ import eu.bcvsolutions.forest.index.domain.ForestContent;
 /**
  * Indexable entity repository:
  * * tree type is not supported 
+ * * hierarchy predicates can be combined with custom filters - see {@link ForestContentSpecifications}
  * 
  * @author Radek Tomiška
  *
@@ -24,7 +32,7 @@ import eu.bcvsolutions.forest.index.domain.ForestContent;
  * @param <CONTENT_ID> entity = content identifier
  */
 @NoRepositoryBean
-public interface BaseForestContentRepository<C extends ForestContent<?, CONTENT_ID>, CONTENT_ID extends Serializable> extends PagingAndSortingRepository<C, CONTENT_ID> {
+public interface BaseForestContentRepository<C extends ForestContent<?, CONTENT_ID>, CONTENT_ID extends Serializable> extends PagingAndSortingRepository<C, CONTENT_ID>, JpaSpecificationExecutor<C> {
 	
 	/**
 	 * Finds direct children for given parent
@@ -35,6 +43,17 @@ public interface BaseForestContentRepository<C extends ForestContent<?, CONTENT_
 	@Query("select e from #{#entityName} e where e.parent = :parent")
 	Page<C> findDirectChildren(@Param("parent") C parent, Pageable pageable);
 	
+	/**
+	 * Finds direct children for given parent identifier - parent is not loaded.
+	 * 
+	 * @param parentId parent content identifier
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e where e.parent.id = :parentId")
+	Page<C> findDirectChildrenByParentId(@Param("parentId") CONTENT_ID parentId, Pageable pageable);
+	
 	/**
 	 * Finds all children for given parent r
 	 * ecursively by forest index
@@ -46,6 +65,95 @@ public interface BaseForestContentRepository<C extends ForestContent<?, CONTENT_
 	@Query("select e from #{#entityName} e join e.forestIndex i where i.forestTreeType = ?#{[0].forestTreeType} and i.lft BETWEEN ?#{[0].forestIndex.lft + 1} and ?#{[0].forestIndex.rgt - 1}") // todo: possible null pointers
 	Page<C> findAllChildren(C parentContent, Pageable pageable);
 	
+	/**
+	 * Finds next slice of all children for given parent recursively ordered by forest index {@code lft} (pre-order) - seek by the last seen {@code lft}.
+	 * Count query is not executed and preceding children are not scanned - index on {@code (forest_tree_type, lft)} is used.
+	 * Use unsorted pageable with the first page only (e.g. {@code PageRequest.of(0, size)}).
+	 * 
+	 * @param parentContent
+	 * @param lastLft {@code lft} of the last content index on previous slice, {@code null} - first slice
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e join e.forestIndex i where i.forestTreeType = ?#{[0].forestTreeType}"
+			+ " and i.lft > ?#{[1] == null ? [0].forestIndex.lft : [1]} and i.lft < ?#{[0].forestIndex.rgt}"
+			+ " order by i.lft")
+	Slice<C> findAllChildren(C parentContent, Long lastLft, Pageable pageable);
+	
+	/**
+	 * Finds next slice of all contents of given tree type ordered by forest index {@code lft} (pre-order of the whole forest) - seek by the last seen {@code lft}.
+	 * 
+	 * @param forestTreeType
+	 * @param lastLft {@code lft} of the last content index on previous slice, {@code null} - first slice
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e join e.forestIndex i where i.forestTreeType = ?#{[0]}"
+			+ " and i.lft > ?#{[1] == null ? 0L : [1]}"
+			+ " order by i.lft")
+	Slice<C> findAll(String forestTreeType, Long lastLft, Pageable pageable);
+	
+	/**
+	 * Finds all children for given parent identifier recursively by forest index - parent index interval is resolved by self join 
+	 * in the same statement (parent is not loaded).
+	 * 
+	 * @param contentId parent content identifier
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query(value = "select e from #{#entityName} e join e.forestIndex i, #{#entityName} c join c.forestIndex ci"
+			+ " where c.id = :contentId and i.forestTreeType = ci.forestTreeType and i.lft > ci.lft and i.lft < ci.rgt",
+			countQuery = "select count(e) from #{#entityName} e join e.forestIndex i, #{#entityName} c join c.forestIndex ci"
+			+ " where c.id = :contentId and i.forestTreeType = ci.forestTreeType and i.lft > ci.lft and i.lft < ci.rgt")
+	Page<C> findAllChildrenByContentId(@Param("contentId") CONTENT_ID contentId, Pageable pageable);
+	
+	/**
+	 * Finds all children in given index interval - count query is not executed 
+	 * (total can be computed from parent's index interval - see {@link #countAllChildren(String, Long, Long)}).
+	 * 
+	 * @param forestTreeType
+	 * @param lft parent lft
+	 * @param rgt parent rgt
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e join e.forestIndex i where i.forestTreeType = :forestTreeType and i.lft > :lft and i.lft < :rgt")
+	List<C> findAllChildren(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("lft") Long lft, 
+			@Param("rgt") Long rgt, 
+			Pageable pageable);
+	
+	/**
+	 * Counts all children in given index interval.
+	 * 
+	 * @param forestTreeType
+	 * @param lft parent lft
+	 * @param rgt parent rgt
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select count(e) from #{#entityName} e join e.forestIndex i where i.forestTreeType = :forestTreeType and i.lft > :lft and i.lft < :rgt")
+	long countAllChildren(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
+	
+	/**
+	 * Finds children for given parent recursively by forest index up to given depth (relative to parent)
+	 * 
+	 * @param parentContent
+	 * @param maxDepth the deepest level of returned children ({@code 1} - direct children only)
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e join e.forestIndex i where i.forestTreeType = ?#{[0].forestTreeType}"
+			+ " and i.lft BETWEEN ?#{[0].forestIndex.lft + 1} and ?#{[0].forestIndex.rgt - 1}"
+			+ " and i.depth <= ?#{[0].forestIndex.depth + [1]}")
+	Page<C> findDescendants(C parentContent, int maxDepth, Pageable pageable);
+	
 	/**
 	 * Returns all content parents
 	 * 
@@ -54,4 +162,112 @@ public interface BaseForestContentRepository<C extends ForestContent<?, CONTENT_
 	 */
 	@Query("select e from #{#entityName} e join e.forestIndex i where i.forestTreeType = ?#{[0].forestTreeType} and i.lft < ?#{[0].forestIndex.lft} and i.rgt > ?#{[0].forestIndex.rgt}") // todo: possible null pointers
 	List<C> findAllParents(C content, Sort sort);
+	
+	/**
+	 * Returns all parents of content with given identifier - content index interval is resolved by self join 
+	 * in the same statement (content is not loaded).
+	 * 
+	 * @param contentId
+	 * @param sort
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e join e.forestIndex i, #{#entityName} c join c.forestIndex ci"
+			+ " where c.id = :contentId and i.forestTreeType = ci.forestTreeType and i.lft < ci.lft and i.rgt > ci.rgt")
+	List<C> findAllParentsByContentId(@Param("contentId") CONTENT_ID contentId, Sort sort);
+	
+	/**
+	 * Returns content index {@code [forestTreeType, lft, rgt, childrenCount]} - index is not loaded as entity (with parents).
+	 * 
+	 * @param contentId
+	 * @return one row or empty list, when content is not indexed
+	 * @since 1.3.0
+	 */
+	@Query("select i.forestTreeType, i.lft, i.rgt, i.childrenCount from #{#entityName} e join e.forestIndex i where e.id = :contentId")
+	List<Object[]> findForestIndex(@Param("contentId") CONTENT_ID contentId);
+	
+	/**
+	 * Finds all children for given parent recursively by materialized path
+	 * 
+	 * @param parentContent
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e join e.forestIndex i where i.forestTreeType = ?#{[0].forestTreeType} and i.path like ?#{[0].forestIndex.path + '_%'}")
+	Page<C> findAllChildrenByPath(C parentContent, Pageable pageable);
+	
+	/**
+	 * Streams direct children for given parent - children are loaded by fetch size, read only. 
+	 * Stream has to be consumed in transaction and closed. Detach (or clear) consumed contents to process large sub tree in constant memory.
+	 * 
+	 * @param parent
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e from #{#entityName} e where e.parent = ?#{[0]}")
+	Stream<C> streamDirectChildren(C parent);
+	
+	/**
+	 * Streams all children for given parent recursively by forest index ordered by lft (pre-order) - children are loaded by fetch size, read only. 
+	 * Stream has to be consumed in transaction and closed. Detach (or clear) consumed contents to process large sub tree in constant memory.
+	 * 
+	 * @param parentContent
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e from #{#entityName} e join e.forestIndex i where i.forestTreeType = ?#{[0].forestTreeType}"
+			+ " and i.lft BETWEEN ?#{[0].forestIndex.lft + 1} and ?#{[0].forestIndex.rgt - 1}"
+			+ " order by i.lft")
+	Stream<C> streamAllChildren(C parentContent);
+	
+	/**
+	 * Streams all content parents ordered by forest index lft (from root) - parents are loaded by fetch size, read only. 
+	 * Stream has to be consumed in transaction and closed.
+	 * 
+	 * @param content
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e from #{#entityName} e join e.forestIndex i where i.forestTreeType = ?#{[0].forestTreeType}"
+			+ " and i.lft < ?#{[0].forestIndex.lft} and i.rgt > ?#{[0].forestIndex.rgt}"
+			+ " order by i.lft")
+	Stream<C> streamAllParents(C content);
+	
+	/**
+	 * Finds contents by index identifiers - e.g. ancestors decoded from materialized path
+	 * 
+	 * @param indexIds
+	 * @param sort
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e join e.forestIndex i where i.id in (:indexIds)")
+	List<C> findAllByForestIndexIds(@Param("indexIds") Collection<Long> indexIds, Sort sort);
+	
+	/**
+	 * Streams content tree structure {@code [contentId, parentContentId]} ordered by content id - used for bulk index rebuild.
+	 * Stream has to be consumed in transaction and closed.
+	 * 
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e.id, p.id from #{#entityName} e left join e.parent p order by e.id")
+	Stream<Object[]> streamTreeStructure();
 }
@@ -0,0 +1,81 @@
+package eu.bcvsolutions.forest.index.repository;
+
+import java.io.Serializable;
+
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Subquery;
+
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.domain.ForestContent;
+
+/**
+ * Hierarchy predicates of contents indexed by nested set - predicates can be combined with custom filters into one query:
+ *
+ * <pre>
+ * repository.findAll(ForestContentSpecifications.&lt;NodeContent, Long&gt; descendantOf(contentId).and(nameFilter), pageable);
+ * </pre>
+ *
+ * Interval of given content index is resolved by correlated subquery - given content is not loaded.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public final class ForestContentSpecifications {
+
+	private static final String PROPERTY_ID = "id";
+	private static final String PROPERTY_FOREST_INDEX = "forestIndex";
+	private static final String PROPERTY_FOREST_TREE_TYPE = "forestTreeType";
+	private static final String PROPERTY_LFT = "lft";
+	private static final String PROPERTY_RGT = "rgt";
+
+	private ForestContentSpecifications() {
+	}
+
+	/**
+	 * All children (recursively) of content with given identifier - content itself is not included.
+	 *
+	 * @param contentId parent content identifier
+	 * @return
+	 */
+	public static <C extends ForestContent<?, CONTENT_ID>, CONTENT_ID extends Serializable> Specification<C> descendantOf(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		return (root, query, builder) -> {
+			Join<?, ?> forestIndex = root.join(PROPERTY_FOREST_INDEX);
+			Subquery<Long> subquery = query.subquery(Long.class);
+			Join<?, ?> parentIndex = subquery.from(root.getJavaType()).join(PROPERTY_FOREST_INDEX);
+			subquery.select(parentIndex.<Long>get(PROPERTY_ID));
+			subquery.where(
+					builder.equal(parentIndex.getParent().get(PROPERTY_ID), contentId),
+					builder.equal(parentIndex.get(PROPERTY_FOREST_TREE_TYPE), forestIndex.get(PROPERTY_FOREST_TREE_TYPE)),
+					builder.gt(forestIndex.<Long>get(PROPERTY_LFT), parentIndex.<Long>get(PROPERTY_LFT)),
+					builder.lt(forestIndex.<Long>get(PROPERTY_LFT), parentIndex.<Long>get(PROPERTY_RGT)));
+			return builder.exists(subquery);
+		};
+	}
+
+	/**
+	 * All parents of content with given identifier - content itself is not included.
+	 *
+	 * @param contentId content identifier
+	 * @return
+	 */
+	public static <C extends ForestContent<?, CONTENT_ID>, CONTENT_ID extends Serializable> Specification<C> ancestorOf(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		return (root, query, builder) -> {
+			Join<?, ?> forestIndex = root.join(PROPERTY_FOREST_INDEX);
+			Subquery<Long> subquery = query.subquery(Long.class);
+			Join<?, ?> childIndex = subquery.from(root.getJavaType()).join(PROPERTY_FOREST_INDEX);
+			subquery.select(childIndex.<Long>get(PROPERTY_ID));
+			subquery.where(
+					builder.equal(childIndex.getParent().get(PROPERTY_ID), contentId),
+					builder.equal(childIndex.get(PROPERTY_FOREST_TREE_TYPE), forestIndex.get(PROPERTY_FOREST_TREE_TYPE)),
+					builder.lt(forestIndex.<Long>get(PROPERTY_LFT), childIndex.<Long>get(PROPERTY_LFT)),
+					builder.gt(forestIndex.<Long>get(PROPERTY_RGT), childIndex.<Long>get(PROPERTY_RGT)));
+			return builder.exists(subquery);
+		};
+	}
+}
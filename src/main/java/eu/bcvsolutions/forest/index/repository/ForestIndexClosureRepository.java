@@ -0,0 +1,105 @@
+package eu.bcvsolutions.forest.index.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.data.repository.query.Param;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexClosure;
+
+/**
+ * Closure table repository - all lookups are equality lookups by ancestor or descendant index identifier 
+ * (index on {@code ancestor_id, distance} and {@code descendant_id, distance} is recommended).
+ * 
+ * @see {@link ForestIndexClosure}
+ * @author Radek Tomiška
+ * @since 1.3.0
+ * @param <CL> closure type
+ */
+@NoRepositoryBean
+public interface ForestIndexClosureRepository<CL extends ForestIndexClosure> extends CrudRepository<CL, Long> {
+	
+	/**
+	 * Returns {@code true}, when given index has closure (relation to itself) - index is indexed by closure table.
+	 * 
+	 * @param indexId
+	 * @return
+	 */
+	@Query("select count(e) from #{#entityName} e where e.descendantId = :indexId and e.distance = 0")
+	long countSelf(@Param("indexId") Long indexId);
+	
+	/**
+	 * Ancestors (with index itself) - {@code [ancestorId, distance]}
+	 * 
+	 * @param descendantId
+	 * @return
+	 */
+	@Query("select e.ancestorId, e.distance from #{#entityName} e where e.descendantId = :descendantId")
+	List<Object[]> findAncestorDistances(@Param("descendantId") Long descendantId);
+	
+	/**
+	 * Descendants (with index itself) - {@code [descendantId, distance]}
+	 * 
+	 * @param ancestorId
+	 * @return
+	 */
+	@Query("select e.descendantId, e.distance from #{#entityName} e where e.ancestorId = :ancestorId")
+	List<Object[]> findDescendantDistances(@Param("ancestorId") Long ancestorId);
+	
+	/**
+	 * Ancestor identifiers ordered from root (without index itself).
+	 * 
+	 * @param descendantId
+	 * @return
+	 */
+	@Query("select e.ancestorId from #{#entityName} e where e.descendantId = :descendantId and e.distance > 0 order by e.distance desc")
+	List<Long> findAncestorIds(@Param("descendantId") Long descendantId);
+	
+	/**
+	 * Descendant identifiers (without index itself) up to given distance.
+	 * 
+	 * @param ancestorId
+	 * @param maxDistance the deepest level of returned descendants ({@code 1} - direct children only)
+	 * @param pageable
+	 * @return
+	 */
+	@Query("select e.descendantId from #{#entityName} e where e.ancestorId = :ancestorId and e.distance > 0 and e.distance <= :maxDistance")
+	Page<Long> findDescendantIds(@Param("ancestorId") Long ancestorId, @Param("maxDistance") int maxDistance, Pageable pageable);
+	
+	/**
+	 * Disconnects sub tree from its ancestors - closures between sub tree nodes are preserved.
+	 * 
+	 * @param ancestorId sub tree root
+	 * @return deleted closures count
+	 */
+	@Modifying
+	@Query("delete from #{#entityName} e where"
+			+ " e.descendantId in (select s.descendantId from #{#entityName} s where s.ancestorId = :ancestorId)"
+			+ " and e.ancestorId not in (select s.descendantId from #{#entityName} s where s.ancestorId = :ancestorId)")
+	int disconnectSubTree(@Param("ancestorId") Long ancestorId);
+	
+	/**
+	 * Deletes all closures of sub tree nodes.
+	 * 
+	 * @param ancestorId sub tree root
+	 * @return deleted closures count
+	 */
+	@Modifying
+	@Query("delete from #{#entityName} e where e.descendantId in (select s.descendantId from #{#entityName} s where s.ancestorId = :ancestorId)")
+	int deleteSubTree(@Param("ancestorId") Long ancestorId);
+	
+	/**
+	 * Deletes all closures of given tree type.
+	 * 
+	 * @param forestTreeType
+	 * @return deleted closures count
+	 */
+	@Modifying
+	@Query("delete from #{#entityName} e where e.forestTreeType = :forestTreeType")
+	int deleteByForestTreeType(@Param("forestTreeType") String forestTreeType);
+}
@@ -0,0 +1,33 @@
+package eu.bcvsolutions.forest.index.repository;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.data.repository.query.Param;
+
+import eu.bcvsolutions.forest.index.entity.AbstractForestIndexLockRow;
+
+/**
+ * Tree type lock row repository - used as database tree type lock.
+ * 
+ * @see {@link eu.bcvsolutions.forest.index.service.impl.DatabaseForestIndexLock}
+ * @author Radek Tomiška
+ * @since 1.3.0
+ * @param <L> lock row type
+ */
+@NoRepositoryBean
+public interface ForestIndexLockRepository<L extends AbstractForestIndexLockRow> extends CrudRepository<L, String> {
+	
+	/**
+	 * Locks row of given tree type by {@code select ... for update} - row lock is released by database, when transaction is completed.
+	 * 
+	 * @param forestTreeType
+	 * @return locked row or {@code null}, when row does not exist
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select e from #{#entityName} e where e.forestTreeType = :forestTreeType")
+	L lockTreeType(@Param("forestTreeType") String forestTreeType);
+}
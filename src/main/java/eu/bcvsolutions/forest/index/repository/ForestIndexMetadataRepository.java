@@ -0,0 +1,96 @@
+package eu.bcvsolutions.forest.index.repository;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.data.repository.query.Param;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexMetadata;
+
+/**
+ * Tree type metadata repository - metadata are updated by bulk updates (version is increased by database).
+ * 
+ * @see {@link ForestIndexMetadata}
+ * @author Radek Tomiška
+ * @since 1.3.0
+ * @param <MD> metadata type
+ */
+@NoRepositoryBean
+public interface ForestIndexMetadataRepository<MD extends ForestIndexMetadata> extends CrudRepository<MD, String> {
+	
+	/**
+	 * Indexes count of given tree type.
+	 * 
+	 * @param forestTreeType
+	 * @return count or {@code null}, when metadata don't exist
+	 */
+	@Query("select e.nodeCount from #{#entityName} e where e.forestTreeType = :forestTreeType")
+	Long findNodeCount(@Param("forestTreeType") String forestTreeType);
+	
+	/**
+	 * Updates root and adds indexes count - version is increased.
+	 * 
+	 * @param forestTreeType
+	 * @param rootId
+	 * @param maxRgt
+	 * @param count added (positive) or removed (negative) indexes count
+	 * @return updated metadata count
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.rootId = :rootId, e.maxRgt = :maxRgt, e.nodeCount = e.nodeCount + :count,"
+			+ " e.version = e.version + 1 where e.forestTreeType = :forestTreeType")
+	int updateMetadata(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("rootId") Long rootId, 
+			@Param("maxRgt") Long maxRgt, 
+			@Param("count") long count);
+	
+	/**
+	 * Sets root and indexes count (e.g. after tree is rebuilt) - version is increased, rebuild is finished (checkpoint is cleared).
+	 * 
+	 * @param forestTreeType
+	 * @param rootId
+	 * @param maxRgt
+	 * @param nodeCount
+	 * @return updated metadata count
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.rootId = :rootId, e.maxRgt = :maxRgt, e.nodeCount = :nodeCount, e.rebuilding = false,"
+			+ " e.checkpointPosition = null, e.checkpointCounter = null, e.checkpointVersion = null,"
+			+ " e.version = e.version + 1 where e.forestTreeType = :forestTreeType")
+	int resetMetadata(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("rootId") Long rootId, 
+			@Param("maxRgt") Long maxRgt, 
+			@Param("nodeCount") long nodeCount);
+	
+	/**
+	 * Starts or finishes tree rebuild - version is increased.
+	 * 
+	 * @param forestTreeType
+	 * @param rebuilding
+	 * @return updated metadata count
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.rebuilding = :rebuilding, e.version = e.version + 1 where e.forestTreeType = :forestTreeType")
+	int updateRebuilding(@Param("forestTreeType") String forestTreeType, @Param("rebuilding") boolean rebuilding);
+	
+	/**
+	 * Saves chunked rebuild checkpoint - version is not increased (indexes are not changed, shadow indexes are written only).
+	 * 
+	 * @param forestTreeType
+	 * @param position pre-order position of the next node
+	 * @param counter lft of the next node
+	 * @param checkpointVersion tree version, when chunked rebuild was started
+	 * @return updated metadata count
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.checkpointPosition = :position, e.checkpointCounter = :counter,"
+			+ " e.checkpointVersion = :checkpointVersion where e.forestTreeType = :forestTreeType")
+	int updateCheckpoint(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("position") Long position, 
+			@Param("counter") Long counter, 
+			@Param("checkpointVersion") Long checkpointVersion);
+}
@@ -1,12 +1,19 @@
 package eu.bcvsolutions.forest.index.repository;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.NoRepositoryBean;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
@@ -27,6 +34,16 @@ public interface ForestIndexRepository<IX extends ForestIndex<IX, CONTENT_ID>, C
 	@Query("select e from #{#entityName} e where e.parent is null and e.forestTreeType = :forestTreeType")
 	IX findRoot(@Param("forestTreeType") String forestTreeType);
 	
+	/**
+	 * Returns roots {@code [id, rgt]} of given tree type - root with the greatest rgt is the first.
+	 * 
+	 * @param forestTreeType
+	 * @return roots
+	 * @since 1.3.0
+	 */
+	@Query("select e.id, e.rgt from #{#entityName} e where e.parent is null and e.forestTreeType = :forestTreeType order by e.rgt desc")
+	List<Object[]> findRoots(@Param("forestTreeType") String forestTreeType);
+	
 	@Query("select e from #{#entityName} e where e.parent is null and e.id <> :newParentId and e.forestTreeType = :forestTreeType")
 	IX findPreviousRoot(@Param("forestTreeType") String forestTreeType, @Param("newParentId") Long newParentId);
 	
@@ -36,8 +53,48 @@ public interface ForestIndexRepository<IX extends ForestIndex<IX, CONTENT_ID>, C
 	@Query("select e.parent.id from #{#entityName} e where e.id = :id")
 	Long findParentId(@Param("id") Long id);
 	
+	/**
+	 * Returns stored index {@code [parentId, lft, rgt, childrenCount, treeId]} - actual values after tree type is locked.
+	 * 
+	 * @param id
+	 * @return one row or empty list, when index does not exist
+	 * @since 1.3.0
+	 */
+	@Query("select p.id, e.lft, e.rgt, e.childrenCount, e.treeId from #{#entityName} e left join e.parent p where e.id = :id")
+	List<Object[]> findIndex(@Param("id") Long id);
+	
+	/**
+	 * Returns stored index depth
+	 * 
+	 * @param id
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e.depth from #{#entityName} e where e.id = :id")
+	Integer findDepth(@Param("id") Long id);
+	
+	/**
+	 * Returns stored materialized path
+	 * 
+	 * @param id
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e.path from #{#entityName} e where e.id = :id")
+	String findPath(@Param("id") Long id);
+	
 	IX findOneByContentId(@Param("contentId") CONTENT_ID contentId);
 	
+	/**
+	 * Returns tree type of given content index - index (and its parents) is not loaded, used before tree type is locked.
+	 * 
+	 * @param contentId
+	 * @return tree type or {@code null}, when content is not indexed
+	 * @since 1.3.0
+	 */
+	@Query("select e.forestTreeType from #{#entityName} e where e.contentId = :contentId")
+	String findForestTreeType(@Param("contentId") CONTENT_ID contentId);
+	
 	/**
 	 * Finds direct children for given parent
 	 * 
@@ -57,31 +114,286 @@ public interface ForestIndexRepository<IX extends ForestIndex<IX, CONTENT_ID>, C
 	@Query("select e from #{#entityName} e where e.forestTreeType = ?#{[0].forestTreeType} and e.lft BETWEEN ?#{[0].lft + 1} and ?#{[0].rgt - 1}")
 	Page<IX> findAllChildren(IX parent, Pageable pageable);
 	
+	/**
+	 * Finds all children for given paren recursively - count query is not executed 
+	 * (total can be computed from parent's interval - see {@link ForestIndex#getChildrenCount()}).
+	 * 
+	 * @param parent
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e where e.forestTreeType = ?#{[0].forestTreeType} and e.lft BETWEEN ?#{[0].lft + 1} and ?#{[0].rgt - 1}")
+	List<IX> findAllChildrenWithoutCount(IX parent, Pageable pageable);
+	
+	/**
+	 * Finds next slice of all children for given parent recursively ordered by {@code lft} (pre-order) - seek by the last seen {@code lft}.
+	 * Count query is not executed and preceding children are not scanned - index on {@code (forest_tree_type, lft)} is used.
+	 * Use unsorted pageable with the first page only (e.g. {@code PageRequest.of(0, size)}).
+	 * 
+	 * @param parent
+	 * @param lastLft {@code lft} of the last index on previous slice, {@code null} - first slice
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e where e.forestTreeType = ?#{[0].forestTreeType}"
+			+ " and e.lft > ?#{[1] == null ? [0].lft : [1]} and e.lft < ?#{[0].rgt}"
+			+ " order by e.lft")
+	Slice<IX> findAllChildren(IX parent, Long lastLft, Pageable pageable);
+	
+	/**
+	 * Finds direct children for given parent by depth - children are found by indexes, parent reference is not used.
+	 * 
+	 * @param parent
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e where e.forestTreeType = ?#{[0].forestTreeType} and e.lft BETWEEN ?#{[0].lft + 1} and ?#{[0].rgt - 1}"
+			+ " and e.depth = ?#{[0].depth + 1}")
+	Page<IX> findDirectChildren(IX parent, Pageable pageable);
+	
+	/**
+	 * Finds children for given parent recursively up to given depth (relative to parent)
+	 * 
+	 * @param parent
+	 * @param maxDepth the deepest level of returned children ({@code 1} - direct children only)
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e where e.forestTreeType = ?#{[0].forestTreeType} and e.lft BETWEEN ?#{[0].lft + 1} and ?#{[0].rgt - 1}"
+			+ " and e.depth <= ?#{[0].depth + [1]}")
+	Page<IX> findDescendants(IX parent, int maxDepth, Pageable pageable);
+	
+	/**
+	 * Finds all parents for given index
+	 * 
+	 * @param forestIndex
+	 * @param sort
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e where e.forestTreeType = ?#{[0].forestTreeType} and e.lft < ?#{[0].lft} and e.rgt > ?#{[0].rgt}")
+	List<IX> findAllParents(IX forestIndex, Sort sort);
+	
+	/**
+	 * Finds all children for given parent recursively by materialized path
+	 * 
+	 * @param parent
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e where e.forestTreeType = ?#{[0].forestTreeType} and e.path like ?#{[0].path + '_%'}")
+	Page<IX> findAllChildrenByPath(IX parent, Pageable pageable);
+	
+	/**
+	 * Streams direct children for given parent - children are loaded by fetch size, read only. 
+	 * Stream has to be consumed in transaction and closed. Detach (or clear) consumed indexes to process large sub tree in constant memory.
+	 * 
+	 * @param parent
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e from #{#entityName} e where e.parent = ?#{[0]} and e.forestTreeType = ?#{[0].forestTreeType}")
+	Stream<IX> streamDirectChildren(IX parent);
+	
+	/**
+	 * Streams all children for given parent recursively ordered by lft (pre-order) - children are loaded by fetch size, read only. 
+	 * Stream has to be consumed in transaction and closed. Detach (or clear) consumed indexes to process large sub tree in constant memory.
+	 * 
+	 * @param parent
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e from #{#entityName} e where e.forestTreeType = ?#{[0].forestTreeType} and e.lft BETWEEN ?#{[0].lft + 1} and ?#{[0].rgt - 1}"
+			+ " order by e.lft")
+	Stream<IX> streamAllChildren(IX parent);
+	
+	/**
+	 * Streams all parents for given index ordered by lft (from root) - parents are loaded by fetch size, read only. 
+	 * Stream has to be consumed in transaction and closed.
+	 * 
+	 * @param forestIndex
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e from #{#entityName} e where e.forestTreeType = ?#{[0].forestTreeType} and e.lft < ?#{[0].lft} and e.rgt > ?#{[0].rgt}"
+			+ " order by e.lft")
+	Stream<IX> streamAllParents(IX forestIndex);
+	
+	/**
+	 * Finds indexes by identifiers - e.g. ancestors decoded from materialized path
+	 * 
+	 * @param ids
+	 * @param sort
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e from #{#entityName} e where e.id in (:ids)")
+	List<IX> findAllByIds(@Param("ids") Collection<Long> ids, Sort sort);
+	
+	/**
+	 * Counts all children for given indexes interval
+	 * 
+	 * @param forestTreeType
+	 * @param lft parent lft
+	 * @param rgt parent rgt
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select count(e) from #{#entityName} e where e.forestTreeType = :forestTreeType and e.lft > :lft and e.lft < :rgt")
+	long countChildren(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
+	
+	/**
+	 * Counts all indexes of given type (including synthetic root) - tree size
+	 * 
+	 * @param forestTreeType
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select count(e) from #{#entityName} e where e.forestTreeType = :forestTreeType")
+	long countIndexes(@Param("forestTreeType") String forestTreeType);
+	
+	/**
+	 * Returns the highest rgt of given parent direct children
+	 * 
+	 * @param parentId
+	 * @return rgt or {@code null}, if parent doesn't have children
+	 * @since 1.3.0
+	 */
+	@Query("select max(e.rgt) from #{#entityName} e where e.parent.id = :parentId")
+	Long findLastChildRgt(@Param("parentId") Long parentId);
+	
+	/**
+	 * Finds indexes {@code [contentId, id, lft, rgt, depth]} of given contents - used for bulk operations, index entities are not loaded.
+	 * 
+	 * @param forestTreeType
+	 * @param contentIds
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Query("select e.contentId, e.id, e.lft, e.rgt, e.depth from #{#entityName} e where e.forestTreeType = :forestTreeType and e.contentId in (:contentIds)")
+	List<Object[]> findIndexesByContentIds(@Param("forestTreeType") String forestTreeType, @Param("contentIds") Collection<CONTENT_ID> contentIds);
+	
+	/**
+	 * Streams tree structure {@code [id, parentId]} ordered by id - used for bulk index computing. 
+	 * Stream has to be consumed in transaction and closed.
+	 * 
+	 * @param forestTreeType
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e.id, p.id from #{#entityName} e left join e.parent p where e.forestTreeType = :forestTreeType order by e.id")
+	Stream<Object[]> streamTreeStructure(@Param("forestTreeType") String forestTreeType);
+	
+	/**
+	 * Streams numbered indexes {@code [contentId, id, parentId, lft, rgt]} ordered by lft - used for building in-memory snapshot. 
+	 * Stream has to be consumed in transaction and closed.
+	 * 
+	 * @param forestTreeType
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e.contentId, e.id, p.id, e.lft, e.rgt from #{#entityName} e left join e.parent p"
+			+ " where e.forestTreeType = :forestTreeType and e.lft is not null and e.rgt is not null order by e.lft")
+	Stream<Object[]> streamIndexes(@Param("forestTreeType") String forestTreeType);
+	
+	/**
+	 * Streams all indexes {@code [contentId, id, parentId, lft, rgt, depth, childrenCount]} ordered by lft - used for building 
+	 * in-memory unit of work. Stream has to be consumed in transaction and closed.
+	 * 
+	 * @param forestTreeType
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e.contentId, e.id, p.id, e.lft, e.rgt, e.depth, e.childrenCount from #{#entityName} e left join e.parent p"
+			+ " where e.forestTreeType = :forestTreeType order by e.lft")
+	Stream<Object[]> streamNodes(@Param("forestTreeType") String forestTreeType);
+	
+	/**
+	 * Streams sub tree structure {@code [id, parentId]} ordered by id - used for bulk index computing. 
+	 * Stream has to be consumed in transaction and closed.
+	 * 
+	 * @param forestTreeType
+	 * @param lft sub tree root lft
+	 * @param rgt sub tree root rgt
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e.id, p.id from #{#entityName} e left join e.parent p where e.forestTreeType = :forestTreeType and e.lft BETWEEN :lft and :rgt order by e.id")
+	Stream<Object[]> streamTreeStructure(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
+	
 	/**
 	 * Drops all indexes
+	 * 
+	 * @param forestTreeType
+	 * @return deleted indexes count
 	 */
 	@Modifying
 	@Query("delete from #{#entityName} e where e.forestTreeType = :forestTreeType")
-	void dropIndexes(@Param("forestTreeType") String forestTreeType);
+	int dropIndexes(@Param("forestTreeType") String forestTreeType);
 	
+	/**
+	 * Clears all indexes lft and rgt
+	 * 
+	 * @param forestTreeType
+	 * @return updated indexes count
+	 */
 	@Modifying
 	@Query("update #{#entityName} e set e.lft = null, e.rgt = null where e.forestTreeType = :forestTreeType")
-	void clearIndexes(@Param("forestTreeType") String forestTreeType);
+	int clearIndexes(@Param("forestTreeType") String forestTreeType);
 	
 	@Modifying
 	@Query("delete from #{#entityName} e where e.forestTreeType = :forestTreeType and e.lft BETWEEN :lft and :rgt")
-	void dropIndexes(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
+	int dropIndexes(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
 	
 	@Modifying
 	@Query("update #{#entityName} e set e.lft = null, e.rgt = null where e.forestTreeType = :forestTreeType and e.lft BETWEEN :lft and :rgt")
-	void clearIndexes(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
+	int clearIndexes(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
 	
 	@Query("select coalesce(max(e.rgt), 1) + 1 from #{#entityName} e where e.forestTreeType = :forestTreeType")
 	long addedRootRgt(@Param("forestTreeType") String forestTreeType);
 	
+	/**
+	 * Shifts all indexes - new root is inserted above the previous root
+	 * 
+	 * @param forestTreeType
+	 * @return updated indexes count
+	 */
 	@Modifying
-	@Query("update #{#entityName} e set e.lft = e.lft + 1, e.rgt = e.rgt + 1 where e.forestTreeType = :forestTreeType")
-	void beforeRootInsert(@Param("forestTreeType") String forestTreeType);
+	@Query("update #{#entityName} e set e.lft = e.lft + 1, e.rgt = e.rgt + 1, e.depth = e.depth + 1 where e.forestTreeType = :forestTreeType")
+	int beforeRootInsert(@Param("forestTreeType") String forestTreeType);
 	
 	/**
 	 * Updates index values only
@@ -90,48 +402,504 @@ public interface ForestIndexRepository<IX extends ForestIndex<IX, CONTENT_ID>, C
 	 * @param lft
 	 * @param rgt
 	 * @param parent
+	 * @return updated indexes count
 	 */
 	@Modifying
 	@Query("update #{#entityName} e set e.lft = :lft, e.rgt = :rgt, e.parent = :parent where e.id = :id")
-	void updateIndexes(@Param("id") Long id, @Param("lft") Long lft, @Param("rgt") Long rgt, @Param("parent") IX parent);
+	int updateIndexes(@Param("id") Long id, @Param("lft") Long lft, @Param("rgt") Long rgt, @Param("parent") IX parent);
+	
+	/**
+	 * Updates index values with stored children count
+	 * 
+	 * @param id updated index
+	 * @param lft
+	 * @param rgt
+	 * @param childrenCount
+	 * @param parent
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.lft = :lft, e.rgt = :rgt, e.childrenCount = :childrenCount, e.parent = :parent where e.id = :id")
+	int updateIndexes(
+			@Param("id") Long id, 
+			@Param("lft") Long lft, 
+			@Param("rgt") Long rgt, 
+			@Param("childrenCount") Integer childrenCount, 
+			@Param("parent") IX parent);
+	
+	/**
+	 * Updates stored children count of all parents of given indexes interval
+	 * 
+	 * @param forestTreeType
+	 * @param lft child lft
+	 * @param rgt child rgt
+	 * @param count added (positive) or removed (negative) children count
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.childrenCount = coalesce(e.childrenCount, 0) + :count"
+			+ " where e.forestTreeType = :forestTreeType and e.lft < :lft and e.rgt > :rgt")
+	int updateParentsChildrenCount(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("lft") Long lft, 
+			@Param("rgt") Long rgt, 
+			@Param("count") int count);
+
+	/**
+	 * Stores children count of all parents of given indexes interval - used, when gap is left in indexes numbered without gaps
+	 * (children count is computed from parent's interval, if it's not stored yet).
+	 *
+	 * @param forestTreeType
+	 * @param lft child lft
+	 * @param rgt child rgt
+	 * @param count added (positive) or removed (negative) children count
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.childrenCount = coalesce(e.childrenCount, cast((e.rgt - e.lft - 1) / 2 as integer)) + :count"
+			+ " where e.forestTreeType = :forestTreeType and e.lft < :lft and e.rgt > :rgt")
+	int storeParentsChildrenCount(
+			@Param("forestTreeType") String forestTreeType,
+			@Param("lft") Long lft,
+			@Param("rgt") Long rgt,
+			@Param("count") int count);
+
+	/**
+	 * Updates stored children count of all parents of given indexes interval - parents without stored children count are not updated.
+	 *
+	 * @param forestTreeType
+	 * @param lft child lft
+	 * @param rgt child rgt
+	 * @param count added (positive) or removed (negative) children count
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.childrenCount = e.childrenCount + :count"
+			+ " where e.forestTreeType = :forestTreeType and e.lft < :lft and e.rgt > :rgt and e.childrenCount is not null")
+	int updateStoredParentsChildrenCount(
+			@Param("forestTreeType") String forestTreeType,
+			@Param("lft") Long lft,
+			@Param("rgt") Long rgt,
+			@Param("count") int count);
+
+	/**
+	 * Returns indexes {@code [id, lft, rgt]} with stored children count of given tree type.
+	 *
+	 * @param forestTreeType
+	 * @return indexes
+	 * @since 1.3.0
+	 */
+	@Query("select e.id, e.lft, e.rgt from #{#entityName} e"
+			+ " where e.forestTreeType = :forestTreeType and e.childrenCount is not null and e.lft is not null and e.rgt is not null")
+	List<Object[]> findStoredChildrenCounts(@Param("forestTreeType") String forestTreeType);
+
+	/**
+	 * Updates stored children count of given index.
+	 *
+	 * @param id
+	 * @param childrenCount
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.childrenCount = :childrenCount where e.id = :id")
+	int updateChildrenCount(@Param("id") Long id, @Param("childrenCount") Integer childrenCount);
+
+	/**
+	 * Returns stored children count of root of given tree type (the greatest, if tree type has more roots).
+	 *
+	 * @param forestTreeType
+	 * @return stored children count or {@code null}, when children count is not stored (or root doesn't exist)
+	 * @since 1.3.0
+	 */
+	@Query("select max(e.childrenCount) from #{#entityName} e where e.parent is null and e.forestTreeType = :forestTreeType")
+	Integer findRootChildrenCount(@Param("forestTreeType") String forestTreeType);
+
+	/**
+	 * Updates index depth
+	 * 
+	 * @param id updated index
+	 * @param depth
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.depth = :depth where e.id = :id")
+	int updateDepth(@Param("id") Long id, @Param("depth") Integer depth);
+	
+	/**
+	 * Updates depth of all indexes in given interval (e.g. sub tree is moved to another level)
+	 * 
+	 * @param forestTreeType
+	 * @param lft interval start
+	 * @param rgt interval end
+	 * @param offset added (positive) or removed (negative) levels
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.depth = e.depth + :offset where e.forestTreeType = :forestTreeType and e.lft BETWEEN :lft and :rgt")
+	int updateDepth(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("lft") Long lft, 
+			@Param("rgt") Long rgt, 
+			@Param("offset") int offset);
 	
 	/**
 	 * Updates index's parent
 	 * 
 	 * @param id updated index
 	 * @param parent
+	 * @return updated indexes count
 	 */
 	@Modifying
 	@Query("update #{#entityName} e set e.parent = :parent where e.id = :id")
-	void updateParent(@Param("id") Long id, @Param("parent") IX parent);
+	int updateParent(@Param("id") Long id, @Param("parent") IX parent);
 	
+	/**
+	 * Updates index's root scope
+	 * 
+	 * @param id updated index
+	 * @param treeId root scope
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.treeId = :treeId where e.id = :id")
+	int updateTreeId(@Param("id") Long id, @Param("treeId") Long treeId);
+	
+	/**
+	 * Updates root scope of all indexes in given interval (e.g. content root tree is renumbered)
+	 * 
+	 * @param forestTreeType
+	 * @param lft interval start
+	 * @param rgt interval end
+	 * @param treeId root scope
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.treeId = :treeId where e.forestTreeType = :forestTreeType and e.lft BETWEEN :lft and :rgt")
+	int updateTreeId(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("lft") Long lft, 
+			@Param("rgt") Long rgt, 
+			@Param("treeId") Long treeId);
+	
+	/**
+	 * Clears root scopes of all indexes of given type - numbering is not scoped
+	 * 
+	 * @param forestTreeType
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.treeId = null where e.forestTreeType = :forestTreeType and e.treeId is not null")
+	int clearTreeIds(@Param("forestTreeType") String forestTreeType);
+	
+	/**
+	 * Publishes shadow indexes of all indexes of given type by one statement - shadow lft, rgt, children count 
+	 * and depth are moved into indexes, root scopes are cleared (shadow numbering is not scoped).
+	 * 
+	 * @param forestTreeType
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set"
+			+ " e.lft = e.shadowLft, e.rgt = e.shadowRgt, e.childrenCount = e.shadowChildrenCount, e.depth = e.shadowDepth, e.treeId = null,"
+			+ " e.shadowLft = null, e.shadowRgt = null, e.shadowChildrenCount = null, e.shadowDepth = null"
+			+ " where e.forestTreeType = :forestTreeType")
+	int publishShadowIndexes(@Param("forestTreeType") String forestTreeType);
+	
+	/**
+	 * Clears shadow indexes of all indexes of given type - e.g. interrupted shadow rebuild.
+	 * 
+	 * @param forestTreeType
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.shadowLft = null, e.shadowRgt = null, e.shadowChildrenCount = null, e.shadowDepth = null"
+			+ " where e.forestTreeType = :forestTreeType and e.shadowLft is not null")
+	int clearShadowIndexes(@Param("forestTreeType") String forestTreeType);
+	
+	/**
+	 * Opens gap for a new node - all indexes after parent's rgt are shifted
+	 * 
+	 * @param forestTreeType
+	 * @param parentRgt
+	 * @return updated indexes count
+	 */
 	@Modifying
 	@Query("update #{#entityName} e set"
 			+ " e.lft = (CASE WHEN e.lft > :rgt THEN (e.lft + 2) WHEN e.lft is null THEN null ELSE e.lft END),"
 			+ " e.rgt = (CASE WHEN e.rgt >= :rgt THEN (e.rgt + 2) WHEN e.rgt is null THEN null ELSE e.rgt END)"
 			+ " where e.rgt >= :rgt and e.forestTreeType = :forestTreeType")
-	void beforeNodeInsert(@Param("forestTreeType") String forestTreeType, @Param("rgt") Long parentRgt);
+	int beforeNodeInsert(@Param("forestTreeType") String forestTreeType, @Param("rgt") Long parentRgt);
+	
+	/**
+	 * Opens gap for a new node in given root scope - indexes after parent's rgt are shifted in parent's tree only
+	 * 
+	 * @param forestTreeType
+	 * @param treeId parent's root scope
+	 * @param parentRgt
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set"
+			+ " e.lft = (CASE WHEN e.lft > :rgt THEN (e.lft + 2) WHEN e.lft is null THEN null ELSE e.lft END),"
+			+ " e.rgt = (CASE WHEN e.rgt >= :rgt THEN (e.rgt + 2) WHEN e.rgt is null THEN null ELSE e.rgt END)"
+			+ " where e.rgt >= :rgt and e.forestTreeType = :forestTreeType and e.treeId = :treeId")
+	int beforeNodeInsert(@Param("forestTreeType") String forestTreeType, @Param("treeId") Long treeId, @Param("rgt") Long parentRgt);
+	
+	/**
+	 * Opens gap with given width at given position - all indexes greater or equal than position are shifted.
+	 * 
+	 * @param forestTreeType
+	 * @param position gap start
+	 * @param width gap width
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set"
+			+ " e.lft = (CASE WHEN e.lft >= :position THEN (e.lft + :width) WHEN e.lft is null THEN null ELSE e.lft END),"
+			+ " e.rgt = (CASE WHEN e.rgt >= :position THEN (e.rgt + :width) WHEN e.rgt is null THEN null ELSE e.rgt END)"
+			+ " where e.rgt >= :position and e.forestTreeType = :forestTreeType")
+	int openGap(@Param("forestTreeType") String forestTreeType, @Param("position") Long position, @Param("width") Long width);
+	
+	/**
+	 * Opens gap with given width at given position in given root scope - indexes greater or equal than position are shifted 
+	 * in the same tree only.
+	 * 
+	 * @param forestTreeType
+	 * @param treeId root scope
+	 * @param position gap start
+	 * @param width gap width
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set"
+			+ " e.lft = (CASE WHEN e.lft >= :position THEN (e.lft + :width) WHEN e.lft is null THEN null ELSE e.lft END),"
+			+ " e.rgt = (CASE WHEN e.rgt >= :position THEN (e.rgt + :width) WHEN e.rgt is null THEN null ELSE e.rgt END)"
+			+ " where e.rgt >= :position and e.forestTreeType = :forestTreeType and e.treeId = :treeId")
+	int openGap(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("treeId") Long treeId, 
+			@Param("position") Long position, 
+			@Param("width") Long width);
+	
+	/**
+	 * Shifts indexes of whole sub tree by given offset
+	 * 
+	 * @param forestTreeType
+	 * @param lft sub tree lft
+	 * @param rgt sub tree rgt
+	 * @param offset
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.lft = e.lft + :offset, e.rgt = e.rgt + :offset"
+			+ " where e.forestTreeType = :forestTreeType and e.lft BETWEEN :lft and :rgt")
+	int shiftIndexes(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("lft") Long lft, 
+			@Param("rgt") Long rgt, 
+			@Param("offset") Long offset);
+	
+	/**
+	 * Shifts lft of all indexes in given interval by given offset - shifted lft is stored negated, shifted indexes are not 
+	 * matched by next shifts. Shifted indexes have to be restored by {@link #restoreShiftedIndexes(String)}.
+	 * 
+	 * @param forestTreeType
+	 * @param lft interval start (lft)
+	 * @param rgt interval end (lft)
+	 * @param offset
+	 * @return shifted indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.lft = -(e.lft + :offset)"
+			+ " where e.forestTreeType = :forestTreeType and e.lft BETWEEN :lft and :rgt")
+	int shiftLft(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("lft") Long lft, 
+			@Param("rgt") Long rgt, 
+			@Param("offset") Long offset);
+	
+	/**
+	 * Shifts rgt of all indexes in given interval by given offset - shifted rgt is stored negated, shifted indexes are not 
+	 * matched by next shifts. Shifted indexes have to be restored by {@link #restoreShiftedIndexes(String)}.
+	 * 
+	 * @param forestTreeType
+	 * @param lft interval start (rgt)
+	 * @param rgt interval end (rgt)
+	 * @param offset
+	 * @return shifted indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.rgt = -(e.rgt + :offset)"
+			+ " where e.forestTreeType = :forestTreeType and e.rgt BETWEEN :lft and :rgt")
+	int shiftRgt(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("lft") Long lft, 
+			@Param("rgt") Long rgt, 
+			@Param("offset") Long offset);
+	
+	/**
+	 * Restores negated lft and rgt - see {@link #shiftLft(String, Long, Long, Long)}, {@link #shiftRgt(String, Long, Long, Long)}.
+	 * 
+	 * @param forestTreeType
+	 * @return restored indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.lft = abs(e.lft), e.rgt = abs(e.rgt)"
+			+ " where e.forestTreeType = :forestTreeType and (e.lft < 0 or e.rgt < 0)")
+	int restoreShiftedIndexes(@Param("forestTreeType") String forestTreeType);
+	
+	/**
+	 * Updates materialized path and depth
+	 * 
+	 * @param id updated index
+	 * @param path
+	 * @param depth
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.path = :path, e.depth = :depth where e.id = :id")
+	int updatePath(@Param("id") Long id, @Param("path") String path, @Param("depth") Integer depth);
+	
+	/**
+	 * Prepends given path to all materialized paths - new root is inserted above the previous root
+	 * 
+	 * @param forestTreeType
+	 * @param prefix new root path
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.path = concat(:prefix, e.path), e.depth = e.depth + 1"
+			+ " where e.forestTreeType = :forestTreeType and e.path is not null")
+	int prependPath(@Param("forestTreeType") String forestTreeType, @Param("prefix") String prefix);
+	
+	/**
+	 * Moves sub tree - materialized path prefix of all sub tree nodes (including sub tree root) is replaced
+	 * 
+	 * @param forestTreeType
+	 * @param path moved sub tree root previous path
+	 * @param newPath moved sub tree root new path
+	 * @param offset depth difference
+	 * @return moved indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.path = concat(:newPath, substring(e.path, length(:path) + 1)), e.depth = e.depth + :offset"
+			+ " where e.forestTreeType = :forestTreeType and e.path like concat(:path, '%')")
+	int movePath(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("path") String path, 
+			@Param("newPath") String newPath, 
+			@Param("offset") int offset);
+	
+	/**
+	 * Returns the greatest depth in sub tree by materialized path
+	 * 
+	 * @param forestTreeType
+	 * @param path sub tree root path
+	 * @return depth or {@code null}, when sub tree is not found
+	 * @since 1.3.0
+	 */
+	@Query("select max(e.depth) from #{#entityName} e where e.forestTreeType = :forestTreeType and e.path like concat(:path, '%')")
+	Integer findMaxDepthByPath(@Param("forestTreeType") String forestTreeType, @Param("path") String path);
+	
+	/**
+	 * Deletes whole sub tree by materialized path
+	 * 
+	 * @param forestTreeType
+	 * @param path sub tree root path
+	 * @return deleted indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("delete from #{#entityName} e where e.forestTreeType = :forestTreeType and e.path like concat(:path, '%')")
+	int deleteByPath(@Param("forestTreeType") String forestTreeType, @Param("path") String path);
+	
+	/**
+	 * Clears all materialized paths and depths of given type
+	 * 
+	 * @param forestTreeType
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set e.path = null, e.depth = null where e.forestTreeType = :forestTreeType")
+	int clearPaths(@Param("forestTreeType") String forestTreeType);
+	
+	/**
+	 * Deletes indexes by identifiers - e.g. sub tree resolved by closure table
+	 * 
+	 * @param ids index identifiers
+	 * @return deleted indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("delete from #{#entityName} e where e.id in (:ids)")
+	int deleteByIds(@Param("ids") Collection<Long> ids);
 	
 	/**
 	 * Deletes whole sub tree
 	 * 
 	 * @param lft
 	 * @param rgt
+	 * @return deleted indexes count
 	 */
 	@Modifying
 	@Query("delete from #{#entityName} e where e.forestTreeType = :forestTreeType and e.lft BETWEEN :lft and :rgt") // todo: forest
-	void delete(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
+	int delete(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
 	
 	/**
 	 * Recount indexes after subtree delete
 	 * 
 	 * @param lft
 	 * @param rgt
+	 * @return updated indexes count
 	 */
 	@Modifying
 	@Query("update #{#entityName} e set"
 			+ " e.lft = (CASE WHEN e.lft > :lft THEN (e.lft - (:rgt - :lft + 1)) WHEN e.lft is null THEN null ELSE e.lft END),"
 			+ " e.rgt = (CASE WHEN e.rgt > :lft THEN (e.rgt - (:rgt - :lft + 1)) WHEN e.rgt is null THEN null ELSE e.rgt END)"
 			+ " where (e.lft > :lft OR e.rgt > :lft) and e.forestTreeType = :forestTreeType")
-	void afterDelete(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
+	int afterDelete(@Param("forestTreeType") String forestTreeType, @Param("lft") Long lft, @Param("rgt") Long rgt);
+	
+	/**
+	 * Recount indexes after subtree delete in given root scope - indexes of other trees are not touched
+	 * 
+	 * @param forestTreeType
+	 * @param treeId deleted sub tree root scope
+	 * @param lft
+	 * @param rgt
+	 * @return updated indexes count
+	 * @since 1.3.0
+	 */
+	@Modifying
+	@Query("update #{#entityName} e set"
+			+ " e.lft = (CASE WHEN e.lft > :lft THEN (e.lft - (:rgt - :lft + 1)) WHEN e.lft is null THEN null ELSE e.lft END),"
+			+ " e.rgt = (CASE WHEN e.rgt > :lft THEN (e.rgt - (:rgt - :lft + 1)) WHEN e.rgt is null THEN null ELSE e.rgt END)"
+			+ " where (e.lft > :lft OR e.rgt > :lft) and e.forestTreeType = :forestTreeType and e.treeId = :treeId")
+	int afterDelete(
+			@Param("forestTreeType") String forestTreeType, 
+			@Param("treeId") Long treeId, 
+			@Param("lft") Long lft, 
+			@Param("rgt") Long rgt);
 }
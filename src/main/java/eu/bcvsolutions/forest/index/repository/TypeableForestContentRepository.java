@@ -1,10 +1,14 @@
 package eu.bcvsolutions.forest.index.repository;
 
 import java.io.Serializable;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.NoRepositoryBean;
 import org.springframework.data.repository.query.Param;
 
@@ -31,4 +35,19 @@ public interface TypeableForestContentRepository<C extends ForestContent<?, CONT
 	 */
 	@Query("select e from #{#entityName} e where e.parent is null and e.forestTreeType = :forestTreeType")
 	Page<C> findRoots(@Param("forestTreeType") String forestTreeType, Pageable pageable);
+	
+	/**
+	 * Streams content tree structure {@code [contentId, parentContentId]} of given type ordered by content id - used for bulk index rebuild.
+	 * Stream has to be consumed in transaction and closed.
+	 * 
+	 * @param forestTreeType
+	 * @return
+	 * @since 1.3.0
+	 */
+	@QueryHints(value = { 
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+			@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query("select e.id, p.id from #{#entityName} e left join e.parent p where e.forestTreeType = :forestTreeType order by e.id")
+	Stream<Object[]> streamTreeStructure(@Param("forestTreeType") String forestTreeType);
 }
@@ -1,15 +1,24 @@
 package eu.bcvsolutions.forest.index.service.api;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.transaction.IllegalTransactionStateException;
 
 import eu.bcvsolutions.forest.index.domain.ForestContent;
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
 import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexRebuildResult;
 
 /**
  * Tree content with support for forest index
@@ -31,15 +40,42 @@ public interface ForestContentService<C extends ForestContent<IX, CONTENT_ID>, I
 	 */
 	void rebuildIndexes(String forestTreeType);
 	
+	/**
+	 * Rebuilds (drop and create) all indexes of given tree types (see {@link #rebuildIndexes(String)}). Tree types are rebuilt 
+	 * one by one in current transaction by default - the first failure is thrown. Implementation can rebuild independent 
+	 * tree types concurrently, each tree type in its own transaction - failures are reported per tree type in result.
+	 * 
+	 * @param forestTreeTypes
+	 * @return rebuilt tree types
+	 * @since 1.3.0
+	 */
+	default ForestIndexRebuildResult rebuildAll(Collection<String> forestTreeTypes) {
+		long started = System.nanoTime();
+		Set<String> types = new LinkedHashSet<>(forestTreeTypes);
+		types.forEach(this::rebuildIndexes);
+		//
+		return new ForestIndexRebuildResult(types, Collections.emptyMap(), System.nanoTime() - started);
+	}
+	
 	/**
 	 * Creates index for given content.
 	 * 
 	 * @param contentId
 	 * @param parentContentId content's parent id
-	 * @return
+	 * @return created index, {@code null} - index is written asynchronously (operation was enqueued)
 	 */
 	IX createIndex(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId);
 	
+	/**
+	 * Creates or updates indexes for given contents in bulk - see {@link ForestIndexService#indexAll(String, Collection)}.
+	 * 
+	 * @param forestTreeType
+	 * @param contents content identifiers with parent content identifiers
+	 * @return indexed contents count
+	 * @since 1.3.0
+	 */
+	int indexAll(String forestTreeType, Collection<ForestContentNode<CONTENT_ID>> contents);
+	
 	/**
 	 * Updates index for given content.
 	 * 
@@ -47,7 +83,7 @@ public interface ForestContentService<C extends ForestContent<IX, CONTENT_ID>, I
 	 * 
 	 * @param contentId
 	 * @param parentContentId content's parent id
-	 * @return
+	 * @return updated index, {@code null} - index is written asynchronously (operation was enqueued)
 	 */
 	IX updateIndex(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId);
 	
@@ -55,7 +91,7 @@ public interface ForestContentService<C extends ForestContent<IX, CONTENT_ID>, I
 	 * Deletes indexes for given content.
 	 * 
 	 * @param content
-	 * @return
+	 * @return deleted index, {@code null} - index is dropped asynchronously (operation was enqueued)
 	 */
 	IX deleteIndex(CONTENT_ID contentId);
 	
@@ -86,6 +122,43 @@ public interface ForestContentService<C extends ForestContent<IX, CONTENT_ID>, I
 	 */
 	Page<C> findAllChildren(CONTENT_ID contentId, Pageable pageable);
 	
+	/**
+	 * Finds next slice of all children for given content recursively ordered by forest index {@code lft} (pre-order) - keyset pagination.
+	 * Every slice costs the same - count is not queried and preceding children are not scanned.
+	 * Pass {@code lft} of the last returned content index to get the next slice.
+	 * 
+	 * @param contentId
+	 * @param lastLft {@code lft} of the last content index on previous slice, {@code null} - first slice
+	 * @param size slice size
+	 * @return
+	 * @throws UnsupportedOperationException if content tree type is not indexed by nested set
+	 * @since 1.3.0
+	 */
+	Slice<C> findAllChildren(CONTENT_ID contentId, Long lastLft, int size);
+	
+	/**
+	 * Finds next slice of all contents of given tree type ordered by forest index {@code lft} - keyset pagination over the whole forest in pre-order.
+	 * 
+	 * @param forestTreeType
+	 * @param lastLft {@code lft} of the last content index on previous slice, {@code null} - first slice
+	 * @param size slice size
+	 * @return
+	 * @throws UnsupportedOperationException if tree type is not indexed by nested set
+	 * @since 1.3.0
+	 */
+	Slice<C> findAll(String forestTreeType, Long lastLft, int size);
+	
+	/**
+	 * Finds children for given content recursively by forest index up to given depth.
+	 * 
+	 * @param contentId
+	 * @param maxDepth the deepest level of returned children ({@code 1} - direct children only)
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	Page<C> findDescendants(CONTENT_ID contentId, int maxDepth, Pageable pageable);
+	
 	/**
 	 * Returns all content parents.
 	 * 
@@ -93,5 +166,40 @@ public interface ForestContentService<C extends ForestContent<IX, CONTENT_ID>, I
 	 * @return
 	 */
 	List<C> findAllParents(CONTENT_ID contentId, Sort sort);
+	
+	/**
+	 * Streams direct children for given content - children are loaded by fetch size and are not retained in persistence context.
+	 * Stream has to be consumed in caller's transaction and closed.
+	 * 
+	 * @param contentId
+	 * @return
+	 * @throws IllegalTransactionStateException if called without transaction
+	 * @since 1.3.0
+	 */
+	Stream<C> streamDirectChildren(CONTENT_ID contentId);
+	
+	/**
+	 * Streams all children for given content recursively by forest index ordered by lft (pre-order) - children are loaded by fetch size 
+	 * and are not retained in persistence context. Stream has to be consumed in caller's transaction and closed.
+	 * 
+	 * @param contentId
+	 * @return
+	 * @throws IllegalTransactionStateException if called without transaction
+	 * @throws UnsupportedOperationException if content tree type is not indexed by nested set
+	 * @since 1.3.0
+	 */
+	Stream<C> streamAllChildren(CONTENT_ID contentId);
+	
+	/**
+	 * Streams all content parents ordered by forest index lft (from root) - parents are loaded by fetch size 
+	 * and are not retained in persistence context. Stream has to be consumed in caller's transaction and closed.
+	 * 
+	 * @param contentId
+	 * @return
+	 * @throws IllegalTransactionStateException if called without transaction
+	 * @throws UnsupportedOperationException if content tree type is not indexed by nested set
+	 * @since 1.3.0
+	 */
+	Stream<C> streamAllParents(CONTENT_ID contentId);
 
 }
@@ -0,0 +1,32 @@
+package eu.bcvsolutions.forest.index.service.api;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Index operations recorded in one unit of work - see {@link ForestIndexService#inBatch(String, java.util.function.Consumer)}.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ *
+ * @param <CONTENT_ID> content identifier - e.g. {@code Long} or {@link UUID} is preferred
+ */
+public interface ForestIndexBatch<CONTENT_ID extends Serializable> {
+
+	/**
+	 * Creates or updates index for given content - content is appended as the last child of given parent.
+	 *
+	 * @param contentId
+	 * @param parentContentId content's parent id
+	 * @throws UnsupportedOperationException if parent is not indexed
+	 * @throws IllegalArgumentException if content is moved under its own sub tree
+	 */
+	void index(CONTENT_ID contentId, CONTENT_ID parentContentId);
+
+	/**
+	 * Drops index for given content (with sub tree).
+	 *
+	 * @param contentId
+	 */
+	void dropIndex(CONTENT_ID contentId);
+}
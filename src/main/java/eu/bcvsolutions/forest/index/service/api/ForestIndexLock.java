@@ -0,0 +1,22 @@
+package eu.bcvsolutions.forest.index.service.api;
+
+/**
+ * Locks tree type for index writers - concurrent writers on the same tree type would interleave 
+ * index shifts and corrupt the tree. Writers on different tree types are not blocked.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public interface ForestIndexLock {
+
+	/**
+	 * Locks given tree type until current transaction is completed (committed or rolled back). 
+	 * Lock is reentrant - tree type already locked by current transaction is not locked again.
+	 * 
+	 * @param forestTreeType
+	 * @return true - lock was acquired now (indexes loaded before can be obsolete), false - tree type was already locked by current transaction
+	 * @throws IllegalStateException if transaction is not active
+	 * @throws org.springframework.dao.CannotAcquireLockException if lock cannot be acquired (e.g. timeout)
+	 */
+	boolean lock(String forestTreeType);
+}
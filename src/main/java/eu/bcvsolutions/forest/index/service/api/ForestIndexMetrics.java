@@ -0,0 +1,47 @@
+package eu.bcvsolutions.forest.index.service.api;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Index maintenance metrics - duration of service operations, rows touched by shift statements, persistence context flushes
+ * and tree size per tree type.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public interface ForestIndexMetrics {
+
+	/**
+	 * Records duration of service operation.
+	 *
+	 * @param operation service method name - e.g. {@code saveNode}
+	 * @param forestTreeType tree type or {@code null}, when tree type is not known (e.g. content is found by identifier)
+	 * @param duration duration in nanoseconds
+	 */
+	void recordOperation(String operation, String forestTreeType, long duration);
+
+	/**
+	 * Records count of rows touched by one statement.
+	 *
+	 * @param statement repository method name - e.g. {@code beforeNodeInsert}
+	 * @param forestTreeType
+	 * @param rows affected rows count
+	 */
+	void recordRows(String statement, String forestTreeType, int rows);
+
+	/**
+	 * Records persistence context flush.
+	 *
+	 * @param forestTreeType
+	 */
+	void recordFlush(String forestTreeType);
+
+	/**
+	 * Registers tree size of given type - given supplier is called, when tree size is read (e.g. by metrics registry).
+	 * Tree type is registered once, next registrations of the same tree type are ignored.
+	 *
+	 * @param forestTreeType
+	 * @param treeSize indexes count supplier
+	 */
+	void registerTreeSize(String forestTreeType, LongSupplier treeSize);
+}
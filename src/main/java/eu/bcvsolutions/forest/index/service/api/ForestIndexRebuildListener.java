@@ -0,0 +1,22 @@
+package eu.bcvsolutions.forest.index.service.api;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexRebuildProgress;
+
+/**
+ * Listens progress of chunked rebuild - called after each committed chunk and after indexes are published.
+ * Listener is called outside of chunk transaction - exception thrown by listener stops rebuild, which can be resumed 
+ * from the last checkpoint.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+@FunctionalInterface
+public interface ForestIndexRebuildListener {
+
+	/**
+	 * Rebuild progress.
+	 * 
+	 * @param progress
+	 */
+	void onProgress(ForestIndexRebuildProgress progress);
+}
@@ -1,9 +1,23 @@
 package eu.bcvsolutions.forest.index.service.api;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
 import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexIntervals;
+import eu.bcvsolutions.forest.index.domain.ForestIndexRebuildResult;
+import eu.bcvsolutions.forest.index.domain.ForestIndexStrategy;
 
 /**
  * Persists, builds, clears forest indexes
@@ -15,6 +29,73 @@ import eu.bcvsolutions.forest.index.domain.ForestIndex;
  */
 public interface ForestIndexService<IX extends ForestIndex<IX, CONTENT_ID>, CONTENT_ID extends Serializable> {
 	
+	/**
+	 * Strategy used for indexing given tree type. Content service can choose queries by strategy.
+	 * 
+	 * @param forestTreeType
+	 * @return strategy - {@link ForestIndexStrategy#NESTED_SET} by default
+	 * @since 1.3.0
+	 */
+	default ForestIndexStrategy getStrategy(String forestTreeType) {
+		return ForestIndexStrategy.NESTED_SET;
+	}
+	
+	/**
+	 * Returns true, when indexes of given tree type numbered without gaps (dense numbering) contain gaps left by delete
+	 * without closing gap (see {@link #deleteNode(ForestIndex, boolean)}) - children count cannot be computed from parent's
+	 * interval, count query has to be used, till tree type is rebuilt. Sparse numbering uses stored children count.
+	 *
+	 * @param forestTreeType
+	 * @return false by default
+	 * @since 1.3.0
+	 */
+	default boolean hasGaps(String forestTreeType) {
+		return false;
+	}
+
+	/**
+	 * Ancestor index identifiers ordered from root (without given index) - used by content service, when tree type is not indexed by nested set.
+	 * 
+	 * @param forestIndex
+	 * @return ancestor identifiers
+	 * @throws UnsupportedOperationException if strategy resolves ancestors by query (nested set)
+	 * @since 1.3.0
+	 */
+	default List<Long> findAncestorIds(IX forestIndex) {
+		throw new UnsupportedOperationException(String.format("Strategy [%s] does not support ancestor identifiers.", 
+				getStrategy(forestIndex.getForestTreeType())));
+	}
+	
+	/**
+	 * Descendant index identifiers (without given index) up to given depth - used by content service, when tree type is indexed by closure table.
+	 * 
+	 * @param forestIndex
+	 * @param maxDepth the deepest level of returned descendants relative to given index ({@code 1} - direct children only, {@code null} - all descendants)
+	 * @param pageable
+	 * @return descendant identifiers
+	 * @throws UnsupportedOperationException if strategy resolves descendants by query (nested set, materialized path)
+	 * @since 1.3.0
+	 */
+	default Page<Long> findDescendantIds(IX forestIndex, Integer maxDepth, Pageable pageable) {
+		throw new UnsupportedOperationException(String.format("Strategy [%s] does not support descendant identifiers.", 
+				getStrategy(forestIndex.getForestTreeType())));
+	}
+	
+	/**
+	 * Merged nested set intervals of given contents sub trees - used for "is content in any of given sub trees" checks 
+	 * in memory or as predicate in custom queries. Contents without index are ignored.
+	 * 
+	 * @param forestTreeType
+	 * @param contentIds sub tree roots
+	 * @return merged intervals
+	 * @throws UnsupportedOperationException if tree type is not indexed by nested set
+	 * @since 1.3.0
+	 */
+	default ForestIndexIntervals getIntervals(String forestTreeType, Collection<CONTENT_ID> contentIds) {
+		throw new UnsupportedOperationException(String.format("Strategy [%s] does not support nested set intervals.", 
+				getStrategy(forestTreeType)));
+	}
+	
 	/**
 	 * Rebuild all indexes (clears lft and rgt) of given type. 
 	 * 
@@ -24,6 +105,34 @@ public interface ForestIndexService<IX extends ForestIndex<IX, CONTENT_ID>, CONT
 	 */
 	void rebuild(String forestTreeType);
 	
+	/**
+	 * Drops all indexes of given type and creates new indexes for given content tree structure in bulk. 
+	 * Synthetic root is created - all content roots will be its children (see {@link #index(String, Serializable, Serializable)}).
+	 * Content without indexed parent (parent is not in given structure) is not indexed.
+	 * 
+	 * @param forestTreeType
+	 * @param contents content tree structure - content identifier with parent content identifier. Children are indexed in given order.
+	 * @since 1.3.0
+	 */
+	void rebuild(String forestTreeType, Stream<ForestContentNode<CONTENT_ID>> contents);
+	
+	/**
+	 * Rebuilds all indexes of given tree types (see {@link #rebuild(String)}). Tree types are rebuilt one by one in current transaction 
+	 * by default - the first failure is thrown. Implementation can rebuild independent tree types concurrently, each tree type 
+	 * in its own transaction - failures are reported per tree type in result.
+	 * 
+	 * @param forestTreeTypes
+	 * @return rebuilt tree types
+	 * @since 1.3.0
+	 */
+	default ForestIndexRebuildResult rebuildAll(Collection<String> forestTreeTypes) {
+		long started = System.nanoTime();
+		Set<String> types = new LinkedHashSet<>(forestTreeTypes);
+		types.forEach(this::rebuild);
+		//
+		return new ForestIndexRebuildResult(types, Collections.emptyMap(), System.nanoTime() - started);
+	}
+	
 	/**
 	 * Saves given index
 	 * 
@@ -36,7 +145,8 @@ public interface ForestIndexService<IX extends ForestIndex<IX, CONTENT_ID>, CONT
 	 * Deletes given forest index
 	 * 
 	 * @param forestIndex
-	 * @param closeGap true - recount indexes, false - leave indexes as it is (indexes could be used fr searching children, bet not for children count)
+	 * @param closeGap true - recount indexes, false - leave indexes as it is (indexes could be used fr searching children, bet not for children count
+	 * - children count is stored on parents, see {@link #hasGaps(String)})
 	 */
 	void deleteNode(IX forestIndex, boolean closeGap);
 	
@@ -66,6 +176,44 @@ public interface ForestIndexService<IX extends ForestIndex<IX, CONTENT_ID>, CONT
 	 */
 	IX index(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId);
 	
+	/**
+	 * Creates or updates indexes for given contents in bulk. Contents without index are appended as the last children 
+	 * of their parents - parent has to be indexed or given in the same batch (in any order).
+	 * Content roots (without parent) are appended under synthetic root (see {@link #index(String, Serializable, Serializable)}).
+	 * 
+	 * @param forestTreeType
+	 * @param contents content identifiers with parent content identifiers. Children of the same parent are indexed in given order.
+	 * @return indexed contents count
+	 * @throws UnsupportedOperationException if parent is not indexed and is not given
+	 * @since 1.3.0
+	 */
+	int indexAll(String forestTreeType, Collection<ForestContentNode<CONTENT_ID>> contents);
+	
+	/**
+	 * Executes given index operations in one unit of work. Operations are executed one by one by default, 
+	 * nested set writes net changes of all operations at once.
+	 * 
+	 * @param forestTreeType
+	 * @param operations recorded operations
+	 * @throws UnsupportedOperationException if parent is not indexed
+	 * @throws IllegalArgumentException if content is moved under its own sub tree
+	 * @since 1.3.0
+	 */
+	default void inBatch(String forestTreeType, Consumer<ForestIndexBatch<CONTENT_ID>> operations) {
+		operations.accept(new ForestIndexBatch<CONTENT_ID>() {
+			
+			@Override
+			public void index(CONTENT_ID contentId, CONTENT_ID parentContentId) {
+				ForestIndexService.this.index(forestTreeType, contentId, parentContentId);
+			}
+			
+			@Override
+			public void dropIndex(CONTENT_ID contentId) {
+				ForestIndexService.this.dropIndex(contentId);
+			}
+		});
+	}
+	
 	/**
 	 * Drops index for given content.
 	 * 
@@ -73,4 +221,17 @@ public interface ForestIndexService<IX extends ForestIndex<IX, CONTENT_ID>, CONT
 	 * @return
 	 */
 	IX dropIndex(CONTENT_ID contentId);
+	
+	/**
+	 * Returns tree type of given content index - index is not loaded. Used, when content is already deleted 
+	 * (e.g. drop index has to be enqueued into tree type queue).
+	 * 
+	 * @param contentId
+	 * @return tree type or {@code null}, when content is not indexed
+	 * @throws UnsupportedOperationException if index service does not resolve tree type by content
+	 * @since 1.3.0
+	 */
+	default String findForestTreeType(CONTENT_ID contentId) {
+		throw new UnsupportedOperationException("Index service does not resolve tree type by content.");
+	}
 }
@@ -0,0 +1,498 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.domain.Sort.Order;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexClosure;
+import eu.bcvsolutions.forest.index.domain.ForestIndexStrategy;
+import eu.bcvsolutions.forest.index.repository.ForestIndexClosureRepository;
+import eu.bcvsolutions.forest.index.repository.ForestIndexRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Persists, builds, clears forest indexes by closure table - see {@link ForestIndexClosure}.
+ *
+ * Closure table holds relation between each index and all its ancestors (and itself) with distance - inserted leaf 
+ * adds depth + 1 closures and other indexes are not touched, moved sub tree is disconnected from previous ancestors 
+ * and connected to new ancestors. Descendants (up to given depth) and ancestors are found by equality lookup on closure table
+ * - see {@link #findDescendantIds(ForestIndex, Integer, Pageable)} and {@link #findAncestorIds(ForestIndex)}.
+ * Indexes lft, rgt, path and depth are not used.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ *
+ * @param <IX> index type
+ * @param <CL> closure type
+ * @param <CONTENT_ID> content identifier - e.g. {@code Long} or {@link UUID} is preferred
+ */
+public abstract class AbstractForestClosureIndexService<IX extends ForestIndex<IX, CONTENT_ID>, CL extends ForestIndexClosure, CONTENT_ID extends Serializable>
+		implements ForestIndexService<IX, CONTENT_ID> {
+
+	private final Class<IX> indexClass;
+	private final Class<CL> closureClass;
+	private final ForestIndexRepository<IX, CONTENT_ID> repository;
+	private final ForestIndexClosureRepository<CL> closureRepository;
+	private final EntityManager entityManager;
+	private int batchSize = AbstractForestIndexService.DEFAULT_BATCH_SIZE;
+
+	@SuppressWarnings("unchecked")
+	public AbstractForestClosureIndexService(
+			ForestIndexRepository<IX, CONTENT_ID> repository,
+			ForestIndexClosureRepository<CL> closureRepository,
+			EntityManager entityManager) {
+		Assert.notNull(repository, "Index repository is required.");
+		Assert.notNull(closureRepository, "Closure repository is required.");
+		Assert.notNull(entityManager, "Entity manager is required.");
+		//
+		Class<?>[] genericTypes = GenericTypeResolver.resolveTypeArguments(getClass(), AbstractForestClosureIndexService.class);
+		//
+		Assert.notEmpty(genericTypes, "Wrong generic types is given, fix class definition");
+		indexClass = (Class<IX>) genericTypes[0];
+		closureClass = (Class<CL>) genericTypes[1];
+		//
+		this.repository = repository;
+		this.closureRepository = closureRepository;
+		this.entityManager = entityManager;
+	}
+
+	@Override
+	public ForestIndexStrategy getStrategy(String forestTreeType) {
+		return ForestIndexStrategy.CLOSURE_TABLE;
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<Long> findAncestorIds(IX forestIndex) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		return closureRepository.findAncestorIds(forestIndex.getId());
+	}
+	
+	/**
+	 * Descendants are paged by closure table ordered by index identifier - sort by index identifier ({@code id}) is supported only 
+	 * (ascending by default).
+	 * 
+	 * @throws IllegalArgumentException if sort by other property is given
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Page<Long> findDescendantIds(IX forestIndex, Integer maxDepth, Pageable pageable) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		if (pageable == null || pageable.isUnpaged()) {
+			pageable = Pageable.unpaged();
+		} else {
+			Direction direction = Direction.ASC;
+			for (Order order : pageable.getSort()) {
+				if (!"id".equals(order.getProperty()) && !"descendantId".equals(order.getProperty())) {
+					throw new IllegalArgumentException(String.format("Sort by [%s] is not supported for tree type [%s] indexed by closure table "
+							+ "- descendants are ordered by index identifier [id].", order.getProperty(), forestIndex.getForestTreeType()));
+				}
+				direction = order.getDirection();
+			}
+			pageable = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by(direction, "descendantId"));
+		}
+		return closureRepository.findDescendantIds(forestIndex.getId(), maxDepth == null ? Integer.MAX_VALUE : maxDepth, pageable);
+	}
+
+	/**
+	 * Tree structure is loaded by one streaming query, closures are computed in memory and inserted by JDBC batch inserts.
+	 */
+	@Override
+	@Transactional
+	public void rebuild(String forestTreeType) {
+		// we need actual data in tree structure
+		entityManager.flush();
+		//
+		closureRepository.deleteByForestTreeType(forestTreeType);
+		ForestIndexTree tree = new ForestIndexTree();
+		try (Stream<Object[]> structure = repository.streamTreeStructure(forestTreeType)) {
+			structure.forEach(tree::add);
+		}
+		if (tree.size() == 0) {
+			return;
+		}
+		tree.number();
+		long[] indexIds = new long[tree.size()];
+		for (int slot = 0; slot < tree.size(); slot++) {
+			indexIds[slot] = tree.getId(slot);
+		}
+		getBatchWriter().insertClosures(forestTreeType, tree, indexIds, closureClass);
+		// loaded indexes are obsolete
+		entityManager.clear();
+	}
+
+	/**
+	 * Content tree structure is loaded into memory, indexes (including synthetic root) and closures are inserted
+	 * by JDBC batch inserts. If index identifiers are generated by database (identity), then indexes are created one by one.
+	 */
+	@Override
+	@Transactional
+	public void rebuild(String forestTreeType, Stream<ForestContentNode<CONTENT_ID>> contents) {
+		Assert.notNull(contents, "Content tree structure is required.");
+		//
+		dropIndexes(forestTreeType);
+		//
+		// synthetic root has the first position
+		List<CONTENT_ID> contentIds = new ArrayList<>();
+		List<CONTENT_ID> parentContentIds = new ArrayList<>();
+		Map<CONTENT_ID, Long> positions = new HashMap<>();
+		contentIds.add(null);
+		parentContentIds.add(null);
+		contents.forEach(content -> {
+			Assert.notNull(content.getContentId(), "Content identifier is required.");
+			//
+			positions.put(content.getContentId(), Long.valueOf(contentIds.size()));
+			contentIds.add(content.getContentId());
+			parentContentIds.add(content.getParentContentId());
+		});
+		if (contentIds.size() == 1) {
+			// nothing to index
+			return;
+		}
+		ForestIndexTree tree = new ForestIndexTree();
+		tree.add(0L, null);
+		for (int position = 1; position < contentIds.size(); position++) {
+			CONTENT_ID parentContentId = parentContentIds.get(position);
+			if (parentContentId == null) {
+				tree.add(position, 0L);
+			} else {
+				Long parentPosition = positions.get(parentContentId);
+				// content without parent in structure is not indexed
+				tree.add(position, parentPosition == null ? -1L : parentPosition);
+			}
+		}
+		tree.number();
+		//
+		ForestIndexBatchWriter batchWriter = getBatchWriter();
+		if (batchWriter.supportsInsert()) {
+			long[] indexIds = batchWriter.insertNodes(forestTreeType, tree, contentIds);
+			batchWriter.insertClosures(forestTreeType, tree, indexIds, closureClass);
+		} else {
+			for (int slot : tree.getPreOrder()) {
+				if (slot > 0) {
+					int parentSlot = tree.getParentSlot(slot);
+					index(forestTreeType, contentIds.get(slot), parentSlot == 0 ? null : contentIds.get(parentSlot));
+				}
+			}
+		}
+		entityManager.clear();
+	}
+
+	@Override
+	@Transactional
+	public IX saveNode(IX forestIndex) {
+		Assert.notNull(forestIndex, "Index is required.");
+		entityManager.detach(forestIndex); // we need to load previous index value before flush
+		//
+		Long previousParentId = null;
+		boolean indexed = false;
+		if (forestIndex.getId() != null) {
+			previousParentId = repository.findParentId(forestIndex.getId());
+			indexed = closureRepository.countSelf(forestIndex.getId()) > 0;
+		}
+		Long parentId = forestIndex.getParent() == null ? null : forestIndex.getParent().getId();
+		forestIndex = repository.save(forestIndex);
+		//
+		if (!indexed) {
+			insertClosures(forestIndex);
+		} else if (!Objects.equals(previousParentId, parentId)) {
+			moveClosures(forestIndex);
+		}
+		entityManager.flush();
+		entityManager.clear();
+		return forestIndex;
+	}
+
+	/**
+	 * Inserts closures of new node - depth + 1 closures are inserted. New root is inserted above the previous root.
+	 *
+	 * @param forestIndex
+	 */
+	private void insertClosures(IX forestIndex) {
+		entityManager.flush();
+		String forestTreeType = forestIndex.getForestTreeType();
+		Long id = forestIndex.getId();
+		//
+		persistClosure(forestTreeType, id, id, 0);
+		if (forestIndex.getParent() == null) {
+			Long previousRootId = repository.findPreviousRootId(forestTreeType, id);
+			if (previousRootId != null) {
+				// the previous root sub tree is connected under new root
+				for (Object[] descendant : closureRepository.findDescendantDistances(previousRootId)) {
+					persistClosure(forestTreeType, id, (Long) descendant[0], (Integer) descendant[1] + 1);
+				}
+				repository.updateParent(previousRootId, forestIndex);
+			}
+		} else {
+			List<Object[]> ancestors = closureRepository.findAncestorDistances(forestIndex.getParent().getId());
+			Assert.notEmpty(ancestors, MessageFormat.format("Parent [{0}] doesn't have closure - index parent at first.", 
+					forestIndex.getParent().getId()));
+			//
+			for (Object[] ancestor : ancestors) {
+				persistClosure(forestTreeType, (Long) ancestor[0], id, (Integer) ancestor[1] + 1);
+			}
+		}
+	}
+
+	/**
+	 * Moves sub tree under new parent - sub tree is disconnected from previous ancestors and connected to new ancestors.
+	 * Closures inside sub tree are preserved.
+	 *
+	 * @param forestIndex moved node with new parent
+	 * @throws IllegalArgumentException if node is moved under its own sub tree
+	 */
+	private void moveClosures(IX forestIndex) {
+		entityManager.flush();
+		String forestTreeType = forestIndex.getForestTreeType();
+		Long id = forestIndex.getId();
+		//
+		List<Object[]> descendants = closureRepository.findDescendantDistances(id);
+		if (forestIndex.getParent() != null) {
+			Long parentId = forestIndex.getParent().getId();
+			if (descendants.stream().anyMatch(descendant -> parentId.equals(descendant[0]))) {
+				throw new IllegalArgumentException(MessageFormat.format("Index [{0}] cannot be moved under its own sub tree [{1}].", 
+						id, parentId));
+			}
+		}
+		closureRepository.disconnectSubTree(id);
+		//
+		if (forestIndex.getParent() == null) {
+			// new root - the previous root is moved under new root
+			Long previousRootId = repository.findPreviousRootId(forestTreeType, id);
+			if (previousRootId != null) {
+				for (Object[] descendant : closureRepository.findDescendantDistances(previousRootId)) {
+					persistClosure(forestTreeType, id, (Long) descendant[0], (Integer) descendant[1] + 1);
+				}
+				repository.updateParent(previousRootId, forestIndex);
+			}
+			return;
+		}
+		List<Object[]> ancestors = closureRepository.findAncestorDistances(forestIndex.getParent().getId());
+		Assert.notEmpty(ancestors, MessageFormat.format("Parent [{0}] doesn't have closure - index parent at first.", 
+				forestIndex.getParent().getId()));
+		//
+		for (Object[] ancestor : ancestors) {
+			for (Object[] descendant : descendants) {
+				persistClosure(forestTreeType, (Long) ancestor[0], (Long) descendant[0], (Integer) ancestor[1] + (Integer) descendant[1] + 1);
+			}
+		}
+	}
+	
+	private void persistClosure(String forestTreeType, Long ancestorId, Long descendantId, int distance) {
+		CL closure = createClosureInstance(closureClass);
+		closure.setForestTreeType(forestTreeType);
+		closure.setAncestorId(ancestorId);
+		closure.setDescendantId(descendantId);
+		closure.setDistance(distance);
+		entityManager.persist(closure);
+	}
+
+	/**
+	 * Deletes whole sub tree - indexes and closures.
+	 */
+	@Override
+	@Transactional
+	public void deleteNode(IX forestIndex, boolean closeGap) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		// gap doesn't exist - closeGap is not needed
+		List<Long> ids = new ArrayList<>();
+		closureRepository.findDescendantDistances(forestIndex.getId()).forEach(descendant -> ids.add((Long) descendant[0]));
+		if (ids.isEmpty()) {
+			repository.deleteById(forestIndex.getId());
+		} else {
+			closureRepository.deleteSubTree(forestIndex.getId());
+			for (int start = 0; start < ids.size(); start += batchSize) {
+				repository.deleteByIds(ids.subList(start, Math.min(start + batchSize, ids.size())));
+			}
+		}
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Override
+	@Transactional
+	public void clearIndexes(String forestTreeType) {
+		closureRepository.deleteByForestTreeType(forestTreeType);
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Override
+	@Transactional
+	public void dropIndexes(String forestTreeType) {
+		closureRepository.deleteByForestTreeType(forestTreeType);
+		repository.dropIndexes(forestTreeType);
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Override
+	@Transactional
+	public IX index(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId) {
+		// previous index
+		IX index = repository.findOneByContentId(contentId);
+		// get parent index
+		IX parentIndex = null;
+		if (parentContentId != null) {
+			parentIndex = repository.findOneByContentId(parentContentId);
+			if (parentIndex == null) {
+				throw new UnsupportedOperationException(String.format("Parent [%s] doesn't have index - index parent at first.", parentContentId));
+			}
+		} else {
+			// generate synthetic root - we want to support more content roots
+			parentIndex = repository.findRoot(forestTreeType);
+			if (parentIndex == null) {
+				parentIndex = createIndexInstance(indexClass);
+				parentIndex.setForestTreeType(forestTreeType);
+				parentIndex = this.saveNode(parentIndex);
+			}
+		}
+		//
+		if (index == null) {
+			index = createIndexInstance(indexClass);
+		}
+		index.setParent(parentIndex);
+		index.setContentId(contentId);
+		index.setForestTreeType(forestTreeType);
+		return this.saveNode(index);
+	}
+
+	/**
+	 * Each insert adds depth + 1 closures only - contents are indexed one by one in order parent before children.
+	 */
+	@Override
+	@Transactional
+	public int indexAll(String forestTreeType, Collection<ForestContentNode<CONTENT_ID>> contents) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(contents, "Contents are required.");
+		//
+		// parents given in batch are indexed before their children
+		List<ForestContentNode<CONTENT_ID>> nodes = new ArrayList<>(contents);
+		Map<CONTENT_ID, Long> positions = new HashMap<>();
+		for (int position = 0; position < nodes.size(); position++) {
+			positions.put(nodes.get(position).getContentId(), Long.valueOf(position));
+		}
+		ForestIndexTree tree = new ForestIndexTree();
+		for (int position = 0; position < nodes.size(); position++) {
+			CONTENT_ID parentContentId = nodes.get(position).getParentContentId();
+			tree.add(position, parentContentId == null ? null : positions.get(parentContentId));
+		}
+		tree.number();
+		for (int position = 0; position < nodes.size(); position++) {
+			if (!tree.isNumbered(position)) {
+				throw new IllegalArgumentException(MessageFormat.format("Content [{0}] is not reachable from indexed parent "
+						+ "- contents contain a cycle.", nodes.get(position).getContentId()));
+			}
+		}
+		for (int position : tree.getPreOrder()) {
+			ForestContentNode<CONTENT_ID> content = nodes.get(position);
+			index(forestTreeType, content.getContentId(), content.getParentContentId());
+		}
+		return nodes.size();
+	}
+
+	@Override
+	@Transactional
+	public IX dropIndex(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		IX index = repository.findOneByContentId(contentId);
+		//
+		if (index != null) {
+			deleteNode(index, true);
+		}
+		return index;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public String findForestTreeType(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		return repository.findForestTreeType(contentId);
+	}
+
+	/**
+	 * JDBC batch size used for bulk operations.
+	 *
+	 * @return
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * JDBC batch size used for bulk operations.
+	 *
+	 * @param batchSize
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size has to be positive.");
+		//
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Writer for bulk operations.
+	 *
+	 * @return
+	 */
+	protected ForestIndexBatchWriter getBatchWriter() {
+		return new ForestIndexBatchWriter(entityManager, indexClass, batchSize);
+	}
+
+	/**
+	 * Create new index instance.
+	 *
+	 * @return
+	 * @throws IllegalArgumentException when index class does not define default constructor.
+	 */
+	protected IX createIndexInstance(Class<? extends IX> indexClass) {
+		try {
+			return indexClass.getDeclaredConstructor().newInstance();
+		} catch (IllegalArgumentException | InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException | SecurityException o_O) {
+			throw new IllegalArgumentException(MessageFormat.format("[{0}] does not support creating new instance. "
+					+ "Fix forest index class - add default constructor.", indexClass), o_O);
+		}
+	}
+	
+	/**
+	 * Create new closure instance.
+	 *
+	 * @return
+	 * @throws IllegalArgumentException when closure class does not define default constructor.
+	 */
+	protected CL createClosureInstance(Class<? extends CL> closureClass) {
+		try {
+			return closureClass.getDeclaredConstructor().newInstance();
+		} catch (IllegalArgumentException | InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException | SecurityException o_O) {
+			throw new IllegalArgumentException(MessageFormat.format("[{0}] does not support creating new instance. "
+					+ "Fix forest index closure class - add default constructor.", closureClass), o_O);
+		}
+	}
+}
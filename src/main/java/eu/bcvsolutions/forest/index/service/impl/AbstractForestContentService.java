@@ -2,6 +2,7 @@ package eu.bcvsolutions.forest.index.service.impl;
 
 import java.io.Serializable;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -40,6 +41,14 @@ public abstract class AbstractForestContentService<C extends ForestContent<IX, C
 	@Override
 	@Transactional(readOnly = true)
 	public Page<C> findRoots(String forestTreeType, Pageable pageable) {
-		return repository.findRoots(forestTreeType, pageable);
+		long start = System.nanoTime();
+		Page<C> roots = repository.findRoots(forestTreeType, pageable);
+		getMetrics().recordOperation("findRoots", forestTreeType, System.nanoTime() - start);
+		return roots;
+	}
+	
+	@Override
+	protected Stream<Object[]> streamTreeStructure(String forestTreeType) {
+		return repository.streamTreeStructure(forestTreeType);
 	}
 }
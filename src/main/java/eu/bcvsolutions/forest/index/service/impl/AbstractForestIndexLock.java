@@ -0,0 +1,69 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.service.api.ForestIndexLock;
+
+/**
+ * Tree types locked by current transaction are bound to transaction - each tree type is locked once 
+ * and all locks are released after transaction is completed.
+ * 
+ * Locks acquired in new transaction (e.g. {@code REQUIRES_NEW}) on the same thread are held until the outer transaction is completed.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public abstract class AbstractForestIndexLock implements ForestIndexLock {
+	
+	@Override
+	public boolean lock(String forestTreeType) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			throw new IllegalStateException(String.format("Tree type [%s] can be locked in active transaction only.", forestTreeType));
+		}
+		//
+		@SuppressWarnings("unchecked")
+		Set<String> lockedTreeTypes = (Set<String>) TransactionSynchronizationManager.getResource(this);
+		if (lockedTreeTypes != null && lockedTreeTypes.contains(forestTreeType)) {
+			return false;
+		}
+		doLock(forestTreeType);
+		if (lockedTreeTypes == null) {
+			Set<String> registeredTreeTypes = new LinkedHashSet<>();
+			TransactionSynchronizationManager.bindResource(this, registeredTreeTypes);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(AbstractForestIndexLock.this);
+					registeredTreeTypes.forEach(treeType -> {
+						unlock(treeType);
+					});
+				}
+			});
+			lockedTreeTypes = registeredTreeTypes;
+		}
+		lockedTreeTypes.add(forestTreeType);
+		return true;
+	}
+	
+	/**
+	 * Acquires lock for given tree type - blocks, until lock is acquired.
+	 * 
+	 * @param forestTreeType
+	 * @throws org.springframework.dao.CannotAcquireLockException if lock cannot be acquired
+	 */
+	protected abstract void doLock(String forestTreeType);
+	
+	/**
+	 * Releases lock for given tree type - called after transaction is completed.
+	 * 
+	 * @param forestTreeType
+	 */
+	protected abstract void unlock(String forestTreeType);
+}
@@ -3,22 +3,67 @@ package eu.bcvsolutions.forest.index.service.impl;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
 
 import javax.persistence.EntityManager;
 
 import org.springframework.core.GenericTypeResolver;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
 import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexIntervals;
+import eu.bcvsolutions.forest.index.domain.ForestIndexMetadata;
+import eu.bcvsolutions.forest.index.domain.ForestIndexRebuildResult;
 import eu.bcvsolutions.forest.index.repository.ForestIndexRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexBatch;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexLock;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexMetrics;
 import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
 
 /**
  * Persists, builds, clears forest indexes 
  * 
+ * Indexes are numbered without gaps by default - each insert shifts all following indexes. Sparse numbering 
+ * can be enabled by {@link #setSparseGap(long)} - indexes are numbered with gaps, new node claims a free slot inside 
+ * parent's interval and sub tree is renumbered locally, when gap is exhausted. Children count is stored in sparse mode.
+ * 
+ * Numbering can be scoped by content roots by {@link #setRootScoped(boolean)} - each content root tree is numbered 
+ * in its own range and shifts are limited to one content root tree (e.g. one tenant).
+ * 
+ * Writers lock tree type until transaction is completed (see {@link #setLock(ForestIndexLock)}) - writers on the same tree type 
+ * are serialized, writers on different tree types run in parallel.
+ * 
+ * Use {@link #inBatch(String, Consumer)}, when more nodes are indexed in one transaction - net changes of all operations 
+ * are written at once (single operation flushes and clears persistence context).
+ * 
+ * Rows touched by each statement, persistence context flushes and tree size can be recorded by {@link #setMetrics(ForestIndexMetrics)}.
+ * 
+ * Tree type metadata (root, the greatest rgt, indexes count and version) can be maintained in the same transaction 
+ * by {@link #setMetadataManager(ForestIndexMetadataManager)}.
+ * 
+ * More tree types can be rebuilt concurrently by {@link #setRebuildExecutor(ForestIndexRebuildExecutor)} - each tree type 
+ * in its own transaction.
+ * 
  * - TODO: flush and clear is called manually - use @Modifying annotation (auto flush and auto clear) 
  * 
  * @author Radek Tomiška
@@ -29,9 +74,22 @@ import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
 public abstract class AbstractForestIndexService<IX extends ForestIndex<IX, CONTENT_ID>, CONTENT_ID extends Serializable> 
 		implements ForestIndexService<IX, CONTENT_ID> {
 	
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final long DENSE_GAP = 1L; // numbering without gaps
+	public static final long MIN_SPARSE_GAP = 4L;
+	public static final long ROOT_SCOPE_SIZE = 1L << 32; // numbering range of one content root tree - children count is integer
+	//
 	private final Class<IX> indexClass;
 	private final ForestIndexRepository<IX, CONTENT_ID> repository;
     private final EntityManager entityManager;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long sparseGap = DENSE_GAP;
+    private boolean rootScoped = false;
+    private ForestIndexSnapshotManager<CONTENT_ID> snapshotManager;
+    private ForestIndexLock lock = new StripedForestIndexLock();
+    private ForestIndexMetrics metrics = new NoopForestIndexMetrics();
+    private ForestIndexMetadataManager<?> metadataManager;
+    private ForestIndexRebuildExecutor rebuildExecutor; // tree types are rebuilt sequentially by default
 	
 	@SuppressWarnings("unchecked")
 	public AbstractForestIndexService(
@@ -49,32 +107,483 @@ public abstract class AbstractForestIndexService<IX extends ForestIndex<IX, CONT
 		this.entityManager = entityManager;
 	}
 	
+	/**
+	 * Intervals are merged from indexes of given contents - indexes are loaded in chunks (see {@link #getBatchSize()}).
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public ForestIndexIntervals getIntervals(String forestTreeType, Collection<CONTENT_ID> contentIds) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(contentIds, "Content identifiers are required.");
+		//
+		return ForestIndexIntervals.of(forestTreeType, findIndexes(forestTreeType, contentIds)
+				.values()
+				.stream()
+				.map(index -> new Object[] { index[2], index[3] }));
+	}
+	
+	/**
+	 * Finds all children for given parent recursively - total is computed from parent's interval, count query is executed, 
+	 * when interval contains gaps (sparse numbering, gaps left by delete - see {@link #hasGaps(String)}) or parent is not indexed.
+	 * 
+	 * @param parent
+	 * @param pageable
+	 * @return
+	 * @since 1.3.0
+	 */
+	@Transactional(readOnly = true)
+	public Page<IX> findAllChildren(IX parent, Pageable pageable) {
+		Assert.notNull(parent, "Parent index is required.");
+		//
+		List<IX> children = repository.findAllChildrenWithoutCount(parent, pageable);
+		LongSupplier count = () -> repository.countChildren(parent.getForestTreeType(), parent.getLft(), parent.getRgt());
+		if (!ForestIndexPages.isCounted(parent)) {
+			return ForestIndexPages.getPage(children, pageable, count);
+		}
+		return ForestIndexPages.getPage(children, pageable, 
+				() -> hasGaps(parent.getForestTreeType()) ? count.getAsLong() : parent.getChildrenCount());
+	}
+	
+	/**
+	 * Gap left by delete is marked by stored children count of all parents - stored count is maintained by following insert, move and delete, root children count is stored till tree type is rebuilt.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public boolean hasGaps(String forestTreeType) {
+		return !isSparse() && repository.findRootChildrenCount(forestTreeType) != null;
+	}
+	
+	/**
+	 * Rebuilds indexes in bulk - tree structure is loaded by one streaming query, indexes are computed in memory
+	 * and written back by JDBC batch updates (see {@link #getBatchSize()}).
+	 */
 	@Override
 	@Transactional
 	public void rebuild(String forestTreeType) {
-		// clear all rgt, lft
-		repository.clearIndexes(forestTreeType);
+		lock(forestTreeType);
+		// we need actual data in tree structure
+		flush(forestTreeType);
+		startRebuild(forestTreeType);
+		//
+		if (rootScoped) {
+			numberScopes(forestTreeType);
+		} else {
+			ForestIndexTree tree = new ForestIndexTree();
+			try (Stream<Object[]> structure = repository.streamTreeStructure(forestTreeType)) {
+				structure.forEach(tree::add);
+			}
+			if (tree.size() > 0) {
+				getBatchWriter().updateIndexes(tree.number(1L, sparseGap), isSparse());
+				recordRows("clearTreeIds", forestTreeType, repository.clearTreeIds(forestTreeType));
+			}
+		}
+		// loaded indexes are obsolete
+		entityManager.clear();
+		resetMetadata(forestTreeType);
+		invalidateSnapshot(forestTreeType);
+	}
+	
+	/**
+	 * Tree types are rebuilt concurrently, each tree type in its own transaction, when rebuild executor is set 
+	 * (see {@link #setRebuildExecutor(ForestIndexRebuildExecutor)}) - call it outside of transaction, changes are committed 
+	 * per tree type. Tree types are rebuilt one by one in current transaction otherwise.
+	 */
+	@Override
+	public ForestIndexRebuildResult rebuildAll(Collection<String> forestTreeTypes) {
+		if (rebuildExecutor == null) {
+			return ForestIndexService.super.rebuildAll(forestTreeTypes);
+		}
+		return rebuildExecutor.rebuildAll(forestTreeTypes, this::rebuild);
+	}
+
+	/**
+	 * Rebuilds indexes in shadow columns - indexes are computed from stored tree structure (the same numbering as {@link #rebuild(String)})
+	 * and written into shadow columns by JDBC batch updates, current indexes are not changed. Computed indexes are published
+	 * by one statement at the end (shadow columns are moved into indexes and cleared) - readers use current indexes until
+	 * rebuild is finished and never see partially numbered tree. Writers on the same tree type are locked during rebuild.
+	 * Shadow numbering is not scoped by content roots.
+	 *
+	 * @param forestTreeType
+	 * @throws UnsupportedOperationException if numbering is scoped by content roots
+	 * @since 1.3.0
+	 */
+	@Transactional
+	public void rebuildShadow(String forestTreeType) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		if (rootScoped) {
+			throw new UnsupportedOperationException("Shadow rebuild is not supported, when numbering is scoped by content roots.");
+		}
+		lock(forestTreeType);
+		// we need actual data in tree structure
+		flush(forestTreeType);
+		startRebuild(forestTreeType);
+		// shadow columns of interrupted rebuild are obsolete
+		recordRows("clearShadowIndexes", forestTreeType, repository.clearShadowIndexes(forestTreeType));
+		//
+		ForestIndexTree tree = numberTree(forestTreeType);
+		if (tree.size() > 0) {
+			getBatchWriter().updateShadowIndexes(tree, isSparse());
+			recordRows("publishShadowIndexes", forestTreeType, repository.publishShadowIndexes(forestTreeType));
+		}
+		// loaded indexes are obsolete
+		entityManager.clear();
+		resetMetadata(forestTreeType);
+		invalidateSnapshot(forestTreeType);
+	}
+
+	/**
+	 * Loads stored tree structure of given type and computes indexes in memory - the same numbering as {@link #rebuild(String)}.
+	 * Used by chunked rebuild - see {@link ForestIndexRebuildTask}.
+	 *
+	 * @param forestTreeType
+	 * @return numbered tree - tree node identifiers are index identifiers
+	 * @throws UnsupportedOperationException if numbering is scoped by content roots
+	 * @since 1.3.0
+	 */
+	@Transactional(readOnly = true)
+	public ForestIndexTree numberTree(String forestTreeType) {
+		return numberTree(forestTreeType, null);
+	}
+
+	/**
+	 * Loads stored tree structure of given type and computes indexes in memory - the same numbering as {@link #rebuild(String)}.
+	 * Indexes are computed in parallel by given pool (see {@link ForestIndexTree#number(long, long, ForkJoinPool)}).
+	 * Used by chunked rebuild - see {@link ForestIndexRebuildTask}.
+	 *
+	 * @param forestTreeType
+	 * @param pool pool for parallel numbering or {@code null} - tree is numbered by current thread
+	 * @return numbered tree - tree node identifiers are index identifiers
+	 * @throws UnsupportedOperationException if numbering is scoped by content roots
+	 * @since 1.3.0
+	 */
+	@Transactional(readOnly = true)
+	public ForestIndexTree numberTree(String forestTreeType, ForkJoinPool pool) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		if (rootScoped) {
+			throw new UnsupportedOperationException("Numbering of stored tree is not supported, when numbering is scoped by content roots.");
+		}
+		//
+		ForestIndexTree tree = new ForestIndexTree();
+		try (Stream<Object[]> structure = repository.streamTreeStructure(forestTreeType)) {
+			structure.forEach(tree::add);
+		}
+		return pool == null ? tree.number(1L, sparseGap) : tree.number(1L, sparseGap, pool);
+	}
+
+	/**
+	 * Starts chunked shadow rebuild of given type - shadow indexes are cleared, tree type is marked as rebuilding
+	 * and empty checkpoint is saved into tree type metadata. Used by chunked rebuild - see {@link ForestIndexRebuildTask}.
+	 *
+	 * @param forestTreeType
+	 * @return tree version, when rebuild was started - chunks are written, only when tree is not changed after
+	 * @throws IllegalStateException if metadata are not maintained - see {@link #setMetadataManager(ForestIndexMetadataManager)}
+	 * @since 1.3.0
+	 */
+	@Transactional
+	public long startShadowRebuild(String forestTreeType) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		if (metadataManager == null) {
+			throw new IllegalStateException("Chunked rebuild requires tree type metadata - checkpoint is stored in metadata.");
+		}
+		lock(forestTreeType);
+		flush(forestTreeType);
+		//
+		recordRows("clearShadowIndexes", forestTreeType, repository.clearShadowIndexes(forestTreeType));
+		startRebuild(forestTreeType);
+		long version = metadataManager.getMetadata(forestTreeType).getVersion();
+		metadataManager.setCheckpoint(forestTreeType, 0L, null, version);
+		//
+		return version;
+	}
+
+	/**
+	 * Writes shadow indexes of one chunk of numbered nodes and saves checkpoint - position and lft of the next node.
+	 * Indexes are not changed. Used by chunked rebuild - see {@link ForestIndexRebuildTask}.
+	 *
+	 * @param forestTreeType
+	 * @param tree numbered tree - see {@link #numberTree(String)}
+	 * @param preOrder numbered nodes positions in pre-order
+	 * @param from the first written pre-order position (inclusive)
+	 * @param to the last written pre-order position (exclusive)
+	 * @param checkpointVersion tree version, when rebuild was started - see {@link #startShadowRebuild(String)}
+	 * @return {@code false}, when tree was changed after rebuild was started - chunk is not written, rebuild has to be started again
+	 * @since 1.3.0
+	 */
+	@Transactional
+	public boolean writeShadowChunk(String forestTreeType, ForestIndexTree tree, int[] preOrder, int from, int to, long checkpointVersion) {
+		if (!writeShadowRange(forestTreeType, tree, preOrder, from, to, checkpointVersion)) {
+			return false;
+		}
+		metadataManager.setCheckpoint(forestTreeType, (long) to, to < preOrder.length ? tree.getLft(preOrder[to]) : null, checkpointVersion);
+		//
+		return true;
+	}
+
+	/**
+	 * Writes shadow indexes of one range of numbered nodes without checkpoint - ranges are written concurrently by parallel
+	 * chunked rebuild, checkpoint is saved after all ranges before are written (see {@link #saveShadowCheckpoint}). 
+	 * Indexes are not changed. Used by chunked rebuild - see {@link ForestIndexRebuildTask}.
+	 *
+	 * @param forestTreeType
+	 * @param tree numbered tree - see {@link #numberTree(String)}
+	 * @param preOrder numbered nodes positions in pre-order
+	 * @param from the first written pre-order position (inclusive)
+	 * @param to the last written pre-order position (exclusive)
+	 * @param checkpointVersion tree version, when rebuild was started - see {@link #startShadowRebuild(String)}
+	 * @return {@code false}, when tree was changed after rebuild was started - range is not written, rebuild has to be started again
+	 * @since 1.3.0
+	 */
+	@Transactional
+	public boolean writeShadowRange(String forestTreeType, ForestIndexTree tree, int[] preOrder, int from, int to, long checkpointVersion) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(tree, "Tree is required.");
+		Assert.notNull(preOrder, "Pre-order is required.");
+		//
+		if (!isShadowValid(forestTreeType, checkpointVersion)) {
+			return false;
+		}
+		getBatchWriter().updateShadowIndexes(tree, preOrder, from, to, isSparse());
+		//
+		return true;
+	}
+
+	/**
+	 * Saves checkpoint - position and lft of the next node, when all nodes before given position are written.
+	 * Used by chunked rebuild - see {@link ForestIndexRebuildTask}.
+	 *
+	 * @param forestTreeType
+	 * @param tree numbered tree - see {@link #numberTree(String)}
+	 * @param preOrder numbered nodes positions in pre-order
+	 * @param position the next not written pre-order position
+	 * @param checkpointVersion tree version, when rebuild was started - see {@link #startShadowRebuild(String)}
+	 * @return {@code false}, when tree was changed after rebuild was started - checkpoint is not saved, rebuild has to be started again
+	 * @since 1.3.0
+	 */
+	@Transactional
+	public boolean saveShadowCheckpoint(String forestTreeType, ForestIndexTree tree, int[] preOrder, int position, long checkpointVersion) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(tree, "Tree is required.");
+		Assert.notNull(preOrder, "Pre-order is required.");
+		//
+		if (!isShadowValid(forestTreeType, checkpointVersion)) {
+			return false;
+		}
+		metadataManager.setCheckpoint(forestTreeType, (long) position, position < preOrder.length ? tree.getLft(preOrder[position]) : null, checkpointVersion);
 		//
-		IX root = repository.findRoot(forestTreeType);
-		if (root == null) {
+		return true;
+	}
+
+	/**
+	 * Publishes shadow indexes written by chunks by one statement - tree type is locked, indexes are published, only when
+	 * tree was not changed after rebuild was started. Metadata are counted from published indexes (checkpoint is cleared).
+	 * Used by chunked rebuild - see {@link ForestIndexRebuildTask}.
+	 *
+	 * @param forestTreeType
+	 * @param checkpointVersion tree version, when rebuild was started - see {@link #startShadowRebuild(String)}
+	 * @return {@code false}, when tree was changed after rebuild was started - indexes are not published, rebuild has to be started again
+	 * @since 1.3.0
+	 */
+	@Transactional
+	public boolean publishShadowRebuild(String forestTreeType, long checkpointVersion) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		lock(forestTreeType);
+		//
+		if (!isShadowValid(forestTreeType, checkpointVersion)) {
+			return false;
+		}
+		recordRows("publishShadowIndexes", forestTreeType, repository.publishShadowIndexes(forestTreeType));
+		// loaded indexes are obsolete
+		entityManager.clear();
+		resetMetadata(forestTreeType);
+		invalidateSnapshot(forestTreeType);
+		//
+		return true;
+	}
+
+	/**
+	 * Returns {@code true}, when tree of given type was not changed after chunked rebuild was started.
+	 *
+	 * @param forestTreeType
+	 * @param checkpointVersion
+	 * @return
+	 */
+	private boolean isShadowValid(String forestTreeType, long checkpointVersion) {
+		ForestIndexMetadata metadata = getMetadata(forestTreeType);
+		//
+		return metadata != null && metadata.getVersion() == checkpointVersion;
+	}
+
+	/**
+	 * Content tree structure is loaded into memory, indexes (including synthetic root) are computed in memory
+	 * and inserted by JDBC batch inserts (see {@link #getBatchSize()}). If index identifiers are generated by database 
+	 * (identity), then indexes are persisted by entity manager in chunks.
+	 */
+	@Override
+	@Transactional
+	public void rebuild(String forestTreeType, Stream<ForestContentNode<CONTENT_ID>> contents) {
+		Assert.notNull(contents, "Content tree structure is required.");
+		lock(forestTreeType);
+		startRebuild(forestTreeType);
+		//
+		recordRows("dropIndexes", forestTreeType, repository.dropIndexes(forestTreeType));
+		flush(forestTreeType);
+		entityManager.clear();
+		//
+		// synthetic root has the first position
+		List<CONTENT_ID> contentIds = new ArrayList<>();
+		List<CONTENT_ID> parentContentIds = new ArrayList<>();
+		Map<CONTENT_ID, Long> positions = new HashMap<>();
+		contentIds.add(null);
+		parentContentIds.add(null);
+		contents.forEach(content -> {
+			Assert.notNull(content.getContentId(), "Content identifier is required.");
+			//
+			positions.put(content.getContentId(), Long.valueOf(contentIds.size()));
+			contentIds.add(content.getContentId());
+			parentContentIds.add(content.getParentContentId());
+		});
+		if (contentIds.size() == 1) {
+			// nothing to index
+			resetMetadata(forestTreeType);
+			invalidateSnapshot(forestTreeType);
 			return;
 		}
-		recountIndexes(countIndex(root));
-		entityManager.flush();
+		ForestIndexTree tree = new ForestIndexTree();
+		tree.add(0L, null);
+		for (int position = 1; position < contentIds.size(); position++) {
+			CONTENT_ID parentContentId = parentContentIds.get(position);
+			if (parentContentId == null) {
+				tree.add(position, 0L);
+			} else {
+				Long parentPosition = positions.get(parentContentId);
+				// content without parent in structure is not numbered
+				tree.add(position, parentPosition == null ? -1L : parentPosition);
+			}
+		}
+		tree.number(1L, sparseGap);
+		//
+		ForestIndexBatchWriter batchWriter = getBatchWriter();
+		if (batchWriter.supportsInsert()) {
+			batchWriter.insertIndexes(forestTreeType, tree, contentIds, isSparse());
+		} else {
+			persistIndexes(forestTreeType, tree, contentIds, new long[tree.size()]);
+		}
+		if (rootScoped) {
+			// content root ranges are resolved by inserted content root identifiers
+			numberScopes(forestTreeType);
+		}
 		entityManager.clear();
+		resetMetadata(forestTreeType);
+		invalidateSnapshot(forestTreeType);
+	}
+	
+	/**
+	 * Numbers stored tree structure scoped by content roots - each content root tree is numbered in its own range 
+	 * (see {@link #ROOT_SCOPE_SIZE}), ranges are allocated in order of content root identifiers. Synthetic root interval 
+	 * contains all ranges - its rgt is the start of the next free range. Indexes are written by JDBC batch updates, 
+	 * root scope is updated by one statement for each content root tree.
+	 * 
+	 * @param forestTreeType
+	 */
+	private void numberScopes(String forestTreeType) {
+		List<Object[]> rows = new ArrayList<>();
+		Set<Long> rootIds = new HashSet<>();
+		try (Stream<Object[]> structure = repository.streamTreeStructure(forestTreeType)) {
+			structure.forEach(row -> {
+				rows.add(row);
+				if (row[1] == null) {
+					rootIds.add(((Number) row[0]).longValue());
+				}
+			});
+		}
+		if (rows.isEmpty()) {
+			return;
+		}
+		if (rootIds.size() != 1) {
+			throw new UnsupportedOperationException(String.format("Root scoped tree type [%s] has to have one root, found [%s].", 
+					forestTreeType, rootIds.size()));
+		}
+		long rootId = rootIds.iterator().next();
+		// content roots are numbered as roots in their own ranges
+		ForestIndexTree tree = new ForestIndexTree();
+		for (Object[] row : rows) {
+			Long parentId = row[1] == null ? null : ((Number) row[1]).longValue();
+			tree.add(((Number) row[0]).longValue(), Objects.equals(rootId, parentId) ? null : parentId);
+		}
+		long[] starts = new long[tree.size()];
+		int[] rootDepths = new int[tree.size()];
+		List<Integer> contentRoots = new ArrayList<>();
+		for (int slot = 0; slot < tree.size(); slot++) {
+			if (tree.getParentId(slot) != null) {
+				continue;
+			}
+			if (tree.getId(slot) == rootId) {
+				starts[slot] = 1L;
+				rootDepths[slot] = 0;
+			} else {
+				contentRoots.add(slot);
+				starts[slot] = contentRoots.size() * ROOT_SCOPE_SIZE;
+				rootDepths[slot] = 1;
+			}
+		}
+		getBatchWriter().updateIndexes(tree.number(starts, rootDepths, DENSE_GAP), false);
+		// synthetic root interval contains all ranges
+		repository.updateIndexes(rootId, 1L, (contentRoots.size() + 1) * ROOT_SCOPE_SIZE, null);
+		repository.updateTreeId(rootId, rootId);
+		for (int slot : contentRoots) {
+			recordRows("updateTreeId", forestTreeType, repository.updateTreeId(forestTreeType, tree.getLft(slot), tree.getRgt(slot), tree.getId(slot)));
+		}
+	}
+	
+	/**
+	 * Persists all numbered nodes of given tree as new indexes by entity manager (in pre-order - parent before children).
+	 * Used, when index identifiers are generated by database.
+	 * 
+	 * @param forestTreeType
+	 * @param tree numbered tree
+	 * @param contentIds content identifiers by tree node position
+	 * @param indexIds persisted index identifiers by tree node position ({@code 0} for new nodes) - nodes with identifier are not persisted
+	 */
+	private void persistIndexes(String forestTreeType, ForestIndexTree tree, List<CONTENT_ID> contentIds, long[] indexIds) {
+		int persisted = 0;
+		for (int slot : tree.getPreOrder()) {
+			if (indexIds[slot] != 0) {
+				// already persisted
+				continue;
+			}
+			int parentSlot = tree.getParentSlot(slot);
+			IX index = createIndexInstance(indexClass);
+			index.setForestTreeType(forestTreeType);
+			index.setContentId(contentIds.get(slot));
+			index.setParent(parentSlot < 0 ? null : entityManager.getReference(indexClass, indexIds[parentSlot]));
+			index.setLft(tree.getLft(slot));
+			index.setRgt(tree.getRgt(slot));
+			index.setChildrenCount(isSparse() ? tree.getChildrenCount(slot) : null);
+			index.setDepth(tree.getDepth(slot));
+			entityManager.persist(index);
+			indexIds[slot] = index.getId();
+			if (++persisted % batchSize == 0) {
+				flush(forestTreeType);
+				entityManager.clear();
+			}
+		}
+		flush(forestTreeType);
 	}
 	
 	/**
 	 * Recounts indexes for subtree or whole tree if {@code null} is given. Expects cleared indexes.
+	 * Direct children are streamed - persistence context is cleared after each child is counted, children are not retained.
 	 *  
 	 * @param parent
 	 */
 	private void recountIndexes(IX parent) {
 		Assert.notNull(parent, "Parent index is required.");
 		//
-		repository.findDirectChildren(parent).forEach(forestIndex -> {
-			recountIndexes(countIndex(forestIndex));
-		});
+		try (Stream<IX> children = repository.streamDirectChildren(parent)) {
+			children.forEach(forestIndex -> {
+				recountIndexes(countIndex(forestIndex));
+			});
+		}
 	}
 	
 	@Override
@@ -82,16 +591,30 @@ public abstract class AbstractForestIndexService<IX extends ForestIndex<IX, CONT
 	public IX saveNode(IX forestIndex) {
 		Assert.notNull(forestIndex, "Index is required.");
 		entityManager.detach(forestIndex); // we need to load previous index value before flush
+		lock(forestIndex.getForestTreeType());
 		//
+		long addedNodes = forestIndex.getId() == null ? 1 : 0;
 		boolean parentChange = false;
 		Long previousParentId = null;
 		Long lft = null;
 		Long rgt = null;
 		// evaluate parent change for re-index
 		if (forestIndex.getId() != null) {
-			previousParentId = repository.findParentId(forestIndex.getId());
 			lft = forestIndex.getLft();
 			rgt = forestIndex.getRgt();
+			List<Object[]> storedIndex = repository.findIndex(forestIndex.getId());
+			if (!storedIndex.isEmpty()) {
+				previousParentId = (Long) storedIndex.get(0)[0];
+				forestIndex.setTreeId((Long) storedIndex.get(0)[4]);
+			}
+			if (lft != null && rgt != null && !storedIndex.isEmpty()) {
+				// given index could be loaded before tree type was locked - stored indexes are used
+				lft = (Long) storedIndex.get(0)[1];
+				rgt = (Long) storedIndex.get(0)[2];
+				forestIndex.setLft(lft);
+				forestIndex.setRgt(rgt);
+				forestIndex.setChildrenCount((Integer) storedIndex.get(0)[3]);
+			}
 		}
 		if (!Objects.equals(previousParentId, forestIndex.getParent() == null ? null : forestIndex.getParent().getId())) {
 			forestIndex.setLft(null);
@@ -104,7 +627,10 @@ public abstract class AbstractForestIndexService<IX extends ForestIndex<IX, CONT
 		if (!parentChange) {
 			// index new node only
 			if (forestIndex.getLft() == null || forestIndex.getRgt() == null) {
-				return countIndex(forestIndex);
+				forestIndex = countIndex(forestIndex);
+				updateMetadata(forestIndex.getForestTreeType(), addedNodes);
+				invalidateSnapshot(forestIndex.getForestTreeType());
+				return forestIndex;
 			}
 		} else { // index node, if parent changes
 			// drop moved sub tree indexes
@@ -113,53 +639,345 @@ public abstract class AbstractForestIndexService<IX extends ForestIndex<IX, CONT
 				throw new IllegalArgumentException("Indexes has to be given (loaded) before parent index is changed"
 						+ " - it is required for a proper index rebuild.");
 			}
+			if (moveNode(forestIndex, lft, rgt)) {
+				// sub tree was moved by range shift
+				flush(forestIndex.getForestTreeType());
+				entityManager.clear();
+				updateMetadata(forestIndex.getForestTreeType(), addedNodes);
+				invalidateSnapshot(forestIndex.getForestTreeType());
+				return forestIndex;
+			}
 			// drop moved sub tree indexes
-			repository.clearIndexes(forestIndex.getForestTreeType(), lft + 1, rgt - 1);
-			repository.afterDelete(forestIndex.getForestTreeType(), lft, rgt);
+			String forestTreeType = forestIndex.getForestTreeType();
+			if (isSparse()) {
+				// gap is left, children count has to be decreased
+				int count = (int) repository.countChildren(forestTreeType, lft, rgt) + 1;
+				recordRows("updateParentsChildrenCount", forestTreeType, repository.updateParentsChildrenCount(forestTreeType, lft, rgt, -count));
+				recordRows("clearIndexes", forestTreeType, repository.clearIndexes(forestTreeType, lft + 1, rgt - 1));
+			} else {
+				recordRows("clearIndexes", forestTreeType, repository.clearIndexes(forestTreeType, lft + 1, rgt - 1));
+				afterDelete(forestTreeType, forestIndex.getTreeId(), lft, rgt);
+			}
 			// create new indexes
 			forestIndex.setLft(null);
 			forestIndex.setRgt(null);
 			recountIndexes(countIndex(forestIndex));
+			recountStoredChildrenCount(forestTreeType);
 		}
-		entityManager.flush();
+		flush(forestIndex.getForestTreeType());
 		entityManager.clear();
+		updateMetadata(forestIndex.getForestTreeType(), addedNodes);
+		invalidateSnapshot(forestIndex.getForestTreeType());
 		return forestIndex;
 	}
 	
+	/**
+	 * Moves whole sub tree under new parent by constant number of set-based statements (sub tree is appended as the last child):
+	 * - gap is opened at target position (in sparse mode is used free slot in parent's interval, if available)
+	 * - sub tree is shifted by offset
+	 * - old gap is closed (in sparse mode is gap left)
+	 * 
+	 * Moving node has to be saved with new parent and cleared indexes.
+	 * 
+	 * @param forestIndex moving node with new parent
+	 * @param lft moving node previous lft
+	 * @param rgt moving node previous rgt
+	 * @return true - sub tree was moved, false - sub tree cannot be moved by range shift (new root, sparse gap is exhausted, 
+	 * sub tree is moved into another root scope)
+	 * @throws IllegalArgumentException if node is moved under its own sub tree
+	 */
+	private boolean moveNode(IX forestIndex, long lft, long rgt) {
+		if (forestIndex.getParent() == null) {
+			// new root - previous root will be moved under new root
+			return false;
+		}
+		if (forestIndex.getId().equals(forestIndex.getParent().getId())) {
+			throw new IllegalArgumentException(MessageFormat.format("Index [{0}] cannot be moved under its own sub tree [{1}].", 
+					forestIndex.getId(), forestIndex.getId()));
+		}
+		flush(forestIndex.getForestTreeType());
+		entityManager.clear();
+		//
+		String forestTreeType = forestIndex.getForestTreeType();
+		IX parent = repository.findById(forestIndex.getParent().getId()).get();
+		if (parent.getLft() == null || parent.getRgt() == null) {
+			return false;
+		}
+		if (parent.getLft() >= lft && parent.getLft() <= rgt) {
+			throw new IllegalArgumentException(MessageFormat.format("Index [{0}] cannot be moved under its own sub tree [{1}].", 
+					forestIndex.getId(), parent.getId()));
+		}
+		if (rootScoped && (parent.getParent() == null || !Objects.equals(parent.getTreeId(), forestIndex.getTreeId()))) {
+			// sub tree is moved into another root scope - moved indexes are counted in new range
+			return false;
+		}
+		Integer previousDepth = repository.findDepth(forestIndex.getId());
+		long width = rgt - lft + 1;
+		long newLft;
+		Integer childrenCount = null;
+		if (isSparse()) {
+			Long lastChildRgt = repository.findLastChildRgt(parent.getId());
+			long last = lastChildRgt == null ? parent.getLft() : lastChildRgt;
+			if (parent.getRgt() - last - 1 < width) {
+				// free slot is not available
+				return false;
+			}
+			// children count is moved with sub tree
+			int count = (int) repository.countChildren(forestTreeType, lft, rgt) + 1;
+			recordRows("updateParentsChildrenCount", forestTreeType, repository.updateParentsChildrenCount(forestTreeType, lft, rgt, -count));
+			newLft = last + 1;
+			recordRows("shiftIndexes", forestTreeType, repository.shiftIndexes(forestTreeType, lft, rgt, newLft - lft));
+			recordRows("updateParentsChildrenCount", forestTreeType, repository.updateParentsChildrenCount(forestTreeType, newLft, newLft + width - 1, count));
+			childrenCount = count - 1;
+		} else {
+			long position = parent.getRgt();
+			if (hasGaps(forestTreeType)) {
+				// stored children count is moved with sub tree - new parents are marked too, if moved sub tree contains gaps
+				int count = (int) repository.countChildren(forestTreeType, lft, rgt) + 1;
+				boolean gaps = repository.findIndex(forestIndex.getId()).get(0)[3] != null;
+				recordRows("updateStoredParentsChildrenCount", forestTreeType, repository.updateStoredParentsChildrenCount(forestTreeType, lft, rgt, -count));
+				// parent (and its parents) contains position
+				recordRows("storeParentsChildrenCount", forestTreeType, gaps 
+						? repository.storeParentsChildrenCount(forestTreeType, position, position - 1, count)
+						: repository.updateStoredParentsChildrenCount(forestTreeType, position, position - 1, count));
+			}
+			openGap(forestTreeType, parent.getTreeId(), position, width);
+			if (lft >= position) {
+				// sub tree was shifted by opened gap
+				lft += width;
+				rgt += width;
+			}
+			recordRows("shiftIndexes", forestTreeType, repository.shiftIndexes(forestTreeType, lft, rgt, position - lft));
+			afterDelete(forestTreeType, parent.getTreeId(), lft, rgt);
+			// moved sub tree is shifted by closed gap too, if it was moved right
+			newLft = position > lft ? position - width : position;
+		}
+		forestIndex.setLft(newLft);
+		forestIndex.setRgt(newLft + width - 1);
+		// sub tree is moved to another level
+		Integer depth = getChildDepth(parent);
+		if (depth != null && previousDepth != null && !depth.equals(previousDepth)) {
+			recordRows("updateDepth", forestTreeType, repository.updateDepth(forestTreeType, newLft + 1, newLft + width - 2, depth - previousDepth));
+		}
+		forestIndex.setDepth(depth);
+		repository.updateDepth(forestIndex.getId(), depth);
+		if (isSparse()) {
+			forestIndex.setChildrenCount(childrenCount);
+			repository.updateIndexes(forestIndex.getId(), forestIndex.getLft(), forestIndex.getRgt(), childrenCount, parent);
+		} else {
+			repository.updateIndexes(forestIndex.getId(), forestIndex.getLft(), forestIndex.getRgt(), parent);
+		}
+		return true;
+	}
+	
 	private IX countIndex(IX forestIndex) {
 		Assert.notNull(forestIndex, "Index is required.");
 		Assert.notNull(forestIndex.getId(), "Index has to be persisted.");
 		//
 		// we need new data in next queries
-		entityManager.flush();
+		flush(forestIndex.getForestTreeType());
 		entityManager.clear();
 		//
-		// inserting a new root node
-		if (forestIndex.getParent() == null) {
-			repository.beforeRootInsert(forestIndex.getForestTreeType());
+		if (isSparse()) {
+			countSparseIndex(forestIndex);
+		} else if (rootScoped) {
+			countScopedIndex(forestIndex);
+		} else if (forestIndex.getParent() == null) { // inserting a new root node
+			recordRows("beforeRootInsert", forestIndex.getForestTreeType(), repository.beforeRootInsert(forestIndex.getForestTreeType()));
 			forestIndex.setLft(1L);
-			forestIndex.setRgt(repository.addedRootRgt(forestIndex.getForestTreeType()));			
+			forestIndex.setRgt(getAddedRootRgt(forestIndex.getForestTreeType()));
+			forestIndex.setDepth(0);
 			repository.updateIndexes(forestIndex.getId(), forestIndex.getLft(), forestIndex.getRgt(), null);
+			repository.updateDepth(forestIndex.getId(), forestIndex.getDepth());
 			Long previousRootId = repository.findPreviousRootId(forestIndex.getForestTreeType(), forestIndex.getId());
 			if (previousRootId != null) {
 				repository.updateParent(previousRootId, forestIndex);
+				Integer previousChildrenCount = (Integer) repository.findIndex(previousRootId).get(0)[3];
+				if (previousChildrenCount != null) {
+					// previous root interval contains gaps left by delete - new root wraps them
+					forestIndex.setChildrenCount(previousChildrenCount + 1);
+					repository.updateIndexes(forestIndex.getId(), forestIndex.getLft(), forestIndex.getRgt(), forestIndex.getChildrenCount(), null);
+				}
 			}
 		} else { // append a new node as last right child of his parent
-			Long parentRgt = repository.findById(forestIndex.getParent().getId()).get().getRgt();
-			repository.beforeNodeInsert(forestIndex.getForestTreeType(), parentRgt);
+			IX parent = repository.findById(forestIndex.getParent().getId()).get();
+			Long parentRgt = parent.getRgt();
+			beforeNodeInsert(forestIndex.getForestTreeType(), parent.getTreeId(), parentRgt);
 			forestIndex.setLft(parentRgt);
 			forestIndex.setRgt(parentRgt + 1L);
+			forestIndex.setDepth(getChildDepth(parent));
 			repository.updateIndexes(forestIndex.getId(), forestIndex.getLft(), forestIndex.getRgt(), forestIndex.getParent());
+			repository.updateDepth(forestIndex.getId(), forestIndex.getDepth());
+			updateStoredChildrenCount(forestIndex.getForestTreeType(), forestIndex.getLft(), forestIndex.getRgt(), 1);
 		}
 		//
-		entityManager.flush();
+		flush(forestIndex.getForestTreeType());
 		entityManager.clear();
 		return forestIndex;
 	}
 	
+	/**
+	 * Counts index scoped by content roots - new content root claims the next free range after synthetic root interval 
+	 * is extended (other indexes are not shifted), new node is appended as the last child of its parent and indexes are shifted 
+	 * in parent's root scope only.
+	 * 
+	 * @param forestIndex
+	 */
+	private void countScopedIndex(IX forestIndex) {
+		String forestTreeType = forestIndex.getForestTreeType();
+		//
+		if (forestIndex.getParent() == null) {
+			IX previousRoot = repository.findPreviousRoot(forestTreeType, forestIndex.getId());
+			if (previousRoot != null) {
+				throw new UnsupportedOperationException(String.format("Root scoped tree type [%s] has to have one root "
+						+ "- index contents under root [%s].", forestTreeType, previousRoot.getId()));
+			}
+			// synthetic root - the first range is reserved for root itself
+			forestIndex.setLft(1L);
+			forestIndex.setRgt(ROOT_SCOPE_SIZE);
+			forestIndex.setDepth(0);
+			forestIndex.setTreeId(forestIndex.getId());
+			repository.updateIndexes(forestIndex.getId(), forestIndex.getLft(), forestIndex.getRgt(), null);
+		} else {
+			IX parent = repository.findById(forestIndex.getParent().getId()).get();
+			if (parent.getParent() == null) {
+				// content root - new range is allocated at the end of root interval
+				forestIndex.setLft(parent.getRgt());
+				forestIndex.setRgt(parent.getRgt() + 1L);
+				forestIndex.setTreeId(forestIndex.getId());
+				repository.updateIndexes(parent.getId(), parent.getLft(), parent.getRgt() + ROOT_SCOPE_SIZE, null);
+			} else {
+				Long parentRgt = parent.getRgt();
+				beforeNodeInsert(forestTreeType, parent.getTreeId(), parentRgt);
+				forestIndex.setLft(parentRgt);
+				forestIndex.setRgt(parentRgt + 1L);
+				forestIndex.setTreeId(parent.getTreeId());
+			}
+			forestIndex.setDepth(getChildDepth(parent));
+			repository.updateIndexes(forestIndex.getId(), forestIndex.getLft(), forestIndex.getRgt(), forestIndex.getParent());
+			updateStoredChildrenCount(forestTreeType, forestIndex.getLft(), forestIndex.getRgt(), 1);
+		}
+		repository.updateDepth(forestIndex.getId(), forestIndex.getDepth());
+		repository.updateTreeId(forestIndex.getId(), forestIndex.getTreeId());
+	}
+	
+	/**
+	 * Counts index with gaps - new node claims free slot in parent's interval, shift is not needed.
+	 * Sub tree is renumbered, if parent's gap is exhausted.
+	 * 
+	 * @param forestIndex
+	 */
+	private void countSparseIndex(IX forestIndex) {
+		String forestTreeType = forestIndex.getForestTreeType();
+		//
+		if (forestIndex.getParent() == null) {
+			IX previousRoot = repository.findPreviousRoot(forestTreeType, forestIndex.getId());
+			if (previousRoot == null || previousRoot.getLft() == null || previousRoot.getRgt() == null) {
+				forestIndex.setLft(1L);
+				forestIndex.setRgt(1L + sparseGap);
+				forestIndex.setChildrenCount(0);
+			} else {
+				// new root wraps the previous one
+				forestIndex.setLft(previousRoot.getLft() - sparseGap);
+				forestIndex.setRgt(previousRoot.getRgt() + sparseGap);
+				forestIndex.setChildrenCount(previousRoot.getChildrenCount() + 1);
+				repository.updateParent(previousRoot.getId(), forestIndex);
+				recordRows("updateDepth", forestTreeType, repository.updateDepth(forestTreeType, previousRoot.getLft(), previousRoot.getRgt(), 1));
+			}
+			forestIndex.setDepth(0);
+			repository.updateDepth(forestIndex.getId(), forestIndex.getDepth());
+			repository.updateIndexes(
+					forestIndex.getId(), 
+					forestIndex.getLft(), 
+					forestIndex.getRgt(), 
+					forestIndex.getChildrenCount(), 
+					null);
+			return;
+		}
+		// append a new node as last right child of his parent
+		IX parent = repository.findById(forestIndex.getParent().getId()).get();
+		forestIndex.setDepth(getChildDepth(parent));
+		repository.updateDepth(forestIndex.getId(), forestIndex.getDepth());
+		Long lastChildRgt = repository.findLastChildRgt(parent.getId());
+		long last = lastChildRgt == null ? parent.getLft() : lastChildRgt;
+		if (parent.getRgt() - last >= 3) {
+			// free slot is available - half of free space is claimed at most
+			long width = Math.min(sparseGap, (parent.getRgt() - last - 1) / 2);
+			forestIndex.setLft(last + 1);
+			forestIndex.setRgt(last + 1 + width);
+			forestIndex.setChildrenCount(0);
+			repository.updateIndexes(forestIndex.getId(), forestIndex.getLft(), forestIndex.getRgt(), 0, parent);
+			recordRows("updateParentsChildrenCount", forestTreeType, repository.updateParentsChildrenCount(forestTreeType, forestIndex.getLft(), forestIndex.getRgt(), 1));
+			return;
+		}
+		// gap is exhausted - find the closest parent with enough space and renumber its sub tree
+		List<IX> parents = new ArrayList<>();
+		parents.add(parent);
+		parents.addAll(repository.findAllParents(parent, Sort.by(Direction.DESC, "lft")));
+		for (int level = 0; level < parents.size(); level++) {
+			IX renumbered = parents.get(level);
+			long count = repository.countChildren(forestTreeType, renumbered.getLft(), renumbered.getRgt()) + 1; // + new node
+			long step = (renumbered.getRgt() - renumbered.getLft()) / (2 * count + 1);
+			// higher sub tree has to be sparser
+			boolean lastLevel = level == parents.size() - 1;
+			if (step >= Math.min(sparseGap, 3L << level) || lastLevel) {
+				long rgt = renumbered.getRgt();
+				if (lastLevel && step < sparseGap) {
+					// root interval is extended - root doesn't have siblings
+					step = sparseGap;
+					rgt = renumbered.getLft() + (2 * count + 1) * step;
+				}
+				renumberSubTree(renumbered, rgt, step, forestIndex);
+				recordRows("updateParentsChildrenCount", forestTreeType, repository.updateParentsChildrenCount(forestTreeType, renumbered.getLft(), renumbered.getRgt(), 1));
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Renumbers sub tree with given step. Sub tree root lft is preserved, rgt is set to given value.
+	 * 
+	 * @param subTreeRoot
+	 * @param rgt new sub tree root rgt
+	 * @param step
+	 * @param forestIndex new node (without indexes), which will be numbered in sub tree too
+	 */
+	private void renumberSubTree(IX subTreeRoot, long rgt, long step, IX forestIndex) {
+		List<Object[]> rows = new ArrayList<>();
+		try (Stream<Object[]> structure = repository.streamTreeStructure(
+				subTreeRoot.getForestTreeType(), subTreeRoot.getLft(), subTreeRoot.getRgt())) {
+			structure.forEach(rows::add);
+		}
+		rows.add(new Object[] { forestIndex.getId(), forestIndex.getParent().getId() });
+		rows.sort((one, two) -> Long.compare(((Number) one[0]).longValue(), ((Number) two[0]).longValue()));
+		//
+		ForestIndexTree tree = new ForestIndexTree();
+		for (Object[] row : rows) {
+			if (subTreeRoot.getId().equals(((Number) row[0]).longValue())) {
+				tree.add(subTreeRoot.getId(), null);
+			} else {
+				tree.add(row);
+			}
+		}
+		long[] starts = new long[tree.size()];
+		int[] rootDepths = new int[tree.size()];
+		int root = tree.indexOf(subTreeRoot.getId());
+		starts[root] = subTreeRoot.getLft();
+		rootDepths[root] = subTreeRoot.getDepth() == null ? -1 : subTreeRoot.getDepth();
+		tree.number(starts, rootDepths, step);
+		getBatchWriter().updateIndexes(tree, true);
+		repository.updateIndexes(subTreeRoot.getId(), subTreeRoot.getLft(), rgt, tree.getChildrenCount(root), subTreeRoot.getParent());
+		//
+		int slot = tree.indexOf(forestIndex.getId());
+		forestIndex.setLft(tree.getLft(slot));
+		forestIndex.setRgt(tree.getRgt(slot));
+		forestIndex.setChildrenCount(0);
+	}
+	
 	@Override
 	@Transactional
 	public IX index(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId) {
+		lock(forestTreeType);
 		// previous index
 		IX index = repository.findOneByContentId(contentId);
 		// get parent index
@@ -173,7 +991,7 @@ public abstract class AbstractForestIndexService<IX extends ForestIndex<IX, CONT
 			}
 		} else {
 			// generate synthetic root - we want to support more content roots
-			parentIndex = repository.findRoot(forestTreeType);
+			parentIndex = findRoot(forestTreeType);
 			if (parentIndex == null) {
 				parentIndex = createIndexInstance(indexClass);
 				parentIndex.setForestTreeType(forestTreeType);
@@ -193,11 +1011,327 @@ public abstract class AbstractForestIndexService<IX extends ForestIndex<IX, CONT
 		return this.saveNode(index);
 	}
 	
+	/**
+	 * Not indexed contents are appended in bulk:
+	 * - indexes of parents are resolved by one query (split into chunks by {@link #getBatchSize()})
+	 * - contents are grouped by indexed parent and one gap is opened for each parent
+	 * - new indexes are inserted by JDBC batch inserts.
+	 * 
+	 * Already indexed contents are re-indexed one by one after new contents are indexed (see {@link #index(String, Serializable, Serializable)}).
+	 * New contents are indexed one by one in sparse mode (parent before children) - free slots are claimed without shifting.
+	 * New contents are indexed one by one, when numbering is scoped by content roots - shifts are limited to one root scope.
+	 */
+	@Override
+	@Transactional
+	public int indexAll(String forestTreeType, Collection<ForestContentNode<CONTENT_ID>> contents) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(contents, "Contents are required.");
+		if (contents.isEmpty()) {
+			return 0;
+		}
+		lock(forestTreeType);
+		flush(forestTreeType);
+		//
+		// generate synthetic root - we want to support more content roots
+		Long rootId = null;
+		if (contents.stream().anyMatch(content -> content.getParentContentId() == null)) {
+			IX root = findRoot(forestTreeType);
+			if (root == null) {
+				root = createIndexInstance(indexClass);
+				root.setForestTreeType(forestTreeType);
+				root = this.saveNode(root);
+			}
+			rootId = root.getId();
+		}
+		// resolve indexes of given contents and their parents
+		Set<CONTENT_ID> contentIds = new LinkedHashSet<>();
+		contents.forEach(content -> {
+			Assert.notNull(content.getContentId(), "Content identifier is required.");
+			//
+			contentIds.add(content.getContentId());
+			if (content.getParentContentId() != null) {
+				contentIds.add(content.getParentContentId());
+			}
+		});
+		Map<CONTENT_ID, Object[]> indexes = findIndexes(forestTreeType, contentIds);
+		//
+		// already indexed contents are moved one by one
+		List<ForestContentNode<CONTENT_ID>> indexedContents = new ArrayList<>();
+		List<ForestContentNode<CONTENT_ID>> newContents = new ArrayList<>();
+		Map<CONTENT_ID, Integer> newPositions = new HashMap<>();
+		for (ForestContentNode<CONTENT_ID> content : contents) {
+			if (indexes.containsKey(content.getContentId())) {
+				indexedContents.add(content);
+			} else {
+				Assert.isTrue(!newPositions.containsKey(content.getContentId()), 
+						MessageFormat.format("Content [{0}] is given more times.", content.getContentId()));
+				//
+				newPositions.put(content.getContentId(), newContents.size());
+				newContents.add(content);
+			}
+		}
+		// group new contents by indexed parent
+		List<Long> parentIds = new ArrayList<>();
+		List<Long> parentRgts = new ArrayList<>();
+		List<Integer> parentDepths = new ArrayList<>();
+		Map<Long, Integer> parentPositions = new HashMap<>();
+		int[] newParents = new int[newContents.size()]; // indexed parent position, -1 - parent is indexed in this batch
+		for (int position = 0; position < newContents.size(); position++) {
+			CONTENT_ID parentContentId = newContents.get(position).getParentContentId();
+			if (parentContentId != null && newPositions.containsKey(parentContentId)) {
+				newParents[position] = -1;
+				continue;
+			}
+			Long parentId = rootId;
+			Long parentRgt = null;
+			Integer parentDepth = null;
+			if (parentContentId != null) {
+				Object[] parentIndex = indexes.get(parentContentId);
+				if (parentIndex == null || parentIndex[3] == null) {
+					throw new UnsupportedOperationException(String.format("Parent [%s] doesn't have index - index parent at first.", parentContentId));
+				}
+				parentId = ((Number) parentIndex[1]).longValue();
+				parentRgt = ((Number) parentIndex[3]).longValue();
+				parentDepth = parentIndex[4] == null ? null : ((Number) parentIndex[4]).intValue();
+			}
+			if (!parentPositions.containsKey(parentId)) {
+				if (parentRgt == null) {
+					IX root = repository.findById(parentId).get();
+					parentRgt = root.getRgt();
+					parentDepth = root.getDepth();
+				}
+				parentPositions.put(parentId, parentIds.size());
+				parentIds.add(parentId);
+				parentRgts.add(parentRgt);
+				parentDepths.add(parentDepth);
+			}
+			newParents[position] = parentPositions.get(parentId);
+		}
+		int parentCount = parentIds.size();
+		ForestIndexTree tree = new ForestIndexTree();
+		for (int position = 0; position < parentCount; position++) {
+			tree.add(position, null);
+		}
+		// indexed parents are placed before new contents in tree
+		for (int position = 0; position < newContents.size(); position++) {
+			long parentPosition = newParents[position] < 0 
+					? parentCount + newPositions.get(newContents.get(position).getParentContentId()) 
+					: newParents[position];
+			tree.add(parentCount + position, parentPosition);
+		}
+		tree.number();
+		for (int position = 0; position < newContents.size(); position++) {
+			if (!tree.isNumbered(parentCount + position)) {
+				throw new IllegalArgumentException(MessageFormat.format("Content [{0}] is not reachable from indexed parent "
+						+ "- contents contain a cycle.", newContents.get(position).getContentId()));
+			}
+		}
+		//
+		if (isSparse() || rootScoped) {
+			// free slots or root ranges are used - parent before children
+			for (int slot : tree.getPreOrder()) {
+				if (slot >= parentCount) {
+					ForestContentNode<CONTENT_ID> content = newContents.get(slot - parentCount);
+					index(forestTreeType, content.getContentId(), content.getParentContentId());
+				}
+			}
+		} else if (!newContents.isEmpty()) {
+			appendIndexes(forestTreeType, tree, newContents, parentIds, parentRgts, parentDepths);
+			recountStoredChildrenCount(forestTreeType);
+			updateMetadata(forestTreeType, newContents.size());
+		}
+		//
+		indexedContents.forEach(content -> {
+			index(forestTreeType, content.getContentId(), content.getParentContentId());
+		});
+		invalidateSnapshot(forestTreeType);
+		return contents.size();
+	}
+	
+	/**
+	 * Appends new contents as the last children of their indexed parents - one gap is opened for each parent and 
+	 * new indexes are inserted in batch.
+	 * 
+	 * @param forestTreeType
+	 * @param tree new contents tree - indexed parents are roots (the first positions), new contents follows
+	 * @param newContents new contents by tree position (without parent positions)
+	 * @param parentIds indexed parents identifiers by tree position
+	 * @param parentRgts indexed parents rgt by tree position
+	 * @param parentDepths indexed parents depth by tree position
+	 */
+	private void appendIndexes(
+			String forestTreeType, 
+			ForestIndexTree tree, 
+			List<ForestContentNode<CONTENT_ID>> newContents, 
+			List<Long> parentIds, 
+			List<Long> parentRgts,
+			List<Integer> parentDepths) {
+		int parentCount = parentIds.size();
+		List<Integer> parentPositions = new ArrayList<>();
+		for (int position = 0; position < parentCount; position++) {
+			parentPositions.add(position);
+		}
+		parentPositions.sort((one, two) -> Long.compare(parentRgts.get(one), parentRgts.get(two)));
+		// gap is opened at parent's rgt - gaps opened at lower positions shift higher gaps
+		long[] starts = new long[tree.size()];
+		int[] rootDepths = new int[tree.size()];
+		long offset = 0;
+		for (int position : parentPositions) {
+			starts[position] = parentRgts.get(position) + offset - 1; // parent is numbered before its first new child
+			rootDepths[position] = parentDepths.get(position) == null ? -1 : parentDepths.get(position);
+			offset += 2L * tree.getChildrenCount(position);
+		}
+		// higher gap is opened at first - lower positions are not affected
+		for (int index = parentCount - 1; index >= 0; index--) {
+			int position = parentPositions.get(index);
+			recordRows("openGap", forestTreeType, repository.openGap(forestTreeType, parentRgts.get(position), 2L * tree.getChildrenCount(position)));
+		}
+		flush(forestTreeType);
+		tree.number(starts, rootDepths, DENSE_GAP);
+		//
+		List<CONTENT_ID> contentIds = new ArrayList<>(tree.size());
+		long[] indexIds = new long[tree.size()];
+		for (int position = 0; position < parentCount; position++) {
+			contentIds.add(null);
+			indexIds[position] = parentIds.get(position);
+		}
+		newContents.forEach(content -> contentIds.add(content.getContentId()));
+		//
+		ForestIndexBatchWriter batchWriter = getBatchWriter();
+		if (batchWriter.supportsInsert()) {
+			batchWriter.insertIndexes(forestTreeType, tree, contentIds, indexIds, false);
+		} else {
+			persistIndexes(forestTreeType, tree, contentIds, indexIds);
+		}
+		entityManager.clear();
+	}
+	
+	/**
+	 * Operations are recorded in in-memory unit of work (see {@link ForestIndexUnitOfWork}) - stored indexes of tree type are loaded 
+	 * by one streaming query, net changes are written at the end:
+	 * - intervals of indexes with the same offset are shifted by range updates (lft, rgt and depth separately)
+	 * - new indexes are inserted by JDBC batch inserts
+	 * - indexes with changed parent (or children count in sparse mode) are updated by JDBC batch updates
+	 * - dropped indexes are deleted by identifiers.
+	 * Persistence context is flushed before and cleared after unit of work only. Indexes are renumbered with configured gap in sparse mode.
+	 */
+	@Override
+	@Transactional
+	public void inBatch(String forestTreeType, Consumer<ForestIndexBatch<CONTENT_ID>> operations) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(operations, "Operations are required.");
+		if (rootScoped) {
+			throw new UnsupportedOperationException(String.format("Batch is not supported for root scoped tree type [%s] "
+					+ "- unit of work shifts indexes of the whole tree type.", forestTreeType));
+		}
+		lock(forestTreeType);
+		flush(forestTreeType);
+		//
+		ForestIndexUnitOfWork<CONTENT_ID> unitOfWork = new ForestIndexUnitOfWork<>();
+		try (Stream<Object[]> nodes = repository.streamNodes(forestTreeType)) {
+			nodes.forEach(unitOfWork::add);
+		}
+		operations.accept(unitOfWork);
+		if (!unitOfWork.isChanged()) {
+			return;
+		}
+		unitOfWork.number(sparseGap, isSparse());
+		// depth is shifted by stored lft - before lft is shifted
+		unitOfWork.getDepthShifts().forEach(shift -> {
+			recordRows("updateDepth", forestTreeType, repository.updateDepth(forestTreeType, shift[0], shift[1], (int) shift[2]));
+		});
+		List<long[]> lftShifts = unitOfWork.getLftShifts();
+		List<long[]> rgtShifts = unitOfWork.getRgtShifts();
+		lftShifts.forEach(shift -> {
+			recordRows("shiftLft", forestTreeType, repository.shiftLft(forestTreeType, shift[0], shift[1], shift[2]));
+		});
+		rgtShifts.forEach(shift -> {
+			recordRows("shiftRgt", forestTreeType, repository.shiftRgt(forestTreeType, shift[0], shift[1], shift[2]));
+		});
+		if (!lftShifts.isEmpty() || !rgtShifts.isEmpty()) {
+			recordRows("restoreShiftedIndexes", forestTreeType, repository.restoreShiftedIndexes(forestTreeType));
+		}
+		// new indexes are inserted after shifts - shifted intervals cannot contain them
+		List<ForestIndexUnitOfWork.Node<CONTENT_ID>> inserts = unitOfWork.getInserts();
+		ForestIndexBatchWriter batchWriter = getBatchWriter();
+		if (!inserts.isEmpty()) {
+			if (batchWriter.supportsInsert()) {
+				batchWriter.insertIndexes(forestTreeType, inserts);
+			} else {
+				persistIndexes(forestTreeType, inserts);
+			}
+		}
+		batchWriter.updateIndexes(unitOfWork.getUpdates());
+		// moved indexes are updated before their previous parents are deleted
+		List<Long> deletes = unitOfWork.getDeletes();
+		long deleted = 0;
+		for (int start = 0; start < deletes.size(); start += batchSize) {
+			deleted += recordRows("deleteByIds", forestTreeType, repository.deleteByIds(deletes.subList(start, Math.min(start + batchSize, deletes.size()))));
+		}
+		recountStoredChildrenCount(forestTreeType);
+		entityManager.clear();
+		updateMetadata(forestTreeType, inserts.size() - deleted);
+		invalidateSnapshot(forestTreeType);
+	}
+	
+	/**
+	 * Persists given new unit of work nodes by entity manager - used, when index identifiers are generated by database.
+	 * 
+	 * @param forestTreeType
+	 * @param nodes new nodes in pre-order
+	 */
+	private void persistIndexes(String forestTreeType, List<ForestIndexUnitOfWork.Node<CONTENT_ID>> nodes) {
+		int persisted = 0;
+		for (ForestIndexUnitOfWork.Node<CONTENT_ID> node : nodes) {
+			IX index = createIndexInstance(indexClass);
+			index.setForestTreeType(forestTreeType);
+			index.setContentId(node.getContentId());
+			index.setParent(node.getParent() == null ? null : entityManager.getReference(indexClass, node.getParent().getId()));
+			index.setLft(node.getLft());
+			index.setRgt(node.getRgt());
+			index.setChildrenCount(node.getChildrenCount());
+			index.setDepth(node.getDepth());
+			entityManager.persist(index);
+			node.setId(index.getId());
+			if (++persisted % batchSize == 0) {
+				flush(forestTreeType);
+				entityManager.clear();
+			}
+		}
+		flush(forestTreeType);
+	}
+	
+	/**
+	 * Finds indexes {@code [contentId, id, lft, rgt, depth]} of given contents by content identifier.
+	 * Contents are queried in chunks by {@link #getBatchSize()} - IN clause size is limited on some databases.
+	 * 
+	 * @param forestTreeType
+	 * @param contentIds
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<CONTENT_ID, Object[]> findIndexes(String forestTreeType, Collection<CONTENT_ID> contentIds) {
+		Map<CONTENT_ID, Object[]> indexes = new HashMap<>();
+		List<CONTENT_ID> ids = new ArrayList<>(contentIds);
+		for (int start = 0; start < ids.size(); start += batchSize) {
+			repository
+				.findIndexesByContentIds(forestTreeType, ids.subList(start, Math.min(start + batchSize, ids.size())))
+				.forEach(index -> indexes.put((CONTENT_ID) index[0], index));
+		}
+		return indexes;
+	}
+	
 	@Override
 	@Transactional
 	public IX dropIndex(CONTENT_ID contentId) {
 		Assert.notNull(contentId, "Content identifier is required.");
 		//
+		// index is loaded after tree type is locked - parent can be moved or dropped by another transaction before
+		String forestTreeType = repository.findForestTreeType(contentId);
+		if (forestTreeType == null) {
+			return null;
+		}
+		lock(forestTreeType);
 		IX index = repository.findOneByContentId(contentId);
 		//
 		if (index != null) {
@@ -205,34 +1339,517 @@ public abstract class AbstractForestIndexService<IX extends ForestIndex<IX, CONT
 		}
 		return index;
 	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public String findForestTreeType(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		return repository.findForestTreeType(contentId);
+	}
 	
 	@Override
 	@Transactional
 	public void deleteNode(IX forestIndex, boolean closeGap) {
 		Assert.notNull(forestIndex, "Index is required.");
+		lock(forestIndex.getForestTreeType());
+		// given index could be loaded before tree type was locked - stored indexes are used
+		if (forestIndex.getId() != null) {
+			List<Object[]> storedIndex = repository.findIndex(forestIndex.getId());
+			if (storedIndex.isEmpty()) {
+				// already deleted
+				return;
+			}
+			forestIndex.setLft((Long) storedIndex.get(0)[1]);
+			forestIndex.setRgt((Long) storedIndex.get(0)[2]);
+			forestIndex.setTreeId((Long) storedIndex.get(0)[4]);
+		}
 		//
-		repository.delete(forestIndex.getForestTreeType(), forestIndex.getLft(), forestIndex.getRgt());
-		if (closeGap) {
-			repository.afterDelete(forestIndex.getForestTreeType(), forestIndex.getLft(), forestIndex.getRgt());
+		int deleted = recordRows("delete", forestIndex.getForestTreeType(), repository.delete(forestIndex.getForestTreeType(), forestIndex.getLft(), forestIndex.getRgt()));
+		if (isSparse()) {
+			// gap is left always, children count has to be decreased
+			recordRows("updateParentsChildrenCount", forestIndex.getForestTreeType(), repository.updateParentsChildrenCount(forestIndex.getForestTreeType(), forestIndex.getLft(), forestIndex.getRgt(), -deleted));
+		} else if (closeGap) {
+			updateStoredChildrenCount(forestIndex.getForestTreeType(), forestIndex.getLft(), forestIndex.getRgt(), -deleted);
+			afterDelete(forestIndex.getForestTreeType(), forestIndex.getTreeId(), forestIndex.getLft(), forestIndex.getRgt());
+		} else {
+			// gap is left - children count of parents cannot be computed from interval anymore, is stored
+			recordRows("storeParentsChildrenCount", forestIndex.getForestTreeType(), repository.storeParentsChildrenCount(forestIndex.getForestTreeType(), forestIndex.getLft(), forestIndex.getRgt(), -deleted));
 		}
-		entityManager.flush();
+		flush(forestIndex.getForestTreeType());
 		entityManager.clear();
+		updateMetadata(forestIndex.getForestTreeType(), -deleted);
+		invalidateSnapshot(forestIndex.getForestTreeType());
 	}
 	
 	@Override
 	@Transactional
 	public void dropIndexes(String forestTreeType) {
-		repository.dropIndexes(forestTreeType);
-		entityManager.flush();
+		lock(forestTreeType);
+		recordRows("dropIndexes", forestTreeType, repository.dropIndexes(forestTreeType));
+		flush(forestTreeType);
 		entityManager.clear();
+		if (metadataManager != null) {
+			metadataManager.reset(forestTreeType, null, null, 0);
+		}
+		invalidateSnapshot(forestTreeType);
 	}
 	
 	@Override
 	@Transactional
 	public void clearIndexes(String forestTreeType) {
-		repository.clearIndexes(forestTreeType);
-		entityManager.flush();
+		lock(forestTreeType);
+		recordRows("clearIndexes", forestTreeType, repository.clearIndexes(forestTreeType));
+		flush(forestTreeType);
 		entityManager.clear();
+		updateMetadata(forestTreeType, 0);
+		invalidateSnapshot(forestTreeType);
+	}
+	
+	/**
+	 * Depth of parent's child.
+	 * 
+	 * @param parent
+	 * @return depth or {@code null}, when parent depth is not counted (indexes has to be rebuilt)
+	 */
+	private Integer getChildDepth(IX parent) {
+		return parent.getDepth() == null ? null : parent.getDepth() + 1;
+	}
+	
+	/**
+	 * Opens gap for a new node - indexes are shifted in given root scope only, when numbering is scoped by content roots.
+	 * 
+	 * @param forestTreeType
+	 * @param treeId parent's root scope
+	 * @param parentRgt
+	 */
+	private void beforeNodeInsert(String forestTreeType, Long treeId, Long parentRgt) {
+		recordRows("beforeNodeInsert", forestTreeType, rootScoped 
+				? repository.beforeNodeInsert(forestTreeType, treeId, parentRgt) 
+				: repository.beforeNodeInsert(forestTreeType, parentRgt));
+	}
+	
+	/**
+	 * Opens gap with given width - indexes are shifted in given root scope only, when numbering is scoped by content roots.
+	 * 
+	 * @param forestTreeType
+	 * @param treeId root scope
+	 * @param position gap start
+	 * @param width gap width
+	 */
+	private void openGap(String forestTreeType, Long treeId, long position, long width) {
+		recordRows("openGap", forestTreeType, rootScoped 
+				? repository.openGap(forestTreeType, treeId, position, width) 
+				: repository.openGap(forestTreeType, position, width));
+	}
+	
+	/**
+	 * Closes gap after sub tree is deleted - indexes are shifted in given root scope only, when numbering is scoped by content roots.
+	 * 
+	 * @param forestTreeType
+	 * @param treeId deleted sub tree root scope
+	 * @param lft
+	 * @param rgt
+	 */
+	private void afterDelete(String forestTreeType, Long treeId, long lft, long rgt) {
+		recordRows("afterDelete", forestTreeType, rootScoped 
+				? repository.afterDelete(forestTreeType, treeId, lft, rgt) 
+				: repository.afterDelete(forestTreeType, lft, rgt));
+	}
+
+	/**
+	 * Updates stored children count of all parents of given interval, when gap was left by delete in dense mode (see {@link #hasGaps(String)}).
+	 *
+	 * @param forestTreeType
+	 * @param lft child lft
+	 * @param rgt child rgt
+	 * @param count added (positive) or removed (negative) children count
+	 */
+	private void updateStoredChildrenCount(String forestTreeType, long lft, long rgt, int count) {
+		if (hasGaps(forestTreeType)) {
+			recordRows("updateStoredParentsChildrenCount", forestTreeType, repository.updateStoredParentsChildrenCount(forestTreeType, lft, rgt, count));
+		}
+	}
+
+	/**
+	 * Recounts all stored children count by count query, when gap was left by delete in dense mode (see {@link #hasGaps(String)}) 
+	 * - used after bulk operations.
+	 *
+	 * @param forestTreeType
+	 */
+	private void recountStoredChildrenCount(String forestTreeType) {
+		flush(forestTreeType);
+		if (!hasGaps(forestTreeType)) {
+			return;
+		}
+		for (Object[] index : repository.findStoredChildrenCounts(forestTreeType)) {
+			int count = (int) repository.countChildren(forestTreeType, (Long) index[1], (Long) index[2]);
+			recordRows("updateChildrenCount", forestTreeType, repository.updateChildrenCount((Long) index[0], count));
+		}
+	}
+
+	/**
+	 * Returns root of given tree type - root is found by primary key, when metadata are used.
+	 *
+	 * @param forestTreeType
+	 * @return
+	 */
+	private IX findRoot(String forestTreeType) {
+		ForestIndexMetadata metadata = getMetadata(forestTreeType);
+		if (metadata != null && metadata.getRootId() != null) {
+			IX root = repository.findById(metadata.getRootId()).orElse(null);
+			if (root != null && root.getParent() == null) {
+				return root;
+			}
+		}
+		return repository.findRoot(forestTreeType);
+	}
+
+	/**
+	 * Returns rgt of a new root - previous root (with the highest rgt) is already shifted.
+	 *
+	 * @param forestTreeType
+	 * @return
+	 */
+	private long getAddedRootRgt(String forestTreeType) {
+		ForestIndexMetadata metadata = getMetadata(forestTreeType);
+		if (metadata != null && metadata.getMaxRgt() != null) {
+			return metadata.getMaxRgt() + 2;
+		}
+		return repository.addedRootRgt(forestTreeType);
+	}
+
+	/**
+	 * Returns indexes count of given tree type.
+	 *
+	 * @param forestTreeType
+	 * @return
+	 */
+	private long getTreeSize(String forestTreeType) {
+		Long nodeCount = metadataManager == null ? null : metadataManager.getNodeCount(forestTreeType);
+		if (nodeCount != null) {
+			return nodeCount;
+		}
+		return repository.countIndexes(forestTreeType);
+	}
+
+	private ForestIndexMetadata getMetadata(String forestTreeType) {
+		return metadataManager == null ? null : metadataManager.getMetadata(forestTreeType);
+	}
+
+	/**
+	 * Rebuild of given tree type is started - rebuild is finished by {@link #resetMetadata(String)}.
+	 *
+	 * @param forestTreeType
+	 */
+	private void startRebuild(String forestTreeType) {
+		if (metadataManager != null) {
+			metadataManager.setRebuilding(forestTreeType, true);
+		}
+	}
+
+	/**
+	 * Counts metadata of given tree type from indexes - used after rebuild.
+	 *
+	 * @param forestTreeType
+	 */
+	private void resetMetadata(String forestTreeType) {
+		if (metadataManager == null) {
+			return;
+		}
+		List<Object[]> roots = repository.findRoots(forestTreeType);
+		Object[] root = roots.isEmpty() ? null : roots.get(0);
+		metadataManager.reset(
+				forestTreeType,
+				root == null ? null : (Long) root[0],
+				root == null ? null : (Long) root[1],
+				repository.countIndexes(forestTreeType));
+	}
+
+	/**
+	 * Updates metadata of given tree type after write operation - root is loaded by primary key,
+	 * roots are queried only, when root was changed.
+	 *
+	 * @param forestTreeType
+	 * @param addedNodes added (positive) or removed (negative) indexes count
+	 */
+	private void updateMetadata(String forestTreeType, long addedNodes) {
+		if (metadataManager == null) {
+			return;
+		}
+		ForestIndexMetadata metadata = metadataManager.getMetadata(forestTreeType);
+		if (metadata == null) {
+			resetMetadata(forestTreeType);
+			return;
+		}
+		Long rootId = metadata.getRootId();
+		List<Object[]> root = rootId == null ? Collections.emptyList() : repository.findIndex(rootId);
+		Long maxRgt;
+		if (root.isEmpty() || root.get(0)[0] != null) {
+			// root was deleted or moved under a new root
+			List<Object[]> roots = repository.findRoots(forestTreeType);
+			rootId = roots.isEmpty() ? null : (Long) roots.get(0)[0];
+			maxRgt = roots.isEmpty() ? null : (Long) roots.get(0)[1];
+		} else {
+			maxRgt = (Long) root.get(0)[2];
+		}
+		metadataManager.update(forestTreeType, rootId, maxRgt, addedNodes);
+	}
+
+	/**
+	 * JDBC batch size used for bulk operations.
+	 * 
+	 * @return
+	 * @since 1.3.0
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * JDBC batch size used for bulk operations.
+	 * 
+	 * @param batchSize
+	 * @since 1.3.0
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size has to be positive.");
+		//
+		this.batchSize = batchSize;
+	}
+	
+	/**
+	 * Gap between indexes.
+	 * 
+	 * @return gap, {@link #DENSE_GAP} - numbering without gaps
+	 * @since 1.3.0
+	 */
+	public long getSparseGap() {
+		return sparseGap;
+	}
+	
+	/**
+	 * Enables sparse numbering - indexes are allocated with given gap, new node claims a free slot inside parent's interval 
+	 * and sub tree is renumbered locally, when gap is exhausted. Children count is stored. 
+	 * Indexes has to be rebuilt, when numbering mode is changed.
+	 * 
+	 * @param sparseGap gap between indexes ({@link #DENSE_GAP} - numbering without gaps, at least {@link #MIN_SPARSE_GAP} otherwise)
+	 * @since 1.3.0
+	 */
+	public void setSparseGap(long sparseGap) {
+		Assert.isTrue(sparseGap == DENSE_GAP || sparseGap >= MIN_SPARSE_GAP, 
+				MessageFormat.format("Gap has to be [{0}] or at least [{1}].", DENSE_GAP, MIN_SPARSE_GAP));
+		Assert.isTrue(sparseGap == DENSE_GAP || !rootScoped, "Root scoped numbering requires dense numbering - sparse numbering doesn't shift indexes.");
+		//
+		this.sparseGap = sparseGap;
+	}
+	
+	/**
+	 * Returns {@code true}, when indexes are numbered with gaps.
+	 * 
+	 * @return
+	 * @since 1.3.0
+	 */
+	public boolean isSparse() {
+		return sparseGap > DENSE_GAP;
+	}
+	
+	/**
+	 * Returns {@code true}, when numbering is scoped by content roots.
+	 * 
+	 * @return
+	 * @since 1.3.0
+	 */
+	public boolean isRootScoped() {
+		return rootScoped;
+	}
+	
+	/**
+	 * Scopes numbering by content roots (children of synthetic root) - each content root tree is numbered in its own range 
+	 * (see {@link #ROOT_SCOPE_SIZE}) and root scope is stored in each index (see {@link ForestIndex#getTreeId()}). 
+	 * New content root claims the next range without shifting, writes in one content root tree (e.g. one tenant) 
+	 * never shift indexes of another one. Synthetic root interval contains all ranges - its children count is counted by query.
+	 * Sub tree moved into another root scope is re-indexed. Tree type has to have one root (synthetic root created by index), 
+	 * batch is not supported. Numbering has to be dense. Indexes has to be rebuilt, when numbering mode is changed.
+	 * 
+	 * @param rootScoped
+	 * @since 1.3.0
+	 */
+	public void setRootScoped(boolean rootScoped) {
+		Assert.isTrue(!rootScoped || !isSparse(), "Root scoped numbering requires dense numbering - sparse numbering doesn't shift indexes.");
+		//
+		this.rootScoped = rootScoped;
+	}
+	
+	/**
+	 * In-memory snapshots of indexes - snapshots of changed tree types are rebuilt after transaction is committed.
+	 * 
+	 * @return snapshot manager or {@code null}, when snapshots are not used
+	 * @since 1.3.0
+	 */
+	public ForestIndexSnapshotManager<CONTENT_ID> getSnapshotManager() {
+		return snapshotManager;
+	}
+	
+	/**
+	 * In-memory snapshots of indexes - snapshots of changed tree types are rebuilt after transaction is committed.
+	 * 
+	 * @param snapshotManager snapshot manager or {@code null}, when snapshots are not used
+	 * @since 1.3.0
+	 */
+	public void setSnapshotManager(ForestIndexSnapshotManager<CONTENT_ID> snapshotManager) {
+		this.snapshotManager = snapshotManager;
+	}
+	
+	/**
+	 * Tree type lock - index writers on the same tree type are serialized.
+	 * 
+	 * @return lock or {@code null}, when tree types are not locked
+	 * @since 1.3.0
+	 */
+	public ForestIndexLock getLock() {
+		return lock;
+	}
+	
+	/**
+	 * Tree type lock - index writers on the same tree type are serialized. In-JVM {@link StripedForestIndexLock} is used by default, 
+	 * the same lock instance has to be used by all services, which writes the same tree type. Use {@link CompositeForestIndexLock} with 
+	 * database lock (e.g. {@link DatabaseForestIndexLock}), when application runs in cluster.
+	 * 
+	 * @param lock lock or {@code null}, when tree types are not locked (e.g. writers are serialized by application)
+	 * @since 1.3.0
+	 */
+	public void setLock(ForestIndexLock lock) {
+		this.lock = lock;
+	}
+	
+	/**
+	 * Index maintenance metrics.
+	 * 
+	 * @return
+	 * @since 1.3.0
+	 */
+	public ForestIndexMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Index maintenance metrics - rows touched by shift statements, persistence context flushes and tree size. 
+	 * Metrics are not recorded by default ({@link NoopForestIndexMetrics}). Use {@link MeteredForestIndexService} 
+	 * for recording duration of service operations.
+	 * 
+	 * @param metrics
+	 * @since 1.3.0
+	 */
+	public void setMetrics(ForestIndexMetrics metrics) {
+		Assert.notNull(metrics, "Metrics are required - use NoopForestIndexMetrics, when metrics are not recorded.");
+		//
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Tree type metadata - root, the highest rgt and indexes count.
+	 *
+	 * @return metadata manager or {@code null}, when metadata are not maintained
+	 * @since 1.3.0
+	 */
+	public ForestIndexMetadataManager<?> getMetadataManager() {
+		return metadataManager;
+	}
+
+	/**
+	 * Tree type metadata - root, the highest rgt and indexes count are maintained by write operations in the same transaction
+	 * and version of metadata is increased. Root is found by primary key, new root rgt and tree size are read from metadata
+	 * instead of aggregate queries. Metadata are reset by rebuild, tree type is marked as rebuilding during rebuild.
+	 *
+	 * @param metadataManager metadata manager or {@code null}, when metadata are not maintained
+	 * @since 1.3.0
+	 */
+	public void setMetadataManager(ForestIndexMetadataManager<?> metadataManager) {
+		this.metadataManager = metadataManager;
+	}
+
+	/**
+	 * Executor for concurrent rebuild of more tree types.
+	 *
+	 * @return executor or {@code null}, when tree types are rebuilt sequentially
+	 * @since 1.3.0
+	 */
+	public ForestIndexRebuildExecutor getRebuildExecutor() {
+		return rebuildExecutor;
+	}
+
+	/**
+	 * Executor for concurrent rebuild of more tree types - see {@link #rebuildAll(Collection)}.
+	 *
+	 * @param rebuildExecutor executor or {@code null}, when tree types are rebuilt sequentially in current transaction
+	 * @since 1.3.0
+	 */
+	public void setRebuildExecutor(ForestIndexRebuildExecutor rebuildExecutor) {
+		this.rebuildExecutor = rebuildExecutor;
+	}
+
+	/**
+	 * Locks given tree type until current transaction is completed. Persistence context is cleared, when lock is acquired 
+	 * - indexes loaded before can be changed by another transaction.
+	 * 
+	 * @param forestTreeType
+	 * @since 1.3.0
+	 */
+	protected void lock(String forestTreeType) {
+		// tree size is registered with the first write operation
+		metrics.registerTreeSize(forestTreeType, () -> getTreeSize(forestTreeType));
+		if (lock != null && lock.lock(forestTreeType)) {
+			flush(forestTreeType);
+			entityManager.clear();
+		}
+	}
+	
+	/**
+	 * Flushes persistence context - flush is recorded in metrics.
+	 * 
+	 * @param forestTreeType
+	 * @since 1.3.0
+	 */
+	protected void flush(String forestTreeType) {
+		entityManager.flush();
+		metrics.recordFlush(forestTreeType);
+	}
+	
+	/**
+	 * Records rows touched by given statement in metrics.
+	 * 
+	 * @param statement repository method name
+	 * @param forestTreeType
+	 * @param rows affected rows count
+	 * @return affected rows count
+	 * @since 1.3.0
+	 */
+	protected int recordRows(String statement, String forestTreeType, int rows) {
+		metrics.recordRows(statement, forestTreeType, rows);
+		return rows;
+	}
+	
+	/**
+	 * Tree of given type is changed - snapshot has to be rebuilt.
+	 * 
+	 * @param forestTreeType
+	 * @since 1.3.0
+	 */
+	protected void invalidateSnapshot(String forestTreeType) {
+		if (snapshotManager != null) {
+			snapshotManager.invalidate(forestTreeType);
+		}
+	}
+	
+	/**
+	 * Writer for bulk operations.
+	 * 
+	 * @return
+	 * @since 1.3.0
+	 */
+	protected ForestIndexBatchWriter getBatchWriter() {
+		return new ForestIndexBatchWriter(entityManager, indexClass, batchSize);
 	}
 	
 	/**
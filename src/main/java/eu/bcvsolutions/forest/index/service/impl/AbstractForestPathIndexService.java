@@ -0,0 +1,435 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexStrategy;
+import eu.bcvsolutions.forest.index.repository.ForestIndexRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Persists, builds, clears forest indexes by materialized path - see {@link ForestIndexPath}.
+ *
+ * Each index holds encoded path of all its ancestors (and itself) and depth - insert touches one row,
+ * move touches moved sub tree only. Descendants are found by path prefix, ancestors by decoded path.
+ * Indexes lft and rgt are not used (and children count is not available) - use {@link ForestIndexRepository#findAllChildrenByPath(ForestIndex, org.springframework.data.domain.Pageable)}
+ * instead nested set queries.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ *
+ * @param <IX> index type
+ * @param <CONTENT_ID> content identifier - e.g. {@code Long} or {@link UUID} is preferred
+ */
+public abstract class AbstractForestPathIndexService<IX extends ForestIndex<IX, CONTENT_ID>, CONTENT_ID extends Serializable>
+		implements ForestIndexService<IX, CONTENT_ID> {
+
+	private final Class<IX> indexClass;
+	private final ForestIndexRepository<IX, CONTENT_ID> repository;
+	private final EntityManager entityManager;
+	private int batchSize = AbstractForestIndexService.DEFAULT_BATCH_SIZE;
+
+	@SuppressWarnings("unchecked")
+	public AbstractForestPathIndexService(
+			ForestIndexRepository<IX, CONTENT_ID> repository,
+			EntityManager entityManager) {
+		Assert.notNull(repository, "Index repository is required.");
+		Assert.notNull(entityManager, "Entity manager is required.");
+		//
+		Class<?>[] genericTypes = GenericTypeResolver.resolveTypeArguments(getClass(), ForestIndexService.class);
+		//
+		Assert.notEmpty(genericTypes, "Wrong generic types is given, fix class definition");
+		indexClass = (Class<IX>) genericTypes[0];
+		//
+		this.repository = repository;
+		this.entityManager = entityManager;
+	}
+
+	@Override
+	public ForestIndexStrategy getStrategy(String forestTreeType) {
+		return ForestIndexStrategy.MATERIALIZED_PATH;
+	}
+
+	/**
+	 * Ancestors are decoded from materialized path.
+	 */
+	@Override
+	public List<Long> findAncestorIds(IX forestIndex) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		List<Long> ids = ForestIndexPath.decode(forestIndex.getPath());
+		if (ids.isEmpty()) {
+			return ids;
+		}
+		return new ArrayList<>(ids.subList(0, ids.size() - 1));
+	}
+
+	/**
+	 * Tree structure is loaded by one streaming query, paths are computed in memory and written back by JDBC batch updates.
+	 */
+	@Override
+	@Transactional
+	public void rebuild(String forestTreeType) {
+		// we need actual data in tree structure
+		entityManager.flush();
+		//
+		ForestIndexTree tree = new ForestIndexTree();
+		try (Stream<Object[]> structure = repository.streamTreeStructure(forestTreeType)) {
+			structure.forEach(tree::add);
+		}
+		if (tree.size() == 0) {
+			return;
+		}
+		getBatchWriter().updatePaths(tree.number());
+		// loaded indexes are obsolete
+		entityManager.clear();
+	}
+
+	/**
+	 * Content tree structure is loaded into memory, paths (including synthetic root) are computed in memory
+	 * and inserted by JDBC batch inserts. If index identifiers are generated by database (identity), then
+	 * indexes are created one by one.
+	 */
+	@Override
+	@Transactional
+	public void rebuild(String forestTreeType, Stream<ForestContentNode<CONTENT_ID>> contents) {
+		Assert.notNull(contents, "Content tree structure is required.");
+		//
+		dropIndexes(forestTreeType);
+		//
+		// synthetic root has the first position
+		List<CONTENT_ID> contentIds = new ArrayList<>();
+		List<CONTENT_ID> parentContentIds = new ArrayList<>();
+		Map<CONTENT_ID, Long> positions = new HashMap<>();
+		contentIds.add(null);
+		parentContentIds.add(null);
+		contents.forEach(content -> {
+			Assert.notNull(content.getContentId(), "Content identifier is required.");
+			//
+			positions.put(content.getContentId(), Long.valueOf(contentIds.size()));
+			contentIds.add(content.getContentId());
+			parentContentIds.add(content.getParentContentId());
+		});
+		if (contentIds.size() == 1) {
+			// nothing to index
+			return;
+		}
+		ForestIndexTree tree = new ForestIndexTree();
+		tree.add(0L, null);
+		for (int position = 1; position < contentIds.size(); position++) {
+			CONTENT_ID parentContentId = parentContentIds.get(position);
+			if (parentContentId == null) {
+				tree.add(position, 0L);
+			} else {
+				Long parentPosition = positions.get(parentContentId);
+				// content without parent in structure is not indexed
+				tree.add(position, parentPosition == null ? -1L : parentPosition);
+			}
+		}
+		tree.number();
+		//
+		ForestIndexBatchWriter batchWriter = getBatchWriter();
+		if (batchWriter.supportsInsert()) {
+			batchWriter.insertPaths(forestTreeType, tree, contentIds);
+		} else {
+			for (int slot : tree.getPreOrder()) {
+				if (slot > 0) {
+					int parentSlot = tree.getParentSlot(slot);
+					index(forestTreeType, contentIds.get(slot), parentSlot == 0 ? null : contentIds.get(parentSlot));
+				}
+			}
+		}
+		entityManager.clear();
+	}
+
+	@Override
+	@Transactional
+	public IX saveNode(IX forestIndex) {
+		Assert.notNull(forestIndex, "Index is required.");
+		entityManager.detach(forestIndex); // we need to load previous index value before flush
+		//
+		Long previousParentId = null;
+		String previousPath = null;
+		if (forestIndex.getId() != null) {
+			previousParentId = repository.findParentId(forestIndex.getId());
+			previousPath = repository.findPath(forestIndex.getId());
+		}
+		Long parentId = forestIndex.getParent() == null ? null : forestIndex.getParent().getId();
+		forestIndex = repository.save(forestIndex);
+		forestIndex.setPath(previousPath); // path is not updatable by save
+		//
+		if (previousPath == null) {
+			countPath(forestIndex);
+		} else if (!Objects.equals(previousParentId, parentId)) {
+			movePath(forestIndex);
+		}
+		entityManager.flush();
+		entityManager.clear();
+		return forestIndex;
+	}
+
+	/**
+	 * Counts path of new node. New root is inserted above the previous root.
+	 *
+	 * @param forestIndex
+	 */
+	private void countPath(IX forestIndex) {
+		entityManager.flush();
+		String forestTreeType = forestIndex.getForestTreeType();
+		//
+		if (forestIndex.getParent() == null) {
+			String path = ForestIndexPath.encode(forestIndex.getId());
+			Long previousRootId = repository.findPreviousRootId(forestTreeType, forestIndex.getId());
+			if (previousRootId != null) {
+				// previous tree is moved one level down
+				checkDepth(forestTreeType, repository.findPath(previousRootId), 1);
+				repository.prependPath(forestTreeType, path);
+				repository.updateParent(previousRootId, forestIndex);
+			}
+			forestIndex.setPath(path);
+			forestIndex.setDepth(0);
+		} else {
+			IX parent = repository.findById(forestIndex.getParent().getId()).get();
+			Assert.notNull(parent.getPath(), MessageFormat.format("Parent [{0}] doesn't have path - index parent at first.", parent.getId()));
+			//
+			forestIndex.setPath(ForestIndexPath.append(parent.getPath(), forestIndex.getId()));
+			forestIndex.setDepth(parent.getDepth() + 1);
+		}
+		repository.updatePath(forestIndex.getId(), forestIndex.getPath(), forestIndex.getDepth());
+	}
+
+	/**
+	 * Moves sub tree under new parent - paths of moved sub tree are updated only.
+	 *
+	 * @param forestIndex moved node with new parent
+	 * @throws IllegalArgumentException if node is moved under its own sub tree
+	 */
+	private void movePath(IX forestIndex) {
+		entityManager.flush();
+		String forestTreeType = forestIndex.getForestTreeType();
+		String path = forestIndex.getPath();
+		//
+		if (forestIndex.getParent() == null) {
+			// new root - the previous root is moved under new root
+			String newPath = ForestIndexPath.encode(forestIndex.getId());
+			Long previousRootId = repository.findPreviousRootId(forestTreeType, forestIndex.getId());
+			repository.movePath(forestTreeType, path, newPath, -ForestIndexPath.getDepth(path));
+			if (previousRootId != null) {
+				// previous tree is moved one level down
+				checkDepth(forestTreeType, repository.findPath(previousRootId), 1);
+				repository.prependPath(forestTreeType, newPath);
+				// moved sub tree is prefixed twice
+				repository.movePath(forestTreeType, newPath + newPath, newPath, -1);
+				repository.updateParent(previousRootId, forestIndex);
+			}
+			forestIndex.setPath(newPath);
+			forestIndex.setDepth(0);
+			return;
+		}
+		IX parent = repository.findById(forestIndex.getParent().getId()).get();
+		Assert.notNull(parent.getPath(), MessageFormat.format("Parent [{0}] doesn't have path - index parent at first.", parent.getId()));
+		if (parent.getPath().startsWith(path)) {
+			throw new IllegalArgumentException(MessageFormat.format("Index [{0}] cannot be moved under its own sub tree [{1}].",
+					forestIndex.getId(), parent.getId()));
+		}
+		String newPath = ForestIndexPath.append(parent.getPath(), forestIndex.getId());
+		int depth = parent.getDepth() + 1;
+		checkDepth(forestTreeType, path, depth - ForestIndexPath.getDepth(path));
+		repository.movePath(forestTreeType, path, newPath, depth - ForestIndexPath.getDepth(path));
+		forestIndex.setPath(newPath);
+		forestIndex.setDepth(depth);
+	}
+
+	/**
+	 * Checks depth of all sub tree nodes, which will be moved by given offset - the deepest node path has to fit into stored path.
+	 *
+	 * @param forestTreeType
+	 * @param path sub tree root path
+	 * @param offset depth offset
+	 * @throws IllegalArgumentException if path of the deepest sub tree node exceeds maximum length
+	 */
+	private void checkDepth(String forestTreeType, String path, int offset) {
+		Integer maxDepth = repository.findMaxDepthByPath(forestTreeType, path);
+		if (maxDepth != null) {
+			ForestIndexPath.checkDepth(maxDepth + offset);
+		}
+	}
+
+	@Override
+	@Transactional
+	public void deleteNode(IX forestIndex, boolean closeGap) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		if (forestIndex.getPath() == null) {
+			repository.deleteById(forestIndex.getId());
+		} else {
+			// gap doesn't exist - closeGap is not needed
+			repository.deleteByPath(forestIndex.getForestTreeType(), forestIndex.getPath());
+		}
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Override
+	@Transactional
+	public void clearIndexes(String forestTreeType) {
+		repository.clearPaths(forestTreeType);
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Override
+	@Transactional
+	public void dropIndexes(String forestTreeType) {
+		repository.dropIndexes(forestTreeType);
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Override
+	@Transactional
+	public IX index(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId) {
+		// previous index
+		IX index = repository.findOneByContentId(contentId);
+		// get parent index
+		IX parentIndex = null;
+		if (parentContentId != null) {
+			parentIndex = repository.findOneByContentId(parentContentId);
+			if (parentIndex == null) {
+				throw new UnsupportedOperationException(String.format("Parent [%s] doesn't have index - index parent at first.", parentContentId));
+			}
+		} else {
+			// generate synthetic root - we want to support more content roots
+			parentIndex = repository.findRoot(forestTreeType);
+			if (parentIndex == null) {
+				parentIndex = createIndexInstance(indexClass);
+				parentIndex.setForestTreeType(forestTreeType);
+				parentIndex = this.saveNode(parentIndex);
+			}
+		}
+		//
+		if (index == null) {
+			index = createIndexInstance(indexClass);
+		}
+		index.setParent(parentIndex);
+		index.setContentId(contentId);
+		index.setForestTreeType(forestTreeType);
+		return this.saveNode(index);
+	}
+
+	/**
+	 * Each insert touches one row only - contents are indexed one by one in order parent before children.
+	 */
+	@Override
+	@Transactional
+	public int indexAll(String forestTreeType, Collection<ForestContentNode<CONTENT_ID>> contents) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(contents, "Contents are required.");
+		//
+		// parents given in batch are indexed before their children
+		List<ForestContentNode<CONTENT_ID>> nodes = new ArrayList<>(contents);
+		Map<CONTENT_ID, Long> positions = new HashMap<>();
+		for (int position = 0; position < nodes.size(); position++) {
+			positions.put(nodes.get(position).getContentId(), Long.valueOf(position));
+		}
+		ForestIndexTree tree = new ForestIndexTree();
+		for (int position = 0; position < nodes.size(); position++) {
+			CONTENT_ID parentContentId = nodes.get(position).getParentContentId();
+			tree.add(position, parentContentId == null ? null : positions.get(parentContentId));
+		}
+		tree.number();
+		for (int position = 0; position < nodes.size(); position++) {
+			if (!tree.isNumbered(position)) {
+				throw new IllegalArgumentException(MessageFormat.format("Content [{0}] is not reachable from indexed parent "
+						+ "- contents contain a cycle.", nodes.get(position).getContentId()));
+			}
+		}
+		for (int position : tree.getPreOrder()) {
+			ForestContentNode<CONTENT_ID> content = nodes.get(position);
+			index(forestTreeType, content.getContentId(), content.getParentContentId());
+		}
+		return nodes.size();
+	}
+
+	@Override
+	@Transactional
+	public IX dropIndex(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		IX index = repository.findOneByContentId(contentId);
+		//
+		if (index != null) {
+			deleteNode(index, true);
+		}
+		return index;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public String findForestTreeType(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		return repository.findForestTreeType(contentId);
+	}
+
+	/**
+	 * JDBC batch size used for bulk operations.
+	 *
+	 * @return
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * JDBC batch size used for bulk operations.
+	 *
+	 * @param batchSize
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size has to be positive.");
+		//
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Writer for bulk operations.
+	 *
+	 * @return
+	 */
+	protected ForestIndexBatchWriter getBatchWriter() {
+		return new ForestIndexBatchWriter(entityManager, indexClass, batchSize);
+	}
+
+	/**
+	 * Create new index instance.
+	 *
+	 * @return
+	 * @throws IllegalArgumentException when index class does not define default constructor.
+	 */
+	protected IX createIndexInstance(Class<? extends IX> indexClass) {
+		try {
+			return indexClass.getDeclaredConstructor().newInstance();
+		} catch (IllegalArgumentException | InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException | SecurityException o_O) {
+			throw new IllegalArgumentException(MessageFormat.format("[{0}] does not support creating new instance. "
+					+ "Fix forest index class - add default constructor.", indexClass), o_O);
+		}
+	}
+}
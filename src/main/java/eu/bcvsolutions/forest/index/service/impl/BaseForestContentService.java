@@ -1,25 +1,43 @@
 package eu.bcvsolutions.forest.index.service.impl;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.domain.Sort.Order;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
 import eu.bcvsolutions.forest.index.domain.ForestContent;
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
 import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexRebuildResult;
+import eu.bcvsolutions.forest.index.domain.ForestIndexStrategy;
 import eu.bcvsolutions.forest.index.repository.BaseForestContentRepository;
 import eu.bcvsolutions.forest.index.service.api.ForestContentService;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexMetrics;
 import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
 
 /**
  * Base forest content service.
  * * implement ForestContentService instead using this class - its only reuses {@link ForestIndexService}
- * * implement rebuildIndexes as long running task instead
+ * * implement rebuildIndexes as long running task instead - e.g. {@link ForestIndexRebuildTask} rebuilds indexes from stored parents in chunks
  * * without support for tree types
  * 
  * @author Radek Tomiška
@@ -31,8 +49,19 @@ import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
 public abstract class BaseForestContentService<C extends ForestContent<IX, CONTENT_ID>, IX extends ForestIndex<IX, CONTENT_ID>, CONTENT_ID extends Serializable>
 		implements ForestContentService<C, IX, CONTENT_ID> {
 
+	/**
+	 * Content index identifier property - descendants of tree type indexed by closure table can be sorted by this property only.
+	 * 
+	 * @since 1.3.0
+	 */
+	public static final String FOREST_INDEX_ID = "forestIndex.id";
+	
 	private final ForestIndexService<IX, CONTENT_ID> forestIndexService;
 	private final BaseForestContentRepository<C, CONTENT_ID> repository;
+	private ForestIndexQueue<CONTENT_ID> indexQueue; // indexes are written synchronously by default
+	private ForestIndexMetrics metrics = new NoopForestIndexMetrics();
+	private EntityManager entityManager; // streamed contents are detached, when set
+	private ForestIndexRebuildExecutor rebuildExecutor; // tree types are rebuilt sequentially by default
 
 	public BaseForestContentService(ForestIndexService<IX, CONTENT_ID> forestIndexService,
 			BaseForestContentRepository<C, CONTENT_ID> repository) {
@@ -42,70 +71,456 @@ public abstract class BaseForestContentService<C extends ForestContent<IX, CONTE
 		this.forestIndexService = forestIndexService;
 		this.repository = repository;
 	}
+	
+	/**
+	 * Write-behind queue - content is indexed asynchronously after transaction is committed, when queue is set.
+	 * 
+	 * @return
+	 * @since 1.3.0
+	 */
+	public ForestIndexQueue<CONTENT_ID> getIndexQueue() {
+		return indexQueue;
+	}
+	
+	/**
+	 * Write-behind queue - content is indexed asynchronously after transaction is committed, when queue is set.
+	 * 
+	 * @param indexQueue {@code null} - indexes are written synchronously
+	 * @since 1.3.0
+	 */
+	public void setIndexQueue(ForestIndexQueue<CONTENT_ID> indexQueue) {
+		this.indexQueue = indexQueue;
+	}
+	
+	/**
+	 * Duration of content service operations.
+	 * 
+	 * @return
+	 * @since 1.3.0
+	 */
+	public ForestIndexMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Duration of content service operations is recorded per operation and content tree type. 
+	 * Metrics are not recorded by default ({@link NoopForestIndexMetrics}).
+	 * 
+	 * @param metrics
+	 * @since 1.3.0
+	 */
+	public void setMetrics(ForestIndexMetrics metrics) {
+		Assert.notNull(metrics, "Metrics are required - use NoopForestIndexMetrics, when metrics are not recorded.");
+		//
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Entity manager - streamed contents are detached from persistence context, when entity manager is set.
+	 * 
+	 * @return
+	 * @since 1.3.0
+	 */
+	public EntityManager getEntityManager() {
+		return entityManager;
+	}
+	
+	/**
+	 * Entity manager - streamed contents are detached from persistence context, when entity manager is set 
+	 * (shared entity manager is injected into spring bean).
+	 * 
+	 * @param entityManager
+	 * @since 1.3.0
+	 */
+	@PersistenceContext
+	public void setEntityManager(EntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+	
+	/**
+	 * Executor for concurrent rebuild of more tree types.
+	 * 
+	 * @return executor or {@code null}, when tree types are rebuilt sequentially
+	 * @since 1.3.0
+	 */
+	public ForestIndexRebuildExecutor getRebuildExecutor() {
+		return rebuildExecutor;
+	}
+	
+	/**
+	 * Executor for concurrent rebuild of more tree types - see {@link #rebuildAll(Collection)}.
+	 * 
+	 * @param rebuildExecutor executor or {@code null}, when tree types are rebuilt sequentially in current transaction
+	 * @since 1.3.0
+	 */
+	public void setRebuildExecutor(ForestIndexRebuildExecutor rebuildExecutor) {
+		this.rebuildExecutor = rebuildExecutor;
+	}
 
+	/**
+	 * Content tree structure is streamed and indexes are rebuilt in bulk - see {@link ForestIndexService#rebuild(String, Stream)}.
+	 */
 	@Override
+	@Transactional
 	public void rebuildIndexes(String forestTreeType) {
-		// clear all rgt, lft
-		forestIndexService.dropIndexes(forestTreeType);
-		//
-		findRoots(forestTreeType, null).forEach(root ->{
-			createIndex(forestTreeType, root.getId(), null);
-			recountIndexes(root);
+		record("rebuildIndexes", forestTreeType, System.nanoTime(), () -> {
+			try (Stream<Object[]> structure = streamTreeStructure(forestTreeType)) {
+				forestIndexService.rebuild(forestTreeType, structure.map(this::toContentNode));
+			}
+			return null;
 		});
 	}
-
+	
+	/**
+	 * Tree types are rebuilt concurrently, each tree type in its own transaction, when rebuild executor is set 
+	 * (see {@link #setRebuildExecutor(ForestIndexRebuildExecutor)}) - call it outside of transaction, changes are committed 
+	 * per tree type. Tree types are rebuilt one by one in current transaction otherwise.
+	 */
+	@Override
+	public ForestIndexRebuildResult rebuildAll(Collection<String> forestTreeTypes) {
+		if (rebuildExecutor == null) {
+			return ForestContentService.super.rebuildAll(forestTreeTypes);
+		}
+		return rebuildExecutor.rebuildAll(forestTreeTypes, this::rebuildIndexes);
+	}
+	
 	/**
-	 * Recounts indexes for subtree or whole tree if {@code null} is given.
-	 * Expects cleared indexes.
+	 * Streams content tree structure {@code [contentId, parentContentId]} ordered by content id.
+	 * Tree types are not supported - all content is streamed.
 	 * 
-	 * @param parent
+	 * @param forestTreeType
+	 * @return
+	 * @since 1.3.0
 	 */
-	private void recountIndexes(C parent) {
-		Assert.notNull(parent, "Parent content is required.");
-		//
-		repository.findDirectChildren(parent, null).forEach(content -> {
-			createIndex(content.getForestTreeType(), content.getId(), content.getParentId());
-			recountIndexes(content);
-		});
+	protected Stream<Object[]> streamTreeStructure(String forestTreeType) {
+		return repository.streamTreeStructure();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private ForestContentNode<CONTENT_ID> toContentNode(Object[] row) {
+		return new ForestContentNode<>((CONTENT_ID) row[0], (CONTENT_ID) row[1]);
 	}
 
 	@Override
 	@Transactional
 	public IX createIndex(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId) {
-		return forestIndexService.index(forestTreeType, contentId, parentContentId);
+		return record("createIndex", forestTreeType, System.nanoTime(), () -> {
+			if (indexQueue != null) {
+				indexQueue.index(forestTreeType, contentId, parentContentId);
+				return null;
+			}
+			return forestIndexService.index(forestTreeType, contentId, parentContentId);
+		});
+	}
+
+	@Override
+	@Transactional
+	public int indexAll(String forestTreeType, Collection<ForestContentNode<CONTENT_ID>> contents) {
+		return record("indexAll", forestTreeType, System.nanoTime(), () -> forestIndexService.indexAll(forestTreeType, contents));
 	}
 
 	@Override
 	@Transactional
 	public IX updateIndex(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId) {
-		return forestIndexService.index(forestTreeType, contentId, parentContentId);
+		return record("updateIndex", forestTreeType, System.nanoTime(), () -> {
+			if (indexQueue != null) {
+				indexQueue.index(forestTreeType, contentId, parentContentId);
+				return null;
+			}
+			return forestIndexService.index(forestTreeType, contentId, parentContentId);
+		});
 	}
 
+	/**
+	 * Drop is enqueued, when write-behind queue is set - content tree type is resolved from persisted content. 
+	 * Tree type of already deleted content is resolved from its index or from its pending operations in queue 
+	 * - drop is enqueued after previous operations of the content. Nothing is enqueued, when tree type is not resolved (content is not indexed).
+	 */
 	@Override
 	@Transactional
 	public IX deleteIndex(CONTENT_ID contentId) {
-		return forestIndexService.dropIndex(contentId);
+		long start = System.nanoTime();
+		if (indexQueue != null) {
+			String forestTreeType = repository
+					.findById(contentId)
+					.map(C::getForestTreeType)
+					.orElseGet(() -> forestIndexService.findForestTreeType(contentId));
+			if (forestTreeType == null) {
+				forestTreeType = indexQueue.findForestTreeType(contentId);
+			}
+			if (forestTreeType != null) {
+				indexQueue.dropIndex(forestTreeType, contentId);
+			}
+			return record("deleteIndex", forestTreeType, start, () -> null);
+		}
+		IX index = forestIndexService.dropIndex(contentId);
+		// tree type is known after index is dropped
+		return record("deleteIndex", index == null ? null : index.getForestTreeType(), start, () -> index);
 	}
 
+	/**
+	 * Direct children are found by parent identifier - parent is not loaded (tree type is not recorded in metrics).
+	 */
 	@Override
 	@Transactional(readOnly = true)
 	public Page<C> findDirectChildren(CONTENT_ID contentId, Pageable pageable) {
 		Assert.notNull(contentId, "Content identifier is required.");
 		//
-		return repository.findDirectChildren(repository.findById(contentId).get(), pageable);
+		long start = System.nanoTime();
+		return record("findDirectChildren", null, start, () -> repository.findDirectChildrenByParentId(contentId, pageable));
 	}
 
+	/**
+	 * Query is chosen by index strategy of content tree type - see {@link ForestIndexService#getStrategy(String)}.
+	 * Content is not loaded for nested set - children are found by content index interval (loaded as projection).
+	 * Total of nested set children is computed from content index interval - count query is executed, 
+	 * when interval contains gaps (sparse numbering, gaps left by delete - see {@link ForestIndexService#hasGaps(String)}).
+	 * Descendants of tree type indexed by closure table are paged by closure table ordered by content index identifier ({@code forestIndex.id})
+	 * - other sort is not supported.
+	 */
 	@Override
 	@Transactional(readOnly = true)
 	public Page<C> findAllChildren(CONTENT_ID contentId, Pageable pageable) {
 		Assert.notNull(contentId, "Content identifier is required.");
 		//
-		return repository.findAllChildren(repository.findById(contentId).get(), pageable);
+		long start = System.nanoTime();
+		Object[] index = findForestIndex(contentId);
+		String forestTreeType = index == null ? null : (String) index[0];
+		return record("findAllChildren", forestTreeType, start, () -> {
+			if (index == null) {
+				// content is not indexed
+				return ForestIndexPages.getPage(new ArrayList<>(), pageable, () -> 0L);
+			}
+			switch (forestIndexService.getStrategy(forestTreeType)) {
+				case MATERIALIZED_PATH: {
+					return repository.findAllChildrenByPath(repository.findById(contentId).get(), pageable);
+				}
+				case CLOSURE_TABLE: {
+					return findDescendantsByClosure(repository.findById(contentId).get(), null, pageable);
+				}
+				default: {
+					Long lft = (Long) index[1];
+					Long rgt = (Long) index[2];
+					List<C> children = repository.findAllChildren(forestTreeType, lft, rgt, pageable);
+					if (!ForestIndexPages.isCounted(lft, rgt, (Integer) index[3])) {
+						return ForestIndexPages.getPage(children, pageable, () -> repository.countAllChildren(forestTreeType, lft, rgt));
+					}
+					// total is computed from content index interval, if gap was not left by delete
+					return ForestIndexPages.getPage(children, pageable, () -> forestIndexService.hasGaps(forestTreeType) 
+							? repository.countAllChildren(forestTreeType, lft, rgt) 
+							: ForestIndexPages.getChildrenCount(lft, rgt));
+				}
+			}
+		});
 	}
 
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<C> findAllChildren(CONTENT_ID contentId, Long lastLft, int size) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		Assert.isTrue(size > 0, "Slice size has to be greater than zero.");
+		//
+		long start = System.nanoTime();
+		C content = repository.findById(contentId).get();
+		return record("findAllChildren", content.getForestTreeType(), start, () -> {
+			checkNestedSet(content.getForestTreeType());
+			if (content.getForestIndex() == null) {
+				return new SliceImpl<>(new ArrayList<>());
+			}
+			return repository.findAllChildren(content, lastLft, PageRequest.of(0, size));
+		});
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<C> findAll(String forestTreeType, Long lastLft, int size) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.isTrue(size > 0, "Slice size has to be greater than zero.");
+		//
+		long start = System.nanoTime();
+		return record("findAll", forestTreeType, start, () -> {
+			checkNestedSet(forestTreeType);
+			return repository.findAll(forestTreeType, lastLft, PageRequest.of(0, size));
+		});
+	}
+
+	/**
+	 * Descendants of tree type indexed by closure table are paged by closure table ordered by content index identifier ({@code forestIndex.id})
+	 * - other sort is not supported.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Page<C> findDescendants(CONTENT_ID contentId, int maxDepth, Pageable pageable) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		long start = System.nanoTime();
+		C content = repository.findById(contentId).get();
+		return record("findDescendants", content.getForestTreeType(), start, () -> {
+			if (getStrategy(content) == ForestIndexStrategy.CLOSURE_TABLE) {
+				return findDescendantsByClosure(content, maxDepth, pageable);
+			}
+			return repository.findDescendants(content, maxDepth, pageable);
+		});
+	}
+
+	/**
+	 * Query is chosen by index strategy of content tree type - see {@link ForestIndexService#getStrategy(String)}.
+	 * Content is not loaded for nested set - parents are found by one query with content index interval resolved by self join.
+	 */
 	@Override
 	@Transactional(readOnly = true)
 	public List<C> findAllParents(CONTENT_ID contentId, Sort sort) {
-		return repository.findAllParents(repository.findById(contentId).get(), sort);
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		long start = System.nanoTime();
+		Object[] index = findForestIndex(contentId);
+		String forestTreeType = index == null ? null : (String) index[0];
+		return record("findAllParents", forestTreeType, start, () -> {
+			if (index == null) {
+				// content is not indexed
+				return new ArrayList<>();
+			}
+			if (forestIndexService.getStrategy(forestTreeType) != ForestIndexStrategy.NESTED_SET) {
+				// ancestors are resolved by index service (without content itself)
+				C content = repository.findById(contentId).get();
+				List<Long> indexIds = forestIndexService.findAncestorIds(content.getForestIndex());
+				if (indexIds.isEmpty()) {
+					return new ArrayList<>();
+				}
+				return repository.findAllByForestIndexIds(indexIds, sort);
+			}
+			return repository.findAllParentsByContentId(contentId, sort);
+		});
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY, readOnly = true)
+	public Stream<C> streamDirectChildren(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		C content = repository.findById(contentId).get();
+		return detach(repository.streamDirectChildren(content));
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY, readOnly = true)
+	public Stream<C> streamAllChildren(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		C content = repository.findById(contentId).get();
+		checkNestedSet(content.getForestTreeType());
+		if (content.getForestIndex() == null) {
+			return Stream.empty();
+		}
+		return detach(repository.streamAllChildren(content));
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY, readOnly = true)
+	public Stream<C> streamAllParents(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		C content = repository.findById(contentId).get();
+		checkNestedSet(content.getForestTreeType());
+		if (content.getForestIndex() == null) {
+			return Stream.empty();
+		}
+		return detach(repository.streamAllParents(content));
+	}
+	
+	/**
+	 * Streamed contents are detached from persistence context, before they are consumed (if entity manager is set).
+	 * 
+	 * @param contents
+	 * @return
+	 */
+	private Stream<C> detach(Stream<C> contents) {
+		if (entityManager == null) {
+			return contents;
+		}
+		return contents.peek(entityManager::detach);
+	}
+	
+	/**
+	 * Loads content index {@code [forestTreeType, lft, rgt, childrenCount]} as projection.
+	 * 
+	 * @param contentId
+	 * @return index or {@code null}, when content is not indexed
+	 */
+	private Object[] findForestIndex(CONTENT_ID contentId) {
+		List<Object[]> index = repository.findForestIndex(contentId);
+		//
+		return index.isEmpty() ? null : index.get(0);
+	}
+	
+	/**
+	 * Loads descendants of given content by page of index identifiers - descendants are paged by closure table ordered 
+	 * by index identifier, sort by content index identifier ({@code forestIndex.id}) is supported only (ascending by default).
+	 * 
+	 * @param content
+	 * @param maxDepth
+	 * @param pageable
+	 * @return
+	 * @throws IllegalArgumentException if sort by other property is given
+	 */
+	private Page<C> findDescendantsByClosure(C content, Integer maxDepth, Pageable pageable) {
+		Direction direction = Direction.ASC;
+		for (Order order : pageable == null ? Sort.unsorted() : pageable.getSort()) {
+			if (!FOREST_INDEX_ID.equals(order.getProperty())) {
+				throw new IllegalArgumentException(String.format("Sort by [%s] is not supported for tree type [%s] indexed by closure table "
+						+ "- descendants are ordered by index identifier [%s].", order.getProperty(), content.getForestTreeType(), FOREST_INDEX_ID));
+			}
+			direction = order.getDirection();
+		}
+		Pageable indexPageable = pageable == null || pageable.isUnpaged() 
+				? Pageable.unpaged() 
+				: PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by(direction, "id"));
+		Page<Long> indexIds = forestIndexService.findDescendantIds(content.getForestIndex(), maxDepth, indexPageable);
+		if (!indexIds.hasContent()) {
+			return new PageImpl<>(new ArrayList<>(), indexIds.getPageable(), indexIds.getTotalElements());
+		}
+		List<C> contents = repository.findAllByForestIndexIds(indexIds.getContent(), Sort.by(direction, FOREST_INDEX_ID));
+		return new PageImpl<>(contents, indexIds.getPageable(), indexIds.getTotalElements());
+	}
+	
+	/**
+	 * Keyset pagination and streams are supported for tree types indexed by nested set only ({@code lft} is not maintained by other strategies).
+	 * 
+	 * @param forestTreeType
+	 */
+	private void checkNestedSet(String forestTreeType) {
+		ForestIndexStrategy strategy = forestIndexService.getStrategy(forestTreeType);
+		if (strategy != ForestIndexStrategy.NESTED_SET) {
+			throw new UnsupportedOperationException(String.format(
+					"Operation is not supported for tree type [%s] indexed by strategy [%s] - nested set is required.", forestTreeType, strategy));
+		}
+	}
+	
+	/**
+	 * Executes given operation and records its duration (from given start).
+	 * 
+	 * @param operation operation name
+	 * @param forestTreeType
+	 * @param start operation start in nanoseconds
+	 * @param delegate operation
+	 * @return operation result
+	 */
+	private <T> T record(String operation, String forestTreeType, long start, Supplier<T> delegate) {
+		try {
+			return delegate.get();
+		} finally {
+			metrics.recordOperation(operation, forestTreeType, System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Index strategy of given content tree type.
+	 * 
+	 * @param content
+	 * @return
+	 * @since 1.3.0
+	 */
+	protected ForestIndexStrategy getStrategy(C content) {
+		return forestIndexService.getStrategy(content.getForestTreeType());
 	}
 }
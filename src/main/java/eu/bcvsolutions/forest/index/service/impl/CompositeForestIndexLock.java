@@ -0,0 +1,35 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.service.api.ForestIndexLock;
+
+/**
+ * Acquires all given locks in given order - e.g. in-JVM lock at first (threads wait in memory) 
+ * and database lock after (other cluster nodes).
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public class CompositeForestIndexLock implements ForestIndexLock {
+	
+	private final List<ForestIndexLock> locks;
+	
+	public CompositeForestIndexLock(ForestIndexLock... locks) {
+		Assert.notEmpty(locks, "Locks are required.");
+		//
+		this.locks = Arrays.asList(locks);
+	}
+	
+	@Override
+	public boolean lock(String forestTreeType) {
+		boolean acquired = false;
+		for (ForestIndexLock lock : locks) {
+			acquired |= lock.lock(forestTreeType);
+		}
+		return acquired;
+	}
+}
@@ -0,0 +1,97 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.text.MessageFormat;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.entity.AbstractForestIndexLockRow;
+import eu.bcvsolutions.forest.index.repository.ForestIndexLockRepository;
+
+/**
+ * Database tree type lock for clustered deployments - lock row of the tree type is locked by {@code select ... for update}. 
+ * Row lock is released by database, when transaction is completed.
+ * 
+ * Lock row is created with the first lock of the tree type in new transaction (row created concurrently by another node is used) 
+ * - tree type, which is not indexed yet, is locked too. Lock row is not changed by index operations (e.g. rebuild or drop indexes).
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ * 
+ * @param <L> lock row type
+ */
+public class DatabaseForestIndexLock<L extends AbstractForestIndexLockRow> extends AbstractForestIndexLock {
+	
+	private final ForestIndexLockRepository<L> repository;
+	private final Class<L> lockClass;
+	private final EntityManager entityManager;
+	private final TransactionTemplate newTransactionTemplate;
+	
+	public DatabaseForestIndexLock(
+			ForestIndexLockRepository<L> repository, 
+			Class<L> lockClass, 
+			EntityManager entityManager,
+			PlatformTransactionManager transactionManager) {
+		Assert.notNull(repository, "Lock repository is required.");
+		Assert.notNull(lockClass, "Lock class is required.");
+		Assert.notNull(entityManager, "Entity manager is required.");
+		Assert.notNull(transactionManager, "Transaction manager is required.");
+		//
+		this.repository = repository;
+		this.lockClass = lockClass;
+		this.entityManager = entityManager;
+		this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+		this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
+	
+	@Override
+	protected void doLock(String forestTreeType) {
+		if (repository.lockTreeType(forestTreeType) != null) {
+			return;
+		}
+		// lock row is created in new transaction - current transaction is not broken, when row is created concurrently
+		try {
+			newTransactionTemplate.execute(status -> {
+				entityManager.persist(createLockInstance(forestTreeType));
+				entityManager.flush();
+				return null;
+			});
+		} catch (DataIntegrityViolationException | PersistenceException ex) {
+			// row was created by another transaction
+		}
+		if (repository.lockTreeType(forestTreeType) == null) {
+			throw new CannotAcquireLockException(String.format("Lock row of tree type [%s] cannot be created.", forestTreeType));
+		}
+	}
+	
+	@Override
+	protected void unlock(String forestTreeType) {
+		// row lock is released by database
+	}
+	
+	/**
+	 * Create new lock row instance.
+	 *
+	 * @param forestTreeType
+	 * @return
+	 * @throws IllegalArgumentException when lock class does not define default constructor.
+	 */
+	protected L createLockInstance(String forestTreeType) {
+		try {
+			L lock = lockClass.getDeclaredConstructor().newInstance();
+			lock.setForestTreeType(forestTreeType);
+			return lock;
+		} catch (IllegalArgumentException | InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException | SecurityException o_O) {
+			throw new IllegalArgumentException(MessageFormat.format("[{0}] does not support creating new instance. "
+					+ "Fix forest index lock class - add default constructor.", lockClass), o_O);
+		}
+	}
+}
@@ -0,0 +1,673 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.PostInsertIdentifierGenerator;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexClosure;
+
+/**
+ * Writes computed indexes by JDBC batch statements - entity manager is bypassed.
+ *
+ * Table and column names are resolved from hibernate mapping of given index entity. Statements are executed
+ * on the connection of the current session (transaction), caller is responsible for flush and clear entity manager
+ * before and after batch is written.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public class ForestIndexBatchWriter {
+
+	private final EntityManager entityManager;
+	private final Class<? extends ForestIndex<?, ?>> indexClass;
+	private final int batchSize;
+
+	public ForestIndexBatchWriter(EntityManager entityManager, Class<? extends ForestIndex<?, ?>> indexClass, int batchSize) {
+		Assert.notNull(entityManager, "Entity manager is required.");
+		Assert.notNull(indexClass, "Index class is required.");
+		Assert.isTrue(batchSize > 0, "Batch size has to be positive.");
+		//
+		this.entityManager = entityManager;
+		this.indexClass = indexClass;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Updates lft, rgt and depth of all nodes in given tree. Not numbered nodes are cleared.
+	 *
+	 * @param tree numbered tree
+	 * @param storeChildrenCount true - children count is stored (indexes are numbered with gaps), false - stored children count is cleared
+	 * @return updated rows count
+	 */
+	public int updateIndexes(ForestIndexTree tree, boolean storeChildrenCount) {
+		return updateIndexes(tree, storeChildrenCount, "lft", "rgt", "childrenCount", "depth");
+	}
+	
+	/**
+	 * Updates shadow lft, rgt and depth of all nodes in given tree - indexes are not changed, shadow indexes are published 
+	 * into indexes by one statement later. Not numbered nodes are cleared.
+	 *
+	 * @param tree numbered tree
+	 * @param storeChildrenCount true - children count is stored (indexes are numbered with gaps), false - stored children count is cleared
+	 * @return updated rows count
+	 * @since 1.3.0
+	 */
+	public int updateShadowIndexes(ForestIndexTree tree, boolean storeChildrenCount) {
+		return updateIndexes(tree, storeChildrenCount, "shadowLft", "shadowRgt", "shadowChildrenCount", "shadowDepth");
+	}
+	
+	/**
+	 * Updates shadow lft, rgt and depth of given nodes - used by chunked rebuild (e.g. one chunk of nodes in pre-order).
+	 *
+	 * @param tree numbered tree
+	 * @param slots nodes positions
+	 * @param from the first updated position in given slots (inclusive)
+	 * @param to the last updated position in given slots (exclusive)
+	 * @param storeChildrenCount true - children count is stored (indexes are numbered with gaps), false - stored children count is cleared
+	 * @return updated rows count
+	 * @since 1.3.0
+	 */
+	public int updateShadowIndexes(ForestIndexTree tree, int[] slots, int from, int to, boolean storeChildrenCount) {
+		Assert.notNull(slots, "Slots are required.");
+		Assert.isTrue(from >= 0 && from <= to && to <= slots.length, "Updated positions are out of slots range.");
+		//
+		return updateIndexes(tree, Arrays.stream(slots, from, to), storeChildrenCount, "shadowLft", "shadowRgt", "shadowChildrenCount", "shadowDepth");
+	}
+	
+	private int updateIndexes(ForestIndexTree tree, boolean storeChildrenCount, String lft, String rgt, String childrenCount, String depth) {
+		Assert.notNull(tree, "Tree is required.");
+		//
+		return updateIndexes(tree, IntStream.range(0, tree.size()), storeChildrenCount, lft, rgt, childrenCount, depth);
+	}
+	
+	private int updateIndexes(ForestIndexTree tree, IntStream slots, boolean storeChildrenCount, String lft, String rgt, String childrenCount, String depth) {
+		Assert.notNull(tree, "Tree is required.");
+		//
+		AbstractEntityPersister persister = getPersister();
+		String sql = MessageFormat.format("update {0} set {1} = ?, {2} = ?, {3} = ?, {4} = ? where {5} = ?",
+				persister.getTableName(),
+				getColumnName(persister, lft),
+				getColumnName(persister, rgt),
+				getColumnName(persister, childrenCount),
+				getColumnName(persister, depth),
+				persister.getIdentifierColumnNames()[0]);
+		//
+		int[] updated = new int[1];
+		entityManager.unwrap(Session.class).doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				int batched = 0;
+				for (PrimitiveIterator.OfInt iterator = slots.iterator(); iterator.hasNext();) {
+					int slot = iterator.nextInt();
+					setLong(statement, 1, tree.getLft(slot));
+					setLong(statement, 2, tree.getRgt(slot));
+					setInteger(statement, 3, storeChildrenCount ? tree.getChildrenCount(slot) : null);
+					setInteger(statement, 4, tree.getDepth(slot));
+					statement.setLong(5, tree.getId(slot));
+					statement.addBatch();
+					if (++batched % batchSize == 0) {
+						updated[0] += executeBatch(statement);
+					}
+				}
+				if (batched % batchSize != 0) {
+					updated[0] += executeBatch(statement);
+				}
+			}
+		});
+		return updated[0];
+	}
+
+	/**
+	 * Returns {@code true}, when index identifiers can be generated before insert - JDBC batch insert is supported.
+	 * Identity columns are not supported.
+	 *
+	 * @return
+	 */
+	public boolean supportsInsert() {
+		return !(getPersister().getIdentifierGenerator() instanceof PostInsertIdentifierGenerator);
+	}
+
+	/**
+	 * Inserts all numbered nodes of given tree as new indexes. Nodes are inserted in pre-order - parent is inserted before its children.
+	 * Identifiers are generated by index identifier generator (tree node identifiers are not used).
+	 *
+	 * @param forestTreeType tree type
+	 * @param tree numbered tree
+	 * @param contentIds content identifiers by tree node position ({@code null} for synthetic node without content)
+	 * @param storeChildrenCount true - children count is stored (indexes are numbered with gaps)
+	 * @return generated index identifiers by tree node position ({@code 0} for not numbered nodes)
+	 * @throws UnsupportedOperationException if identifiers cannot be generated before insert - see {@link #supportsInsert()}
+	 */
+	public long[] insertIndexes(String forestTreeType, ForestIndexTree tree, List<?> contentIds, boolean storeChildrenCount) {
+		return insertIndexes(forestTreeType, tree, contentIds, new long[tree.size()], storeChildrenCount);
+	}
+	
+	/**
+	 * Inserts numbered nodes of given tree as new indexes - nodes with given index identifier are already persisted 
+	 * (e.g. existing parents of appended sub trees), they are not inserted and their identifier is used as parent 
+	 * identifier of their children. Nodes are inserted in pre-order - parent is inserted before its children.
+	 *
+	 * @param forestTreeType tree type
+	 * @param tree numbered tree
+	 * @param contentIds content identifiers by tree node position ({@code null} for synthetic node without content)
+	 * @param indexIds persisted index identifiers by tree node position ({@code 0} for new nodes) - generated identifiers are filled
+	 * @param storeChildrenCount true - children count is stored (indexes are numbered with gaps)
+	 * @return generated (and given) index identifiers by tree node position ({@code 0} for not numbered nodes)
+	 * @throws UnsupportedOperationException if identifiers cannot be generated before insert - see {@link #supportsInsert()}
+	 * @since 1.3.0
+	 */
+	public long[] insertIndexes(String forestTreeType, ForestIndexTree tree, List<?> contentIds, long[] indexIds, boolean storeChildrenCount) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(tree, "Tree is required.");
+		Assert.notNull(contentIds, "Content identifiers are required.");
+		Assert.isTrue(contentIds.size() == tree.size(), "Content identifier has to be given for each tree node.");
+		Assert.notNull(indexIds, "Index identifiers are required.");
+		Assert.isTrue(indexIds.length == tree.size(), "Index identifier has to be given for each tree node.");
+		//
+		AbstractEntityPersister persister = getPersister();
+		IdentifierGenerator generator = persister.getIdentifierGenerator();
+		if (generator instanceof PostInsertIdentifierGenerator) {
+			throw new UnsupportedOperationException(MessageFormat.format("Index [{0}] identifiers are generated by database on insert, "
+					+ "batch insert is not supported.", indexClass));
+		}
+		String sql = MessageFormat.format("insert into {0} ({1}, {2}, {3}, {4}, {5}, {6}, {7}, {8}) values (?, ?, ?, ?, ?, ?, ?, ?)",
+				persister.getTableName(),
+				persister.getIdentifierColumnNames()[0],
+				getColumnName(persister, "forestTreeType"),
+				getColumnName(persister, "contentId"),
+				getColumnName(persister, "parent"),
+				getColumnName(persister, "lft"),
+				getColumnName(persister, "rgt"),
+				getColumnName(persister, "childrenCount"),
+				getColumnName(persister, "depth"));
+		//
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		int[] preOrder = generateIds(session, generator, tree, indexIds);
+		session.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				int batched = 0;
+				for (int slot : preOrder) {
+					int parentSlot = tree.getParentSlot(slot);
+					statement.setLong(1, indexIds[slot]);
+					statement.setString(2, forestTreeType);
+					persister.getPropertyType("contentId").nullSafeSet(statement, contentIds.get(slot), 3, session);
+					setLong(statement, 4, parentSlot < 0 ? null : indexIds[parentSlot]);
+					statement.setLong(5, tree.getLft(slot));
+					statement.setLong(6, tree.getRgt(slot));
+					setInteger(statement, 7, storeChildrenCount ? tree.getChildrenCount(slot) : null);
+					setInteger(statement, 8, tree.getDepth(slot));
+					statement.addBatch();
+					if (++batched % batchSize == 0) {
+						executeBatch(statement);
+					}
+				}
+				if (batched % batchSize != 0) {
+					executeBatch(statement);
+				}
+			}
+		});
+		return indexIds;
+	}
+
+	/**
+	 * Updates lft, rgt, children count, depth and parent of given unit of work nodes.
+	 *
+	 * @param nodes stored nodes - parents have to be stored (or inserted) before
+	 * @return updated rows count
+	 * @since 1.3.0
+	 */
+	public int updateIndexes(List<? extends ForestIndexUnitOfWork.Node<?>> nodes) {
+		Assert.notNull(nodes, "Nodes are required.");
+		//
+		AbstractEntityPersister persister = getPersister();
+		String sql = MessageFormat.format("update {0} set {1} = ?, {2} = ?, {3} = ?, {4} = ?, {5} = ? where {6} = ?",
+				persister.getTableName(),
+				getColumnName(persister, "lft"),
+				getColumnName(persister, "rgt"),
+				getColumnName(persister, "childrenCount"),
+				getColumnName(persister, "depth"),
+				getColumnName(persister, "parent"),
+				persister.getIdentifierColumnNames()[0]);
+		//
+		int[] updated = new int[1];
+		entityManager.unwrap(Session.class).doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				int batched = 0;
+				for (ForestIndexUnitOfWork.Node<?> node : nodes) {
+					statement.setLong(1, node.getLft());
+					statement.setLong(2, node.getRgt());
+					setInteger(statement, 3, node.getChildrenCount());
+					statement.setInt(4, node.getDepth());
+					setLong(statement, 5, node.getParent() == null ? null : node.getParent().getId());
+					statement.setLong(6, node.getId());
+					statement.addBatch();
+					if (++batched % batchSize == 0) {
+						updated[0] += executeBatch(statement);
+					}
+				}
+				if (batched % batchSize != 0) {
+					updated[0] += executeBatch(statement);
+				}
+			}
+		});
+		return updated[0];
+	}
+	
+	/**
+	 * Inserts given new unit of work nodes as new indexes. Identifiers are generated by index identifier generator
+	 * and set to nodes.
+	 *
+	 * @param forestTreeType tree type
+	 * @param nodes new nodes in pre-order - parent is inserted before its children
+	 * @return inserted rows count
+	 * @throws UnsupportedOperationException if identifiers cannot be generated before insert - see {@link #supportsInsert()}
+	 * @since 1.3.0
+	 */
+	public int insertIndexes(String forestTreeType, List<? extends ForestIndexUnitOfWork.Node<?>> nodes) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(nodes, "Nodes are required.");
+		//
+		AbstractEntityPersister persister = getPersister();
+		IdentifierGenerator generator = persister.getIdentifierGenerator();
+		if (generator instanceof PostInsertIdentifierGenerator) {
+			throw new UnsupportedOperationException(MessageFormat.format("Index [{0}] identifiers are generated by database on insert, "
+					+ "batch insert is not supported.", indexClass));
+		}
+		String sql = MessageFormat.format("insert into {0} ({1}, {2}, {3}, {4}, {5}, {6}, {7}, {8}) values (?, ?, ?, ?, ?, ?, ?, ?)",
+				persister.getTableName(),
+				persister.getIdentifierColumnNames()[0],
+				getColumnName(persister, "forestTreeType"),
+				getColumnName(persister, "contentId"),
+				getColumnName(persister, "parent"),
+				getColumnName(persister, "lft"),
+				getColumnName(persister, "rgt"),
+				getColumnName(persister, "childrenCount"),
+				getColumnName(persister, "depth"));
+		//
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		for (ForestIndexUnitOfWork.Node<?> node : nodes) {
+			node.setId(((Number) generator.generate(session, null)).longValue());
+		}
+		session.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				int batched = 0;
+				for (ForestIndexUnitOfWork.Node<?> node : nodes) {
+					statement.setLong(1, node.getId());
+					statement.setString(2, forestTreeType);
+					persister.getPropertyType("contentId").nullSafeSet(statement, node.getContentId(), 3, session);
+					setLong(statement, 4, node.getParent() == null ? null : node.getParent().getId());
+					statement.setLong(5, node.getLft());
+					statement.setLong(6, node.getRgt());
+					setInteger(statement, 7, node.getChildrenCount());
+					statement.setInt(8, node.getDepth());
+					statement.addBatch();
+					if (++batched % batchSize == 0) {
+						executeBatch(statement);
+					}
+				}
+				if (batched % batchSize != 0) {
+					executeBatch(statement);
+				}
+			}
+		});
+		return nodes.size();
+	}
+
+	/**
+	 * Updates materialized path and depth of all nodes in given tree - tree node identifiers are index identifiers.
+	 * Paths are computed in pre-order, only paths of the current branch are held in memory. Not numbered nodes are cleared.
+	 *
+	 * @param tree numbered tree
+	 * @return updated rows count
+	 * @since 1.3.0
+	 */
+	public int updatePaths(ForestIndexTree tree) {
+		Assert.notNull(tree, "Tree is required.");
+		//
+		AbstractEntityPersister persister = getPersister();
+		String sql = MessageFormat.format("update {0} set {1} = ?, {2} = ? where {3} = ?",
+				persister.getTableName(),
+				getColumnName(persister, "path"),
+				getColumnName(persister, "depth"),
+				persister.getIdentifierColumnNames()[0]);
+		long[] indexIds = new long[tree.size()];
+		for (int slot = 0; slot < tree.size(); slot++) {
+			indexIds[slot] = tree.getId(slot);
+		}
+		//
+		int[] updated = new int[1];
+		entityManager.unwrap(Session.class).doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				int[] batched = new int[1];
+				forEachPath(tree, tree.getPreOrder(), indexIds, (slot, path) -> {
+					statement.setString(1, path);
+					setInteger(statement, 2, tree.getDepth(slot));
+					statement.setLong(3, indexIds[slot]);
+					statement.addBatch();
+					if (++batched[0] % batchSize == 0) {
+						updated[0] += executeBatch(statement);
+					}
+				});
+				// not numbered nodes are cleared
+				for (int slot = 0; slot < tree.size(); slot++) {
+					if (!tree.isNumbered(slot)) {
+						statement.setNull(1, Types.VARCHAR);
+						statement.setNull(2, Types.INTEGER);
+						statement.setLong(3, indexIds[slot]);
+						statement.addBatch();
+						if (++batched[0] % batchSize == 0) {
+							updated[0] += executeBatch(statement);
+						}
+					}
+				}
+				if (batched[0] % batchSize != 0) {
+					updated[0] += executeBatch(statement);
+				}
+			}
+		});
+		return updated[0];
+	}
+	
+	/**
+	 * Inserts all numbered nodes of given tree as new indexes with materialized path and depth (lft and rgt are not filled). 
+	 * Nodes are inserted in pre-order - parent is inserted before its children. 
+	 * Identifiers are generated by index identifier generator (tree node identifiers are not used).
+	 *
+	 * @param forestTreeType tree type
+	 * @param tree numbered tree
+	 * @param contentIds content identifiers by tree node position ({@code null} for synthetic node without content)
+	 * @return generated index identifiers by tree node position ({@code 0} for not numbered nodes)
+	 * @throws UnsupportedOperationException if identifiers cannot be generated before insert - see {@link #supportsInsert()}
+	 * @since 1.3.0
+	 */
+	public long[] insertPaths(String forestTreeType, ForestIndexTree tree, List<?> contentIds) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(tree, "Tree is required.");
+		Assert.notNull(contentIds, "Content identifiers are required.");
+		Assert.isTrue(contentIds.size() == tree.size(), "Content identifier has to be given for each tree node.");
+		//
+		AbstractEntityPersister persister = getPersister();
+		IdentifierGenerator generator = persister.getIdentifierGenerator();
+		if (generator instanceof PostInsertIdentifierGenerator) {
+			throw new UnsupportedOperationException(MessageFormat.format("Index [{0}] identifiers are generated by database on insert, "
+					+ "batch insert is not supported.", indexClass));
+		}
+		String sql = MessageFormat.format("insert into {0} ({1}, {2}, {3}, {4}, {5}, {6}) values (?, ?, ?, ?, ?, ?)",
+				persister.getTableName(),
+				persister.getIdentifierColumnNames()[0],
+				getColumnName(persister, "forestTreeType"),
+				getColumnName(persister, "contentId"),
+				getColumnName(persister, "parent"),
+				getColumnName(persister, "depth"),
+				getColumnName(persister, "path"));
+		//
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		long[] indexIds = new long[tree.size()];
+		int[] preOrder = generateIds(session, generator, tree, indexIds);
+		session.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				int[] batched = new int[1];
+				forEachPath(tree, preOrder, indexIds, (slot, path) -> {
+					int parentSlot = tree.getParentSlot(slot);
+					statement.setLong(1, indexIds[slot]);
+					statement.setString(2, forestTreeType);
+					persister.getPropertyType("contentId").nullSafeSet(statement, contentIds.get(slot), 3, session);
+					setLong(statement, 4, parentSlot < 0 ? null : indexIds[parentSlot]);
+					setInteger(statement, 5, tree.getDepth(slot));
+					statement.setString(6, path);
+					statement.addBatch();
+					if (++batched[0] % batchSize == 0) {
+						executeBatch(statement);
+					}
+				});
+				if (batched[0] % batchSize != 0) {
+					executeBatch(statement);
+				}
+			}
+		});
+		return indexIds;
+	}
+
+	/**
+	 * Inserts all numbered nodes of given tree as new indexes without lft, rgt and path - tree structure (parent) only. 
+	 * Nodes are inserted in pre-order - parent is inserted before its children.
+	 * Identifiers are generated by index identifier generator (tree node identifiers are not used).
+	 *
+	 * @param forestTreeType tree type
+	 * @param tree numbered tree
+	 * @param contentIds content identifiers by tree node position ({@code null} for synthetic node without content)
+	 * @return generated index identifiers by tree node position ({@code 0} for not numbered nodes)
+	 * @throws UnsupportedOperationException if identifiers cannot be generated before insert - see {@link #supportsInsert()}
+	 * @since 1.3.0
+	 */
+	public long[] insertNodes(String forestTreeType, ForestIndexTree tree, List<?> contentIds) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(tree, "Tree is required.");
+		Assert.notNull(contentIds, "Content identifiers are required.");
+		Assert.isTrue(contentIds.size() == tree.size(), "Content identifier has to be given for each tree node.");
+		//
+		AbstractEntityPersister persister = getPersister();
+		IdentifierGenerator generator = persister.getIdentifierGenerator();
+		if (generator instanceof PostInsertIdentifierGenerator) {
+			throw new UnsupportedOperationException(MessageFormat.format("Index [{0}] identifiers are generated by database on insert, "
+					+ "batch insert is not supported.", indexClass));
+		}
+		String sql = MessageFormat.format("insert into {0} ({1}, {2}, {3}, {4}) values (?, ?, ?, ?)",
+				persister.getTableName(),
+				persister.getIdentifierColumnNames()[0],
+				getColumnName(persister, "forestTreeType"),
+				getColumnName(persister, "contentId"),
+				getColumnName(persister, "parent"));
+		//
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		long[] indexIds = new long[tree.size()];
+		int[] preOrder = generateIds(session, generator, tree, indexIds);
+		session.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				int batched = 0;
+				for (int slot : preOrder) {
+					int parentSlot = tree.getParentSlot(slot);
+					statement.setLong(1, indexIds[slot]);
+					statement.setString(2, forestTreeType);
+					persister.getPropertyType("contentId").nullSafeSet(statement, contentIds.get(slot), 3, session);
+					setLong(statement, 4, parentSlot < 0 ? null : indexIds[parentSlot]);
+					statement.addBatch();
+					if (++batched % batchSize == 0) {
+						executeBatch(statement);
+					}
+				}
+				if (batched % batchSize != 0) {
+					executeBatch(statement);
+				}
+			}
+		});
+		return indexIds;
+	}
+	
+	/**
+	 * Inserts closure table rows for all numbered nodes of given tree - relation to each ancestor and to node itself.
+	 * Closures are computed in pre-order, only the current branch is held in memory.
+	 * 
+	 * @param forestTreeType tree type
+	 * @param tree numbered tree
+	 * @param indexIds index identifiers by tree node position
+	 * @param closureClass closure entity
+	 * @return inserted closures count
+	 * @throws UnsupportedOperationException if closure identifiers cannot be generated before insert
+	 * @since 1.3.0
+	 */
+	public int insertClosures(String forestTreeType, ForestIndexTree tree, long[] indexIds, Class<? extends ForestIndexClosure> closureClass) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(tree, "Tree is required.");
+		Assert.notNull(indexIds, "Index identifiers are required.");
+		Assert.isTrue(indexIds.length == tree.size(), "Index identifier has to be given for each tree node.");
+		Assert.notNull(closureClass, "Closure class is required.");
+		//
+		AbstractEntityPersister persister = getPersister(closureClass);
+		IdentifierGenerator generator = persister.getIdentifierGenerator();
+		if (generator instanceof PostInsertIdentifierGenerator) {
+			throw new UnsupportedOperationException(MessageFormat.format("Closure [{0}] identifiers are generated by database on insert, "
+					+ "batch insert is not supported.", closureClass));
+		}
+		String sql = MessageFormat.format("insert into {0} ({1}, {2}, {3}, {4}, {5}) values (?, ?, ?, ?, ?)",
+				persister.getTableName(),
+				persister.getIdentifierColumnNames()[0],
+				getColumnName(persister, "forestTreeType"),
+				getColumnName(persister, "ancestorId"),
+				getColumnName(persister, "descendantId"),
+				getColumnName(persister, "distance"));
+		//
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		int[] inserted = new int[1];
+		session.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				// ancestors of the current branch - the nearest first
+				Deque<Integer> branch = new ArrayDeque<>();
+				for (int slot : tree.getPreOrder()) {
+					int parentSlot = tree.getParentSlot(slot);
+					while (!branch.isEmpty() && branch.peek() != parentSlot) {
+						branch.pop();
+					}
+					branch.push(slot);
+					int distance = 0;
+					for (int ancestorSlot : branch) {
+						statement.setLong(1, ((Number) generator.generate(session, null)).longValue());
+						statement.setString(2, forestTreeType);
+						statement.setLong(3, indexIds[ancestorSlot]);
+						statement.setLong(4, indexIds[slot]);
+						statement.setInt(5, distance++);
+						statement.addBatch();
+						if (++inserted[0] % batchSize == 0) {
+							executeBatch(statement);
+						}
+					}
+				}
+				if (inserted[0] % batchSize != 0) {
+					executeBatch(statement);
+				}
+			}
+		});
+		return inserted[0];
+	}
+
+	protected AbstractEntityPersister getPersister() {
+		return getPersister(indexClass);
+	}
+	
+	/**
+	 * Persister of given entity.
+	 * 
+	 * @param entityClass index or closure class
+	 * @return
+	 * @throws UnsupportedOperationException if entity is not mapped to table
+	 * @since 1.3.0
+	 */
+	protected AbstractEntityPersister getPersister(Class<?> entityClass) {
+		EntityPersister persister = entityManager
+				.getEntityManagerFactory()
+				.unwrap(SessionFactoryImplementor.class)
+				.getMetamodel()
+				.entityPersister(entityClass);
+		if (!(persister instanceof AbstractEntityPersister)) {
+			throw new UnsupportedOperationException(MessageFormat.format("Entity [{0}] is not mapped to table, "
+					+ "batch statements are not supported.", entityClass));
+		}
+		return (AbstractEntityPersister) persister;
+	}
+
+	protected String getColumnName(AbstractEntityPersister persister, String propertyName) {
+		return persister.getPropertyColumnNames(propertyName)[0];
+	}
+
+	/**
+	 * Generates identifiers for new nodes.
+	 * 
+	 * @return new nodes positions in pre-order
+	 */
+	private static int[] generateIds(SessionImplementor session, IdentifierGenerator generator, ForestIndexTree tree, long[] indexIds) {
+		int[] preOrder = Arrays
+				.stream(tree.getPreOrder())
+				.filter(slot -> indexIds[slot] == 0)
+				.toArray();
+		for (int slot : preOrder) {
+			Serializable id = generator.generate(session, null);
+			indexIds[slot] = ((Number) id).longValue();
+		}
+		return preOrder;
+	}
+	
+	/**
+	 * Computes materialized paths for given nodes in pre-order - only paths of the current branch are held.
+	 * 
+	 * @param tree numbered tree
+	 * @param preOrder nodes positions in pre-order - parent has to be before its children
+	 * @param indexIds index identifiers by tree node position
+	 * @param consumer path consumer
+	 */
+	private static void forEachPath(ForestIndexTree tree, int[] preOrder, long[] indexIds, PathConsumer consumer) throws SQLException {
+		Deque<Integer> slots = new ArrayDeque<>();
+		Deque<String> paths = new ArrayDeque<>();
+		for (int slot : preOrder) {
+			int parentSlot = tree.getParentSlot(slot);
+			while (!slots.isEmpty() && slots.peek() != parentSlot) {
+				slots.pop();
+				paths.pop();
+			}
+			String path = ForestIndexPath.append(paths.peek(), indexIds[slot]);
+			consumer.accept(slot, path);
+			slots.push(slot);
+			paths.push(path);
+		}
+	}
+	
+	@FunctionalInterface
+	private interface PathConsumer {
+		
+		void accept(int slot, String path) throws SQLException;
+	}
+
+	private static void setLong(PreparedStatement statement, int parameterIndex, Long value) throws SQLException {
+		if (value == null) {
+			statement.setNull(parameterIndex, Types.BIGINT);
+		} else {
+			statement.setLong(parameterIndex, value);
+		}
+	}
+
+	private static void setInteger(PreparedStatement statement, int parameterIndex, Integer value) throws SQLException {
+		if (value == null) {
+			statement.setNull(parameterIndex, Types.INTEGER);
+		} else {
+			statement.setInt(parameterIndex, value);
+		}
+	}
+
+	private static int executeBatch(PreparedStatement statement) throws SQLException {
+		int count = 0;
+		for (int result : statement.executeBatch()) {
+			if (result > 0) {
+				count += result;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,172 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.text.MessageFormat;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexMetadata;
+import eu.bcvsolutions.forest.index.repository.ForestIndexMetadataRepository;
+
+/**
+ * Maintains tree type metadata - see {@link ForestIndexMetadata}.
+ *
+ * Metadata are updated by index service in the same transaction as indexes (see {@link AbstractForestIndexService#setMetadataManager(ForestIndexMetadataManager)})
+ * by bulk updates - version is increased by database. Metadata are created with the first write operation on tree type.
+ * Returned metadata are detached - actual values are loaded by each call.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ *
+ * @param <MD> metadata type
+ */
+public class ForestIndexMetadataManager<MD extends ForestIndexMetadata> {
+
+	private final ForestIndexMetadataRepository<MD> repository;
+	private final Class<MD> metadataClass;
+	private final EntityManager entityManager;
+
+	public ForestIndexMetadataManager(
+			ForestIndexMetadataRepository<MD> repository,
+			Class<MD> metadataClass,
+			EntityManager entityManager) {
+		Assert.notNull(repository, "Metadata repository is required.");
+		Assert.notNull(metadataClass, "Metadata class is required.");
+		Assert.notNull(entityManager, "Entity manager is required.");
+		//
+		this.repository = repository;
+		this.metadataClass = metadataClass;
+		this.entityManager = entityManager;
+	}
+
+	/**
+	 * Returns actual metadata of given tree type - one primary key lookup.
+	 *
+	 * @param forestTreeType
+	 * @return detached metadata or {@code null}, when tree type was not written yet
+	 */
+	public MD getMetadata(String forestTreeType) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		//
+		MD metadata = repository.findById(forestTreeType).orElse(null);
+		if (metadata != null && entityManager.contains(metadata)) {
+			// metadata are updated by bulk updates - cached instance would be obsolete
+			entityManager.detach(metadata);
+		}
+		return metadata;
+	}
+
+	/**
+	 * Returns indexes count of given tree type.
+	 *
+	 * @param forestTreeType
+	 * @return count or {@code null}, when tree type was not written yet
+	 */
+	public Long getNodeCount(String forestTreeType) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		//
+		return repository.findNodeCount(forestTreeType);
+	}
+
+	/**
+	 * Updates root and adds indexes count of given tree type - version is increased.
+	 *
+	 * @param forestTreeType
+	 * @param rootId
+	 * @param maxRgt
+	 * @param addedNodes added (positive) or removed (negative) indexes count
+	 * @throws IllegalStateException if metadata don't exist - use {@link #reset(String, Long, Long, long)} at first
+	 */
+	public void update(String forestTreeType, Long rootId, Long maxRgt, long addedNodes) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		//
+		if (repository.updateMetadata(forestTreeType, rootId, maxRgt, addedNodes) == 0) {
+			throw new IllegalStateException(String.format("Metadata of tree type [%s] don't exist.", forestTreeType));
+		}
+	}
+
+	/**
+	 * Sets root and indexes count of given tree type (metadata are created, if needed) - version is increased, rebuild is finished.
+	 *
+	 * @param forestTreeType
+	 * @param rootId
+	 * @param maxRgt
+	 * @param nodeCount
+	 */
+	public void reset(String forestTreeType, Long rootId, Long maxRgt, long nodeCount) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		//
+		if (repository.resetMetadata(forestTreeType, rootId, maxRgt, nodeCount) == 0) {
+			MD metadata = createMetadataInstance(forestTreeType);
+			metadata.setRootId(rootId);
+			metadata.setMaxRgt(maxRgt);
+			metadata.setNodeCount(nodeCount);
+			create(metadata);
+		}
+	}
+
+	/**
+	 * Starts or finishes rebuild of given tree type (metadata are created, if needed) - version is increased.
+	 *
+	 * @param forestTreeType
+	 * @param rebuilding
+	 */
+	public void setRebuilding(String forestTreeType, boolean rebuilding) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		//
+		if (repository.updateRebuilding(forestTreeType, rebuilding) == 0) {
+			MD metadata = createMetadataInstance(forestTreeType);
+			metadata.setRebuilding(rebuilding);
+			create(metadata);
+		}
+	}
+
+	/**
+	 * Saves chunked rebuild checkpoint of given tree type - version is not increased.
+	 *
+	 * @param forestTreeType
+	 * @param position pre-order position of the next node or {@code null} - checkpoint is cleared
+	 * @param counter lft of the next node
+	 * @param checkpointVersion tree version, when chunked rebuild was started
+	 * @throws IllegalStateException if metadata don't exist - use {@link #setRebuilding(String, boolean)} at first
+	 */
+	public void setCheckpoint(String forestTreeType, Long position, Long counter, Long checkpointVersion) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		//
+		if (repository.updateCheckpoint(forestTreeType, position, counter, checkpointVersion) == 0) {
+			throw new IllegalStateException(String.format("Metadata of tree type [%s] don't exist.", forestTreeType));
+		}
+	}
+
+	/**
+	 * Persists new metadata - metadata are flushed and detached, next changes are made by bulk updates.
+	 *
+	 * @param metadata
+	 */
+	private void create(MD metadata) {
+		metadata.setVersion(1L);
+		entityManager.persist(metadata);
+		entityManager.flush();
+		entityManager.detach(metadata);
+	}
+
+	/**
+	 * Create new metadata instance.
+	 *
+	 * @param forestTreeType
+	 * @return
+	 * @throws IllegalArgumentException when metadata class does not define default constructor.
+	 */
+	protected MD createMetadataInstance(String forestTreeType) {
+		try {
+			MD metadata = metadataClass.getDeclaredConstructor().newInstance();
+			metadata.setForestTreeType(forestTreeType);
+			return metadata;
+		} catch (IllegalArgumentException | InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException | SecurityException o_O) {
+			throw new IllegalArgumentException(MessageFormat.format("[{0}] does not support creating new instance. "
+					+ "Fix forest index metadata class - add default constructor.", metadataClass), o_O);
+		}
+	}
+}
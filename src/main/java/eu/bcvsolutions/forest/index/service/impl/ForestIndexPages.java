@@ -0,0 +1,80 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+
+/**
+ * Pages of all children without count query - total is computed from parent's nested set interval {@code (rgt - lft - 1) / 2}.
+ * Count query is required, when parent is not indexed or interval contains gaps (sparse numbering).
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public final class ForestIndexPages {
+
+	private ForestIndexPages() {
+	}
+
+	/**
+	 * Returns true, when all children count of given parent can be computed from its interval - parent is indexed
+	 * and interval is numbered without gaps (stored children count, if any, corresponds to interval). Interval of root 
+	 * of tree scoped by content roots contains gaps between root scopes.
+	 *
+	 * @param parent
+	 * @return
+	 */
+	public static boolean isCounted(ForestIndex<?, ?> parent) {
+		if (parent == null) {
+			return false;
+		}
+		if (parent.getParent() == null && parent.getTreeId() != null) {
+			return false;
+		}
+		return isCounted(parent.getLft(), parent.getRgt(), parent.getChildrenCount());
+	}
+	
+	/**
+	 * Returns true, when all children count can be computed from given interval - see {@link #isCounted(ForestIndex)}.
+	 * 
+	 * @param lft parent lft
+	 * @param rgt parent rgt
+	 * @param childrenCount stored children count, {@code null} - indexes are numbered without gaps
+	 * @return
+	 */
+	public static boolean isCounted(Long lft, Long rgt, Integer childrenCount) {
+		if (lft == null || rgt == null) {
+			return false;
+		}
+		return childrenCount == null || rgt - lft - 1 == 2L * childrenCount;
+	}
+	
+	/**
+	 * All children count computed from given interval numbered without gaps.
+	 * 
+	 * @param lft parent lft
+	 * @param rgt parent rgt
+	 * @return
+	 */
+	public static long getChildrenCount(long lft, long rgt) {
+		return (rgt - lft - 1) / 2;
+	}
+	
+	/**
+	 * Creates page of all children - total supplier is called, only when total cannot be resolved from loaded content 
+	 * (e.g. full page, which is not the last one, is loaded).
+	 *
+	 * @param content loaded children
+	 * @param pageable
+	 * @param total total supplier - computed (see {@link #isCounted(ForestIndex)}) or count query
+	 * @return
+	 */
+	public static <T> Page<T> getPage(List<T> content, Pageable pageable, LongSupplier total) {
+		return PageableExecutionUtils.getPage(content, pageable == null ? Pageable.unpaged() : pageable, total);
+	}
+}
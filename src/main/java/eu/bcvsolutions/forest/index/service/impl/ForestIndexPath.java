@@ -0,0 +1,102 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.entity.AbstractForestIndex;
+
+/**
+ * Materialized path encoding - path is composed from fixed-width segments, each segment is encoded index identifier
+ * (base 36, left padded with zeros). Path contains all ancestors from root and node itself, e.g. root {@code 0000000000001}, 
+ * root child {@code 00000000000010000000000002}.
+ * 
+ * Descendants are found by path prefix ({@code like 'path_%'}), ancestors by decoded identifiers.
+ * Encoded segments are ordered as identifiers - ordering by path returns nodes in pre-order.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public final class ForestIndexPath {
+	
+	public static final int SEGMENT_LENGTH = 13; // Long.MAX_VALUE in base 36
+	public static final int MAX_DEPTH = AbstractForestIndex.PATH_LENGTH / SEGMENT_LENGTH - 1; // root has depth 0
+	private static final int RADIX = 36;
+	
+	private ForestIndexPath() {
+	}
+
+	/**
+	 * Encodes index identifier into path segment.
+	 * 
+	 * @param id index identifier
+	 * @return fixed-width segment
+	 */
+	public static String encode(long id) {
+		Assert.isTrue(id >= 0, "Index identifier cannot be negative.");
+		//
+		return StringUtils.leftPad(Long.toString(id, RADIX), SEGMENT_LENGTH, '0');
+	}
+	
+	/**
+	 * Appends node segment to parent path.
+	 * 
+	 * @param parentPath parent path - {@code null} for root
+	 * @param id node identifier
+	 * @return node path
+	 */
+	public static String append(String parentPath, long id) {
+		if (parentPath == null) {
+			return encode(id);
+		}
+		checkDepth(getDepth(parentPath) + 1);
+		//
+		return parentPath + encode(id);
+	}
+	
+	/**
+	 * Checks node depth - stored path length is limited (see {@link AbstractForestIndex#PATH_LENGTH}).
+	 * 
+	 * @param depth node depth ({@code 0} - root)
+	 * @throws IllegalArgumentException if path of node in given depth cannot be stored
+	 */
+	public static void checkDepth(int depth) {
+		if (depth > MAX_DEPTH) {
+			throw new IllegalArgumentException(String.format("Node depth [%s] exceeds maximum depth [%s] of materialized path "
+					+ "- path length is limited to [%s] characters.", depth, MAX_DEPTH, AbstractForestIndex.PATH_LENGTH));
+		}
+	}
+	
+	/**
+	 * Decodes all identifiers in path (root first).
+	 * 
+	 * @param path
+	 * @return index identifiers - ancestors and node itself
+	 */
+	public static List<Long> decode(String path) {
+		List<Long> ids = new ArrayList<>();
+		if (path == null) {
+			return ids;
+		}
+		Assert.isTrue(path.length() % SEGMENT_LENGTH == 0, "Path is corrupted - segments have to be fixed-width.");
+		//
+		for (int start = 0; start < path.length(); start += SEGMENT_LENGTH) {
+			ids.add(Long.parseLong(path.substring(start, start + SEGMENT_LENGTH), RADIX));
+		}
+		return ids;
+	}
+	
+	/**
+	 * Node depth by path.
+	 * 
+	 * @param path
+	 * @return depth ({@code 0} - root)
+	 */
+	public static int getDepth(String path) {
+		Assert.hasLength(path, "Path is required.");
+		//
+		return path.length() / SEGMENT_LENGTH - 1;
+	}
+}
@@ -0,0 +1,534 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import org.springframework.scheduling.support.TaskUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.ErrorHandler;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Write-behind queue of index operations - content is indexed asynchronously after business transaction is committed.
+ *
+ * Operations are enqueued after transaction is committed (rolled back operations are discarded). Operations on the same content
+ * are coalesced - e.g. create and two moves are indexed as one create with the last parent. Background worker (one thread per tree type)
+ * drains the queue in batches - one transaction and one {@link ForestIndexService#indexAll(String, java.util.Collection)} per batch.
+ * Queue is bounded - producer waits for free capacity (back-pressure) before operation is registered in business transaction.
+ * Use {@link #awaitIndexed(Serializable)} or {@link #flush()}, when indexes have to be read after they are written.
+ *
+ * Failed batch is processed again operation by operation, failed operations are given to error handler (see {@link #setErrorHandler(ErrorHandler)}).
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ *
+ * @param <CONTENT_ID> content identifier - e.g. {@code Long} or {@link UUID} is preferred
+ */
+public class ForestIndexQueue<CONTENT_ID extends Serializable> {
+
+	public static final int DEFAULT_CAPACITY = 10000;
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	//
+	private final ForestIndexService<?, CONTENT_ID> forestIndexService;
+	private final TransactionTemplate transactionTemplate;
+	private final int capacity;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private final Condition processed = lock.newCondition();
+	private final Map<String, TreeTypeQueue> queues = new HashMap<>();
+	private int size = 0; // pending and reserved operations
+	private long sequence = 0;
+	private boolean shutdown = false;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private long timeout = 0; // wait until capacity is available
+	private ErrorHandler errorHandler = TaskUtils.LOG_AND_SUPPRESS_ERROR_HANDLER;
+
+	public ForestIndexQueue(ForestIndexService<?, CONTENT_ID> forestIndexService, PlatformTransactionManager transactionManager) {
+		this(forestIndexService, transactionManager, DEFAULT_CAPACITY);
+	}
+
+	public ForestIndexQueue(ForestIndexService<?, CONTENT_ID> forestIndexService, PlatformTransactionManager transactionManager, int capacity) {
+		Assert.notNull(forestIndexService, "Index service is required.");
+		Assert.notNull(transactionManager, "Transaction manager is required.");
+		Assert.isTrue(capacity > 0, "Capacity has to be positive.");
+		//
+		this.forestIndexService = forestIndexService;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Enqueues create or update index for given content - see {@link ForestIndexService#index(String, Serializable, Serializable)}.
+	 *
+	 * @param forestTreeType
+	 * @param contentId
+	 * @param parentContentId content's parent id
+	 * @throws IllegalStateException if queue is full (after timeout) or queue is shut down
+	 */
+	public void index(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		enqueue(new Operation(forestTreeType, contentId, parentContentId, false));
+	}
+
+	/**
+	 * Enqueues drop index for given content (with sub tree) - see {@link ForestIndexService#dropIndex(Serializable)}.
+	 *
+	 * @param forestTreeType
+	 * @param contentId
+	 * @throws IllegalStateException if queue is full (after timeout) or queue is shut down
+	 */
+	public void dropIndex(String forestTreeType, CONTENT_ID contentId) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		enqueue(new Operation(forestTreeType, contentId, null, true));
+	}
+
+	/**
+	 * Waits, until all committed operations are processed.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void flush() throws InterruptedException {
+		flush(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Waits, until all committed operations are processed.
+	 *
+	 * @param timeout
+	 * @param unit
+	 * @return true - operations were processed, false - timeout elapsed
+	 * @throws InterruptedException
+	 */
+	public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lock();
+		try {
+			Map<TreeTypeQueue, Long> enqueued = new HashMap<>();
+			queues.values().forEach(queue -> enqueued.put(queue, queue.enqueued));
+			while (enqueued.entrySet().stream().anyMatch(entry -> entry.getKey().completed < entry.getValue())) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = processed.awaitNanos(nanos);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits, until all committed operations of given content are processed.
+	 *
+	 * @param contentId
+	 * @throws InterruptedException
+	 */
+	public void awaitIndexed(CONTENT_ID contentId) throws InterruptedException {
+		awaitIndexed(contentId, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Waits, until all committed operations of given content are processed.
+	 *
+	 * @param contentId
+	 * @param timeout
+	 * @param unit
+	 * @return true - operations were processed, false - timeout elapsed
+	 * @throws InterruptedException
+	 */
+	public boolean awaitIndexed(CONTENT_ID contentId, long timeout, TimeUnit unit) throws InterruptedException {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		long nanos = unit.toNanos(timeout);
+		lock.lock();
+		try {
+			while (queues.values().stream().anyMatch(queue -> queue.sequences.containsKey(contentId))) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = processed.awaitNanos(nanos);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns tree type of pending operations of given content - used, when content is already deleted and is not indexed yet.
+	 *
+	 * @param contentId
+	 * @return tree type or {@code null}, when content has no committed pending operation
+	 */
+	public String findForestTreeType(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		lock.lock();
+		try {
+			return queues
+					.values()
+					.stream()
+					.filter(queue -> queue.sequences.containsKey(contentId))
+					.map(queue -> queue.forestTreeType)
+					.findFirst()
+					.orElse(null);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Pending operations count - operations registered in running transactions are included.
+	 *
+	 * @return
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops workers - pending operations are not processed (use {@link #flush()} before).
+	 */
+	public void shutdown() {
+		lock.lock();
+		try {
+			shutdown = true;
+			queues.values().forEach(queue -> queue.notEmpty.signalAll());
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Maximum operations count processed in one transaction.
+	 *
+	 * @return
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Maximum operations count processed in one transaction.
+	 *
+	 * @param batchSize
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size has to be positive.");
+		//
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Maximum time to wait for free capacity.
+	 *
+	 * @return timeout in milliseconds, {@code 0} - wait until capacity is available
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Maximum time to wait for free capacity. Set timeout, when index operations are enqueued in transaction,
+	 * which writes the same tree type synchronously (worker would wait for tree type lock).
+	 *
+	 * @param timeout timeout in milliseconds, {@code 0} - wait until capacity is available
+	 */
+	public void setTimeout(long timeout) {
+		Assert.isTrue(timeout >= 0, "Timeout cannot be negative.");
+		//
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Handler of failed operations.
+	 *
+	 * @return
+	 */
+	public ErrorHandler getErrorHandler() {
+		return errorHandler;
+	}
+
+	/**
+	 * Handler of failed operations - failures are logged by default.
+	 *
+	 * @param errorHandler
+	 */
+	public void setErrorHandler(ErrorHandler errorHandler) {
+		Assert.notNull(errorHandler, "Error handler is required.");
+		//
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * Capacity is reserved in producer thread, operation is published after transaction is committed.
+	 *
+	 * @param operation
+	 */
+	private void enqueue(Operation operation) {
+		reserve();
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			publish(operation);
+			return;
+		}
+		// synchronization is registered for each operation - synchronizations are suspended with transaction (e.g. REQUIRES_NEW)
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+			@Override
+			public void afterCompletion(int status) {
+				if (status == TransactionSynchronization.STATUS_COMMITTED) {
+					publish(operation);
+				} else {
+					release(1);
+				}
+			}
+		});
+	}
+
+	private void reserve() {
+		lock.lock();
+		try {
+			long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+			while (size >= capacity && !shutdown) {
+				if (timeout <= 0) {
+					notFull.await();
+				} else if (nanos <= 0) {
+					throw new IllegalStateException(String.format("Index queue is full [%s], operation was not enqueued in [%s] ms.", capacity, timeout));
+				} else {
+					nanos = notFull.awaitNanos(nanos);
+				}
+			}
+			if (shutdown) {
+				throw new IllegalStateException("Index queue is shut down.");
+			}
+			size++;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Waiting for index queue capacity was interrupted.", ex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release(int count) {
+		lock.lock();
+		try {
+			size -= count;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void publish(Operation operation) {
+		lock.lock();
+		try {
+			TreeTypeQueue queue = queues.get(operation.forestTreeType);
+			if (queue == null) {
+				queue = new TreeTypeQueue(operation.forestTreeType);
+				queues.put(operation.forestTreeType, queue);
+			}
+			if (!queue.add(operation, ++sequence)) {
+				// coalesced with pending operation
+				size--;
+				notFull.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Enqueued operation.
+	 */
+	private final class Operation {
+
+		private final String forestTreeType;
+		private final CONTENT_ID contentId;
+		private final CONTENT_ID parentContentId;
+		private final boolean drop;
+
+		private Operation(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId, boolean drop) {
+			this.forestTreeType = forestTreeType;
+			this.contentId = contentId;
+			this.parentContentId = parentContentId;
+			this.drop = drop;
+		}
+	}
+
+	/**
+	 * Coalesced operations - all indexes are processed before drops. Index operation enqueued after drop starts the next round
+	 * - original order of dependent operations is preserved.
+	 */
+	private final class Round {
+
+		private final Map<CONTENT_ID, CONTENT_ID> indexes = new LinkedHashMap<>(); // content - parent content
+		private final Set<CONTENT_ID> drops = new LinkedHashSet<>();
+		private long sequence = 0; // the last operation sequence
+
+		private int size() {
+			return indexes.size() + drops.size();
+		}
+	}
+
+	/**
+	 * Pending operations of one tree type with its worker.
+	 */
+	private final class TreeTypeQueue implements Runnable {
+
+		private final String forestTreeType;
+		private final Condition notEmpty = lock.newCondition();
+		private final LinkedList<Round> rounds = new LinkedList<>();
+		private final Map<CONTENT_ID, Long> sequences = new HashMap<>(); // the last pending operation sequence by content
+		private long enqueued = 0; // the last enqueued operation sequence
+		private long completed = 0; // the last processed operation sequence
+
+		private TreeTypeQueue(String forestTreeType) {
+			this.forestTreeType = forestTreeType;
+			//
+			Thread worker = new Thread(this, String.format("forest-index-queue-%s", forestTreeType));
+			worker.setDaemon(true);
+			worker.start();
+		}
+
+		/**
+		 * Adds operation into the last round.
+		 *
+		 * @param operation
+		 * @param sequence operation sequence
+		 * @return true - new operation, false - operation was coalesced with pending operation
+		 */
+		private boolean add(Operation operation, long sequence) {
+			Round round = rounds.peekLast();
+			boolean added;
+			if (operation.drop) {
+				if (round == null) {
+					round = new Round();
+					rounds.add(round);
+				}
+				// index before drop is processed, drop is not coalesced with index
+				added = round.drops.add(operation.contentId);
+			} else {
+				if (round == null || !round.drops.isEmpty()) {
+					round = new Round();
+					rounds.add(round);
+				}
+				// create + move + move = create with the last parent
+				added = !round.indexes.containsKey(operation.contentId);
+				round.indexes.put(operation.contentId, operation.parentContentId);
+			}
+			round.sequence = sequence;
+			enqueued = sequence;
+			sequences.put(operation.contentId, sequence);
+			notEmpty.signal();
+			return added;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				List<Round> batch = new ArrayList<>();
+				int count = 0;
+				lock.lock();
+				try {
+					while (rounds.isEmpty() && !shutdown) {
+						notEmpty.awaitUninterruptibly();
+					}
+					if (shutdown) {
+						return;
+					}
+					// whole rounds are processed
+					while (!rounds.isEmpty() && (batch.isEmpty() || count + rounds.peek().size() <= batchSize)) {
+						Round round = rounds.poll();
+						batch.add(round);
+						count += round.size();
+					}
+				} finally {
+					lock.unlock();
+				}
+				//
+				process(batch);
+				//
+				long batchSequence = batch.get(batch.size() - 1).sequence;
+				lock.lock();
+				try {
+					completed = batchSequence;
+					sequences.values().removeIf(operationSequence -> operationSequence <= batchSequence);
+					size -= count;
+					notFull.signalAll();
+					processed.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+
+		private void process(List<Round> batch) {
+			try {
+				transactionTemplate.execute(status -> {
+					batch.forEach(round -> {
+						if (!round.indexes.isEmpty()) {
+							forestIndexService.indexAll(forestTreeType, round.indexes
+									.entrySet()
+									.stream()
+									.map(index -> new ForestContentNode<>(index.getKey(), index.getValue()))
+									.collect(Collectors.toList()));
+						}
+						round.drops.forEach(forestIndexService::dropIndex);
+					});
+					return null;
+				});
+			} catch (RuntimeException ex) {
+				// batch is rolled back - operations are processed one by one
+				batch.forEach(round -> {
+					round.indexes.forEach((contentId, parentContentId) -> {
+						execute(() -> forestIndexService.index(forestTreeType, contentId, parentContentId));
+					});
+					round.drops.forEach(contentId -> {
+						execute(() -> forestIndexService.dropIndex(contentId));
+					});
+				});
+			}
+		}
+
+		private void execute(Runnable operation) {
+			try {
+				transactionTemplate.execute(status -> {
+					operation.run();
+					return null;
+				});
+			} catch (RuntimeException ex) {
+				errorHandler.handleError(ex);
+			}
+		}
+	}
+}
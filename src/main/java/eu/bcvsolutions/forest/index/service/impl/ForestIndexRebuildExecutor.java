@@ -0,0 +1,115 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexRebuildResult;
+
+/**
+ * Rebuilds more tree types concurrently - tree types are independent (indexes of different tree types are never shared),
+ * so each tree type is rebuilt by its own thread in its own transaction (and database connection).
+ * 
+ * Threads are bounded by parallelism (see {@link #ForestIndexRebuildExecutor(PlatformTransactionManager, int)}) - 
+ * keep parallelism lower than connection pool size. Failed tree type is rolled back and reported in result, 
+ * other tree types are rebuilt. Used by {@code rebuildAll} of index and content services, when executor is set.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public class ForestIndexRebuildExecutor {
+	
+	public static final int DEFAULT_PARALLELISM = 4;
+	//
+	private final TransactionTemplate transactionTemplate;
+	private final int parallelism;
+	
+	public ForestIndexRebuildExecutor(PlatformTransactionManager transactionManager) {
+		this(transactionManager, DEFAULT_PARALLELISM);
+	}
+	
+	public ForestIndexRebuildExecutor(PlatformTransactionManager transactionManager, int parallelism) {
+		Assert.notNull(transactionManager, "Transaction manager is required.");
+		Assert.isTrue(parallelism > 0, "Parallelism has to be positive.");
+		//
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Rebuilds given tree types concurrently - given rebuild is called for each tree type in new transaction.
+	 * Returns after all tree types are processed.
+	 * 
+	 * @param forestTreeTypes tree types - duplicates are rebuilt once
+	 * @param rebuild rebuild of one tree type - e.g. {@link AbstractForestIndexService#rebuild(String)}
+	 * @return rebuilt tree types and failures per tree type
+	 * @throws IllegalStateException if calling thread is interrupted - running rebuilds are interrupted
+	 */
+	public ForestIndexRebuildResult rebuildAll(Collection<String> forestTreeTypes, Consumer<String> rebuild) {
+		Assert.notNull(forestTreeTypes, "Tree types are required.");
+		Assert.notNull(rebuild, "Rebuild is required.");
+		Set<String> types = new LinkedHashSet<>(forestTreeTypes);
+		types.forEach(forestTreeType -> Assert.hasLength(forestTreeType, "Tree type is required."));
+		//
+		long started = System.nanoTime();
+		List<String> rebuilt = new ArrayList<>();
+		Map<String, Throwable> failures = new LinkedHashMap<>();
+		if (types.isEmpty()) {
+			return new ForestIndexRebuildResult(rebuilt, failures, System.nanoTime() - started);
+		}
+		AtomicInteger threads = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, types.size()), runnable -> {
+			return new Thread(runnable, String.format("forest-index-rebuild-%s", threads.incrementAndGet()));
+		});
+		try {
+			Map<String, Future<?>> futures = new LinkedHashMap<>();
+			types.forEach(forestTreeType -> {
+				futures.put(forestTreeType, executor.submit(() -> {
+					transactionTemplate.execute(status -> {
+						rebuild.accept(forestTreeType);
+						return null;
+					});
+				}));
+			});
+			for (Map.Entry<String, Future<?>> future : futures.entrySet()) {
+				try {
+					future.getValue().get();
+					rebuilt.add(future.getKey());
+				} catch (ExecutionException ex) {
+					failures.put(future.getKey(), ex.getCause());
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(String.format("Rebuild of tree types %s was interrupted.", types), ex);
+		} finally {
+			executor.shutdownNow();
+		}
+		return new ForestIndexRebuildResult(rebuilt, failures, System.nanoTime() - started);
+	}
+	
+	/**
+	 * Maximum tree types rebuilt concurrently.
+	 * 
+	 * @return
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+}
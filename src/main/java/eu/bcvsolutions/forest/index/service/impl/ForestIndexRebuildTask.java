@@ -0,0 +1,308 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexMetadata;
+import eu.bcvsolutions.forest.index.domain.ForestIndexRebuildProgress;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexRebuildListener;
+
+/**
+ * Chunked, resumable rebuild of one tree type - long running alternative to {@link AbstractForestIndexService#rebuild(String)}.
+ *
+ * Stored tree structure is numbered in memory (the same numbering as rebuild), shadow indexes are written in chunks of nodes
+ * in pre-order - one transaction for each chunk (see {@link #setChunkSize(int)}). Checkpoint (pre-order position and lft
+ * of the next node) is saved into tree type metadata with each chunk, so rebuild interrupted by failure or restart continues
+ * from the last checkpoint, when it is run again. Readers use current indexes, until all chunks are written - shadow indexes
+ * are published by one statement at the end (see {@link AbstractForestIndexService#rebuildShadow(String)}).
+ *
+ * Huge tree can be rebuilt in parallel (see {@link #setParallelism(int)}) - tree is numbered by fork join pool and chunks
+ * of disjoint lft ranges are written concurrently, each chunk in its own transaction (and database connection). 
+ * Checkpoint is saved, when all chunks before are written. Numbering is the same as sequential rebuild.
+ *
+ * Writers are not locked between chunks - rebuild is started again, when tree is changed during rebuild (tree version
+ * in metadata differs). Tree type metadata are required - see {@link AbstractForestIndexService#setMetadataManager(ForestIndexMetadataManager)}.
+ * Run the task outside of transaction - each chunk has to be committed.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public class ForestIndexRebuildTask {
+
+	public static final int DEFAULT_CHUNK_SIZE = 10000;
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final int DEFAULT_PARALLELISM = 1; // sequential
+	//
+	private final AbstractForestIndexService<?, ?> forestIndexService;
+	private final TransactionTemplate transactionTemplate;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private ForestIndexRebuildListener listener;
+
+	public ForestIndexRebuildTask(AbstractForestIndexService<?, ?> forestIndexService, PlatformTransactionManager transactionManager) {
+		Assert.notNull(forestIndexService, "Index service is required.");
+		Assert.notNull(transactionManager, "Transaction manager is required.");
+		//
+		this.forestIndexService = forestIndexService;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Rebuilds indexes of given tree type - continues from the last checkpoint, if previous rebuild was interrupted
+	 * and tree was not changed after.
+	 *
+	 * @param forestTreeType
+	 * @return final progress
+	 * @throws IllegalStateException if tree is changed during each attempt (see {@link #setMaxAttempts(int)}) or metadata are not maintained
+	 */
+	public ForestIndexRebuildProgress run(String forestTreeType) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(forestIndexService.getMetadataManager(), "Chunked rebuild requires tree type metadata - checkpoint is stored in metadata.");
+		//
+		ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		try {
+			for (int attempt = 0; attempt < maxAttempts; attempt++) {
+				ForestIndexRebuildProgress progress = attempt(forestTreeType, pool);
+				if (progress != null) {
+					return progress;
+				}
+			}
+		} finally {
+			if (pool != null) {
+				pool.shutdownNow();
+			}
+		}
+		throw new IllegalStateException(String.format("Tree type [%s] was changed during each of [%s] rebuild attempts.",
+				forestTreeType, maxAttempts));
+	}
+
+	/**
+	 * One rebuild attempt.
+	 *
+	 * @param forestTreeType
+	 * @param pool pool for parallel rebuild or {@code null} - rebuild is sequential
+	 * @return final progress or {@code null}, when tree was changed during rebuild
+	 */
+	private ForestIndexRebuildProgress attempt(String forestTreeType, ForkJoinPool pool) {
+		long started = System.nanoTime();
+		ForestIndexMetadataManager<?> metadataManager = forestIndexService.getMetadataManager();
+		ForestIndexMetadata metadata = transactionTemplate.execute(status -> metadataManager.getMetadata(forestTreeType));
+		boolean resume = hasCheckpoint(metadata);
+		long version = resume 
+				? metadata.getCheckpointVersion() 
+				: transactionTemplate.execute(status -> forestIndexService.startShadowRebuild(forestTreeType));
+		//
+		// version is checked before tree structure is loaded - tree changed after is detected by the next chunk
+		ForestIndexTree tree = transactionTemplate.execute(status -> {
+			return metadataManager.getMetadata(forestTreeType).getVersion() == version 
+					? forestIndexService.numberTree(forestTreeType, pool) 
+					: null;
+		});
+		if (tree == null) {
+			return null;
+		}
+		int[] preOrder = tree.getPreOrder();
+		int from = 0;
+		if (resume) {
+			if (!isResumable(metadata, tree, preOrder)) {
+				// numbering is different (e.g. changed sparse gap) - checkpoint is obsolete
+				transactionTemplate.execute(status -> {
+					metadataManager.setCheckpoint(forestTreeType, null, null, null);
+					return null;
+				});
+				return null;
+			}
+			from = metadata.getCheckpointPosition().intValue();
+		}
+		int resumed = from;
+		while (from < preOrder.length) {
+			int chunkFrom = from;
+			int chunkTo;
+			if (pool == null) {
+				chunkTo = (int) Math.min((long) from + chunkSize, preOrder.length);
+				if (!transactionTemplate.execute(status -> forestIndexService.writeShadowChunk(forestTreeType, tree, preOrder, chunkFrom, chunkTo, version))) {
+					return null;
+				}
+			} else {
+				// one chunk for each thread
+				chunkTo = (int) Math.min((long) from + (long) chunkSize * parallelism, preOrder.length);
+				if (!writeChunks(forestTreeType, tree, preOrder, chunkFrom, chunkTo, version, pool)
+						|| !transactionTemplate.execute(status -> forestIndexService.saveShadowCheckpoint(forestTreeType, tree, preOrder, chunkTo, version))) {
+					return null;
+				}
+			}
+			from = chunkTo;
+			fireProgress(new ForestIndexRebuildProgress(forestTreeType, from, preOrder.length, from - resumed, System.nanoTime() - started, false));
+		}
+		if (!transactionTemplate.execute(status -> forestIndexService.publishShadowRebuild(forestTreeType, version))) {
+			return null;
+		}
+		ForestIndexRebuildProgress progress = new ForestIndexRebuildProgress(
+				forestTreeType, preOrder.length, preOrder.length, preOrder.length - resumed, System.nanoTime() - started, true);
+		fireProgress(progress);
+		return progress;
+	}
+
+	/**
+	 * Writes chunks of given range concurrently - each chunk in its own transaction. Waits for all chunks, even if one of them fails.
+	 *
+	 * @return {@code false}, when tree was changed after rebuild was started
+	 */
+	private boolean writeChunks(String forestTreeType, ForestIndexTree tree, int[] preOrder, int from, int to, long version, ForkJoinPool pool) {
+		List<Future<Boolean>> chunks = new ArrayList<>();
+		for (int chunkFrom = from; chunkFrom < to; chunkFrom += chunkSize) {
+			int rangeFrom = chunkFrom;
+			int rangeTo = Math.min(chunkFrom + chunkSize, to);
+			chunks.add(pool.submit(() -> {
+				return transactionTemplate.execute(status -> forestIndexService.writeShadowRange(forestTreeType, tree, preOrder, rangeFrom, rangeTo, version));
+			}));
+		}
+		boolean written = true;
+		RuntimeException failure = null;
+		for (Future<Boolean> chunk : chunks) {
+			try {
+				written &= chunk.get();
+			} catch (ExecutionException ex) {
+				if (failure == null) {
+					failure = ex.getCause() instanceof RuntimeException 
+							? (RuntimeException) ex.getCause() 
+							: new IllegalStateException(String.format("Chunk of tree type [%s] was not written.", forestTreeType), ex.getCause());
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(String.format("Rebuild of tree type [%s] was interrupted.", forestTreeType), ex);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return written;
+	}
+
+	/**
+	 * Returns {@code true}, when interrupted rebuild saved checkpoint and tree was not changed after rebuild was started.
+	 *
+	 * @param metadata
+	 * @return
+	 */
+	private boolean hasCheckpoint(ForestIndexMetadata metadata) {
+		return metadata != null
+				&& metadata.isRebuilding()
+				&& metadata.getCheckpointPosition() != null
+				&& metadata.getCheckpointVersion() != null
+				&& metadata.getCheckpointVersion() == metadata.getVersion();
+	}
+
+	/**
+	 * Returns {@code true}, when computed numbering is the same as numbering of interrupted rebuild - lft of the next node
+	 * is the same as saved running counter.
+	 *
+	 * @param metadata
+	 * @param tree
+	 * @param preOrder
+	 * @return
+	 */
+	private boolean isResumable(ForestIndexMetadata metadata, ForestIndexTree tree, int[] preOrder) {
+		long position = metadata.getCheckpointPosition();
+		Long counter = metadata.getCheckpointCounter();
+		if (position > preOrder.length) {
+			return false;
+		}
+		if (position == preOrder.length) {
+			return counter == null;
+		}
+		return counter == null ? position == 0 : counter.equals(tree.getLft(preOrder[(int) position]));
+	}
+
+	private void fireProgress(ForestIndexRebuildProgress progress) {
+		if (listener != null) {
+			listener.onProgress(progress);
+		}
+	}
+
+	/**
+	 * Nodes count written in one transaction.
+	 *
+	 * @return
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Nodes count written in one transaction.
+	 *
+	 * @param chunkSize
+	 */
+	public void setChunkSize(int chunkSize) {
+		Assert.isTrue(chunkSize > 0, "Chunk size has to be positive.");
+		//
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Rebuild attempts - rebuild is started again, when tree is changed during rebuild.
+	 *
+	 * @return
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Rebuild attempts - rebuild is started again, when tree is changed during rebuild.
+	 *
+	 * @param maxAttempts
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		Assert.isTrue(maxAttempts > 0, "Max attempts has to be positive.");
+		//
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Threads used for numbering and writing chunks.
+	 *
+	 * @return
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Threads used for numbering and writing chunks - keep parallelism lower than connection pool size.
+	 *
+	 * @param parallelism {@code 1} - rebuild is sequential
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "Parallelism has to be positive.");
+		//
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Progress listener.
+	 *
+	 * @return listener or {@code null}, when progress is not listened
+	 */
+	public ForestIndexRebuildListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Progress listener - called after each chunk and after indexes are published.
+	 *
+	 * @param listener listener or {@code null}, when progress is not listened
+	 */
+	public void setListener(ForestIndexRebuildListener listener) {
+		this.listener = listener;
+	}
+}
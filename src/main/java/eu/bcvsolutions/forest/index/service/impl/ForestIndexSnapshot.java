@@ -0,0 +1,313 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexIntervals;
+
+/**
+ * Immutable in-memory snapshot of nested set indexes of one tree type - indexes are held in primitive arrays ordered by lft.
+ * 
+ * Ancestor, children count and depth questions are answered without allocation and without database access, 
+ * lists of ancestors and descendants allocate returned list only. Snapshot is never changed - new snapshot is built, 
+ * when tree is changed (see {@link ForestIndexSnapshotManager}), so snapshot can be read by any number of threads without locking.
+ * 
+ * Indexes without content (synthetic root) are held in arrays, but they are not returned.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ *
+ * @param <CONTENT_ID> content identifier - e.g. {@code Long} or {@link UUID} is preferred
+ */
+public final class ForestIndexSnapshot<CONTENT_ID extends Serializable> {
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	//
+	private final String forestTreeType;
+	private final long version;
+	private final int size;
+	private final long[] lft;
+	private final long[] rgt;
+	private final int[] parent; // parent slot, -1 - root
+	private final int[] depth;
+	private final Object[] contentIds;
+	private final Map<CONTENT_ID, Integer> slots;
+	
+	private ForestIndexSnapshot(String forestTreeType, long version, int size, long[] lft, long[] rgt, int[] parent, int[] depth, 
+			Object[] contentIds, Map<CONTENT_ID, Integer> slots) {
+		this.forestTreeType = forestTreeType;
+		this.version = version;
+		this.size = size;
+		this.lft = lft;
+		this.rgt = rgt;
+		this.parent = parent;
+		this.depth = depth;
+		this.contentIds = contentIds;
+		this.slots = slots;
+	}
+	
+	/**
+	 * Builds snapshot from given indexes.
+	 * 
+	 * @param forestTreeType tree type
+	 * @param version snapshot version - newer snapshot has higher version
+	 * @param indexes indexes {@code [contentId, id, parentId, lft, rgt]} ordered by lft - see {@link eu.bcvsolutions.forest.index.repository.ForestIndexRepository#streamIndexes(String)}
+	 * @return built snapshot
+	 */
+	@SuppressWarnings("unchecked")
+	public static <CONTENT_ID extends Serializable> ForestIndexSnapshot<CONTENT_ID> of(String forestTreeType, long version, Stream<Object[]> indexes) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(indexes, "Indexes are required.");
+		//
+		int[] size = new int[1];
+		long[][] lft = { new long[INITIAL_CAPACITY] };
+		long[][] rgt = { new long[INITIAL_CAPACITY] };
+		int[][] parent = { new int[INITIAL_CAPACITY] };
+		int[][] depth = { new int[INITIAL_CAPACITY] };
+		Object[][] contentIds = { new Object[INITIAL_CAPACITY] };
+		Map<CONTENT_ID, Integer> slots = new HashMap<>();
+		Map<Long, Integer> indexSlots = new HashMap<>(); // used for parent resolving only
+		//
+		indexes.forEach(index -> {
+			int slot = size[0]++;
+			if (slot == lft[0].length) {
+				int capacity = slot * 2;
+				lft[0] = Arrays.copyOf(lft[0], capacity);
+				rgt[0] = Arrays.copyOf(rgt[0], capacity);
+				parent[0] = Arrays.copyOf(parent[0], capacity);
+				depth[0] = Arrays.copyOf(depth[0], capacity);
+				contentIds[0] = Arrays.copyOf(contentIds[0], capacity);
+			}
+			CONTENT_ID contentId = (CONTENT_ID) index[0];
+			Long parentId = index[2] == null ? null : ((Number) index[2]).longValue();
+			Integer parentSlot = parentId == null ? null : indexSlots.get(parentId);
+			//
+			contentIds[0][slot] = contentId;
+			lft[0][slot] = ((Number) index[3]).longValue();
+			rgt[0][slot] = ((Number) index[4]).longValue();
+			Assert.isTrue(slot == 0 || lft[0][slot] > lft[0][slot - 1], "Indexes have to be ordered by lft.");
+			parent[0][slot] = parentSlot == null ? -1 : parentSlot;
+			depth[0][slot] = parentSlot == null ? 0 : depth[0][parentSlot] + 1;
+			indexSlots.put(((Number) index[1]).longValue(), slot);
+			if (contentId != null) {
+				slots.put(contentId, slot);
+			}
+		});
+		return new ForestIndexSnapshot<>(forestTreeType, version, size[0], lft[0], rgt[0], parent[0], depth[0], contentIds[0], slots);
+	}
+	
+	/**
+	 * Tree type.
+	 * 
+	 * @return
+	 */
+	public String getForestTreeType() {
+		return forestTreeType;
+	}
+	
+	/**
+	 * Snapshot version - newer snapshot has higher version.
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Indexes count (including indexes without content).
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns {@code true}, when given content is indexed in snapshot.
+	 * 
+	 * @param contentId
+	 * @return
+	 */
+	public boolean contains(CONTENT_ID contentId) {
+		return slots.containsKey(contentId);
+	}
+	
+	/**
+	 * Returns {@code true}, when the first content is ancestor (not only direct parent) of the second content.
+	 * 
+	 * @param ancestorContentId
+	 * @param descendantContentId
+	 * @return false, when content is not indexed in snapshot
+	 */
+	public boolean isAncestor(CONTENT_ID ancestorContentId, CONTENT_ID descendantContentId) {
+		Integer ancestor = slots.get(ancestorContentId);
+		Integer descendant = slots.get(descendantContentId);
+		if (ancestor == null || descendant == null) {
+			return false;
+		}
+		return lft[ancestor] < lft[descendant] && rgt[descendant] < rgt[ancestor];
+	}
+	
+	/**
+	 * All children count (recursively).
+	 * 
+	 * @param contentId
+	 * @return children count, {@code 0} when content is not indexed in snapshot
+	 */
+	public int getChildrenCount(CONTENT_ID contentId) {
+		Integer slot = slots.get(contentId);
+		if (slot == null) {
+			return 0;
+		}
+		return getSubTreeEnd(slot) - slot - 1;
+	}
+	
+	/**
+	 * Content depth - distance from tree root (content roots have depth {@code 1} - synthetic root has depth {@code 0}).
+	 * 
+	 * @param contentId
+	 * @return depth, {@code -1} when content is not indexed in snapshot
+	 */
+	public int getDepth(CONTENT_ID contentId) {
+		Integer slot = slots.get(contentId);
+		if (slot == null) {
+			return -1;
+		}
+		return depth[slot];
+	}
+	
+	/**
+	 * Parent content.
+	 * 
+	 * @param contentId
+	 * @return parent content identifier, {@code null} for content root or when content is not indexed in snapshot
+	 */
+	@SuppressWarnings("unchecked")
+	public CONTENT_ID getParent(CONTENT_ID contentId) {
+		Integer slot = slots.get(contentId);
+		if (slot == null || parent[slot] < 0) {
+			return null;
+		}
+		return (CONTENT_ID) contentIds[parent[slot]];
+	}
+	
+	/**
+	 * All content ancestors ordered from root.
+	 * 
+	 * @param contentId
+	 * @return ancestors, empty list when content is not indexed in snapshot
+	 */
+	@SuppressWarnings("unchecked")
+	public List<CONTENT_ID> getAncestors(CONTENT_ID contentId) {
+		Integer slot = slots.get(contentId);
+		if (slot == null) {
+			return Collections.emptyList();
+		}
+		List<CONTENT_ID> ancestors = new ArrayList<>(depth[slot]);
+		for (int ancestor = parent[slot]; ancestor >= 0; ancestor = parent[ancestor]) {
+			if (contentIds[ancestor] != null) {
+				ancestors.add((CONTENT_ID) contentIds[ancestor]);
+			}
+		}
+		Collections.reverse(ancestors);
+		return ancestors;
+	}
+	
+	/**
+	 * All content children (recursively) in pre-order.
+	 * 
+	 * @param contentId
+	 * @return children, empty list when content is not indexed in snapshot
+	 */
+	@SuppressWarnings("unchecked")
+	public List<CONTENT_ID> getDescendants(CONTENT_ID contentId) {
+		Integer slot = slots.get(contentId);
+		if (slot == null) {
+			return Collections.emptyList();
+		}
+		int end = getSubTreeEnd(slot);
+		List<CONTENT_ID> descendants = new ArrayList<>(end - slot - 1);
+		for (int descendant = slot + 1; descendant < end; descendant++) {
+			descendants.add((CONTENT_ID) contentIds[descendant]);
+		}
+		return descendants;
+	}
+	
+	/**
+	 * Direct content children ordered by lft.
+	 * 
+	 * @param contentId
+	 * @return children, empty list when content is not indexed in snapshot
+	 */
+	@SuppressWarnings("unchecked")
+	public List<CONTENT_ID> getChildren(CONTENT_ID contentId) {
+		Integer slot = slots.get(contentId);
+		if (slot == null) {
+			return Collections.emptyList();
+		}
+		int end = getSubTreeEnd(slot);
+		List<CONTENT_ID> children = new ArrayList<>();
+		// sub trees of children are skipped
+		for (int child = slot + 1; child < end; child = getSubTreeEnd(child)) {
+			children.add((CONTENT_ID) contentIds[child]);
+		}
+		return children;
+	}
+	
+	/**
+	 * Merged intervals of given contents sub trees - contents not indexed in snapshot are ignored.
+	 * 
+	 * @param contentIds sub tree roots
+	 * @return merged intervals
+	 */
+	public ForestIndexIntervals getIntervals(Collection<CONTENT_ID> contentIds) {
+		Assert.notNull(contentIds, "Content identifiers are required.");
+		//
+		return ForestIndexIntervals.of(forestTreeType, contentIds
+				.stream()
+				.map(slots::get)
+				.filter(Objects::nonNull)
+				.map(slot -> new Object[] { lft[slot], rgt[slot] }));
+	}
+	
+	/**
+	 * Returns {@code true}, when given content is in any of given intervals - intervals of another tree type are not evaluated.
+	 * 
+	 * @param intervals
+	 * @param contentId
+	 * @return false, when content is not indexed in snapshot
+	 */
+	public boolean isMember(ForestIndexIntervals intervals, CONTENT_ID contentId) {
+		Assert.notNull(intervals, "Intervals are required.");
+		//
+		Integer slot = slots.get(contentId);
+		if (slot == null || !forestTreeType.equals(intervals.getForestTreeType())) {
+			return false;
+		}
+		return intervals.contains(lft[slot]);
+	}
+	
+	/**
+	 * The first slot after sub tree of given slot - binary search of the first lft greater than sub tree root rgt.
+	 * 
+	 * @param slot sub tree root
+	 * @return slot after sub tree
+	 */
+	private int getSubTreeEnd(int slot) {
+		int index = Arrays.binarySearch(lft, slot + 1, size, rgt[slot]);
+		// rgt is never equal to lft of another index
+		return index < 0 ? -index - 1 : index;
+	}
+}
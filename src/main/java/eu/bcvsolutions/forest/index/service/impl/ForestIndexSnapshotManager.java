@@ -0,0 +1,136 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.io.Serializable;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.repository.ForestIndexRepository;
+
+/**
+ * Holds in-memory snapshots of nested set indexes by tree type - see {@link ForestIndexSnapshot}.
+ * 
+ * Snapshot is used only for tree types, which were loaded by {@link #load(String)}. Loaded snapshot is rebuilt by one streaming query, 
+ * when index service changes the tree (see {@link AbstractForestIndexService#setSnapshotManager(ForestIndexSnapshotManager)}) 
+ * - after transaction is committed. New snapshot replaces the previous one atomically, readers ({@link #getSnapshot(String)}) never lock 
+ * and see the previous snapshot until the new one is built.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ *
+ * @param <CONTENT_ID> content identifier - e.g. {@code Long} or {@link UUID} is preferred
+ */
+public class ForestIndexSnapshotManager<CONTENT_ID extends Serializable> {
+
+	private final ForestIndexRepository<?, CONTENT_ID> repository;
+	private final TransactionTemplate transactionTemplate;
+	private final TransactionTemplate afterCommitTransactionTemplate;
+	private final ConcurrentMap<String, ForestIndexSnapshot<CONTENT_ID>> snapshots = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+	
+	public ForestIndexSnapshotManager(ForestIndexRepository<?, CONTENT_ID> repository, PlatformTransactionManager transactionManager) {
+		Assert.notNull(repository, "Index repository is required.");
+		Assert.notNull(transactionManager, "Transaction manager is required.");
+		//
+		this.repository = repository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		// committed transaction cannot be used in after commit phase
+		this.afterCommitTransactionTemplate = new TransactionTemplate(transactionManager);
+		this.afterCommitTransactionTemplate.setReadOnly(true);
+		this.afterCommitTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
+	
+	/**
+	 * Returns the current snapshot of given tree type - without locking.
+	 * 
+	 * @param forestTreeType
+	 * @return snapshot or {@code null}, when snapshot is not used (loaded) for given tree type - database has to be used
+	 */
+	public ForestIndexSnapshot<CONTENT_ID> getSnapshot(String forestTreeType) {
+		return snapshots.get(forestTreeType);
+	}
+	
+	/**
+	 * Loads snapshot of given tree type (in the current transaction, if exists) - snapshot will be maintained from now.
+	 * 
+	 * @param forestTreeType
+	 * @return loaded snapshot (or newer snapshot loaded concurrently)
+	 */
+	public ForestIndexSnapshot<CONTENT_ID> load(String forestTreeType) {
+		return load(forestTreeType, transactionTemplate);
+	}
+	
+	/**
+	 * Snapshot of given tree type will not be used and maintained anymore.
+	 * 
+	 * @param forestTreeType
+	 */
+	public void evict(String forestTreeType) {
+		snapshots.remove(forestTreeType);
+	}
+	
+	/**
+	 * Tree of given type was changed - snapshot is rebuilt after the current transaction is committed 
+	 * (once per transaction) or immediately, if transaction is not active. Nothing is done, when snapshot is not used for given type.
+	 * 
+	 * @param forestTreeType
+	 */
+	public void invalidate(String forestTreeType) {
+		if (!snapshots.containsKey(forestTreeType)) {
+			return;
+		}
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			load(forestTreeType);
+			return;
+		}
+		@SuppressWarnings("unchecked")
+		Set<String> changedTreeTypes = (Set<String>) TransactionSynchronizationManager.getResource(this);
+		if (changedTreeTypes == null) {
+			Set<String> registeredTreeTypes = new LinkedHashSet<>();
+			TransactionSynchronizationManager.bindResource(this, registeredTreeTypes);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCommit() {
+					registeredTreeTypes.forEach(treeType -> {
+						load(treeType, afterCommitTransactionTemplate);
+					});
+				}
+				
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(ForestIndexSnapshotManager.this);
+				}
+			});
+			changedTreeTypes = registeredTreeTypes;
+		}
+		changedTreeTypes.add(forestTreeType);
+	}
+	
+	private ForestIndexSnapshot<CONTENT_ID> load(String forestTreeType, TransactionTemplate template) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		//
+		// version is assigned before indexes are read - snapshot loaded later contains newer changes
+		long version = versions.computeIfAbsent(forestTreeType, treeType -> new AtomicLong()).incrementAndGet();
+		ForestIndexSnapshot<CONTENT_ID> snapshot = template.execute(status -> {
+			try (Stream<Object[]> indexes = repository.streamIndexes(forestTreeType)) {
+				return ForestIndexSnapshot.<CONTENT_ID>of(forestTreeType, version, indexes);
+			}
+		});
+		return snapshots.merge(forestTreeType, snapshot, (previous, loaded) -> {
+			return previous.getVersion() > loaded.getVersion() ? previous : loaded;
+		});
+	}
+}
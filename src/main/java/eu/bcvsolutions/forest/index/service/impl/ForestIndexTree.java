@@ -0,0 +1,453 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import org.springframework.util.Assert;
+
+/**
+ * In-memory tree structure used for bulk index computing.
+ *
+ * Nodes are held in primitive arrays only (adjacency list and computed lft, rgt) - tree with milions of nodes can be numbered without
+ * entity instances and without database round trips. Nodes have to be added ordered by identifier (ascending), children are
+ * numbered in the same order.
+ *
+ * Tree is numbered by iterative depth first search - deep chains cannot overflow the stack. Huge tree can be numbered
+ * in parallel by {@link #number(long, long, ForkJoinPool)} - the same numbering.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public class ForestIndexTree {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final long NOT_NUMBERED = Long.MIN_VALUE;
+	private static final int PARALLEL_THRESHOLD = 4096; // nodes of one level numbered by one fork join task
+	//
+	private long[] ids = new long[INITIAL_CAPACITY];
+	private long[] parentIds = new long[INITIAL_CAPACITY];
+	private int size = 0;
+	//
+	private int[] parents; // parent slot, -1 = root, -2 = orphan (parent not found)
+	private int[] childOffsets; // children of slot i are stored in children[childOffsets[i], childOffsets[i + 1])
+	private int[] children;
+	private long[] lft;
+	private long[] rgt;
+	private int[] depths; // -1 = unknown depth (root depth is not given)
+	private int[] preOrder; // numbered slots in pre-order (ordered by lft)
+	private int numbered;
+	private long step;
+	private int[] cursor; // numbering - next child position by slot
+	private int[] stack; // numbering - dfs stack
+
+	/**
+	 * Adds node. Nodes have to be added ordered by identifier.
+	 *
+	 * @param id node identifier
+	 * @param parentId parent node identifier - {@code null} for root
+	 */
+	public void add(long id, Long parentId) {
+		Assert.isNull(parents, "Tree is already built, node cannot be added.");
+		Assert.isTrue(size == 0 || ids[size - 1] < id, "Nodes have to be added ordered by identifier.");
+		//
+		if (size == ids.length) {
+			int capacity = ids.length * 2;
+			ids = Arrays.copyOf(ids, capacity);
+			parentIds = Arrays.copyOf(parentIds, capacity);
+		}
+		ids[size] = id;
+		parentIds[size] = parentId == null ? Long.MIN_VALUE : parentId;
+		size++;
+	}
+
+	/**
+	 * Adds node given as projection {@code [id, parentId]}.
+	 *
+	 * @param row
+	 */
+	public void add(Object[] row) {
+		add(((Number) row[0]).longValue(), row[1] == null ? null : ((Number) row[1]).longValue());
+	}
+
+	/**
+	 * Nodes count.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Computes lft and rgt for all nodes - dense numbering without gaps, the first root starts with 1.
+	 *
+	 * @return this tree with computed indexes
+	 */
+	public ForestIndexTree number() {
+		return number(1L, 1L);
+	}
+
+	/**
+	 * Computes lft, rgt and depth for all nodes. Roots are numbered one after another (ordered by identifier), root depth is {@code 0}.
+	 * Nodes without existing parent (e.g. cycle or deleted parent) are not numbered - see {@link #isNumbered(int)}.
+	 *
+	 * @param start lft of the first root
+	 * @param step difference between two consecutive indexes ({@code 1} - dense numbering without gaps)
+	 * @return this tree with computed indexes
+	 */
+	public ForestIndexTree number(long start, long step) {
+		initNumbering(step);
+		long next = start;
+		for (int root = 0; root < size; root++) {
+			if (parents[root] == -1) {
+				next = numberSubTree(root, next, 0) + step;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Computes lft, rgt and depth for all nodes in parallel - the same numbering as {@link #number(long, long)}.
+	 * 
+	 * Nodes are split into levels by breadth first search, sub tree sizes are computed bottom-up (level by level, nodes of one level
+	 * in parallel), then each child gets its lft offset from parent's lft and sizes of its previous siblings top-down.
+	 * Nodes without existing parent are not numbered - see {@link #isNumbered(int)}.
+	 *
+	 * @param start lft of the first root
+	 * @param step difference between two consecutive indexes ({@code 1} - dense numbering without gaps)
+	 * @param pool pool used for computing nodes of one level
+	 * @return this tree with computed indexes
+	 */
+	public ForestIndexTree number(long start, long step, ForkJoinPool pool) {
+		Assert.notNull(pool, "Pool is required.");
+		//
+		initNumbering(step);
+		// levels - nodes reachable from roots in breadth first order, level starts are stored in cursor
+		int[] levels = stack;
+		int levelCount = 0;
+		int count = 0;
+		for (int root = 0; root < size; root++) {
+			if (parents[root] == -1) {
+				levels[count++] = root;
+			}
+		}
+		int head = 0;
+		while (head < count) {
+			cursor[levelCount++] = head;
+			int levelEnd = count;
+			for (; head < levelEnd; head++) {
+				int slot = levels[head];
+				for (int child = childOffsets[slot]; child < childOffsets[slot + 1]; child++) {
+					levels[count++] = children[child];
+				}
+			}
+		}
+		int reached = count;
+		int[] levelStarts = Arrays.copyOf(cursor, levelCount + 1);
+		levelStarts[levelCount] = reached;
+		//
+		// sub tree sizes - bottom-up, children are computed in previous level
+		int[] sizes = new int[size];
+		for (int level = levelCount - 1; level >= 0; level--) {
+			forEachNode(pool, levels, levelStarts[level], levelStarts[level + 1], slot -> {
+				int subTreeSize = 1;
+				for (int child = childOffsets[slot]; child < childOffsets[slot + 1]; child++) {
+					subTreeSize += sizes[children[child]];
+				}
+				sizes[slot] = subTreeSize;
+			});
+		}
+		//
+		// roots are numbered one after another, pre-order positions are stored in cursor
+		int[] positions = cursor;
+		long next = start;
+		int position = 0;
+		for (int index = levelStarts[0]; index < levelStarts[levelCount > 0 ? 1 : 0]; index++) {
+			int root = levels[index];
+			lft[root] = next;
+			depths[root] = 0;
+			positions[root] = position;
+			preOrder[position] = root;
+			position += sizes[root];
+			next += 2 * step * sizes[root];
+		}
+		// lft offsets - top-down, parent is computed in previous level
+		for (int level = 0; level < levelCount; level++) {
+			forEachNode(pool, levels, levelStarts[level], levelStarts[level + 1], slot -> {
+				rgt[slot] = lft[slot] + step * (2L * sizes[slot] - 1);
+				long childLft = lft[slot] + step;
+				int childPosition = positions[slot] + 1;
+				for (int index = childOffsets[slot]; index < childOffsets[slot + 1]; index++) {
+					int child = children[index];
+					lft[child] = childLft;
+					depths[child] = depths[slot] + 1;
+					positions[child] = childPosition;
+					preOrder[childPosition] = child;
+					childLft += 2 * step * sizes[child];
+					childPosition += sizes[child];
+				}
+			});
+		}
+		numbered = reached;
+		return this;
+	}
+	
+	/**
+	 * Calls given action for nodes on given positions - in parallel, when there are more nodes than threshold.
+	 */
+	private static void forEachNode(ForkJoinPool pool, int[] slots, int from, int to, IntConsumer action) {
+		if (to - from <= PARALLEL_THRESHOLD) {
+			for (int index = from; index < to; index++) {
+				action.accept(slots[index]);
+			}
+		} else {
+			pool.invoke(new NodesAction(slots, from, to, action));
+		}
+	}
+
+	/**
+	 * Computes lft, rgt and depth for all nodes. Each root is numbered from its own start and depth - used, when sub trees 
+	 * are appended into gaps under existing nodes or renumbered. Nodes without existing parent are not numbered - see {@link #isNumbered(int)}.
+	 *
+	 * @param starts lft of each root by node position (ordered by identifier) - values of not root nodes are not used
+	 * @param rootDepths depth of each root by node position (negative - unknown depth) - values of not root nodes are not used
+	 * @param step difference between two consecutive indexes ({@code 1} - dense numbering without gaps)
+	 * @return this tree with computed indexes
+	 */
+	public ForestIndexTree number(long[] starts, int[] rootDepths, long step) {
+		Assert.notNull(starts, "Starts are required.");
+		Assert.isTrue(starts.length >= size, "Start has to be given for each node.");
+		Assert.notNull(rootDepths, "Root depths are required.");
+		Assert.isTrue(rootDepths.length >= size, "Root depth has to be given for each node.");
+		//
+		initNumbering(step);
+		for (int root = 0; root < size; root++) {
+			if (parents[root] == -1) {
+				numberSubTree(root, starts[root], rootDepths[root] < 0 ? -1 : rootDepths[root]);
+			}
+		}
+		return this;
+	}
+
+	private void initNumbering(long step) {
+		Assert.isTrue(step > 0, "Step has to be positive.");
+		//
+		build();
+		this.step = step;
+		lft = new long[size];
+		rgt = new long[size];
+		depths = new int[size];
+		Arrays.fill(lft, NOT_NUMBERED);
+		cursor = new int[size];
+		stack = new int[size];
+		preOrder = new int[size];
+		numbered = 0;
+	}
+
+	/**
+	 * Numbers sub tree of given root by iterative depth first search.
+	 *
+	 * @param root root position
+	 * @param start root lft
+	 * @param rootDepth root depth ({@code -1} - unknown)
+	 * @return root rgt
+	 */
+	private long numberSubTree(int root, long start, int rootDepth) {
+		long next = start;
+		int top = 0;
+		stack[top] = root;
+		cursor[root] = childOffsets[root];
+		lft[root] = next;
+		depths[root] = rootDepth;
+		preOrder[numbered++] = root;
+		while (top >= 0) {
+			int slot = stack[top];
+			if (cursor[slot] < childOffsets[slot + 1]) {
+				int child = children[cursor[slot]++];
+				stack[++top] = child;
+				cursor[child] = childOffsets[child];
+				next += step;
+				lft[child] = next;
+				depths[child] = rootDepth < 0 ? -1 : rootDepth + top;
+				preOrder[numbered++] = child;
+			} else {
+				next += step;
+				rgt[slot] = next;
+				top--;
+			}
+		}
+		return rgt[root];
+	}
+
+	/**
+	 * Node position.
+	 *
+	 * @param id node identifier
+	 * @return node position (ordered by identifier) or {@code -1}, when node is not in tree
+	 */
+	public int indexOf(long id) {
+		int slot = Arrays.binarySearch(ids, 0, size, id);
+		return slot < 0 ? -1 : slot;
+	}
+
+	/**
+	 * Node identifier.
+	 *
+	 * @param slot node position (ordered by identifier)
+	 * @return
+	 */
+	public long getId(int slot) {
+		return ids[slot];
+	}
+
+	/**
+	 * Node parent identifier.
+	 *
+	 * @param slot node position (ordered by identifier)
+	 * @return parent identifier or {@code null} for root
+	 */
+	public Long getParentId(int slot) {
+		return parentIds[slot] == Long.MIN_VALUE ? null : parentIds[slot];
+	}
+
+	/**
+	 * Parent node position.
+	 *
+	 * @param slot node position (ordered by identifier)
+	 * @return parent position or {@code -1} for root or for node without existing parent
+	 */
+	public int getParentSlot(int slot) {
+		build();
+		//
+		return parents[slot] < 0 ? -1 : parents[slot];
+	}
+
+	/**
+	 * Numbered nodes positions in pre-order (ordered by lft) - parent is before its children.
+	 *
+	 * @return numbered nodes positions
+	 */
+	public int[] getPreOrder() {
+		Assert.notNull(preOrder, "Tree is not numbered.");
+		//
+		return Arrays.copyOf(preOrder, numbered);
+	}
+
+	/**
+	 * Returns {@code true}, when node was reached from root and indexes were computed.
+	 *
+	 * @param slot node position (ordered by identifier)
+	 * @return
+	 */
+	public boolean isNumbered(int slot) {
+		Assert.notNull(lft, "Tree is not numbered.");
+		//
+		return lft[slot] != NOT_NUMBERED;
+	}
+
+	/**
+	 * Computed lft.
+	 *
+	 * @param slot node position (ordered by identifier)
+	 * @return lft or {@code null}, when node is not numbered
+	 */
+	public Long getLft(int slot) {
+		return isNumbered(slot) ? lft[slot] : null;
+	}
+
+	/**
+	 * Computed rgt.
+	 *
+	 * @param slot node position (ordered by identifier)
+	 * @return rgt or {@code null}, when node is not numbered
+	 */
+	public Long getRgt(int slot) {
+		return isNumbered(slot) ? rgt[slot] : null;
+	}
+
+	/**
+	 * Computed depth - distance from root.
+	 *
+	 * @param slot node position (ordered by identifier)
+	 * @return depth or {@code null}, when node is not numbered or root depth is unknown
+	 */
+	public Integer getDepth(int slot) {
+		return isNumbered(slot) && depths[slot] >= 0 ? depths[slot] : null;
+	}
+
+	/**
+	 * All children count (recursively).
+	 *
+	 * @param slot node position (ordered by identifier)
+	 * @return children count or {@code null}, when node is not numbered
+	 */
+	public Integer getChildrenCount(int slot) {
+		return isNumbered(slot) ? (int) (((rgt[slot] - lft[slot]) / step - 1) / 2) : null;
+	}
+
+	/**
+	 * Resolves parent slots and builds children lists.
+	 */
+	private void build() {
+		if (parents != null) {
+			return;
+		}
+		parents = new int[size];
+		childOffsets = new int[size + 1];
+		for (int slot = 0; slot < size; slot++) {
+			if (parentIds[slot] == Long.MIN_VALUE) {
+				parents[slot] = -1;
+			} else {
+				int parent = Arrays.binarySearch(ids, 0, size, parentIds[slot]);
+				parents[slot] = parent < 0 ? -2 : parent;
+				if (parent >= 0) {
+					childOffsets[parent + 1]++;
+				}
+			}
+		}
+		for (int slot = 0; slot < size; slot++) {
+			childOffsets[slot + 1] += childOffsets[slot];
+		}
+		children = new int[childOffsets[size]];
+		int[] positions = Arrays.copyOf(childOffsets, size);
+		for (int slot = 0; slot < size; slot++) {
+			if (parents[slot] >= 0) {
+				children[positions[parents[slot]]++] = slot;
+			}
+		}
+	}
+
+	/**
+	 * Fork join action - calls action for nodes on given positions, positions are split in halves until threshold.
+	 */
+	private static class NodesAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		//
+		private final int[] slots;
+		private final int from;
+		private final int to;
+		private final IntConsumer action;
+
+		NodesAction(int[] slots, int from, int to, IntConsumer action) {
+			this.slots = slots;
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_THRESHOLD) {
+				for (int index = from; index < to; index++) {
+					action.accept(slots[index]);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new NodesAction(slots, from, middle, action), new NodesAction(slots, middle, to, action));
+		}
+	}
+}
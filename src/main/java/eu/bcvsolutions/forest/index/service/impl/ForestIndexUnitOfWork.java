@@ -0,0 +1,484 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.io.Serializable;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.service.api.ForestIndexBatch;
+
+/**
+ * In-memory unit of work for nested set indexes of one tree type.
+ *
+ * Stored indexes are loaded at first (ordered by lft), recorded operations (insert, move, drop) change in-memory tree only.
+ * When unit of work is numbered, net changes are computed:
+ * - shifts - intervals of stored indexes with the same lft (rgt, depth) offset, each interval is updated by one range statement
+ * - inserts - new indexes in pre-order (parent before children)
+ * - updates - stored indexes, which cannot be shifted (changed parent, changed children count or missing stored values)
+ * - deletes - dropped stored indexes (children before parents).
+ *
+ * Children are appended as the last children (the same as single operations), order of stored children is preserved.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ *
+ * @param <CONTENT_ID> content identifier - e.g. {@code Long} or {@link UUID} is preferred
+ */
+public class ForestIndexUnitOfWork<CONTENT_ID extends Serializable> implements ForestIndexBatch<CONTENT_ID> {
+
+	private final List<Node<CONTENT_ID>> stored = new ArrayList<>(); // ordered by stored lft
+	private final Map<CONTENT_ID, Node<CONTENT_ID>> contents = new HashMap<>();
+	private final List<Node<CONTENT_ID>> roots = new ArrayList<>();
+	private final List<Node<CONTENT_ID>> dropped = new ArrayList<>();
+	private List<Node<CONTENT_ID>> preOrder;
+	private boolean built = false;
+	private boolean changed = false;
+
+	/**
+	 * Adds stored index given as projection {@code [contentId, id, parentId, lft, rgt, depth, childrenCount]}.
+	 * Indexes have to be added ordered by lft (children are ordered by lft).
+	 *
+	 * @param row
+	 */
+	@SuppressWarnings("unchecked")
+	public void add(Object[] row) {
+		Assert.isTrue(!built, "Operations are recorded, stored index cannot be added.");
+		Assert.notNull(row, "Index is required.");
+		//
+		stored.add(new Node<>(
+				(CONTENT_ID) row[0],
+				((Number) row[1]).longValue(),
+				toLong(row[2]),
+				toLong(row[3]),
+				toLong(row[4]),
+				row[5] == null ? null : ((Number) row[5]).intValue(),
+				row[6] == null ? null : ((Number) row[6]).intValue()));
+	}
+
+	@Override
+	public void index(CONTENT_ID contentId, CONTENT_ID parentContentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		build();
+		//
+		Node<CONTENT_ID> parent;
+		if (parentContentId == null) {
+			parent = getRoot();
+		} else {
+			parent = contents.get(parentContentId);
+			if (parent == null) {
+				throw new UnsupportedOperationException(String.format("Parent [%s] doesn't have index - index parent at first.", parentContentId));
+			}
+		}
+		Node<CONTENT_ID> node = contents.get(contentId);
+		if (node == null) {
+			node = new Node<>(contentId, 0L, null, null, null, null, null);
+			contents.put(contentId, node);
+		} else if (node.parent == parent) {
+			// nothing to move
+			return;
+		} else {
+			for (Node<CONTENT_ID> ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+				if (ancestor == node) {
+					throw new IllegalArgumentException(MessageFormat.format("Content [{0}] cannot be moved under its own sub tree [{1}].",
+							contentId, parentContentId));
+				}
+			}
+			detach(node);
+		}
+		node.parent = parent;
+		parent.children.add(node);
+		changed = true;
+	}
+
+	@Override
+	public void dropIndex(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		build();
+		//
+		Node<CONTENT_ID> node = contents.get(contentId);
+		if (node == null) {
+			return;
+		}
+		detach(node);
+		Deque<Node<CONTENT_ID>> stack = new ArrayDeque<>();
+		stack.push(node);
+		while (!stack.isEmpty()) {
+			Node<CONTENT_ID> subNode = stack.pop();
+			subNode.dropped = true;
+			if (subNode.contentId != null) {
+				contents.remove(subNode.contentId);
+			}
+			if (!subNode.isNew()) {
+				dropped.add(subNode);
+			}
+			subNode.children.forEach(stack::push);
+		}
+		changed = true;
+	}
+
+	/**
+	 * Returns {@code true}, when tree was changed by recorded operations.
+	 *
+	 * @return
+	 */
+	public boolean isChanged() {
+		return changed;
+	}
+
+	/**
+	 * Computes lft, rgt, depth and children count of all nodes - the first root starts with 1, root depth is {@code 0}.
+	 * Nodes without stored parent are not numbered (stored values are preserved).
+	 *
+	 * @param step difference between two consecutive indexes ({@code 1} - dense numbering without gaps)
+	 * @param storeChildrenCount true - children count is stored (indexes are numbered with gaps), false - stored children count is preserved
+	 * @return this unit of work with computed indexes
+	 */
+	public ForestIndexUnitOfWork<CONTENT_ID> number(long step, boolean storeChildrenCount) {
+		Assert.isTrue(step > 0, "Step has to be positive.");
+		build();
+		//
+		preOrder = new ArrayList<>();
+		long next = 1L - step;
+		// iterative depth first search - deep chains cannot overflow the stack
+		Deque<Node<CONTENT_ID>> stack = new ArrayDeque<>();
+		Deque<Integer> cursors = new ArrayDeque<>();
+		for (Node<CONTENT_ID> root : roots) {
+			next += step;
+			root.number(next, 0);
+			preOrder.add(root);
+			stack.push(root);
+			cursors.push(0);
+			while (!stack.isEmpty()) {
+				Node<CONTENT_ID> node = stack.peek();
+				int cursor = cursors.pop();
+				if (cursor < node.children.size()) {
+					cursors.push(cursor + 1);
+					Node<CONTENT_ID> child = node.children.get(cursor);
+					next += step;
+					child.number(next, node.depth + 1);
+					preOrder.add(child);
+					stack.push(child);
+					cursors.push(0);
+				} else {
+					next += step;
+					node.rgt = next;
+					node.childrenCount = storeChildrenCount
+							? Integer.valueOf((int) (((node.rgt - node.lft) / step - 1) / 2))
+							: node.storedChildrenCount;
+					stack.pop();
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Intervals of stored depth with the same offset {@code [lft, rgt, offset]} - interval is given by stored lft.
+	 * Depth has to be shifted before lft is shifted.
+	 *
+	 * @return
+	 */
+	public List<long[]> getDepthShifts() {
+		return getShifts(
+				node -> node.storedLft,
+				node -> node.storedDepth == null ? 0L : node.depth - node.storedDepth);
+	}
+
+	/**
+	 * Intervals of stored lft with the same offset {@code [lft, rgt, offset]} - interval is given by stored lft.
+	 *
+	 * @return
+	 */
+	public List<long[]> getLftShifts() {
+		return getShifts(
+				node -> node.storedLft,
+				node -> node.lft - node.storedLft);
+	}
+
+	/**
+	 * Intervals of stored rgt with the same offset {@code [lft, rgt, offset]} - interval is given by stored rgt.
+	 *
+	 * @return
+	 */
+	public List<long[]> getRgtShifts() {
+		return getShifts(
+				node -> node.storedRgt,
+				node -> node.rgt - node.storedRgt);
+	}
+
+	/**
+	 * New nodes in pre-order - parent before children.
+	 *
+	 * @return
+	 */
+	public List<Node<CONTENT_ID>> getInserts() {
+		assertNumbered();
+		//
+		List<Node<CONTENT_ID>> inserts = new ArrayList<>();
+		preOrder.forEach(node -> {
+			if (node.isNew()) {
+				inserts.add(node);
+			}
+		});
+		return inserts;
+	}
+
+	/**
+	 * Stored nodes, which cannot be updated by shifts - parent is changed, children count is changed or stored value is missing.
+	 *
+	 * @return
+	 */
+	public List<Node<CONTENT_ID>> getUpdates() {
+		assertNumbered();
+		//
+		List<Node<CONTENT_ID>> updates = new ArrayList<>();
+		preOrder.forEach(node -> {
+			if (node.isNew()) {
+				return;
+			}
+			if (node.storedLft == null
+					|| node.storedRgt == null
+					|| node.storedDepth == null
+					|| !Objects.equals(node.storedParentId, node.parent == null ? null : node.parent.id)
+					|| !Objects.equals(node.storedChildrenCount, node.childrenCount)) {
+				updates.add(node);
+			}
+		});
+		return updates;
+	}
+
+	/**
+	 * Dropped stored index identifiers - children before parents (ordered by stored lft descending).
+	 *
+	 * @return
+	 */
+	public List<Long> getDeletes() {
+		List<Node<CONTENT_ID>> nodes = new ArrayList<>(dropped);
+		nodes.sort(Comparator.comparing((Node<CONTENT_ID> node) -> node.storedLft, Comparator.nullsLast(Comparator.reverseOrder())));
+		List<Long> ids = new ArrayList<>(nodes.size());
+		nodes.forEach(node -> ids.add(node.id));
+		return ids;
+	}
+
+	/**
+	 * Numbered nodes in pre-order.
+	 *
+	 * @return
+	 */
+	public List<Node<CONTENT_ID>> getPreOrder() {
+		assertNumbered();
+		//
+		return Collections.unmodifiableList(preOrder);
+	}
+
+	/**
+	 * Intervals of numbered stored nodes with the same offset. Nodes, which are not numbered, have zero offset - intervals
+	 * cannot contain them. Dropped nodes are not checked - they can be contained in any interval.
+	 *
+	 * @param position stored position (lft or rgt)
+	 * @param offset offset by node
+	 * @return intervals {@code [lft, rgt, offset]}
+	 */
+	private List<long[]> getShifts(Function<Node<CONTENT_ID>, Long> position, ToLongFunction<Node<CONTENT_ID>> offset) {
+		assertNumbered();
+		//
+		List<Node<CONTENT_ID>> nodes = new ArrayList<>(stored.size());
+		stored.forEach(node -> {
+			if (!node.dropped && position.apply(node) != null) {
+				nodes.add(node);
+			}
+		});
+		nodes.sort(Comparator.comparing(position));
+		//
+		List<long[]> shifts = new ArrayList<>();
+		long[] shift = null;
+		for (Node<CONTENT_ID> node : nodes) {
+			long nodeOffset = node.numbered ? offset.applyAsLong(node) : 0L;
+			long nodePosition = position.apply(node);
+			if (nodeOffset == 0L) {
+				shift = null;
+			} else if (shift != null && shift[2] == nodeOffset) {
+				shift[1] = nodePosition;
+			} else {
+				shift = new long[] { nodePosition, nodePosition, nodeOffset };
+				shifts.add(shift);
+			}
+		}
+		return shifts;
+	}
+
+	/**
+	 * Synthetic root - created, when tree is empty.
+	 *
+	 * @return
+	 */
+	private Node<CONTENT_ID> getRoot() {
+		for (Node<CONTENT_ID> root : roots) {
+			if (root.contentId == null) {
+				return root;
+			}
+		}
+		Node<CONTENT_ID> root = new Node<>(null, 0L, null, null, null, null, null);
+		roots.add(root);
+		return root;
+	}
+
+	private void detach(Node<CONTENT_ID> node) {
+		if (node.parent != null) {
+			node.parent.children.remove(node);
+			node.parent = null;
+		} else {
+			roots.remove(node);
+		}
+	}
+
+	/**
+	 * Links stored nodes with parents.
+	 */
+	private void build() {
+		Assert.isNull(preOrder, "Unit of work is numbered, operation cannot be recorded.");
+		if (built) {
+			return;
+		}
+		built = true;
+		Map<Long, Node<CONTENT_ID>> nodes = new HashMap<>(stored.size() * 2);
+		stored.forEach(node -> nodes.put(node.id, node));
+		for (Node<CONTENT_ID> node : stored) {
+			if (node.contentId != null) {
+				contents.put(node.contentId, node);
+			}
+			if (node.storedParentId == null) {
+				roots.add(node);
+			} else {
+				// node without stored parent is not numbered
+				node.parent = nodes.get(node.storedParentId);
+				if (node.parent != null) {
+					node.parent.children.add(node);
+				}
+			}
+		}
+	}
+
+	private void assertNumbered() {
+		Assert.notNull(preOrder, "Unit of work is not numbered.");
+	}
+
+	private static Long toLong(Object value) {
+		return value == null ? null : ((Number) value).longValue();
+	}
+
+	/**
+	 * Stored or new index.
+	 *
+	 * @param <CONTENT_ID> content identifier
+	 */
+	public static final class Node<CONTENT_ID extends Serializable> {
+
+		private long id; // 0 - new node
+		private final boolean persisted;
+		private final CONTENT_ID contentId;
+		private final Long storedParentId;
+		private final Long storedLft;
+		private final Long storedRgt;
+		private final Integer storedDepth;
+		private final Integer storedChildrenCount;
+		private Node<CONTENT_ID> parent;
+		private final List<Node<CONTENT_ID>> children = new ArrayList<>();
+		private boolean dropped = false;
+		private boolean numbered = false;
+		private long lft;
+		private long rgt;
+		private int depth;
+		private Integer childrenCount;
+
+		private Node(CONTENT_ID contentId, long id, Long storedParentId, Long storedLft, Long storedRgt, Integer storedDepth, Integer storedChildrenCount) {
+			this.contentId = contentId;
+			this.id = id;
+			this.persisted = id != 0L;
+			this.storedParentId = storedParentId;
+			this.storedLft = storedLft;
+			this.storedRgt = storedRgt;
+			this.storedDepth = storedDepth;
+			this.storedChildrenCount = storedChildrenCount;
+		}
+
+		private void number(long lft, int depth) {
+			this.lft = lft;
+			this.depth = depth;
+			this.numbered = true;
+		}
+
+		/**
+		 * Index identifier.
+		 *
+		 * @return identifier, {@code 0} - new node
+		 */
+		public long getId() {
+			return id;
+		}
+
+		/**
+		 * Generated identifier of new node.
+		 *
+		 * @param id
+		 */
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		/**
+		 * Returns {@code true}, when node is not stored yet.
+		 *
+		 * @return
+		 */
+		public boolean isNew() {
+			return !persisted;
+		}
+
+		public CONTENT_ID getContentId() {
+			return contentId;
+		}
+
+		/**
+		 * Parent node.
+		 *
+		 * @return parent or {@code null} for root
+		 */
+		public Node<CONTENT_ID> getParent() {
+			return parent;
+		}
+
+		public long getLft() {
+			return lft;
+		}
+
+		public long getRgt() {
+			return rgt;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		/**
+		 * All children count (recursively).
+		 *
+		 * @return children count or {@code null}, when children count is not stored
+		 */
+		public Integer getChildrenCount() {
+			return childrenCount;
+		}
+	}
+}
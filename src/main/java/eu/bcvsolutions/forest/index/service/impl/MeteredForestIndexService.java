@@ -0,0 +1,163 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexIntervals;
+import eu.bcvsolutions.forest.index.domain.ForestIndexStrategy;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexBatch;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexMetrics;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Records duration of index operations (per operation and tree type) - operations are delegated to given index service.
+ * Transactions are managed by delegate - when operation is not called in transaction, commit is included in recorded duration.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ *
+ * @param <IX> index type
+ * @param <CONTENT_ID> content identifier - e.g. {@code Long} or {@link UUID} is preferred
+ */
+public class MeteredForestIndexService<IX extends ForestIndex<IX, CONTENT_ID>, CONTENT_ID extends Serializable>
+		implements ForestIndexService<IX, CONTENT_ID> {
+
+	private final ForestIndexService<IX, CONTENT_ID> service;
+	private final ForestIndexMetrics metrics;
+
+	public MeteredForestIndexService(ForestIndexService<IX, CONTENT_ID> service, ForestIndexMetrics metrics) {
+		Assert.notNull(service, "Index service is required.");
+		Assert.notNull(metrics, "Metrics are required.");
+		//
+		this.service = service;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public ForestIndexStrategy getStrategy(String forestTreeType) {
+		return service.getStrategy(forestTreeType);
+	}
+
+	@Override
+	public boolean hasGaps(String forestTreeType) {
+		return service.hasGaps(forestTreeType);
+	}
+
+	@Override
+	public List<Long> findAncestorIds(IX forestIndex) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		return record("findAncestorIds", forestIndex.getForestTreeType(), () -> service.findAncestorIds(forestIndex));
+	}
+
+	@Override
+	public Page<Long> findDescendantIds(IX forestIndex, Integer maxDepth, Pageable pageable) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		return record("findDescendantIds", forestIndex.getForestTreeType(), () -> service.findDescendantIds(forestIndex, maxDepth, pageable));
+	}
+
+	@Override
+	public ForestIndexIntervals getIntervals(String forestTreeType, Collection<CONTENT_ID> contentIds) {
+		return record("getIntervals", forestTreeType, () -> service.getIntervals(forestTreeType, contentIds));
+	}
+
+	@Override
+	public void rebuild(String forestTreeType) {
+		record("rebuild", forestTreeType, () -> service.rebuild(forestTreeType));
+	}
+
+	@Override
+	public void rebuild(String forestTreeType, Stream<ForestContentNode<CONTENT_ID>> contents) {
+		record("rebuild", forestTreeType, () -> service.rebuild(forestTreeType, contents));
+	}
+
+	@Override
+	public IX saveNode(IX forestIndex) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		return record("saveNode", forestIndex.getForestTreeType(), () -> service.saveNode(forestIndex));
+	}
+
+	@Override
+	public void deleteNode(IX forestIndex, boolean closeGap) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		record("deleteNode", forestIndex.getForestTreeType(), () -> service.deleteNode(forestIndex, closeGap));
+	}
+
+	@Override
+	public void clearIndexes(String forestTreeType) {
+		record("clearIndexes", forestTreeType, () -> service.clearIndexes(forestTreeType));
+	}
+
+	@Override
+	public void dropIndexes(String forestTreeType) {
+		record("dropIndexes", forestTreeType, () -> service.dropIndexes(forestTreeType));
+	}
+
+	@Override
+	public IX index(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId) {
+		return record("index", forestTreeType, () -> service.index(forestTreeType, contentId, parentContentId));
+	}
+
+	@Override
+	public int indexAll(String forestTreeType, Collection<ForestContentNode<CONTENT_ID>> contents) {
+		return record("indexAll", forestTreeType, () -> service.indexAll(forestTreeType, contents));
+	}
+
+	@Override
+	public void inBatch(String forestTreeType, Consumer<ForestIndexBatch<CONTENT_ID>> operations) {
+		record("inBatch", forestTreeType, () -> service.inBatch(forestTreeType, operations));
+	}
+
+	@Override
+	public IX dropIndex(CONTENT_ID contentId) {
+		long start = System.nanoTime();
+		IX index = service.dropIndex(contentId);
+		// tree type is known after index is dropped
+		metrics.recordOperation("dropIndex", index == null ? null : index.getForestTreeType(), System.nanoTime() - start);
+		return index;
+	}
+
+	@Override
+	public String findForestTreeType(CONTENT_ID contentId) {
+		return service.findForestTreeType(contentId);
+	}
+
+	/**
+	 * Delegated service.
+	 *
+	 * @return
+	 */
+	public ForestIndexService<IX, CONTENT_ID> getService() {
+		return service;
+	}
+
+	private <T> T record(String operation, String forestTreeType, Supplier<T> delegate) {
+		long start = System.nanoTime();
+		try {
+			return delegate.get();
+		} finally {
+			metrics.recordOperation(operation, forestTreeType, System.nanoTime() - start);
+		}
+	}
+
+	private void record(String operation, String forestTreeType, Runnable delegate) {
+		record(operation, forestTreeType, () -> {
+			delegate.run();
+			return null;
+		});
+	}
+}
@@ -0,0 +1,98 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.service.api.ForestIndexMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Metrics recorded into Micrometer registry (micrometer-core is optional dependency):
+ * - {@value #METRIC_OPERATION} - timer tagged by operation and tree type
+ * - {@value #METRIC_ROWS} - distribution summary of rows touched by one statement tagged by statement and tree type
+ * - {@value #METRIC_FLUSH} - counter of persistence context flushes tagged by tree type
+ * - {@value #METRIC_TREE_SIZE} - gauge of indexes count tagged by tree type.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public class MicrometerForestIndexMetrics implements ForestIndexMetrics {
+
+	public static final String METRIC_OPERATION = "forest.index.operation";
+	public static final String METRIC_ROWS = "forest.index.rows";
+	public static final String METRIC_FLUSH = "forest.index.flush";
+	public static final String METRIC_TREE_SIZE = "forest.index.tree.size";
+	public static final String TAG_OPERATION = "operation";
+	public static final String TAG_STATEMENT = "statement";
+	public static final String TAG_TREE_TYPE = "forestTreeType";
+	public static final String UNKNOWN_TREE_TYPE = "unknown";
+	//
+	private final MeterRegistry registry;
+	private final Map<String, LongSupplier> treeSizes = new ConcurrentHashMap<>(); // gauge holds weak reference only
+
+	public MicrometerForestIndexMetrics(MeterRegistry registry) {
+		Assert.notNull(registry, "Meter registry is required.");
+		//
+		this.registry = registry;
+	}
+
+	@Override
+	public void recordOperation(String operation, String forestTreeType, long duration) {
+		Timer
+			.builder(METRIC_OPERATION)
+			.description("Forest index operation duration.")
+			.tag(TAG_OPERATION, operation)
+			.tag(TAG_TREE_TYPE, getTreeTypeTag(forestTreeType))
+			.register(registry)
+			.record(duration, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void recordRows(String statement, String forestTreeType, int rows) {
+		DistributionSummary
+			.builder(METRIC_ROWS)
+			.description("Forest indexes touched by one statement.")
+			.baseUnit("rows")
+			.tag(TAG_STATEMENT, statement)
+			.tag(TAG_TREE_TYPE, getTreeTypeTag(forestTreeType))
+			.register(registry)
+			.record(rows);
+	}
+
+	@Override
+	public void recordFlush(String forestTreeType) {
+		Counter
+			.builder(METRIC_FLUSH)
+			.description("Persistence context flushes.")
+			.tag(TAG_TREE_TYPE, getTreeTypeTag(forestTreeType))
+			.register(registry)
+			.increment();
+	}
+
+	@Override
+	public void registerTreeSize(String forestTreeType, LongSupplier treeSize) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(treeSize, "Tree size supplier is required.");
+		//
+		treeSizes.computeIfAbsent(forestTreeType, type -> {
+			Gauge
+				.builder(METRIC_TREE_SIZE, treeSize, LongSupplier::getAsLong)
+				.description("Forest indexes count.")
+				.tag(TAG_TREE_TYPE, type)
+				.register(registry);
+			return treeSize;
+		});
+	}
+
+	private String getTreeTypeTag(String forestTreeType) {
+		return forestTreeType == null ? UNKNOWN_TREE_TYPE : forestTreeType;
+	}
+}
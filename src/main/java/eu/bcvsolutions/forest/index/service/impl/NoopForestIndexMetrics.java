@@ -0,0 +1,34 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.function.LongSupplier;
+
+import eu.bcvsolutions.forest.index.service.api.ForestIndexMetrics;
+
+/**
+ * Metrics are not recorded - used by default.
+ *
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public class NoopForestIndexMetrics implements ForestIndexMetrics {
+
+	@Override
+	public void recordOperation(String operation, String forestTreeType, long duration) {
+		// nothing
+	}
+
+	@Override
+	public void recordRows(String statement, String forestTreeType, int rows) {
+		// nothing
+	}
+
+	@Override
+	public void recordFlush(String forestTreeType) {
+		// nothing
+	}
+
+	@Override
+	public void registerTreeSize(String forestTreeType, LongSupplier treeSize) {
+		// nothing
+	}
+}
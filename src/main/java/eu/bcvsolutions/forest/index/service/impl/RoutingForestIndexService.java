@@ -0,0 +1,188 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexIntervals;
+import eu.bcvsolutions.forest.index.domain.ForestIndexStrategy;
+import eu.bcvsolutions.forest.index.repository.ForestIndexRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexBatch;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Routes index operations to index service registered for tree type - e.g. write-heavy tree types can be indexed 
+ * by materialized path ({@link AbstractForestPathIndexService}), other tree types by nested set ({@link AbstractForestIndexService}).
+ * All index services have to use the same index repository.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ *
+ * @param <IX> index type
+ * @param <CONTENT_ID> content identifier - e.g. {@code Long} or {@link UUID} is preferred
+ */
+public class RoutingForestIndexService<IX extends ForestIndex<IX, CONTENT_ID>, CONTENT_ID extends Serializable> 
+		implements ForestIndexService<IX, CONTENT_ID> {
+
+	private final ForestIndexRepository<IX, CONTENT_ID> repository;
+	private final ForestIndexService<IX, CONTENT_ID> defaultService;
+	private final Map<String, ForestIndexService<IX, CONTENT_ID>> services = new HashMap<>();
+	
+	/**
+	 * Router with default index service.
+	 * 
+	 * @param repository index repository - used for resolving tree type by content
+	 * @param defaultService index service used for not registered tree types
+	 */
+	public RoutingForestIndexService(
+			ForestIndexRepository<IX, CONTENT_ID> repository, 
+			ForestIndexService<IX, CONTENT_ID> defaultService) {
+		Assert.notNull(repository, "Index repository is required.");
+		Assert.notNull(defaultService, "Default index service is required.");
+		//
+		this.repository = repository;
+		this.defaultService = defaultService;
+	}
+	
+	/**
+	 * Registers index service for given tree type. Indexes has to be rebuilt, when strategy of existing tree type is changed.
+	 * 
+	 * @param forestTreeType
+	 * @param service
+	 */
+	public void register(String forestTreeType, ForestIndexService<IX, CONTENT_ID> service) {
+		Assert.hasLength(forestTreeType, "Tree type is required.");
+		Assert.notNull(service, "Index service is required.");
+		//
+		services.put(forestTreeType, service);
+	}
+	
+	/**
+	 * Index service for given tree type.
+	 * 
+	 * @param forestTreeType
+	 * @return registered service or default service
+	 */
+	public ForestIndexService<IX, CONTENT_ID> getService(String forestTreeType) {
+		return services.getOrDefault(forestTreeType == null ? ForestIndex.DEFAULT_TREE_TYPE : forestTreeType, defaultService);
+	}
+	
+	@Override
+	public ForestIndexStrategy getStrategy(String forestTreeType) {
+		return getService(forestTreeType).getStrategy(forestTreeType);
+	}
+
+	@Override
+	public boolean hasGaps(String forestTreeType) {
+		return getService(forestTreeType).hasGaps(forestTreeType);
+	}
+
+	@Override
+	public List<Long> findAncestorIds(IX forestIndex) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		return getService(forestIndex.getForestTreeType()).findAncestorIds(forestIndex);
+	}
+	
+	@Override
+	public Page<Long> findDescendantIds(IX forestIndex, Integer maxDepth, Pageable pageable) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		return getService(forestIndex.getForestTreeType()).findDescendantIds(forestIndex, maxDepth, pageable);
+	}
+
+	@Override
+	public ForestIndexIntervals getIntervals(String forestTreeType, Collection<CONTENT_ID> contentIds) {
+		return getService(forestTreeType).getIntervals(forestTreeType, contentIds);
+	}
+	
+	@Override
+	@Transactional
+	public void rebuild(String forestTreeType) {
+		getService(forestTreeType).rebuild(forestTreeType);
+	}
+
+	@Override
+	@Transactional
+	public void rebuild(String forestTreeType, Stream<ForestContentNode<CONTENT_ID>> contents) {
+		getService(forestTreeType).rebuild(forestTreeType, contents);
+	}
+
+	@Override
+	@Transactional
+	public IX saveNode(IX forestIndex) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		return getService(forestIndex.getForestTreeType()).saveNode(forestIndex);
+	}
+
+	@Override
+	@Transactional
+	public void deleteNode(IX forestIndex, boolean closeGap) {
+		Assert.notNull(forestIndex, "Index is required.");
+		//
+		getService(forestIndex.getForestTreeType()).deleteNode(forestIndex, closeGap);
+	}
+
+	@Override
+	@Transactional
+	public void clearIndexes(String forestTreeType) {
+		getService(forestTreeType).clearIndexes(forestTreeType);
+	}
+
+	@Override
+	@Transactional
+	public void dropIndexes(String forestTreeType) {
+		getService(forestTreeType).dropIndexes(forestTreeType);
+	}
+
+	@Override
+	@Transactional
+	public IX index(String forestTreeType, CONTENT_ID contentId, CONTENT_ID parentContentId) {
+		return getService(forestTreeType).index(forestTreeType, contentId, parentContentId);
+	}
+
+	@Override
+	@Transactional
+	public int indexAll(String forestTreeType, Collection<ForestContentNode<CONTENT_ID>> contents) {
+		return getService(forestTreeType).indexAll(forestTreeType, contents);
+	}
+	
+	@Override
+	@Transactional
+	public void inBatch(String forestTreeType, Consumer<ForestIndexBatch<CONTENT_ID>> operations) {
+		getService(forestTreeType).inBatch(forestTreeType, operations);
+	}
+
+	@Override
+	@Transactional
+	public IX dropIndex(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		String forestTreeType = repository.findForestTreeType(contentId);
+		if (forestTreeType == null) {
+			return null;
+		}
+		return getService(forestTreeType).dropIndex(contentId);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public String findForestTreeType(CONTENT_ID contentId) {
+		Assert.notNull(contentId, "Content identifier is required.");
+		//
+		return repository.findForestTreeType(contentId);
+	}
+}
@@ -0,0 +1,83 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.util.Assert;
+
+/**
+ * In-JVM tree type lock - tree types are hashed into fixed number of reentrant locks (stripes). 
+ * Different tree types can share the same stripe (they are not written in parallel then), memory is bounded by stripes count.
+ * 
+ * Use {@link DatabaseForestIndexLock} (or another database lock) together with this lock, when application runs in cluster
+ * - see {@link CompositeForestIndexLock}.
+ * 
+ * @author Radek Tomiška
+ * @since 1.3.0
+ */
+public class StripedForestIndexLock extends AbstractForestIndexLock {
+	
+	public static final int DEFAULT_STRIPES = 64;
+	//
+	private final ReentrantLock[] stripes;
+	private long timeout = 0; // wait until lock is acquired
+	
+	public StripedForestIndexLock() {
+		this(DEFAULT_STRIPES);
+	}
+	
+	public StripedForestIndexLock(int stripes) {
+		Assert.isTrue(stripes > 0, "Stripes count has to be positive.");
+		//
+		this.stripes = new ReentrantLock[stripes];
+		for (int stripe = 0; stripe < stripes; stripe++) {
+			this.stripes[stripe] = new ReentrantLock();
+		}
+	}
+	
+	@Override
+	protected void doLock(String forestTreeType) {
+		ReentrantLock stripe = getStripe(forestTreeType);
+		try {
+			if (timeout <= 0) {
+				stripe.lockInterruptibly();
+			} else if (!stripe.tryLock(timeout, TimeUnit.MILLISECONDS)) {
+				throw new CannotAcquireLockException(String.format("Tree type [%s] was not locked in [%s] ms.", forestTreeType, timeout));
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new CannotAcquireLockException(String.format("Waiting for tree type [%s] lock was interrupted.", forestTreeType), ex);
+		}
+	}
+	
+	@Override
+	protected void unlock(String forestTreeType) {
+		getStripe(forestTreeType).unlock();
+	}
+	
+	/**
+	 * Maximum time to wait for lock.
+	 * 
+	 * @return timeout in milliseconds, {@code 0} - wait until lock is acquired
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+	
+	/**
+	 * Maximum time to wait for lock. Set timeout, when one transaction writes more tree types 
+	 * - transactions, which lock the same tree types in different order, could wait for each other forever.
+	 * 
+	 * @param timeout timeout in milliseconds, {@code 0} - wait until lock is acquired
+	 */
+	public void setTimeout(long timeout) {
+		Assert.isTrue(timeout >= 0, "Timeout cannot be negative.");
+		//
+		this.timeout = timeout;
+	}
+	
+	private ReentrantLock getStripe(String forestTreeType) {
+		return stripes[Math.floorMod(forestTreeType.hashCode(), stripes.length)];
+	}
+}
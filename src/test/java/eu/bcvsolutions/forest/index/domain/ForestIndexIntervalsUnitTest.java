@@ -0,0 +1,106 @@
+package eu.bcvsolutions.forest.index.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+
+/**
+ * Intervals merging and membership.
+ * 
+ * @author Radek Tomiška
+ *
+ */
+public class ForestIndexIntervalsUnitTest {
+	
+	@Test
+	public void testMergeIntervals() {
+		ForestIndexIntervals intervals = ForestIndexIntervals.of(ForestIndex.DEFAULT_TREE_TYPE, Arrays.asList(
+				new Object[] { 20L, 30L },
+				new Object[] { 2L, 9L },
+				new Object[] { 3L, 4L }, // nested
+				new Object[] { 10L, 11L }, // adjacent
+				new Object[] { 40L, 40L },
+				new Object[] { null, null }).stream());
+		//
+		Assert.assertEquals(3, intervals.size());
+		Assert.assertEquals(2L, intervals.getLft(0));
+		Assert.assertEquals(11L, intervals.getRgt(0));
+		Assert.assertEquals(20L, intervals.getLft(1));
+		Assert.assertEquals(30L, intervals.getRgt(1));
+		Assert.assertEquals(40L, intervals.getLft(2));
+		Assert.assertEquals(40L, intervals.getRgt(2));
+		//
+		Assert.assertFalse(intervals.contains(1L));
+		Assert.assertTrue(intervals.contains(2L));
+		Assert.assertTrue(intervals.contains(11L));
+		Assert.assertFalse(intervals.contains(12L));
+		Assert.assertTrue(intervals.contains(25L));
+		Assert.assertFalse(intervals.contains(31L));
+		Assert.assertTrue(intervals.contains(40L));
+		Assert.assertFalse(intervals.contains(41L));
+		Assert.assertArrayEquals(new boolean[] { true, false, true }, intervals.contains(new long[] { 30L, 35L, 5L }));
+		//
+		Assert.assertEquals("(i.lft between 2 and 11 or i.lft between 20 and 30 or i.lft = 40)", intervals.toJpql("i"));
+	}
+	
+	@Test
+	public void testEmptyIntervals() {
+		ForestIndexIntervals intervals = ForestIndexIntervals.of(ForestIndex.DEFAULT_TREE_TYPE, new ArrayList<ForestIndexEntity>());
+		//
+		Assert.assertTrue(intervals.isEmpty());
+		Assert.assertFalse(intervals.contains(1L));
+		Assert.assertEquals("1 = 0", intervals.toJpql("i"));
+	}
+	
+	@Test
+	public void testContainsIndex() {
+		ForestIndexEntity index = new ForestIndexEntity(ForestIndex.DEFAULT_TREE_TYPE, null);
+		index.setLft(5L);
+		index.setRgt(8L);
+		ForestIndexEntity child = new ForestIndexEntity(ForestIndex.DEFAULT_TREE_TYPE, index);
+		child.setLft(6L);
+		child.setRgt(7L);
+		ForestIndexEntity other = new ForestIndexEntity("other", null);
+		other.setLft(6L);
+		other.setRgt(7L);
+		//
+		ForestIndexIntervals intervals = ForestIndexIntervals.of(ForestIndex.DEFAULT_TREE_TYPE, Arrays.asList(index));
+		//
+		Assert.assertTrue(intervals.contains(index));
+		Assert.assertTrue(intervals.contains(child));
+		Assert.assertFalse(intervals.contains(other));
+		Assert.assertFalse(intervals.contains(new ForestIndexEntity(ForestIndex.DEFAULT_TREE_TYPE, null)));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testDifferentTreeType() {
+		ForestIndexIntervals.of(ForestIndex.DEFAULT_TREE_TYPE, Arrays.asList(new ForestIndexEntity("other", null)));
+	}
+	
+	@Test
+	public void testSameAsLinearScan() {
+		Random r = new Random();
+		List<Object[]> granted = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			long lft = r.nextInt(100000);
+			granted.add(new Object[] { lft, lft + r.nextInt(100) });
+		}
+		long[] candidates = r.longs(10000, 0, 100100).toArray();
+		//
+		boolean[] results = ForestIndexIntervals.of(ForestIndex.DEFAULT_TREE_TYPE, granted.stream()).contains(candidates);
+		//
+		for (int i = 0; i < candidates.length; i++) {
+			long candidate = candidates[i];
+			boolean expected = granted
+					.stream()
+					.anyMatch(interval -> (long) interval[0] <= candidate && candidate <= (long) interval[1]);
+			Assert.assertEquals(expected, results[i]);
+		}
+	}
+}
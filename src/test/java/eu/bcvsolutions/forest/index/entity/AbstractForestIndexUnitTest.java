@@ -61,4 +61,35 @@ public class AbstractForestIndexUnitTest {
 		Assert.assertEquals(0, forestOne.getChildrenCount());
 		Assert.assertNotNull(forestOne.toString());
 	}
+	
+	@Test
+	public void testStoredChildrenCount() {
+		ForestIndexEntity forestOne = new ForestIndexEntity();
+		forestOne.setLft(1L);
+		forestOne.setRgt(1000L);
+		forestOne.setChildrenCount(3);
+		//
+		Assert.assertEquals(3, forestOne.getChildrenCount());
+		forestOne.setChildrenCount(null);
+		Assert.assertEquals(499, forestOne.getChildrenCount());
+	}
+	
+	@Test
+	public void testRootScopedChildrenCount() {
+		ForestIndexEntity root = new ForestIndexEntity();
+		root.setId(1L);
+		root.setTreeId(1L);
+		root.setLft(1L);
+		root.setRgt(5 * (1L << 32));
+		//
+		Assert.assertEquals(0, root.getChildrenCount());
+		root.setTreeId(null);
+		Assert.assertEquals(0, root.getChildrenCount()); // overflow
+		//
+		ForestIndexEntity contentRoot = new ForestIndexEntity(root);
+		contentRoot.setTreeId(2L);
+		contentRoot.setLft(1L << 32);
+		contentRoot.setRgt((1L << 32) + 5);
+		Assert.assertEquals(2, contentRoot.getChildrenCount());
+	}
 }
@@ -0,0 +1,21 @@
+package eu.bcvsolutions.forest.index.entity;
+
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * Persists closure table of {@link ForestIndexEntity}.
+ *
+ * @author Radek Tomiška
+ */
+@Entity
+@Table(name = "_forest_index_closure", indexes = {
+		@Index(name = "_idx_forest_index_cl_anc", columnList = "ancestor_id,distance"),
+		@Index(name = "_idx_forest_index_cl_desc", columnList = "descendant_id,distance"),
+		@Index(name = "_idx_forest_index_cl_type", columnList = "forest_tree_type")
+		})
+public class ForestIndexClosureEntity extends AbstractForestIndexClosure {
+	
+	private static final long serialVersionUID = 1L;
+}
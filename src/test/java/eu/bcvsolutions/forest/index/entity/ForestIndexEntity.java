@@ -20,7 +20,9 @@ import javax.persistence.Table;
 		@Index(name = "_idx_forest_index_parent", columnList = "parent_id"),
 		@Index(name = "_idx_forest_index_content", columnList = "content_id"),
 		@Index(name = "_idx_forest_index_lft", columnList = "lft"),
-		@Index(name = "_idx_forest_index_rgt", columnList = "rgt")
+		@Index(name = "_idx_forest_index_rgt", columnList = "rgt"),
+		@Index(name = "_idx_forest_index_depth", columnList = "forest_tree_type,lft,depth"),
+		@Index(name = "_idx_forest_index_tree", columnList = "forest_tree_type,tree_id,rgt")
 		})
 public class ForestIndexEntity extends AbstractForestIndex<ForestIndexEntity, Long> {
 	
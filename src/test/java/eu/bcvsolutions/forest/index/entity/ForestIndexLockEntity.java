@@ -0,0 +1,16 @@
+package eu.bcvsolutions.forest.index.entity;
+
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * Persists tree type lock rows of {@link ForestIndexEntity}.
+ *
+ * @author Radek Tomiška
+ */
+@Entity
+@Table(name = "_forest_index_lock")
+public class ForestIndexLockEntity extends AbstractForestIndexLockRow {
+	
+	private static final long serialVersionUID = 1L;
+}
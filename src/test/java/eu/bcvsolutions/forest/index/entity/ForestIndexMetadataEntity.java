@@ -0,0 +1,16 @@
+package eu.bcvsolutions.forest.index.entity;
+
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * Persists tree type metadata of {@link ForestIndexEntity}.
+ *
+ * @author Radek Tomiška
+ */
+@Entity
+@Table(name = "_forest_index_metadata")
+public class ForestIndexMetadataEntity extends AbstractForestIndexMetadata {
+	
+	private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,12 @@
+package eu.bcvsolutions.forest.index.repository;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexClosureEntity;
+
+/**
+ * Test forest index closure repository
+ *
+ * @author Radek Tomiška
+ */
+public interface ForestIndexClosureEntityRepository extends ForestIndexClosureRepository<ForestIndexClosureEntity> {
+	
+}
@@ -0,0 +1,12 @@
+package eu.bcvsolutions.forest.index.repository;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexLockEntity;
+
+/**
+ * Test tree type lock row repository
+ *
+ * @author Radek Tomiška
+ */
+public interface ForestIndexLockEntityRepository extends ForestIndexLockRepository<ForestIndexLockEntity> {
+	
+}
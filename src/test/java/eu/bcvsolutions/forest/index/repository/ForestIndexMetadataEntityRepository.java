@@ -0,0 +1,12 @@
+package eu.bcvsolutions.forest.index.repository;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexMetadataEntity;
+
+/**
+ * Test tree type metadata repository
+ *
+ * @author Radek Tomiška
+ */
+public interface ForestIndexMetadataEntityRepository extends ForestIndexMetadataRepository<ForestIndexMetadataEntity> {
+	
+}
@@ -0,0 +1,274 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
+import eu.bcvsolutions.forest.index.domain.ForestIndexStrategy;
+import eu.bcvsolutions.forest.index.entity.ForestIndexClosureEntity;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.NodeContent;
+import eu.bcvsolutions.forest.index.repository.ForestIndexClosureEntityRepository;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.repository.NodeContentRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Closure table index strategy.
+ * 
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class ClosureIndexIntegrationTest {
+	
+	private static final String CLOSURE_TREE_TYPE = "closure";
+	//
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private ForestIndexClosureEntityRepository closureRepository;
+	@Autowired private ForestIndexService<ForestIndexEntity, Long> nestedSetService;
+	@Autowired private NodeContentRepository nodeContentRepository;
+	@Autowired private EntityManager entityManager;
+	//
+	private Random r = new Random();
+	private DefaultForestClosureIndexEntityService service;
+	
+	@Before
+	public void init() {
+		service = new DefaultForestClosureIndexEntityService(repository, closureRepository, entityManager);
+	}
+	
+	@Test
+	public void testSaveTree() {
+		ForestIndexEntity oldroot = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, null));
+		ForestIndexEntity a = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, oldroot, 1L));
+		ForestIndexEntity b = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, oldroot, 2L));
+		service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, a, 3L));
+		service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, b, 4L));
+		long closureCount = closureRepository.count();
+		ForestIndexEntity bb = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, b, 5L));
+		Assert.assertEquals(closureCount + 3, closureRepository.count()); // leaf adds depth + 1 closures
+		ForestIndexEntity root = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, null, 6L));
+		//
+		assertValidTree(7);
+		root = repository.findById(root.getId()).get();
+		Assert.assertNull(root.getLft()); // nested set is not used
+		Assert.assertEquals(6, service.findDescendantIds(root, null, null).getTotalElements());
+		Assert.assertEquals(1, service.findDescendantIds(root, 1, null).getTotalElements());
+		Assert.assertEquals(3, service.findDescendantIds(root, 2, null).getTotalElements());
+		Assert.assertEquals(5, service.findDescendantIds(repository.findById(oldroot.getId()).get(), null, null).getTotalElements());
+		Assert.assertEquals(2, service.findDescendantIds(root, null, PageRequest.of(1, 2)).getContent().size());
+		List<Long> descendantIds = service.findDescendantIds(root, null, PageRequest.of(0, 6, Sort.by(Direction.DESC, "id"))).getContent();
+		Assert.assertEquals(6, descendantIds.size());
+		Assert.assertEquals(bb.getId(), descendantIds.get(0));
+		Assert.assertEquals(oldroot.getId(), descendantIds.get(5));
+		Assert.assertEquals(0, service.findDescendantIds(repository.findById(bb.getId()).get(), null, null).getTotalElements());
+		List<Long> ancestorIds = service.findAncestorIds(repository.findById(bb.getId()).get());
+		Assert.assertEquals(3, ancestorIds.size());
+		Assert.assertEquals(root.getId(), ancestorIds.get(0));
+		Assert.assertEquals(b.getId(), ancestorIds.get(2));
+	}
+	
+	@Test
+	public void testMoveSubTree() {
+		generateTree(150);
+		//
+		for (int i = 0; i < 30; i++) {
+			List<ForestIndexEntity> indexes = new ArrayList<>();
+			repository.findAll().forEach(indexes::add);
+			ForestIndexEntity node = indexes.get(r.nextInt(indexes.size()));
+			ForestIndexEntity parent = indexes.get(r.nextInt(indexes.size()));
+			if (node.getParent() == null || service.findAncestorIds(parent).contains(node.getId()) || parent.equals(node)) {
+				continue;
+			}
+			node.setParent(parent);
+			service.saveNode(node);
+		}
+		assertValidTree(150);
+	}
+	
+	@Test
+	public void testMoveNodeToRoot() {
+		ForestIndexEntity root = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, null, 1L));
+		ForestIndexEntity a = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, root, 2L));
+		service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, a, 3L));
+		service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, root, 4L));
+		//
+		a = repository.findById(a.getId()).get();
+		a.setParent(null);
+		service.saveNode(a);
+		//
+		assertValidTree(4);
+		a = repository.findById(a.getId()).get();
+		Assert.assertNull(a.getParent());
+		Assert.assertEquals(3, service.findDescendantIds(a, null, null).getTotalElements());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testFindDescendantIdsWithUnsupportedSort() {
+		ForestIndexEntity root = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, null, 1L));
+		service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, root, 2L));
+		//
+		service.findDescendantIds(root, null, PageRequest.of(0, 10, Sort.by("lft")));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testMoveNodeUnderOwnSubTree() {
+		ForestIndexEntity root = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, null, 1L));
+		ForestIndexEntity a = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, root, 2L));
+		ForestIndexEntity aa = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, a, 3L));
+		//
+		a = repository.findById(a.getId()).get();
+		a.setParent(aa);
+		service.saveNode(a);
+	}
+	
+	@Test
+	public void testDeleteSubTree() {
+		ForestIndexEntity root = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, null, 1L));
+		ForestIndexEntity a = service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, root, 2L));
+		service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, a, 3L));
+		service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, root, 4L));
+		//
+		service.dropIndex(2L);
+		//
+		assertValidTree(2);
+		Assert.assertNull(repository.findOneByContentId(3L));
+	}
+	
+	@Test
+	public void testRebuild() {
+		generateTree(100);
+		service.clearIndexes(CLOSURE_TREE_TYPE);
+		Assert.assertEquals(0, closureRepository.count());
+		//
+		service.rebuild(CLOSURE_TREE_TYPE);
+		//
+		assertValidTree(100);
+	}
+	
+	@Test
+	public void testIndexAll() {
+		service.index(CLOSURE_TREE_TYPE, 1L, null);
+		List<ForestContentNode<Long>> contents = new ArrayList<>();
+		// children before parents
+		for (long contentId = 100; contentId > 1; contentId--) {
+			contents.add(new ForestContentNode<>(contentId, contentId < 10 ? 1L : contentId / 10));
+		}
+		//
+		Assert.assertEquals(99, service.indexAll(CLOSURE_TREE_TYPE, contents));
+		//
+		assertValidTree(101); // with synthetic root
+	}
+	
+	@Test
+	public void testRoutingContentService() {
+		RoutingForestIndexService<ForestIndexEntity, Long> routingService = new RoutingForestIndexService<>(repository, nestedSetService);
+		routingService.register(CLOSURE_TREE_TYPE, service);
+		DefaultNodeContentService contentService = new DefaultNodeContentService(routingService, nodeContentRepository);
+		Assert.assertEquals(ForestIndexStrategy.CLOSURE_TABLE, routingService.getStrategy(CLOSURE_TREE_TYPE));
+		//
+		NodeContent root = contentService.save(new NodeContent(CLOSURE_TREE_TYPE, null, "root"));
+		NodeContent a = contentService.save(new NodeContent(CLOSURE_TREE_TYPE, root, "a"));
+		NodeContent b = contentService.save(new NodeContent(CLOSURE_TREE_TYPE, root, "b"));
+		NodeContent aa = contentService.save(new NodeContent(CLOSURE_TREE_TYPE, a, "aa"));
+		//
+		Assert.assertEquals(3, contentService.findAllChildren(root.getId(), null).getTotalElements());
+		Assert.assertEquals(2, contentService.findDescendants(root.getId(), 1, null).getTotalElements());
+		Assert.assertEquals(1, contentService.findAllChildren(a.getId(), null).getTotalElements());
+		List<NodeContent> children = contentService.findAllChildren(root.getId(), PageRequest.of(0, 2, Sort.by(Direction.DESC, BaseForestContentService.FOREST_INDEX_ID))).getContent();
+		Assert.assertEquals(2, children.size());
+		Assert.assertEquals(aa.getId(), children.get(0).getId());
+		Assert.assertEquals(b.getId(), children.get(1).getId());
+		try {
+			contentService.findAllChildren(root.getId(), PageRequest.of(0, 2, Sort.by("name")));
+			Assert.fail("Sort by content property is not supported by closure table.");
+		} catch (IllegalArgumentException ex) {
+			// sort cannot be applied on closure table page
+		}
+		List<NodeContent> parents = contentService.findAllParents(aa.getId(), new Sort(Direction.ASC, "name"));
+		Assert.assertEquals(2, parents.size());
+		Assert.assertEquals(a.getId(), parents.get(0).getId());
+		Assert.assertEquals(root.getId(), parents.get(1).getId());
+		//
+		// move
+		aa.setParent(b);
+		contentService.save(aa);
+		Assert.assertEquals(0, contentService.findAllChildren(a.getId(), null).getTotalElements());
+		Assert.assertEquals(1, contentService.findAllChildren(b.getId(), null).getTotalElements());
+		//
+		// rebuild
+		contentService.rebuildIndexes(CLOSURE_TREE_TYPE);
+		Assert.assertEquals(3, contentService.findAllChildren(root.getId(), null).getTotalElements());
+		Assert.assertEquals(2, contentService.findAllParents(aa.getId(), null).size());
+		//
+		// delete by routed index
+		contentService.deleteIndex(aa.getId());
+		Assert.assertNull(repository.findOneByContentId(aa.getId()));
+		Assert.assertEquals(0, contentService.findAllChildren(b.getId(), null).getTotalElements());
+	}
+	
+	/**
+	 * Checks closures of all indexes of closure tree type against parent references.
+	 * 
+	 * @param nodeCount expected nodes count
+	 */
+	private void assertValidTree(int nodeCount) {
+		List<ForestIndexEntity> indexes = new ArrayList<>();
+		repository.findAll().forEach(index -> {
+			if (CLOSURE_TREE_TYPE.equals(index.getForestTreeType())) {
+				indexes.add(index);
+			}
+		});
+		Assert.assertEquals(nodeCount, indexes.size());
+		Map<Long, ForestIndexEntity> nodes = new HashMap<>();
+		indexes.forEach(index -> nodes.put(index.getId(), index));
+		// expected closures by parent references
+		Set<String> expected = new HashSet<>();
+		for (ForestIndexEntity index : indexes) {
+			ForestIndexEntity ancestor = index;
+			int distance = 0;
+			while (ancestor != null) {
+				expected.add(String.format("%s:%s:%s", ancestor.getId(), index.getId(), distance++));
+				ancestor = ancestor.getParent() == null ? null : nodes.get(ancestor.getParent().getId());
+			}
+		}
+		Set<String> closures = new HashSet<>();
+		for (ForestIndexClosureEntity closure : closureRepository.findAll()) {
+			Assert.assertEquals(CLOSURE_TREE_TYPE, closure.getForestTreeType());
+			Assert.assertTrue(closure.toString(), closures.add(String.format("%s:%s:%s", 
+					closure.getAncestorId(), closure.getDescendantId(), closure.getDistance())));
+		}
+		Assert.assertEquals(expected, closures);
+	}
+	
+	private void generateTree(int nodeCount) {
+		List<ForestIndexEntity> indexes = new ArrayList<>();
+		indexes.add(service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, null, 0L)));
+		for (long i = 1; i < nodeCount; i++) {
+			ForestIndexEntity parent = repository.findById(indexes.get(r.nextInt(indexes.size())).getId()).get();
+			indexes.add(service.saveNode(new ForestIndexEntity(CLOSURE_TREE_TYPE, parent, i)));
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.entity.NodeContent;
+import eu.bcvsolutions.forest.index.repository.ForestContentSpecifications;
+import eu.bcvsolutions.forest.index.repository.NodeContentRepository;
+
+/**
+ * Hierarchy lookups by content identifier and criteria specifications.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class ContentLookupIntegrationTest {
+
+	@Autowired private NodeContentRepository repository;
+	@Autowired private NodeContentService service;
+	@Autowired private EntityManager entityManager;
+	//
+	private NodeContent root;
+	private NodeContent a;
+	private NodeContent b;
+	private NodeContent aa;
+	private NodeContent ab;
+	private NodeContent aba;
+
+	@Test
+	public void testFindByContentId() {
+		initTree("lookup-one");
+		//
+		Page<NodeContent> children = repository.findAllChildrenByContentId(a.getId(), PageRequest.of(0, 2, Sort.by("forestIndex.lft")));
+		Assert.assertEquals(3, children.getTotalElements());
+		Assert.assertEquals(Stream.of(aa.getId(), ab.getId()).collect(Collectors.toList()),
+				children.stream().map(NodeContent::getId).collect(Collectors.toList()));
+		Assert.assertEquals(5, repository.findAllChildrenByContentId(root.getId(), null).getTotalElements());
+		Assert.assertEquals(0, repository.findAllChildrenByContentId(aba.getId(), null).getTotalElements());
+		//
+		Assert.assertEquals(
+				Stream.of(root.getId(), a.getId(), ab.getId()).collect(Collectors.toList()),
+				repository
+					.findAllParentsByContentId(aba.getId(), new Sort(Direction.ASC, "forestIndex.lft"))
+					.stream()
+					.map(NodeContent::getId)
+					.collect(Collectors.toList()));
+		Assert.assertEquals(2, repository.findDirectChildrenByParentId(a.getId(), null).getTotalElements());
+		//
+		// service
+		Assert.assertEquals(3, service.findAllChildren(a.getId(), PageRequest.of(1, 2)).getTotalElements());
+		Assert.assertEquals(3, service.findAllParents(aba.getId(), null).size());
+		Assert.assertEquals(2, service.findDirectChildren(root.getId(), null).getTotalElements());
+		// not indexed content
+		Assert.assertEquals(0, service.findAllChildren(-1L, null).getTotalElements());
+		Assert.assertTrue(service.findAllParents(-1L, null).isEmpty());
+	}
+
+	@Test
+	public void testSpecifications() {
+		initTree("lookup-two");
+		//
+		Assert.assertEquals(
+				Stream.of(aa.getId(), ab.getId(), aba.getId()).collect(Collectors.toSet()),
+				toIds(repository.findAll(ForestContentSpecifications.<NodeContent, Long>descendantOf(a.getId()))));
+		Assert.assertEquals(
+				Stream.of(root.getId(), a.getId(), ab.getId()).collect(Collectors.toSet()),
+				toIds(repository.findAll(ForestContentSpecifications.<NodeContent, Long>ancestorOf(aba.getId()))));
+		Assert.assertTrue(repository.findAll(ForestContentSpecifications.<NodeContent, Long>descendantOf(aba.getId())).isEmpty());
+		Assert.assertTrue(repository.findAll(ForestContentSpecifications.<NodeContent, Long>ancestorOf(root.getId())).isEmpty());
+		//
+		// combined with custom filter
+		Specification<NodeContent> nameFilter = (content, query, builder) -> builder.like(content.get("name"), "a%");
+		Page<NodeContent> results = repository.findAll(
+				ForestContentSpecifications.<NodeContent, Long>descendantOf(root.getId()).and(nameFilter),
+				PageRequest.of(0, 2, Sort.by("name")));
+		Assert.assertEquals(4, results.getTotalElements());
+		Assert.assertEquals(Stream.of(a.getId(), aa.getId()).collect(Collectors.toList()),
+				results.stream().map(NodeContent::getId).collect(Collectors.toList()));
+		Assert.assertEquals(
+				Stream.of(a.getId(), ab.getId()).collect(Collectors.toSet()),
+				toIds(repository.findAll(ForestContentSpecifications
+						.<NodeContent, Long>ancestorOf(aba.getId())
+						.and(ForestContentSpecifications.descendantOf(root.getId()))
+						.and(nameFilter))));
+	}
+
+	private void initTree(String forestTreeType) {
+		root = service.save(new NodeContent(forestTreeType, null, "root"));
+		a = service.save(new NodeContent(forestTreeType, root, "a"));
+		b = service.save(new NodeContent(forestTreeType, root, "b"));
+		aa = service.save(new NodeContent(forestTreeType, a, "aa"));
+		ab = service.save(new NodeContent(forestTreeType, a, "ab"));
+		aba = service.save(new NodeContent(forestTreeType, ab, "aba"));
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	private Set<Long> toIds(Iterable<NodeContent> contents) {
+		Set<Long> ids = new HashSet<>();
+		contents.forEach(content -> ids.add(content.getId()));
+		return ids;
+	}
+}
@@ -0,0 +1,23 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import javax.persistence.EntityManager;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexClosureEntity;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexClosureEntityRepository;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+
+/**
+ * Test closure table index service - created manually in tests (nested set service is the default).
+ *
+ * @author Radek Tomiška
+ */
+public class DefaultForestClosureIndexEntityService extends AbstractForestClosureIndexService<ForestIndexEntity, ForestIndexClosureEntity, Long> {
+
+	public DefaultForestClosureIndexEntityService(
+			ForestIndexEntityRepository repository, 
+			ForestIndexClosureEntityRepository closureRepository, 
+			EntityManager entityManager) {
+		super(repository, closureRepository, entityManager);
+	}	
+}
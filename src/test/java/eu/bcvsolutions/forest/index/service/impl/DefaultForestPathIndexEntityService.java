@@ -0,0 +1,18 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import javax.persistence.EntityManager;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+
+/**
+ * Test materialized path index service - created manually in tests (nested set service is the default).
+ *
+ * @author Radek Tomiška
+ */
+public class DefaultForestPathIndexEntityService extends AbstractForestPathIndexService<ForestIndexEntity, Long> {
+
+	public DefaultForestPathIndexEntityService(ForestIndexEntityRepository repository, EntityManager entityManager) {
+		super(repository, entityManager);
+	}	
+}
@@ -163,6 +163,35 @@ public class DefaultNodeContentServiceIntegrationTest {
 		assertEquals(bb.getForestIndex().getRgt().longValue(), bb.getForestIndex().getLft() + 1L);	
 	}
 	
+	@Test
+	public void testRebuildMoreRoots() {
+		final String TYPE_OTHER = "other";
+		NodeContent rootOne = service.save(new NodeContent(null, "root one"));
+		NodeContent rootTwo = service.save(new NodeContent(null, "root two"));
+		NodeContent child = service.save(new NodeContent(rootTwo, "child"));
+		NodeContent otherRoot = service.save(new NodeContent(TYPE_OTHER, null, "other root"));
+		ForestIndexEntity otherIndex = otherRoot.getForestIndex();
+		//
+		service.rebuildIndexes(ForestIndex.DEFAULT_TREE_TYPE);
+		//
+		ForestIndexEntity syntheticRoot = indexRepository.findRoot(ForestIndex.DEFAULT_TREE_TYPE);
+		Assert.assertNull(syntheticRoot.getContentId());
+		Assert.assertEquals(1L, syntheticRoot.getLft().longValue());
+		Assert.assertEquals(3, syntheticRoot.getChildrenCount());
+		rootOne = service.get(rootOne.getId());
+		rootTwo = service.get(rootTwo.getId());
+		child = service.get(child.getId());
+		Assert.assertEquals(syntheticRoot.getId(), rootOne.getForestIndex().getParent().getId());
+		Assert.assertEquals(syntheticRoot.getId(), rootTwo.getForestIndex().getParent().getId());
+		Assert.assertEquals(rootTwo.getForestIndex().getId(), child.getForestIndex().getParent().getId());
+		Assert.assertEquals(1, service.findAllChildren(rootTwo.getId(), null).getTotalElements());
+		Assert.assertEquals(0, service.findAllChildren(rootOne.getId(), null).getTotalElements());
+		// other tree type is untouched
+		otherRoot = service.get(otherRoot.getId());
+		Assert.assertEquals(otherIndex.getId(), otherRoot.getForestIndex().getId());
+		Assert.assertEquals(otherIndex.getLft(), otherRoot.getForestIndex().getLft());
+	}
+
 	@Test
 	public void testDeleteNode() {
 		createTestTree();
@@ -257,6 +286,22 @@ public class DefaultNodeContentServiceIntegrationTest {
 		assertEquals(root.getId(), parents.get(2).getId());
 	}
 	
+	@Test
+	public void testFindDescendants() {
+		createTestTree();
+		//
+		assertEquals(1, service.findDescendants(root.getId(), 1, null).getTotalElements());
+		assertEquals(3, service.findDescendants(root.getId(), 2, null).getTotalElements());
+		assertEquals(7, service.findDescendants(root.getId(), 3, null).getTotalElements());
+		assertEquals(2, service.findDescendants(b.getId(), 3, null).getTotalElements());
+		//
+		// rebuilt depth
+		service.rebuildIndexes(ForestIndex.DEFAULT_TREE_TYPE);
+		assertEquals(1, service.findDescendants(root.getId(), 1, null).getTotalElements());
+		assertEquals(3, service.findDescendants(root.getId(), 2, null).getTotalElements());
+		assertEquals(1, service.get(root.getId()).getForestIndex().getDepth().intValue()); // synthetic root
+	}
+	
 	@Test
 	public void testForestIndexAfterBulkMove() {
 		int rootCount = 10;
@@ -0,0 +1,321 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.ForestIndexLockEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.repository.ForestIndexLockEntityRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Concurrent index writers - tree type lock.
+ * 
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ForestIndexLockIntegrationTest {
+	
+	private static final int THREADS = 8;
+	private static final int OPERATIONS = 250; // per thread
+	//
+	@Autowired private ForestIndexService<ForestIndexEntity, Long> service;
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private ForestIndexLockEntityRepository lockRepository;
+	@Autowired private EntityManager entityManager;
+	@Autowired private PlatformTransactionManager transactionManager;
+	//
+	private final AtomicLong contentIds = new AtomicLong(1000000L);
+	
+	@Test
+	public void testConcurrentWriters() throws Exception {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		String[] forestTreeTypes = new String[] { "lock-one", "lock-two" };
+		Map<String, List<Long>> indexed = new HashMap<>();
+		for (String forestTreeType : forestTreeTypes) {
+			indexed.put(forestTreeType, new CopyOnWriteArrayList<>());
+		}
+		Queue<Exception> failures = new ConcurrentLinkedQueue<>();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int thread = 0; thread < THREADS; thread++) {
+				futures.add(executor.submit(() -> {
+					Random r = new Random();
+					for (int operation = 0; operation < OPERATIONS; operation++) {
+						String forestTreeType = forestTreeTypes[r.nextInt(forestTreeTypes.length)];
+						List<Long> contents = indexed.get(forestTreeType);
+						int action = r.nextInt(10);
+						try {
+							if (contents.isEmpty() || action < 7) {
+								// new node
+								Long contentId = contentIds.incrementAndGet();
+								Long parentContentId = contents.isEmpty() || r.nextInt(20) == 0 ? null : contents.get(r.nextInt(contents.size()));
+								template.execute(status -> service.index(forestTreeType, contentId, parentContentId));
+								contents.add(contentId);
+							} else if (action < 9) {
+								// move
+								Long contentId = contents.get(r.nextInt(contents.size()));
+								Long parentContentId = contents.get(r.nextInt(contents.size()));
+								template.execute(status -> service.index(forestTreeType, contentId, parentContentId));
+							} else {
+								// drop sub tree
+								Long contentId = contents.get(r.nextInt(contents.size()));
+								template.execute(status -> service.dropIndex(contentId));
+								contents.remove(contentId);
+							}
+						} catch (IllegalArgumentException | UnsupportedOperationException ex) {
+							// node moved under own sub tree, parent sub tree was dropped
+						} catch (Exception ex) {
+							failures.add(ex);
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get(5, TimeUnit.MINUTES);
+			}
+			Assert.assertTrue(String.valueOf(failures.peek()), failures.isEmpty());
+			//
+			for (String forestTreeType : forestTreeTypes) {
+				template.execute(status -> {
+					assertTreeInvariants(forestTreeType);
+					return null;
+				});
+			}
+		} finally {
+			executor.shutdownNow();
+			for (String forestTreeType : forestTreeTypes) {
+				template.execute(status -> {
+					service.dropIndexes(forestTreeType);
+					return null;
+				});
+			}
+		}
+	}
+	
+	@Test
+	public void testWritersOnSameTreeTypeAreSerialized() throws Exception {
+		StripedForestIndexLock lock = new StripedForestIndexLock();
+		lock.setTimeout(100);
+		DefaultForestIndexEntityService lockService = new DefaultForestIndexEntityService(repository, entityManager);
+		lockService.setLock(lock);
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> writer = executor.submit(() -> template.execute(status -> {
+				lockService.index("lock-three", contentIds.incrementAndGet(), null);
+				locked.countDown();
+				try {
+					release.await(1, TimeUnit.MINUTES);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return null;
+			}));
+			Assert.assertTrue(locked.await(1, TimeUnit.MINUTES));
+			//
+			// the same tree type is locked
+			try {
+				template.execute(status -> lockService.index("lock-three", contentIds.incrementAndGet(), null));
+				Assert.fail("Tree type has to be locked.");
+			} catch (CannotAcquireLockException ex) {
+				// ok
+			}
+			// other tree type is not locked
+			Assert.assertNotNull(template.execute(status -> lockService.index("lock-four", contentIds.incrementAndGet(), null)));
+			//
+			release.countDown();
+			writer.get(1, TimeUnit.MINUTES);
+			// lock is released after commit
+			Assert.assertNotNull(template.execute(status -> lockService.index("lock-three", contentIds.incrementAndGet(), null)));
+			template.execute(status -> {
+				Assert.assertEquals(2, repository.findRoot("lock-three").getChildrenCount()); // the second writer was rolled back
+				return null;
+			});
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+			template.execute(status -> {
+				lockService.dropIndexes("lock-three");
+				lockService.dropIndexes("lock-four");
+				return null;
+			});
+		}
+	}
+	
+	@Test
+	public void testDatabaseLock() throws Exception {
+		DefaultForestIndexEntityService lockService = new DefaultForestIndexEntityService(repository, entityManager);
+		lockService.setLock(new DatabaseForestIndexLock<>(lockRepository, ForestIndexLockEntity.class, entityManager, transactionManager));
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.execute(status -> lockService.index("lock-five", contentIds.incrementAndGet(), null));
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> writer = executor.submit(() -> template.execute(status -> {
+				lockService.index("lock-five", contentIds.incrementAndGet(), null);
+				locked.countDown();
+				try {
+					release.await(1, TimeUnit.MINUTES);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return null;
+			}));
+			Assert.assertTrue(locked.await(1, TimeUnit.MINUTES));
+			//
+			// lock row is locked by database (lock timeout)
+			try {
+				template.execute(status -> lockService.index("lock-five", contentIds.incrementAndGet(), null));
+				Assert.fail("Tree type has to be locked.");
+			} catch (PessimisticLockingFailureException ex) {
+				// ok
+			}
+			release.countDown();
+			writer.get(1, TimeUnit.MINUTES);
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+			template.execute(status -> {
+				lockService.dropIndexes("lock-five");
+				return null;
+			});
+		}
+	}
+	
+	@Test
+	public void testDatabaseLockOfEmptyTreeType() throws Exception {
+		DefaultForestIndexEntityService lockService = new DefaultForestIndexEntityService(repository, entityManager);
+		lockService.setLock(new DatabaseForestIndexLock<>(lockRepository, ForestIndexLockEntity.class, entityManager, transactionManager));
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// tree type is not indexed yet - lock row is created
+			Future<?> writer = executor.submit(() -> template.execute(status -> {
+				lockService.index("lock-seven", contentIds.incrementAndGet(), null);
+				locked.countDown();
+				try {
+					release.await(1, TimeUnit.MINUTES);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return null;
+			}));
+			Assert.assertTrue(locked.await(1, TimeUnit.MINUTES));
+			Assert.assertTrue(lockRepository.existsById("lock-seven"));
+			//
+			// the second synthetic root cannot be created
+			try {
+				template.execute(status -> lockService.index("lock-seven", contentIds.incrementAndGet(), null));
+				Assert.fail("Tree type has to be locked.");
+			} catch (PessimisticLockingFailureException ex) {
+				// ok
+			}
+			release.countDown();
+			writer.get(1, TimeUnit.MINUTES);
+			//
+			// lock row is used after indexes are dropped
+			template.execute(status -> {
+				lockService.dropIndexes("lock-seven");
+				return null;
+			});
+			Assert.assertNotNull(template.execute(status -> lockService.index("lock-seven", contentIds.incrementAndGet(), null)));
+			template.execute(status -> {
+				Assert.assertEquals(1, repository.findRoots("lock-seven").size());
+				return null;
+			});
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+			template.execute(status -> {
+				lockService.dropIndexes("lock-seven");
+				return null;
+			});
+		}
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testLockWithoutTransaction() {
+		new StripedForestIndexLock().lock("lock-six");
+	}
+	
+	/**
+	 * Dense nested set - indexes are numbered from 1 without gaps, children are inside parent interval, stored depth is parent depth + 1.
+	 * 
+	 * @param forestTreeType
+	 */
+	private void assertTreeInvariants(String forestTreeType) {
+		List<ForestIndexEntity> indexes = entityManager
+				.createQuery("select e from ForestIndexEntity e where e.forestTreeType = :forestTreeType", ForestIndexEntity.class)
+				.setParameter("forestTreeType", forestTreeType)
+				.getResultList();
+		Assert.assertFalse(indexes.isEmpty());
+		boolean[] numbers = new boolean[indexes.size() * 2 + 1];
+		Map<Long, Integer> descendants = new HashMap<>();
+		int roots = 0;
+		for (ForestIndexEntity index : indexes) {
+			Assert.assertNotNull(index.toString(), index.getLft());
+			Assert.assertNotNull(index.toString(), index.getRgt());
+			Assert.assertTrue(index.toString(), index.getLft() < index.getRgt());
+			Assert.assertTrue(index.toString(), index.getRgt() < numbers.length);
+			Assert.assertFalse(index.toString(), numbers[index.getLft().intValue()]);
+			Assert.assertFalse(index.toString(), numbers[index.getRgt().intValue()]);
+			numbers[index.getLft().intValue()] = true;
+			numbers[index.getRgt().intValue()] = true;
+			//
+			ForestIndexEntity parent = index.getParent();
+			if (parent == null) {
+				roots++;
+				Assert.assertEquals(1L, index.getLft().longValue());
+				Assert.assertEquals(0, index.getDepth().intValue());
+				continue;
+			}
+			Assert.assertTrue(index.toString(), parent.getLft() < index.getLft() && index.getRgt() < parent.getRgt());
+			Assert.assertEquals(index.toString(), parent.getDepth() + 1, index.getDepth().intValue());
+			for (ForestIndexEntity ancestor = parent; ancestor != null; ancestor = ancestor.getParent()) {
+				descendants.merge(ancestor.getId(), 1, Integer::sum);
+			}
+		}
+		Assert.assertEquals(1, roots);
+		for (ForestIndexEntity index : indexes) {
+			Assert.assertEquals(index.toString(), descendants.getOrDefault(index.getId(), 0).intValue(), index.getChildrenCount());
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.ForestIndexMetadataEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.repository.ForestIndexMetadataEntityRepository;
+
+/**
+ * Tree type metadata maintained by write operations.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class ForestIndexMetadataIntegrationTest {
+
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private ForestIndexMetadataEntityRepository metadataRepository;
+	@Autowired private EntityManager entityManager;
+	//
+	private ForestIndexMetadataManager<ForestIndexMetadataEntity> metadataManager;
+	private DefaultForestIndexEntityService service;
+
+	@Before
+	public void init() {
+		metadataManager = new ForestIndexMetadataManager<>(metadataRepository, ForestIndexMetadataEntity.class, entityManager);
+		service = new DefaultForestIndexEntityService(repository, entityManager);
+		service.setMetadataManager(metadataManager);
+	}
+
+	@Test
+	public void testMetadataFollowsWrites() {
+		String forestTreeType = "metadata-writes";
+		Assert.assertNull(metadataManager.getMetadata(forestTreeType));
+		//
+		service.index(forestTreeType, 6000001L, null);
+		service.index(forestTreeType, 6000002L, 6000001L);
+		service.index(forestTreeType, 6000003L, 6000001L);
+		service.index(forestTreeType, 6000004L, 6000003L);
+		ForestIndexMetadataEntity metadata = assertMetadata(forestTreeType, 5);
+		long version = metadata.getVersion();
+		//
+		// move
+		service.index(forestTreeType, 6000004L, 6000002L);
+		metadata = assertMetadata(forestTreeType, 5);
+		Assert.assertTrue(metadata.getVersion() > version);
+		version = metadata.getVersion();
+		//
+		// delete sub tree
+		service.dropIndex(6000002L);
+		metadata = assertMetadata(forestTreeType, 3);
+		Assert.assertTrue(metadata.getVersion() > version);
+		//
+		// bulk append
+		List<ForestContentNode<Long>> contents = new ArrayList<>();
+		contents.add(new ForestContentNode<>(6000010L, null));
+		contents.add(new ForestContentNode<>(6000011L, 6000010L));
+		contents.add(new ForestContentNode<>(6000012L, 6000003L));
+		Assert.assertEquals(3, service.indexAll(forestTreeType, contents));
+		assertMetadata(forestTreeType, 6);
+		//
+		// batch
+		service.inBatch(forestTreeType, batch -> {
+			batch.index(6000020L, 6000011L);
+			batch.index(6000021L, 6000020L);
+			batch.dropIndex(6000012L);
+		});
+		assertMetadata(forestTreeType, 7);
+		//
+		// metadata are used by write operations
+		service.index(forestTreeType, 6000030L, null);
+		assertMetadata(forestTreeType, 8);
+	}
+
+	@Test
+	public void testNewRootAboveIndexedTree() {
+		String forestTreeType = "metadata-root";
+		// synthetic root is not used - new root is inserted above the previous root
+		ForestIndexEntity first = service.saveNode(new ForestIndexEntity(forestTreeType, null, 6001001L));
+		service.saveNode(new ForestIndexEntity(forestTreeType, first, 6001002L));
+		ForestIndexMetadataEntity metadata = assertMetadata(forestTreeType, 2);
+		Assert.assertEquals(first.getId(), metadata.getRootId());
+		//
+		ForestIndexEntity second = service.saveNode(new ForestIndexEntity(forestTreeType, null, 6001003L));
+		metadata = assertMetadata(forestTreeType, 3);
+		Assert.assertEquals(second.getId(), metadata.getRootId());
+		Assert.assertEquals(Long.valueOf(6L), metadata.getMaxRgt());
+	}
+
+	@Test
+	public void testRebuildResetsMetadata() {
+		String forestTreeType = "metadata-rebuild";
+		List<ForestContentNode<Long>> contents = new ArrayList<>();
+		contents.add(new ForestContentNode<>(6002001L, null));
+		for (long contentId = 6002002L; contentId < 6002030L; contentId++) {
+			contents.add(new ForestContentNode<>(contentId, contentId - (contentId % 3 == 0 ? 2 : 1)));
+		}
+		service.rebuild(forestTreeType, contents.stream());
+		ForestIndexMetadataEntity metadata = assertMetadata(forestTreeType, 30);
+		Assert.assertFalse(metadata.isRebuilding());
+		long version = metadata.getVersion();
+		//
+		service.rebuild(forestTreeType);
+		metadata = assertMetadata(forestTreeType, 30);
+		Assert.assertFalse(metadata.isRebuilding());
+		Assert.assertTrue(metadata.getVersion() > version);
+		//
+		// interrupted rebuild is finished by the next rebuild
+		metadataManager.setRebuilding(forestTreeType, true);
+		Assert.assertTrue(metadataManager.getMetadata(forestTreeType).isRebuilding());
+		service.rebuild(forestTreeType);
+		Assert.assertFalse(assertMetadata(forestTreeType, 30).isRebuilding());
+		//
+		service.dropIndexes(forestTreeType);
+		metadata = metadataManager.getMetadata(forestTreeType);
+		Assert.assertEquals(0, metadata.getNodeCount());
+		Assert.assertNull(metadata.getRootId());
+		Assert.assertNull(metadata.getMaxRgt());
+		//
+		service.index(forestTreeType, 6002001L, null);
+		assertMetadata(forestTreeType, 2);
+	}
+
+	/**
+	 * Checks metadata against indexes.
+	 *
+	 * @param forestTreeType
+	 * @param nodeCount expected indexes count
+	 * @return actual metadata
+	 */
+	private ForestIndexMetadataEntity assertMetadata(String forestTreeType, long nodeCount) {
+		entityManager.flush();
+		entityManager.clear();
+		ForestIndexMetadataEntity metadata = metadataManager.getMetadata(forestTreeType);
+		Assert.assertNotNull(metadata);
+		Assert.assertEquals(nodeCount, repository.countIndexes(forestTreeType));
+		Assert.assertEquals(nodeCount, metadata.getNodeCount());
+		Assert.assertEquals(Long.valueOf(nodeCount), metadataManager.getNodeCount(forestTreeType));
+		ForestIndexEntity root = repository.findRoot(forestTreeType);
+		Assert.assertEquals(root.getId(), metadata.getRootId());
+		Assert.assertEquals(root.getRgt(), metadata.getMaxRgt());
+		Assert.assertEquals(Long.valueOf(2 * nodeCount), root.getRgt());
+		return metadata;
+	}
+}
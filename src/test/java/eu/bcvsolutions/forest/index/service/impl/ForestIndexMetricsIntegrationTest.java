@@ -0,0 +1,112 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.NodeContent;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.repository.NodeContentRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Micrometer metrics of index operations.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class ForestIndexMetricsIntegrationTest {
+
+	@Autowired private ForestIndexService<ForestIndexEntity, Long> service;
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private NodeContentRepository nodeContentRepository;
+	@Autowired private EntityManager entityManager;
+
+	@Test
+	public void testIndexOperationMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MicrometerForestIndexMetrics metrics = new MicrometerForestIndexMetrics(registry);
+		DefaultForestIndexEntityService indexService = new DefaultForestIndexEntityService(repository, entityManager);
+		indexService.setMetrics(metrics);
+		ForestIndexService<ForestIndexEntity, Long> meteredService = new MeteredForestIndexService<>(indexService, metrics);
+		//
+		meteredService.index("metrics-one", 3000001L, null);
+		meteredService.index("metrics-one", 3000002L, 3000001L);
+		meteredService.index("metrics-one", 3000003L, 3000001L);
+		meteredService.index("metrics-one", 3000004L, 3000002L);
+		meteredService.dropIndex(3000003L);
+		//
+		Assert.assertEquals(4, registry
+				.get(MicrometerForestIndexMetrics.METRIC_OPERATION)
+				.tag(MicrometerForestIndexMetrics.TAG_OPERATION, "index")
+				.tag(MicrometerForestIndexMetrics.TAG_TREE_TYPE, "metrics-one")
+				.timer()
+				.count());
+		Assert.assertEquals(1, registry
+				.get(MicrometerForestIndexMetrics.METRIC_OPERATION)
+				.tag(MicrometerForestIndexMetrics.TAG_OPERATION, "dropIndex")
+				.tag(MicrometerForestIndexMetrics.TAG_TREE_TYPE, "metrics-one")
+				.timer()
+				.count());
+		// synthetic root is inserted by beforeRootInsert
+		DistributionSummary beforeNodeInsert = registry
+				.get(MicrometerForestIndexMetrics.METRIC_ROWS)
+				.tag(MicrometerForestIndexMetrics.TAG_STATEMENT, "beforeNodeInsert")
+				.tag(MicrometerForestIndexMetrics.TAG_TREE_TYPE, "metrics-one")
+				.summary();
+		Assert.assertEquals(4, beforeNodeInsert.count());
+		Assert.assertEquals(1 + 2 + 2 + 4, beforeNodeInsert.totalAmount(), 0); // shifted parents and following nodes
+		Assert.assertEquals(1, registry
+				.get(MicrometerForestIndexMetrics.METRIC_ROWS)
+				.tag(MicrometerForestIndexMetrics.TAG_STATEMENT, "afterDelete")
+				.summary()
+				.count());
+		Assert.assertTrue(registry
+				.get(MicrometerForestIndexMetrics.METRIC_FLUSH)
+				.tag(MicrometerForestIndexMetrics.TAG_TREE_TYPE, "metrics-one")
+				.counter()
+				.count() > 0);
+		// synthetic root with three contents
+		Assert.assertEquals(4, registry
+				.get(MicrometerForestIndexMetrics.METRIC_TREE_SIZE)
+				.tag(MicrometerForestIndexMetrics.TAG_TREE_TYPE, "metrics-one")
+				.gauge()
+				.value(), 0);
+	}
+
+	@Test
+	public void testContentOperationMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		DefaultNodeContentService contentService = new DefaultNodeContentService(service, nodeContentRepository);
+		contentService.setMetrics(new MicrometerForestIndexMetrics(registry));
+		//
+		NodeContent parent = contentService.save(new NodeContent("metrics-two", null, "parent"));
+		contentService.save(new NodeContent("metrics-two", parent, "child"));
+		Assert.assertEquals(1, contentService.findAllChildren(parent.getId(), null).getTotalElements());
+		//
+		Assert.assertEquals(2, registry
+				.get(MicrometerForestIndexMetrics.METRIC_OPERATION)
+				.tag(MicrometerForestIndexMetrics.TAG_OPERATION, "createIndex")
+				.tag(MicrometerForestIndexMetrics.TAG_TREE_TYPE, "metrics-two")
+				.timer()
+				.count());
+		Assert.assertEquals(1, registry
+				.get(MicrometerForestIndexMetrics.METRIC_OPERATION)
+				.tag(MicrometerForestIndexMetrics.TAG_OPERATION, "findAllChildren")
+				.tag(MicrometerForestIndexMetrics.TAG_TREE_TYPE, "metrics-two")
+				.timer()
+				.count());
+	}
+}
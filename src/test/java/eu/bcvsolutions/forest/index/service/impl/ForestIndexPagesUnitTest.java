@@ -0,0 +1,63 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+
+/**
+ * Pages of all children without count query.
+ * 
+ * @author Radek Tomiška
+ *
+ */
+public class ForestIndexPagesUnitTest {
+
+	@Test
+	public void testIsCounted() {
+		Assert.assertFalse(ForestIndexPages.isCounted(null));
+		Assert.assertFalse(ForestIndexPages.isCounted(index(null, null, null)));
+		Assert.assertTrue(ForestIndexPages.isCounted(index(2L, 3L, null))); // leaf
+		Assert.assertTrue(ForestIndexPages.isCounted(index(2L, 9L, null)));
+		Assert.assertTrue(ForestIndexPages.isCounted(index(2L, 9L, 3))); // stored count without gaps
+		Assert.assertFalse(ForestIndexPages.isCounted(index(1L, 101L, 3))); // sparse
+		Assert.assertFalse(ForestIndexPages.isCounted(index(1L, 101L, 0))); // sparse leaf
+	}
+	
+	@Test
+	public void testGetChildrenCount() {
+		Assert.assertEquals(0, ForestIndexPages.getChildrenCount(2L, 3L));
+		Assert.assertEquals(10, ForestIndexPages.getChildrenCount(2L, 23L));
+		Assert.assertEquals(10, index(2L, 23L, null).getChildrenCount());
+	}
+	
+	@Test
+	public void testGetPage() {
+		ForestIndexEntity parent = index(2L, 23L, null); // 10 children
+		//
+		Page<Integer> page = ForestIndexPages.getPage(Arrays.asList(1, 2, 3), PageRequest.of(1, 3), parent::getChildrenCount);
+		Assert.assertEquals(10, page.getTotalElements());
+		Assert.assertEquals(4, page.getTotalPages());
+		Assert.assertTrue(page.hasNext());
+		//
+		// total is resolved from the last page - supplier is not called
+		page = ForestIndexPages.getPage(Arrays.asList(1), PageRequest.of(3, 3), () -> { throw new IllegalStateException(); });
+		Assert.assertEquals(10, page.getTotalElements());
+		Assert.assertFalse(page.hasNext());
+		//
+		page = ForestIndexPages.getPage(Arrays.asList(1, 2), null, () -> { throw new IllegalStateException(); });
+		Assert.assertEquals(2, page.getTotalElements());
+	}
+	
+	private ForestIndexEntity index(Long lft, Long rgt, Integer childrenCount) {
+		ForestIndexEntity index = new ForestIndexEntity();
+		index.setLft(lft);
+		index.setRgt(rgt);
+		index.setChildrenCount(childrenCount);
+		return index;
+	}
+}
@@ -0,0 +1,69 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import eu.bcvsolutions.forest.index.entity.AbstractForestIndex;
+
+/**
+ * Materialized path encoding.
+ * 
+ * @author Radek Tomiška
+ *
+ */
+public class ForestIndexPathUnitTest {
+
+	@Test
+	public void testEncodeFixedWidth() {
+		Assert.assertEquals(ForestIndexPath.SEGMENT_LENGTH, ForestIndexPath.encode(0L).length());
+		Assert.assertEquals(ForestIndexPath.SEGMENT_LENGTH, ForestIndexPath.encode(Long.MAX_VALUE).length());
+		Assert.assertEquals("0000000000001", ForestIndexPath.encode(1L));
+	}
+	
+	@Test
+	public void testEncodeKeepsOrder() {
+		Assert.assertTrue(ForestIndexPath.encode(9L).compareTo(ForestIndexPath.encode(10L)) < 0);
+		Assert.assertTrue(ForestIndexPath.encode(35L).compareTo(ForestIndexPath.encode(36L)) < 0);
+		Assert.assertTrue(ForestIndexPath.encode(123456789L).compareTo(ForestIndexPath.encode(Long.MAX_VALUE)) < 0);
+	}
+	
+	@Test
+	public void testDecode() {
+		String path = ForestIndexPath.append(ForestIndexPath.append(null, 1L), 50L);
+		path = ForestIndexPath.append(path, Long.MAX_VALUE);
+		//
+		Assert.assertEquals(Arrays.asList(1L, 50L, Long.MAX_VALUE), ForestIndexPath.decode(path));
+		Assert.assertEquals(2, ForestIndexPath.getDepth(path));
+		Assert.assertEquals(0, ForestIndexPath.getDepth(ForestIndexPath.encode(1L)));
+		Assert.assertTrue(ForestIndexPath.decode(null).isEmpty());
+	}
+	
+	@Test
+	public void testMaxDepth() {
+		String path = null;
+		for (long id = 1; id <= ForestIndexPath.MAX_DEPTH + 1; id++) {
+			path = ForestIndexPath.append(path, Long.MAX_VALUE - id);
+		}
+		Assert.assertEquals(ForestIndexPath.MAX_DEPTH, ForestIndexPath.getDepth(path));
+		Assert.assertEquals(AbstractForestIndex.PATH_LENGTH, path.length());
+		ForestIndexPath.checkDepth(ForestIndexPath.MAX_DEPTH);
+		try {
+			ForestIndexPath.append(path, 1L);
+			Assert.fail("Path exceeds maximum length.");
+		} catch (IllegalArgumentException ex) {
+			Assert.assertTrue(ex.getMessage().contains(String.valueOf(ForestIndexPath.MAX_DEPTH)));
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecodeCorruptedPath() {
+		ForestIndexPath.decode("123");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testEncodeNegative() {
+		ForestIndexPath.encode(-1L);
+	}
+}
@@ -0,0 +1,241 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.NodeContent;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.repository.NodeContentRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Write-behind index queue.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ForestIndexQueueIntegrationTest {
+
+	@Autowired private ForestIndexService<ForestIndexEntity, Long> service;
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private NodeContentRepository nodeContentRepository;
+	@Autowired private EntityManager entityManager;
+	@Autowired private PlatformTransactionManager transactionManager;
+	//
+	private final AtomicLong contentIds = new AtomicLong(2000000L);
+
+	@Test
+	public void testCoalesceOperations() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger batches = new AtomicInteger();
+		DefaultForestIndexEntityService blockingService = new DefaultForestIndexEntityService(repository, entityManager) {
+
+			@Override
+			public int indexAll(String forestTreeType, Collection<ForestContentNode<Long>> contents) {
+				if (batches.incrementAndGet() == 1) {
+					started.countDown();
+					try {
+						release.await(1, TimeUnit.MINUTES);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.indexAll(forestTreeType, contents);
+			}
+		};
+		ForestIndexQueue<Long> queue = new ForestIndexQueue<>(blockingService, transactionManager);
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		try {
+			Long rootId = contentIds.incrementAndGet();
+			Long parentOneId = contentIds.incrementAndGet();
+			Long parentTwoId = contentIds.incrementAndGet();
+			Long contentId = contentIds.incrementAndGet();
+			// the first batch blocks worker
+			queue.index("queue-one", rootId, null);
+			Assert.assertTrue(started.await(1, TimeUnit.MINUTES));
+			//
+			// create + move + move = create
+			template.execute(status -> {
+				queue.index("queue-one", parentOneId, rootId);
+				queue.index("queue-one", parentTwoId, rootId);
+				queue.index("queue-one", contentId, parentOneId);
+				queue.index("queue-one", contentId, rootId);
+				queue.index("queue-one", contentId, parentTwoId);
+				Assert.assertEquals(6, queue.size()); // reserved
+				return null;
+			});
+			Assert.assertEquals(4, queue.size());
+			Assert.assertFalse(queue.awaitIndexed(contentId, 10, TimeUnit.MILLISECONDS));
+			//
+			release.countDown();
+			Assert.assertTrue(queue.awaitIndexed(contentId, 1, TimeUnit.MINUTES));
+			Assert.assertTrue(queue.flush(1, TimeUnit.MINUTES));
+			Assert.assertEquals(0, queue.size());
+			Assert.assertEquals(2, batches.get()); // coalesced into one batch
+			//
+			template.execute(status -> {
+				ForestIndexEntity parentTwo = repository.findOneByContentId(parentTwoId);
+				ForestIndexEntity index = repository.findOneByContentId(contentId);
+				Assert.assertEquals(parentTwo.getId(), index.getParent().getId());
+				Assert.assertEquals(4, repository.findRoot("queue-one").getChildrenCount());
+				return null;
+			});
+		} finally {
+			release.countDown();
+			queue.shutdown();
+			template.execute(status -> {
+				service.dropIndexes("queue-one");
+				return null;
+			});
+		}
+	}
+
+	@Test
+	public void testRolledBackOperationsAreDiscarded() throws Exception {
+		ForestIndexQueue<Long> queue = new ForestIndexQueue<>(service, transactionManager);
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		try {
+			Long contentId = contentIds.incrementAndGet();
+			template.execute(status -> {
+				queue.index("queue-two", contentId, null);
+				status.setRollbackOnly();
+				return null;
+			});
+			Assert.assertEquals(0, queue.size());
+			queue.flush();
+			Assert.assertNull(template.execute(status -> repository.findOneByContentId(contentId)));
+		} finally {
+			queue.shutdown();
+		}
+	}
+
+	@Test
+	public void testBackPressure() throws Exception {
+		ForestIndexQueue<Long> queue = new ForestIndexQueue<>(service, transactionManager, 2);
+		queue.setTimeout(50);
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		try {
+			template.execute(status -> {
+				queue.index("queue-three", contentIds.incrementAndGet(), null);
+				queue.index("queue-three", contentIds.incrementAndGet(), null);
+				// capacity is reserved until transaction ends
+				try {
+					queue.index("queue-three", contentIds.incrementAndGet(), null);
+					Assert.fail("Queue has to be full.");
+				} catch (IllegalStateException ex) {
+					// ok
+				}
+				return null;
+			});
+			queue.flush();
+			Assert.assertEquals(0, queue.size());
+			template.execute(status -> {
+				Assert.assertEquals(2, repository.findRoot("queue-three").getChildrenCount());
+				return null;
+			});
+		} finally {
+			queue.shutdown();
+			template.execute(status -> {
+				service.dropIndexes("queue-three");
+				return null;
+			});
+		}
+	}
+
+	@Test
+	public void testAsynchronousContentIndex() throws Exception {
+		ForestIndexQueue<Long> queue = new ForestIndexQueue<>(service, transactionManager);
+		DefaultNodeContentService contentService = new DefaultNodeContentService(service, nodeContentRepository);
+		contentService.setIndexQueue(queue);
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		List<Long> ids = new ArrayList<>();
+		try {
+			NodeContent parent = template.execute(status -> contentService.save(new NodeContent("queue-four", null, "root")));
+			ids.add(parent.getId());
+			NodeContent child = template.execute(status -> contentService.save(new NodeContent("queue-four", parent, "child")));
+			ids.add(0, child.getId());
+			Assert.assertNull(child.getForestIndex());
+			//
+			Assert.assertTrue(queue.awaitIndexed(child.getId(), 1, TimeUnit.MINUTES));
+			template.execute(status -> {
+				NodeContent content = nodeContentRepository.findById(child.getId()).get();
+				Assert.assertNotNull(content.getForestIndex());
+				Assert.assertEquals(1, contentService.findAllChildren(parent.getId(), null).getTotalElements());
+				return null;
+			});
+			//
+			// drop
+			template.execute(status -> {
+				contentService.deleteIndex(child.getId());
+				return null;
+			});
+			queue.flush();
+			Assert.assertNull(template.execute(status -> repository.findOneByContentId(child.getId())));
+		} finally {
+			queue.shutdown();
+			template.execute(status -> {
+				ids.forEach(nodeContentRepository::deleteById);
+				service.dropIndexes("queue-four");
+				return null;
+			});
+		}
+	}
+
+	@Test
+	public void testDropIndexOfDeletedContent() throws Exception {
+		ForestIndexQueue<Long> queue = new ForestIndexQueue<>(service, transactionManager);
+		DefaultNodeContentService contentService = new DefaultNodeContentService(service, nodeContentRepository);
+		contentService.setIndexQueue(queue);
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		List<Long> ids = new ArrayList<>();
+		try {
+			NodeContent parent = template.execute(status -> contentService.save(new NodeContent("queue-five", null, "root")));
+			ids.add(parent.getId());
+			NodeContent child = template.execute(status -> contentService.save(new NodeContent("queue-five", parent, "child")));
+			Assert.assertTrue(queue.awaitIndexed(child.getId(), 1, TimeUnit.MINUTES));
+			Assert.assertNotNull(template.execute(status -> repository.findOneByContentId(child.getId())));
+			//
+			// content is deleted before index is dropped - tree type is resolved from index, drop is enqueued
+			template.execute(status -> {
+				nodeContentRepository.deleteById(child.getId());
+				entityManager.flush();
+				Assert.assertNull(contentService.deleteIndex(child.getId()));
+				Assert.assertNotNull(repository.findOneByContentId(child.getId()));
+				return null;
+			});
+			queue.flush();
+			Assert.assertNull(template.execute(status -> repository.findOneByContentId(child.getId())));
+		} finally {
+			queue.shutdown();
+			template.execute(status -> {
+				ids.forEach(nodeContentRepository::deleteById);
+				service.dropIndexes("queue-five");
+				return null;
+			});
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexRebuildResult;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+
+/**
+ * Concurrent rebuild of more tree types.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ForestIndexRebuildExecutorIntegrationTest {
+
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private EntityManager entityManager;
+	@Autowired private PlatformTransactionManager transactionManager;
+	//
+	private Random r = new Random();
+	private TransactionTemplate template;
+
+	@Before
+	public void init() {
+		template = new TransactionTemplate(transactionManager);
+	}
+
+	@Test
+	public void testRebuildTreeTypesConcurrently() {
+		List<String> forestTreeTypes = Arrays.asList("parallel-one", "parallel-two", "parallel-three");
+		// both rebuilds have to run at the same time
+		CountDownLatch running = new CountDownLatch(2);
+		DefaultForestIndexEntityService service = new DefaultForestIndexEntityService(repository, entityManager) {
+
+			@Override
+			public void rebuild(String forestTreeType) {
+				running.countDown();
+				try {
+					Assert.assertTrue(running.await(1, TimeUnit.MINUTES));
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				super.rebuild(forestTreeType);
+			}
+		};
+		service.setRebuildExecutor(new ForestIndexRebuildExecutor(transactionManager, 2));
+		try {
+			Map<String, Map<Long, ForestIndexEntity>> expected = new HashMap<>();
+			long firstContentId = 7200000L;
+			for (String forestTreeType : forestTreeTypes) {
+				generateTree(service, forestTreeType, firstContentId, 50);
+				expected.put(forestTreeType, findAll(forestTreeType));
+				template.execute(status -> repository.clearIndexes(forestTreeType));
+				firstContentId += 1000;
+			}
+			//
+			ForestIndexRebuildResult result = service.rebuildAll(forestTreeTypes);
+			//
+			Assert.assertTrue(result.isSuccess());
+			Assert.assertEquals(forestTreeTypes, new ArrayList<>(result.getRebuilt()));
+			forestTreeTypes.forEach(forestTreeType -> assertSameIndexes(expected.get(forestTreeType), findAll(forestTreeType)));
+		} finally {
+			dropIndexes(service, forestTreeTypes);
+		}
+	}
+
+	@Test
+	public void testFailedTreeTypeIsRolledBack() {
+		List<String> forestTreeTypes = Arrays.asList("parallel-ok", "parallel-failed");
+		DefaultForestIndexEntityService service = new DefaultForestIndexEntityService(repository, entityManager) {
+
+			@Override
+			public void rebuild(String forestTreeType) {
+				super.rebuild(forestTreeType);
+				if (forestTreeType.equals("parallel-failed")) {
+					throw new IllegalStateException("failed");
+				}
+			}
+		};
+		service.setRebuildExecutor(new ForestIndexRebuildExecutor(transactionManager));
+		try {
+			generateTree(service, "parallel-ok", 7203000L, 30);
+			generateTree(service, "parallel-failed", 7204000L, 30);
+			Map<Long, ForestIndexEntity> expected = findAll("parallel-ok");
+			forestTreeTypes.forEach(forestTreeType -> template.execute(status -> repository.clearIndexes(forestTreeType)));
+			//
+			ForestIndexRebuildResult result = service.rebuildAll(forestTreeTypes);
+			//
+			Assert.assertFalse(result.isSuccess());
+			Assert.assertEquals(1, result.getRebuilt().size());
+			Assert.assertTrue(result.getRebuilt().contains("parallel-ok"));
+			Assert.assertEquals(1, result.getFailures().size());
+			Assert.assertEquals("failed", result.getFailures().get("parallel-failed").getMessage());
+			assertSameIndexes(expected, findAll("parallel-ok"));
+			// indexes of failed tree type are not changed
+			Assert.assertTrue(findAll("parallel-failed").values().stream().allMatch(index -> index.getLft() == null));
+		} finally {
+			dropIndexes(service, forestTreeTypes);
+		}
+	}
+
+	@Test
+	public void testRebuildSequentiallyWithoutExecutor() {
+		List<String> forestTreeTypes = Arrays.asList("sequential-one", "sequential-two", "sequential-one");
+		DefaultForestIndexEntityService service = new DefaultForestIndexEntityService(repository, entityManager);
+		try {
+			generateTree(service, "sequential-one", 7205000L, 20);
+			generateTree(service, "sequential-two", 7206000L, 20);
+			Map<Long, ForestIndexEntity> expected = findAll("sequential-two");
+			template.execute(status -> repository.clearIndexes("sequential-two"));
+			//
+			ForestIndexRebuildResult result = template.execute(status -> service.rebuildAll(forestTreeTypes));
+			//
+			Assert.assertTrue(result.isSuccess());
+			Assert.assertEquals(2, result.getRebuilt().size());
+			assertSameIndexes(expected, findAll("sequential-two"));
+		} finally {
+			dropIndexes(service, forestTreeTypes);
+		}
+	}
+
+	@Test
+	public void testRebuildNothing() {
+		ForestIndexRebuildExecutor executor = new ForestIndexRebuildExecutor(transactionManager);
+		ForestIndexRebuildResult result = executor.rebuildAll(new ArrayList<>(), forestTreeType -> Assert.fail());
+		//
+		Assert.assertTrue(result.isSuccess());
+		Assert.assertTrue(result.getRebuilt().isEmpty());
+	}
+
+	private void generateTree(DefaultForestIndexEntityService service, String forestTreeType, long firstContentId, int count) {
+		template.execute(status -> {
+			List<Long> contentIds = new ArrayList<>();
+			for (long contentId = firstContentId; contentId < firstContentId + count; contentId++) {
+				Long parentContentId = contentIds.isEmpty() ? null : contentIds.get(r.nextInt(contentIds.size()));
+				service.index(forestTreeType, contentId, parentContentId);
+				contentIds.add(contentId);
+			}
+			return null;
+		});
+	}
+
+	private void dropIndexes(DefaultForestIndexEntityService service, List<String> forestTreeTypes) {
+		template.execute(status -> {
+			forestTreeTypes.forEach(service::dropIndexes);
+			return null;
+		});
+	}
+
+	private Map<Long, ForestIndexEntity> findAll(String forestTreeType) {
+		return template.execute(status -> {
+			Map<Long, ForestIndexEntity> indexes = new HashMap<>();
+			repository.findAll().forEach(index -> {
+				if (forestTreeType.equals(index.getForestTreeType())) {
+					indexes.put(index.getId(), index);
+				}
+			});
+			return indexes;
+		});
+	}
+
+	private void assertSameIndexes(Map<Long, ForestIndexEntity> expected, Map<Long, ForestIndexEntity> indexes) {
+		Assert.assertEquals(expected.size(), indexes.size());
+		expected.values().forEach(index -> {
+			ForestIndexEntity actual = indexes.get(index.getId());
+			Assert.assertEquals(index.toString(), index.getLft(), actual.getLft());
+			Assert.assertEquals(index.toString(), index.getRgt(), actual.getRgt());
+			Assert.assertEquals(index.toString(), index.getDepth(), actual.getDepth());
+			Assert.assertEquals(index.toString(), index.getChildrenCount(), actual.getChildrenCount());
+		});
+	}
+}
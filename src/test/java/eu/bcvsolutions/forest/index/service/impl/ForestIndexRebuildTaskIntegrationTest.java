@@ -0,0 +1,202 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexMetadata;
+import eu.bcvsolutions.forest.index.domain.ForestIndexRebuildProgress;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.ForestIndexMetadataEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.repository.ForestIndexMetadataEntityRepository;
+
+/**
+ * Chunked, resumable rebuild.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class ForestIndexRebuildTaskIntegrationTest {
+
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private ForestIndexMetadataEntityRepository metadataRepository;
+	@Autowired private EntityManager entityManager;
+	@Autowired private PlatformTransactionManager transactionManager;
+	//
+	private Random r = new Random();
+	private ForestIndexMetadataManager<ForestIndexMetadataEntity> metadataManager;
+	private DefaultForestIndexEntityService service;
+	private ForestIndexRebuildTask task;
+
+	@Before
+	public void init() {
+		metadataManager = new ForestIndexMetadataManager<>(metadataRepository, ForestIndexMetadataEntity.class, entityManager);
+		service = new DefaultForestIndexEntityService(repository, entityManager);
+		service.setMetadataManager(metadataManager);
+		task = new ForestIndexRebuildTask(service, transactionManager);
+		task.setChunkSize(20);
+	}
+
+	@Test
+	public void testSameNumberingAsRebuild() {
+		String forestTreeType = "chunked-rebuild";
+		generateTree(forestTreeType, 7100000L, 150);
+		service.rebuild(forestTreeType);
+		Map<Long, ForestIndexEntity> expected = findAll(forestTreeType);
+		//
+		repository.clearIndexes(forestTreeType);
+		List<ForestIndexRebuildProgress> progresses = new ArrayList<>();
+		task.setListener(progresses::add);
+		ForestIndexRebuildProgress progress = task.run(forestTreeType);
+		//
+		assertSameIndexes(expected, findAll(forestTreeType));
+		Assert.assertTrue(progress.isFinished());
+		Assert.assertEquals(151, progress.getDone());
+		Assert.assertEquals(151, progress.getTotal());
+		Assert.assertEquals(151, progress.getWritten());
+		Assert.assertEquals(Duration.ZERO, progress.getEta());
+		Assert.assertEquals(9, progresses.size()); // 8 chunks + publish
+		Assert.assertEquals(20, progresses.get(0).getDone());
+		Assert.assertFalse(progresses.get(0).isFinished());
+		Assert.assertTrue(progresses.get(0).getRate() > 0);
+		Assert.assertNotNull(progresses.get(0).getEta());
+		//
+		ForestIndexMetadata metadata = metadataManager.getMetadata(forestTreeType);
+		Assert.assertFalse(metadata.isRebuilding());
+		Assert.assertNull(metadata.getCheckpointPosition());
+		Assert.assertEquals(151, metadata.getNodeCount());
+	}
+
+	@Test
+	public void testResumeFromCheckpoint() {
+		String forestTreeType = "chunked-resume";
+		generateTree(forestTreeType, 7101000L, 150);
+		service.rebuild(forestTreeType);
+		Map<Long, ForestIndexEntity> expected = findAll(forestTreeType);
+		repository.clearIndexes(forestTreeType);
+		//
+		// interrupted after the third chunk
+		interrupt(forestTreeType, 3);
+		ForestIndexMetadata metadata = metadataManager.getMetadata(forestTreeType);
+		Assert.assertTrue(metadata.isRebuilding());
+		Assert.assertEquals(Long.valueOf(60L), metadata.getCheckpointPosition());
+		Assert.assertNotNull(metadata.getCheckpointCounter());
+		// shadow indexes are not published
+		Assert.assertTrue(findAll(forestTreeType).values().stream().allMatch(index -> index.getLft() == null));
+		//
+		List<ForestIndexRebuildProgress> progresses = new ArrayList<>();
+		task.setListener(progresses::add);
+		task.run(forestTreeType);
+		//
+		Assert.assertEquals(80, progresses.get(0).getDone());
+		Assert.assertEquals(20, progresses.get(0).getWritten());
+		Assert.assertEquals(91, progresses.get(progresses.size() - 1).getWritten());
+		assertSameIndexes(expected, findAll(forestTreeType));
+	}
+
+	@Test
+	public void testRestartChangedTree() {
+		String forestTreeType = "chunked-restart";
+		generateTree(forestTreeType, 7102000L, 150);
+		interrupt(forestTreeType, 2);
+		//
+		// tree is changed - checkpoint is obsolete
+		service.index(forestTreeType, 7102500L, 7102010L);
+		List<ForestIndexRebuildProgress> progresses = new ArrayList<>();
+		task.setListener(progresses::add);
+		ForestIndexRebuildProgress progress = task.run(forestTreeType);
+		//
+		Assert.assertEquals(20, progresses.get(0).getDone());
+		Assert.assertEquals(152, progress.getTotal());
+		Map<Long, ForestIndexEntity> indexes = findAll(forestTreeType);
+		service.rebuild(forestTreeType);
+		assertSameIndexes(findAll(forestTreeType), indexes);
+	}
+
+	@Test
+	public void testRestartChangedNumbering() {
+		String forestTreeType = "chunked-numbering";
+		generateTree(forestTreeType, 7103000L, 50);
+		interrupt(forestTreeType, 1);
+		//
+		// numbering with gaps - checkpoint counter differs
+		service.setSparseGap(4);
+		task.setListener(null);
+		task.run(forestTreeType);
+		Map<Long, ForestIndexEntity> indexes = findAll(forestTreeType);
+		service.rebuild(forestTreeType);
+		assertSameIndexes(findAll(forestTreeType), indexes);
+		Assert.assertEquals(Long.valueOf(4L * 2 * 51 - 3), repository.findRoot(forestTreeType).getRgt());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMetadataRequired() {
+		new ForestIndexRebuildTask(new DefaultForestIndexEntityService(repository, entityManager), transactionManager).run("chunked-metadata");
+	}
+
+	private void interrupt(String forestTreeType, int chunks) {
+		int[] progresses = new int[1];
+		task.setListener(progress -> {
+			if (++progresses[0] == chunks) {
+				throw new IllegalStateException("interrupted");
+			}
+		});
+		try {
+			task.run(forestTreeType);
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			Assert.assertEquals("interrupted", ex.getMessage());
+		}
+	}
+
+	private void generateTree(String forestTreeType, long firstContentId, int count) {
+		List<Long> contentIds = new ArrayList<>();
+		for (long contentId = firstContentId; contentId < firstContentId + count; contentId++) {
+			Long parentContentId = contentIds.isEmpty() ? null : contentIds.get(r.nextInt(contentIds.size()));
+			service.index(forestTreeType, contentId, parentContentId);
+			contentIds.add(contentId);
+		}
+	}
+
+	private Map<Long, ForestIndexEntity> findAll(String forestTreeType) {
+		entityManager.flush();
+		entityManager.clear();
+		Map<Long, ForestIndexEntity> indexes = new HashMap<>();
+		repository.findAll().forEach(index -> {
+			if (forestTreeType.equals(index.getForestTreeType())) {
+				indexes.put(index.getId(), index);
+			}
+		});
+		return indexes;
+	}
+
+	private void assertSameIndexes(Map<Long, ForestIndexEntity> expected, Map<Long, ForestIndexEntity> indexes) {
+		Assert.assertEquals(expected.size(), indexes.size());
+		expected.values().forEach(index -> {
+			ForestIndexEntity actual = indexes.get(index.getId());
+			Assert.assertEquals(index.toString(), index.getLft(), actual.getLft());
+			Assert.assertEquals(index.toString(), index.getRgt(), actual.getRgt());
+			Assert.assertEquals(index.toString(), index.getDepth(), actual.getDepth());
+			Assert.assertEquals(index.toString(), index.getChildrenCount(), actual.getChildrenCount());
+		});
+	}
+}
@@ -0,0 +1,142 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+
+/**
+ * In-memory snapshot is loaded and rebuilt after tree is changed.
+ * 
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class ForestIndexSnapshotIntegrationTest {
+	
+	private static final String SNAPSHOT_TREE_TYPE = "snapshot";
+	//
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private EntityManager entityManager;
+	@Autowired private PlatformTransactionManager transactionManager;
+	//
+	private Random r = new Random();
+	private DefaultForestIndexEntityService service;
+	private ForestIndexSnapshotManager<Long> snapshotManager;
+	
+	@Before
+	public void init() {
+		snapshotManager = new ForestIndexSnapshotManager<>(repository, transactionManager);
+		service = new DefaultForestIndexEntityService(repository, entityManager);
+		service.setSnapshotManager(snapshotManager);
+	}
+	
+	@Test
+	public void testSnapshotSameAsQueries() {
+		List<Long> contentIds = new ArrayList<>();
+		service.index(ForestIndex.DEFAULT_TREE_TYPE, 0L, null);
+		contentIds.add(0L);
+		for (long contentId = 1; contentId < 100; contentId++) {
+			Long parentContentId = r.nextInt(10) == 0 ? null : contentIds.get(r.nextInt(contentIds.size()));
+			service.index(ForestIndex.DEFAULT_TREE_TYPE, contentId, parentContentId);
+			contentIds.add(contentId);
+		}
+		Assert.assertNull(snapshotManager.getSnapshot(ForestIndex.DEFAULT_TREE_TYPE));
+		//
+		ForestIndexSnapshot<Long> snapshot = snapshotManager.load(ForestIndex.DEFAULT_TREE_TYPE);
+		//
+		Assert.assertSame(snapshot, snapshotManager.getSnapshot(ForestIndex.DEFAULT_TREE_TYPE));
+		Assert.assertEquals(101, snapshot.size()); // with synthetic root
+		for (Long contentId : contentIds) {
+			ForestIndexEntity index = repository.findOneByContentId(contentId);
+			List<Long> descendants = repository
+					.findAllChildren(index, null)
+					.stream()
+					.sorted((one, two) -> one.getLft().compareTo(two.getLft()))
+					.map(ForestIndexEntity::getContentId)
+					.collect(Collectors.toList());
+			List<Long> ancestors = repository
+					.findAllParents(index, new Sort(Direction.ASC, "lft"))
+					.stream()
+					.map(ForestIndexEntity::getContentId)
+					.filter(ancestor -> ancestor != null)
+					.collect(Collectors.toList());
+			//
+			Assert.assertEquals(descendants, snapshot.getDescendants(contentId));
+			Assert.assertEquals(index.getChildrenCount(), snapshot.getChildrenCount(contentId));
+			Assert.assertEquals(ancestors, snapshot.getAncestors(contentId));
+			Assert.assertEquals(index.getDepth().intValue(), snapshot.getDepth(contentId));
+			ancestors.forEach(ancestor -> Assert.assertTrue(snapshot.isAncestor(ancestor, contentId)));
+		}
+	}
+	
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void testSnapshotRebuiltAfterCommit() {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		try {
+			template.execute(status -> {
+				service.index(SNAPSHOT_TREE_TYPE, 1L, null);
+				return service.index(SNAPSHOT_TREE_TYPE, 2L, 1L);
+			});
+			ForestIndexSnapshot<Long> snapshot = snapshotManager.load(SNAPSHOT_TREE_TYPE);
+			Assert.assertTrue(snapshot.isAncestor(1L, 2L));
+			//
+			// snapshot is not changed before commit
+			template.execute(status -> {
+				service.index(SNAPSHOT_TREE_TYPE, 3L, 2L);
+				service.index(SNAPSHOT_TREE_TYPE, 4L, 3L);
+				//
+				Assert.assertSame(snapshot, snapshotManager.getSnapshot(SNAPSHOT_TREE_TYPE));
+				return null;
+			});
+			ForestIndexSnapshot<Long> rebuiltSnapshot = snapshotManager.getSnapshot(SNAPSHOT_TREE_TYPE);
+			Assert.assertNotSame(snapshot, rebuiltSnapshot);
+			Assert.assertTrue(rebuiltSnapshot.getVersion() > snapshot.getVersion());
+			Assert.assertTrue(rebuiltSnapshot.isAncestor(1L, 4L));
+			Assert.assertEquals(3, rebuiltSnapshot.getChildrenCount(1L));
+			// previous snapshot is immutable
+			Assert.assertFalse(snapshot.contains(4L));
+			//
+			// rolled back changes are not reflected
+			try {
+				template.execute(status -> {
+					service.dropIndex(4L);
+					throw new IllegalStateException("rollback");
+				});
+			} catch (IllegalStateException ex) {
+				// rolled back
+			}
+			Assert.assertSame(rebuiltSnapshot, snapshotManager.getSnapshot(SNAPSHOT_TREE_TYPE));
+		} finally {
+			snapshotManager.evict(SNAPSHOT_TREE_TYPE);
+			template.execute(status -> {
+				service.dropIndexes(SNAPSHOT_TREE_TYPE);
+				return null;
+			});
+		}
+		Assert.assertNull(snapshotManager.getSnapshot(SNAPSHOT_TREE_TYPE));
+	}
+}
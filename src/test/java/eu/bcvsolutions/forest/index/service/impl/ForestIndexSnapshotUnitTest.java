@@ -0,0 +1,90 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * In-memory snapshot queries.
+ * 
+ * @author Radek Tomiška
+ *
+ */
+public class ForestIndexSnapshotUnitTest {
+
+	@Test
+	public void testSnapshotQueries() {
+		// synthetic root (1) -> a (10) -> aa (11), ab (12); b (20) -> ba (21)
+		ForestIndexSnapshot<Long> snapshot = ForestIndexSnapshot.of("test", 1L, Arrays.asList(
+				new Object[] { null, 1L, null, 1L, 14L },
+				new Object[] { 10L, 2L, 1L, 2L, 7L },
+				new Object[] { 11L, 3L, 2L, 3L, 4L },
+				new Object[] { 12L, 4L, 2L, 5L, 6L },
+				new Object[] { 20L, 5L, 1L, 8L, 13L },
+				new Object[] { 21L, 6L, 5L, 9L, 10L },
+				new Object[] { 22L, 7L, 5L, 11L, 12L }).stream());
+		//
+		Assert.assertEquals(7, snapshot.size());
+		Assert.assertTrue(snapshot.contains(21L));
+		Assert.assertFalse(snapshot.contains(99L));
+		Assert.assertTrue(snapshot.isAncestor(10L, 12L));
+		Assert.assertFalse(snapshot.isAncestor(12L, 10L));
+		Assert.assertFalse(snapshot.isAncestor(10L, 21L));
+		Assert.assertFalse(snapshot.isAncestor(10L, 10L));
+		Assert.assertFalse(snapshot.isAncestor(99L, 10L));
+		Assert.assertEquals(2, snapshot.getChildrenCount(10L));
+		Assert.assertEquals(0, snapshot.getChildrenCount(22L));
+		Assert.assertEquals(0, snapshot.getChildrenCount(99L));
+		Assert.assertEquals(1, snapshot.getDepth(20L));
+		Assert.assertEquals(2, snapshot.getDepth(21L));
+		Assert.assertEquals(-1, snapshot.getDepth(99L));
+		Assert.assertEquals(Long.valueOf(20L), snapshot.getParent(22L));
+		Assert.assertNull(snapshot.getParent(20L));
+		Assert.assertEquals(Arrays.asList(20L), snapshot.getAncestors(21L));
+		Assert.assertTrue(snapshot.getAncestors(10L).isEmpty());
+		Assert.assertEquals(Arrays.asList(21L, 22L), snapshot.getDescendants(20L));
+		Assert.assertEquals(Arrays.asList(11L, 12L), snapshot.getChildren(10L));
+		Assert.assertTrue(snapshot.getDescendants(99L).isEmpty());
+	}
+	
+	@Test
+	public void testSparseIndexes() {
+		// gaps between indexes
+		ForestIndexSnapshot<Long> snapshot = ForestIndexSnapshot.of("test", 1L, Arrays.asList(
+				new Object[] { null, 1L, null, 1000L, 9000L },
+				new Object[] { 10L, 2L, 1L, 2000L, 5000L },
+				new Object[] { 11L, 3L, 2L, 3000L, 4000L },
+				new Object[] { 20L, 4L, 1L, 6000L, 7000L }).stream());
+		//
+		Assert.assertEquals(1, snapshot.getChildrenCount(10L));
+		Assert.assertEquals(0, snapshot.getChildrenCount(20L));
+		Assert.assertEquals(Arrays.asList(11L), snapshot.getDescendants(10L));
+		Assert.assertTrue(snapshot.getChildren(11L).isEmpty());
+	}
+	
+	@Test
+	public void testDeepChain() {
+		int nodeCount = 100000;
+		List<Object[]> indexes = new ArrayList<>();
+		for (long i = 0; i < nodeCount; i++) {
+			indexes.add(new Object[] { i, i, i == 0 ? null : i - 1, i + 1, 2L * nodeCount - i });
+		}
+		ForestIndexSnapshot<Long> snapshot = ForestIndexSnapshot.of("test", 1L, indexes.stream());
+		//
+		Assert.assertEquals(nodeCount - 1, snapshot.getChildrenCount(0L));
+		Assert.assertEquals(nodeCount - 1, snapshot.getDepth(nodeCount - 1L));
+		Assert.assertEquals(nodeCount - 1, snapshot.getAncestors(nodeCount - 1L).size());
+		Assert.assertTrue(snapshot.isAncestor(0L, nodeCount - 1L));
+		Assert.assertEquals(Arrays.asList(1L), snapshot.getChildren(0L));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testIndexesNotOrdered() {
+		ForestIndexSnapshot.of("test", 1L, Arrays.asList(
+				new Object[] { 10L, 2L, null, 2L, 3L },
+				new Object[] { 11L, 3L, null, 1L, 4L }).stream());
+	}
+}
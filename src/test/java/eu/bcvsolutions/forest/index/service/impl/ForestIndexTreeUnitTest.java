@@ -0,0 +1,153 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * In-memory tree numbering tests
+ * 
+ * @author Radek Tomiška
+ *
+ */
+public class ForestIndexTreeUnitTest {
+
+	@Test
+	public void testNumberTree() {
+		ForestIndexTree tree = new ForestIndexTree();
+		tree.add(1L, null);
+		tree.add(2L, 1L);
+		tree.add(3L, 1L);
+		tree.add(4L, 2L);
+		tree.add(5L, 2L);
+		tree.add(6L, 3L);
+		tree.number();
+		//
+		Assert.assertEquals(Long.valueOf(1L), tree.getLft(0));
+		Assert.assertEquals(Long.valueOf(12L), tree.getRgt(0));
+		Assert.assertEquals(Long.valueOf(2L), tree.getLft(1));
+		Assert.assertEquals(Long.valueOf(7L), tree.getRgt(1));
+		Assert.assertEquals(Long.valueOf(3L), tree.getLft(3));
+		Assert.assertEquals(Long.valueOf(4L), tree.getRgt(3));
+		Assert.assertEquals(Long.valueOf(5L), tree.getLft(4));
+		Assert.assertEquals(Long.valueOf(6L), tree.getRgt(4));
+		Assert.assertEquals(Long.valueOf(8L), tree.getLft(2));
+		Assert.assertEquals(Long.valueOf(11L), tree.getRgt(2));
+		Assert.assertEquals(Long.valueOf(9L), tree.getLft(5));
+		Assert.assertEquals(Long.valueOf(10L), tree.getRgt(5));
+		Assert.assertEquals(Integer.valueOf(0), tree.getDepth(0));
+		Assert.assertEquals(Integer.valueOf(1), tree.getDepth(1));
+		Assert.assertEquals(Integer.valueOf(2), tree.getDepth(3));
+		Assert.assertEquals(Integer.valueOf(2), tree.getDepth(5));
+	}
+	
+	@Test
+	public void testNumberRootsFromStart() {
+		ForestIndexTree tree = new ForestIndexTree();
+		tree.add(1L, null);
+		tree.add(2L, null);
+		tree.add(3L, 1L);
+		tree.add(4L, 2L);
+		tree.number(new long[] { 10L, 20L, 0L, 0L }, new int[] { 3, -1, 0, 0 }, 1L);
+		//
+		Assert.assertEquals(Long.valueOf(11L), tree.getLft(2));
+		Assert.assertEquals(Long.valueOf(12L), tree.getRgt(2));
+		Assert.assertEquals(Long.valueOf(21L), tree.getLft(3));
+		Assert.assertEquals(Integer.valueOf(4), tree.getDepth(2));
+		Assert.assertNull(tree.getDepth(3)); // unknown root depth
+	}
+	
+	@Test
+	public void testNumberTreeWithStep() {
+		ForestIndexTree tree = new ForestIndexTree();
+		tree.add(1L, null);
+		tree.add(2L, 1L);
+		tree.number(10L, 100L);
+		//
+		Assert.assertEquals(Long.valueOf(10L), tree.getLft(0));
+		Assert.assertEquals(Long.valueOf(310L), tree.getRgt(0));
+		Assert.assertEquals(Long.valueOf(110L), tree.getLft(1));
+		Assert.assertEquals(Long.valueOf(210L), tree.getRgt(1));
+	}
+	
+	@Test
+	public void testOrphansAreNotNumbered() {
+		ForestIndexTree tree = new ForestIndexTree();
+		tree.add(1L, null);
+		tree.add(2L, 3L); // cycle
+		tree.add(3L, 2L);
+		tree.add(4L, 5L); // deleted parent
+		tree.number();
+		//
+		Assert.assertTrue(tree.isNumbered(0));
+		Assert.assertNull(tree.getLft(1));
+		Assert.assertNull(tree.getRgt(2));
+		Assert.assertNull(tree.getLft(3));
+	}
+	
+	@Test
+	public void testNumberDeepChain() {
+		int nodeCount = 1000000;
+		ForestIndexTree tree = new ForestIndexTree();
+		for (int i = 1; i <= nodeCount; i++) {
+			tree.add(i, i == 1 ? null : Long.valueOf(i - 1));
+		}
+		tree.number();
+		//
+		Assert.assertEquals(nodeCount, tree.size());
+		Assert.assertEquals(Long.valueOf(1L), tree.getLft(0));
+		Assert.assertEquals(Long.valueOf(2L * nodeCount), tree.getRgt(0));
+		Assert.assertEquals(Long.valueOf(nodeCount), tree.getLft(nodeCount - 1));
+		Assert.assertEquals(Long.valueOf(nodeCount + 1L), tree.getRgt(nodeCount - 1));
+	}
+	
+	@Test
+	public void testNumberInParallel() {
+		int nodeCount = 200000;
+		Random r = new Random(1);
+		ForestIndexTree sequential = new ForestIndexTree();
+		ForestIndexTree parallel = new ForestIndexTree();
+		for (long id = 1; id <= nodeCount; id++) {
+			// more roots, wide levels, deep chains and orphans
+			Long parentId = id % 50000 == 1 ? null : (id % 10 == 0 ? id - 1 : 1 + r.nextInt((int) id - 1));
+			if (id % 1000 == 7) {
+				parentId = nodeCount + id; // deleted parent
+			}
+			sequential.add(id, parentId);
+			parallel.add(id, parentId);
+		}
+		sequential.number(3L, 8L);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			parallel.number(3L, 8L, pool);
+		} finally {
+			pool.shutdown();
+		}
+		//
+		Assert.assertArrayEquals(sequential.getPreOrder(), parallel.getPreOrder());
+		for (int slot = 0; slot < nodeCount; slot++) {
+			Assert.assertEquals(sequential.isNumbered(slot), parallel.isNumbered(slot));
+			Assert.assertEquals(sequential.getLft(slot), parallel.getLft(slot));
+			Assert.assertEquals(sequential.getRgt(slot), parallel.getRgt(slot));
+			Assert.assertEquals(sequential.getDepth(slot), parallel.getDepth(slot));
+			Assert.assertEquals(sequential.getChildrenCount(slot), parallel.getChildrenCount(slot));
+		}
+	}
+	
+	@Test
+	public void testNumberEmptyTreeInParallel() {
+		ForestIndexTree tree = new ForestIndexTree();
+		tree.number(1L, 1L, ForkJoinPool.commonPool());
+		//
+		Assert.assertEquals(0, tree.getPreOrder().length);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNodesHaveToBeOrdered() {
+		ForestIndexTree tree = new ForestIndexTree();
+		tree.add(2L, null);
+		tree.add(1L, 2L);
+	}
+}
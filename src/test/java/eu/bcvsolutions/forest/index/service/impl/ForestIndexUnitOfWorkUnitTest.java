@@ -0,0 +1,130 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * In-memory unit of work tests
+ *
+ * @author Radek Tomiška
+ *
+ */
+public class ForestIndexUnitOfWorkUnitTest {
+
+	@Test
+	public void testInsertShiftsFollowingIntervals() {
+		ForestIndexUnitOfWork<Long> unitOfWork = createTree();
+		unitOfWork.index(5L, 2L); // new last child of a
+		unitOfWork.number(1L, false);
+		//
+		List<long[]> lftShifts = unitOfWork.getLftShifts();
+		Assert.assertEquals(1, lftShifts.size());
+		Assert.assertArrayEquals(new long[] { 6L, 6L, 2L }, lftShifts.get(0)); // c
+		List<long[]> rgtShifts = unitOfWork.getRgtShifts();
+		Assert.assertEquals(1, rgtShifts.size());
+		Assert.assertArrayEquals(new long[] { 5L, 8L, 2L }, rgtShifts.get(0)); // a, c, root
+		Assert.assertTrue(unitOfWork.getDepthShifts().isEmpty());
+		Assert.assertTrue(unitOfWork.getUpdates().isEmpty());
+		Assert.assertTrue(unitOfWork.getDeletes().isEmpty());
+		//
+		List<ForestIndexUnitOfWork.Node<Long>> inserts = unitOfWork.getInserts();
+		Assert.assertEquals(1, inserts.size());
+		Assert.assertEquals(Long.valueOf(5L), inserts.get(0).getContentId());
+		Assert.assertEquals(5L, inserts.get(0).getLft());
+		Assert.assertEquals(6L, inserts.get(0).getRgt());
+		Assert.assertEquals(2, inserts.get(0).getDepth());
+		Assert.assertEquals(20L, inserts.get(0).getParent().getId());
+	}
+
+	@Test
+	public void testMoreOperationsAreMerged() {
+		ForestIndexUnitOfWork<Long> unitOfWork = createTree();
+		// the same net change as one insert - all shifts are merged
+		unitOfWork.index(5L, 2L);
+		unitOfWork.index(6L, 5L);
+		unitOfWork.index(6L, 2L);
+		unitOfWork.dropIndex(6L);
+		unitOfWork.number(1L, false);
+		//
+		Assert.assertEquals(1, unitOfWork.getLftShifts().size());
+		Assert.assertEquals(1, unitOfWork.getRgtShifts().size());
+		Assert.assertEquals(1, unitOfWork.getInserts().size());
+		Assert.assertTrue(unitOfWork.getDeletes().isEmpty());
+	}
+
+	@Test
+	public void testMoveAndDrop() {
+		ForestIndexUnitOfWork<Long> unitOfWork = createTree();
+		unitOfWork.index(4L, 3L); // c under b
+		unitOfWork.dropIndex(2L); // a with b and c
+		unitOfWork.number(1L, false);
+		//
+		Assert.assertTrue(unitOfWork.getInserts().isEmpty());
+		Assert.assertEquals(3, unitOfWork.getDeletes().size());
+		Assert.assertEquals(Long.valueOf(40L), unitOfWork.getDeletes().get(0)); // children before parents
+		Assert.assertEquals(Long.valueOf(20L), unitOfWork.getDeletes().get(2));
+		// root only
+		Assert.assertEquals(1, unitOfWork.getPreOrder().size());
+		Assert.assertEquals(2L, unitOfWork.getPreOrder().get(0).getRgt());
+	}
+
+	@Test
+	public void testMoveUpdatesParentAndDepth() {
+		ForestIndexUnitOfWork<Long> unitOfWork = createTree();
+		unitOfWork.index(4L, 3L); // c under b
+		unitOfWork.number(1L, false);
+		//
+		List<ForestIndexUnitOfWork.Node<Long>> updates = unitOfWork.getUpdates();
+		Assert.assertEquals(1, updates.size());
+		Assert.assertEquals(Long.valueOf(4L), updates.get(0).getContentId());
+		Assert.assertEquals(4L, updates.get(0).getLft());
+		Assert.assertEquals(5L, updates.get(0).getRgt());
+		Assert.assertEquals(3, updates.get(0).getDepth());
+		Assert.assertArrayEquals(new long[] { 6L, 6L, 2L }, unitOfWork.getDepthShifts().get(0));
+	}
+
+	@Test
+	public void testIndexEmptyTree() {
+		ForestIndexUnitOfWork<Long> unitOfWork = new ForestIndexUnitOfWork<>();
+		unitOfWork.index(1L, null);
+		unitOfWork.index(2L, 1L);
+		unitOfWork.number(4L, true);
+		//
+		List<ForestIndexUnitOfWork.Node<Long>> inserts = unitOfWork.getInserts();
+		Assert.assertEquals(3, inserts.size());
+		Assert.assertNull(inserts.get(0).getContentId()); // synthetic root
+		Assert.assertEquals(1L, inserts.get(0).getLft());
+		Assert.assertEquals(21L, inserts.get(0).getRgt());
+		Assert.assertEquals(Integer.valueOf(2), inserts.get(0).getChildrenCount());
+		Assert.assertEquals(Integer.valueOf(0), inserts.get(2).getChildrenCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMoveUnderOwnSubTree() {
+		ForestIndexUnitOfWork<Long> unitOfWork = createTree();
+		unitOfWork.index(2L, 3L);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testParentWithoutIndex() {
+		ForestIndexUnitOfWork<Long> unitOfWork = createTree();
+		unitOfWork.index(5L, 6L);
+	}
+
+	/**
+	 * root [1, 8] - a [2, 5] - b [3, 4]
+	 *             - c [6, 7]
+	 *
+	 * @return
+	 */
+	private ForestIndexUnitOfWork<Long> createTree() {
+		ForestIndexUnitOfWork<Long> unitOfWork = new ForestIndexUnitOfWork<>();
+		unitOfWork.add(new Object[] { null, 10L, null, 1L, 8L, 0, null });
+		unitOfWork.add(new Object[] { 2L, 20L, 10L, 2L, 5L, 1, null });
+		unitOfWork.add(new Object[] { 3L, 30L, 20L, 3L, 4L, 2, null });
+		unitOfWork.add(new Object[] { 4L, 40L, 10L, 6L, 7L, 1, null });
+		return unitOfWork;
+	}
+}
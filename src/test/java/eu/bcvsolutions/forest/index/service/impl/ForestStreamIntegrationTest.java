@@ -0,0 +1,128 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.NodeContent;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.repository.NodeContentRepository;
+
+/**
+ * Streamed children and parents.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class ForestStreamIntegrationTest {
+
+	@Autowired private ForestIndexEntityRepository indexRepository;
+	@Autowired private NodeContentRepository repository;
+	@Autowired private NodeContentService service;
+	@Autowired private EntityManager entityManager;
+
+	@Test
+	public void testStreamContents() {
+		String forestTreeType = "stream-one";
+		NodeContent root = service.save(new NodeContent(forestTreeType, null, "root"));
+		NodeContent a = service.save(new NodeContent(forestTreeType, root, "a"));
+		NodeContent b = service.save(new NodeContent(forestTreeType, root, "b"));
+		service.save(new NodeContent(forestTreeType, a, "aa"));
+		service.save(new NodeContent(forestTreeType, a, "ab"));
+		NodeContent ba = service.save(new NodeContent(forestTreeType, b, "ba"));
+		NodeContent baa = service.save(new NodeContent(forestTreeType, ba, "baa"));
+		entityManager.flush();
+		entityManager.clear();
+		//
+		List<Long> expected = service
+				.findAllChildren(root.getId(), PageRequest.of(0, Integer.MAX_VALUE, new Sort(Direction.ASC, "forestIndex.lft")))
+				.stream()
+				.map(NodeContent::getId)
+				.collect(Collectors.toList());
+		Assert.assertEquals(6, expected.size());
+		try (Stream<NodeContent> children = service.streamAllChildren(root.getId())) {
+			List<NodeContent> results = children.collect(Collectors.toList());
+			//
+			Assert.assertEquals(expected, results.stream().map(NodeContent::getId).collect(Collectors.toList()));
+			Assert.assertTrue(results.stream().noneMatch(entityManager::contains));
+		}
+		//
+		try (Stream<NodeContent> children = service.streamDirectChildren(root.getId())) {
+			Assert.assertEquals(2, children.count());
+		}
+		try (Stream<NodeContent> children = service.streamDirectChildren(baa.getId())) {
+			Assert.assertEquals(0, children.count());
+		}
+		//
+		try (Stream<NodeContent> parents = service.streamAllParents(baa.getId())) {
+			Assert.assertEquals(
+					Stream.of(root.getId(), b.getId(), ba.getId()).collect(Collectors.toList()),
+					parents.map(NodeContent::getId).collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void testStreamIndexes() {
+		String forestTreeType = "stream-two";
+		NodeContent root = service.save(new NodeContent(forestTreeType, null, "root"));
+		NodeContent a = service.save(new NodeContent(forestTreeType, root, "a"));
+		service.save(new NodeContent(forestTreeType, root, "b"));
+		NodeContent aa = service.save(new NodeContent(forestTreeType, a, "aa"));
+		entityManager.flush();
+		entityManager.clear();
+		ForestIndexEntity syntheticRoot = indexRepository.findRoot(forestTreeType);
+		ForestIndexEntity rootIndex = repository.findById(root.getId()).get().getForestIndex();
+		ForestIndexEntity aaIndex = repository.findById(aa.getId()).get().getForestIndex();
+		//
+		try (Stream<ForestIndexEntity> children = indexRepository.streamAllChildren(syntheticRoot)) {
+			List<Long> lfts = children.map(ForestIndexEntity::getLft).collect(Collectors.toList());
+			Assert.assertEquals(4, lfts.size());
+			Assert.assertEquals(lfts.stream().sorted().collect(Collectors.toList()), lfts);
+		}
+		try (Stream<ForestIndexEntity> children = indexRepository.streamDirectChildren(rootIndex)) {
+			Assert.assertEquals(2, children.count());
+		}
+		try (Stream<ForestIndexEntity> parents = indexRepository.streamAllParents(aaIndex)) {
+			Assert.assertEquals(
+					Stream.of(syntheticRoot.getId(), rootIndex.getId(), repository.findById(a.getId()).get().getForestIndex().getId()).collect(Collectors.toList()),
+					parents.map(ForestIndexEntity::getId).collect(Collectors.toList()));
+		}
+	}
+
+	@Test(expected = IllegalTransactionStateException.class)
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void testStreamDirectChildrenWithoutTransaction() {
+		service.streamDirectChildren(1L);
+	}
+
+	@Test(expected = IllegalTransactionStateException.class)
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void testStreamAllChildrenWithoutTransaction() {
+		service.streamAllChildren(1L);
+	}
+
+	@Test(expected = IllegalTransactionStateException.class)
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void testStreamAllParentsWithoutTransaction() {
+		service.streamAllParents(1L);
+	}
+}
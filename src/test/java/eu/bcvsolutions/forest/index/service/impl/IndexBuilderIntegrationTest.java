@@ -1,17 +1,29 @@
 package eu.bcvsolutions.forest.index.service.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
+import javax.persistence.EntityManager;
+
+import org.assertj.core.util.Lists;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
 import eu.bcvsolutions.forest.index.domain.ForestIndex;
 import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
 import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
@@ -30,6 +42,7 @@ public class IndexBuilderIntegrationTest {
 	
 	@Autowired private ForestIndexEntityRepository repository;
 	@Autowired private ForestIndexService<ForestIndexEntity, Long> service;
+	@Autowired private EntityManager entityManager;
 	//
 	private Random r = new Random();
 	private ForestIndexEntity a = null;
@@ -140,6 +153,75 @@ public class IndexBuilderIntegrationTest {
 		Assert.assertEquals(7, (root.getRgt() - root.getLft()) / 2); // TODO: this is discutable, maybe delete without closing gap is dangerous
 	}
 	
+	@Test
+	public void testDeleteNodeWithoutClosingGapPageTotal() {
+		testSaveTree();
+		DefaultForestIndexEntityService indexService = new DefaultForestIndexEntityService(repository, entityManager);
+		Assert.assertFalse(indexService.hasGaps(ForestIndex.DEFAULT_TREE_TYPE));
+		//
+		indexService.deleteNode(ba, false);
+		//
+		ForestIndexEntity root = repository.findRoot(ForestIndex.DEFAULT_TREE_TYPE);
+		Assert.assertEquals(7, (root.getRgt() - root.getLft()) / 2); // gap is left
+		Assert.assertTrue(indexService.hasGaps(ForestIndex.DEFAULT_TREE_TYPE));
+		Assert.assertEquals(6, root.getChildrenCount()); // stored
+		Assert.assertEquals(6, indexService.findAllChildren(root, PageRequest.of(0, 2)).getTotalElements());
+		b = repository.findById(b.getId()).get();
+		Assert.assertEquals(1, indexService.findAllChildren(b, PageRequest.of(0, 5)).getTotalElements());
+		a = repository.findById(a.getId()).get();
+		Assert.assertEquals(2, indexService.findAllChildren(a, PageRequest.of(0, 1)).getTotalElements());
+		//
+		// new root wraps interval with gap
+		root = indexService.saveNode(new ForestIndexEntity(null, null, 7400000L));
+		root = repository.findById(root.getId()).get();
+		Assert.assertTrue(indexService.hasGaps(ForestIndex.DEFAULT_TREE_TYPE));
+		Assert.assertEquals(7, indexService.findAllChildren(root, PageRequest.of(0, 2)).getTotalElements());
+		//
+		// rebuild closes gaps
+		indexService.rebuild(ForestIndex.DEFAULT_TREE_TYPE);
+		Assert.assertFalse(indexService.hasGaps(ForestIndex.DEFAULT_TREE_TYPE));
+		root = repository.findRoot(ForestIndex.DEFAULT_TREE_TYPE);
+		Assert.assertTrue(ForestIndexPages.isCounted(root));
+		Assert.assertEquals(7, indexService.findAllChildren(root, PageRequest.of(0, 2)).getTotalElements());
+	}
+
+	@Test
+	public void testUpdateTreeAfterDeleteWithoutClosingGap() {
+		testSaveTree();
+		service.deleteNode(ba, false);
+		assertValidTree(7);
+		//
+		// insert
+		a = repository.findById(a.getId()).get();
+		ForestIndexEntity ac = service.saveNode(new ForestIndexEntity(null, a, 7400100L));
+		service.saveNode(new ForestIndexEntity(null, a, 7400101L));
+		ForestIndexEntity root = repository.findRoot(ForestIndex.DEFAULT_TREE_TYPE);
+		Assert.assertEquals(8, root.getChildrenCount());
+		Assert.assertEquals(8, repository.findAllChildren(root, null).getTotalElements());
+		assertValidTree(9);
+		//
+		// move
+		bb = repository.findById(bb.getId()).get();
+		bb.setParent(repository.findById(ac.getId()).get());
+		service.saveNode(bb);
+		assertValidTree(9);
+		b = repository.findById(b.getId()).get();
+		b.setParent(repository.findById(ac.getId()).get());
+		service.saveNode(b); // sub tree with gap
+		assertValidTree(9);
+		//
+		// delete with closing gap
+		service.deleteNode(repository.findById(bb.getId()).get(), true);
+		assertValidTree(8);
+		//
+		// indexed in bulk
+		Assert.assertEquals(2, service.indexAll(ForestIndex.DEFAULT_TREE_TYPE, Arrays.asList(
+				new ForestContentNode<>(7400102L, 1L),
+				new ForestContentNode<>(7400103L, 7400102L))));
+		assertValidTree(10);
+		Assert.assertTrue(service.hasGaps(ForestIndex.DEFAULT_TREE_TYPE));
+	}
+
 	@Test
 	public void testDeleteNodeCloseGap() {
 		testSaveTree();
@@ -246,6 +328,81 @@ public class IndexBuilderIntegrationTest {
 		service.saveNode(b);
 	}
 	
+	@Test
+	public void testMoveSubTreeKeepsIndexes() {
+		testSaveTree();
+		long previousCount = repository.count();
+		List<Long> subTreeIds = new ArrayList<>();
+		repository.findAllChildren(b, null).forEach(child -> subTreeIds.add(child.getId()));
+		//
+		b.setParent(a);
+		service.saveNode(b);
+		//
+		// sub tree indexes are shifted, not recreated
+		Assert.assertEquals(previousCount, repository.count());
+		subTreeIds.forEach(id -> Assert.assertTrue(repository.findById(id).isPresent()));
+		b = repository.findById(b.getId()).get();
+		Assert.assertEquals(2, repository.findAllChildren(b, null).getTotalElements());
+		assertValidTree(8);
+	}
+	
+	@Test
+	public void testMoveNodeRandom() {
+		List<Long> ids = new ArrayList<>();
+		ids.add(service.saveNode(new ForestIndexEntity(null, null, 0L)).getId());
+		for (long i = 1; i < 50; i++) {
+			ForestIndexEntity parent = repository.findById(ids.get(r.nextInt(ids.size()))).get();
+			ids.add(service.saveNode(new ForestIndexEntity(null, parent, i)).getId());
+		}
+		//
+		for (int i = 0; i < 30; i++) {
+			ForestIndexEntity node = repository.findById(ids.get(r.nextInt(ids.size()))).get();
+			ForestIndexEntity parent = repository.findById(ids.get(r.nextInt(ids.size()))).get();
+			if (node.getParent() == null || (parent.getLft() >= node.getLft() && parent.getLft() <= node.getRgt())) {
+				// root or sub tree
+				continue;
+			}
+			node.setParent(parent);
+			service.saveNode(node);
+			assertValidTree(50);
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testMoveNodeUnderOwnSubTree() {
+		testSaveTree();
+		//
+		b = repository.findById(b.getId()).get();
+		b.setParent(repository.findById(ba.getId()).get());
+		service.saveNode(b);
+	}
+	
+	@Test
+	public void testFindDescendants() {
+		testSaveTree();
+		ForestIndexEntity root = repository.findRoot(ForestIndex.DEFAULT_TREE_TYPE);
+		assertValidTree(8);
+		//
+		Assert.assertEquals(0, root.getDepth().intValue());
+		Assert.assertEquals(1, repository.findDescendants(root, 1, null).getTotalElements());
+		Assert.assertEquals(3, repository.findDescendants(root, 2, null).getTotalElements());
+		Assert.assertEquals(7, repository.findDescendants(root, 3, null).getTotalElements());
+		Assert.assertEquals(7, repository.findDescendants(root, 10, null).getTotalElements());
+		Assert.assertEquals(2, repository.findDirectChildren(repository.findById(b.getId()).get(), PageRequest.of(0, 10)).getTotalElements());
+		//
+		// sub tree is moved one level deeper
+		b = repository.findById(b.getId()).get();
+		b.setParent(repository.findById(a.getId()).get());
+		service.saveNode(b);
+		assertValidTree(8);
+		a = repository.findById(a.getId()).get();
+		Assert.assertEquals(3, repository.findDirectChildren(a, PageRequest.of(0, 10)).getTotalElements());
+		Assert.assertEquals(5, repository.findDescendants(a, 2, null).getTotalElements());
+		//
+		service.rebuild(ForestIndex.DEFAULT_TREE_TYPE);
+		assertValidTree(8);
+	}
+	
 	@Test
 	public void testTreeRebuildBulk() {
 		int nodeCount = 100;
@@ -261,6 +418,255 @@ public class IndexBuilderIntegrationTest {
 		Assert.assertEquals(nodeCount - 1, repository.findAllChildren(root, null).getTotalElements());
 	}
 	
+	@Test
+	public void testRebuildDeepChain() {
+		int nodeCount = 300; // eager parent chain is loaded with leaf - deep chain is covered by unit test
+		ForestIndexEntity parent = null;
+		for (int i = 0; i < nodeCount; i++) {
+			parent = repository.save(new ForestIndexEntity(null, parent, Long.valueOf(i)));
+		}
+		ForestIndexEntity leaf = parent;
+		//
+		service.rebuild(ForestIndex.DEFAULT_TREE_TYPE);
+		//
+		ForestIndexEntity root = repository.findRoot(ForestIndex.DEFAULT_TREE_TYPE);
+		leaf = repository.findById(leaf.getId()).get();
+		Assert.assertEquals(1L, root.getLft().longValue());
+		Assert.assertEquals(2L * nodeCount, root.getRgt().longValue());
+		Assert.assertEquals(nodeCount - 1, root.getChildrenCount());
+		Assert.assertEquals(nodeCount, leaf.getLft().longValue());
+		Assert.assertEquals(nodeCount + 1L, leaf.getRgt().longValue());
+		Assert.assertEquals(nodeCount - 1, repository.findAllChildren(root, null).getTotalElements());
+	}
+
+	@Test
+	public void testSparseTree() {
+		DefaultForestIndexEntityService sparseService = new DefaultForestIndexEntityService(repository, entityManager);
+		sparseService.setSparseGap(4); // small gap - local renumbering is needed often
+		//
+		// generate tree
+		List<Long> ids = new ArrayList<>();
+		ids.add(sparseService.saveNode(new ForestIndexEntity(null, null, 0L)).getId());
+		for (long i = 1; i < 150; i++) {
+			ForestIndexEntity parent = repository.findById(ids.get(r.nextInt(ids.size()))).get();
+			ids.add(sparseService.saveNode(new ForestIndexEntity(null, parent, i)).getId());
+		}
+		assertValidTree(150);
+		//
+		// new root
+		ForestIndexEntity root = sparseService.saveNode(new ForestIndexEntity(null, null, 150L));
+		ids.add(root.getId());
+		assertValidTree(151);
+		//
+		// move
+		for (int i = 0; i < 20; i++) {
+			ForestIndexEntity node = repository.findById(ids.get(r.nextInt(ids.size()))).get();
+			ForestIndexEntity parent = repository.findById(ids.get(r.nextInt(ids.size()))).get();
+			if (node.getParent() == null || (parent.getLft() >= node.getLft() && parent.getLft() <= node.getRgt())) {
+				// root or sub tree
+				continue;
+			}
+			node.setParent(parent);
+			sparseService.saveNode(node);
+		}
+		assertValidTree(151);
+		//
+		// delete leaf without closing gap
+		ForestIndexEntity leaf = repository.findAll(Sort.by(Direction.DESC, "lft")).iterator().next();
+		sparseService.deleteNode(leaf, true);
+		assertValidTree(150);
+		//
+		// rebuild
+		sparseService.rebuild(ForestIndex.DEFAULT_TREE_TYPE);
+		root = repository.findRoot(ForestIndex.DEFAULT_TREE_TYPE);
+		Assert.assertEquals(1L, root.getLft().longValue());
+		Assert.assertEquals(1L + 4 * (2 * 150 - 1), root.getRgt().longValue());
+		assertValidTree(150);
+	}
+	
+	@Test
+	public void testFindAllChildrenWithoutCount() {
+		for (int sparseGap : new int[] { 1, 4 }) {
+			DefaultForestIndexEntityService indexService = new DefaultForestIndexEntityService(repository, entityManager);
+			indexService.setSparseGap(sparseGap);
+			String forestTreeType = "children-count-" + sparseGap;
+			//
+			List<Long> ids = new ArrayList<>();
+			long contentId = 4000000L + sparseGap * 1000; // content identifiers are unique
+			ids.add(indexService.saveNode(new ForestIndexEntity(forestTreeType, null, contentId)).getId());
+			for (long i = 1; i < 40; i++) {
+				ForestIndexEntity parent = repository.findById(ids.get(r.nextInt(ids.size()))).get();
+				ids.add(indexService.saveNode(new ForestIndexEntity(forestTreeType, parent, contentId + i)).getId());
+			}
+			ForestIndexEntity root = repository.findRoot(forestTreeType);
+			Assert.assertEquals(sparseGap == 1, ForestIndexPages.isCounted(root)); // gap 1 - dense numbering
+			//
+			List<Long> children = new ArrayList<>();
+			for (int page = 0; page < 6; page++) {
+				Page<ForestIndexEntity> results = indexService.findAllChildren(root, PageRequest.of(page, 7, Sort.by("lft")));
+				Assert.assertEquals(39, results.getTotalElements());
+				Assert.assertEquals(6, results.getTotalPages());
+				results.forEach(index -> children.add(index.getId()));
+			}
+			Assert.assertEquals(39, children.size());
+			Assert.assertEquals(39, children.stream().distinct().count());
+			Assert.assertEquals(39, indexService.findAllChildren(root, null).getTotalElements());
+		}
+	}
+	
+	@Test
+	public void testSparseAppendWithoutShift() {
+		DefaultForestIndexEntityService sparseService = new DefaultForestIndexEntityService(repository, entityManager);
+		sparseService.setSparseGap(1000);
+		//
+		ForestIndexEntity root = sparseService.saveNode(new ForestIndexEntity(null, null, 1L));
+		ForestIndexEntity a = sparseService.saveNode(new ForestIndexEntity(null, root, 2L));
+		ForestIndexEntity b = sparseService.saveNode(new ForestIndexEntity(null, root, 3L));
+		// appended child doesn't change siblings
+		ForestIndexEntity aa = sparseService.saveNode(new ForestIndexEntity(null, a, 4L));
+		ForestIndexEntity previousB = b;
+		b = repository.findById(b.getId()).get();
+		Assert.assertEquals(previousB.getLft(), b.getLft());
+		Assert.assertEquals(previousB.getRgt(), b.getRgt());
+		Assert.assertTrue(aa.getLft() > repository.findById(a.getId()).get().getLft());
+		Assert.assertEquals(3, repository.findRoot(ForestIndex.DEFAULT_TREE_TYPE).getChildrenCount());
+		assertValidTree(4);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testSparseGapTooSmall() {
+		new DefaultForestIndexEntityService(repository, entityManager).setSparseGap(2);
+	}
+	
+	@Test
+	public void testIndexAllSameAsIndex() {
+		List<ForestContentNode<Long>> contents = generateContents(100L, 200);
+		// index one by one
+		service.index(ForestIndex.DEFAULT_TREE_TYPE, 1L, null);
+		contents.forEach(content -> service.index(ForestIndex.DEFAULT_TREE_TYPE, content.getContentId(), content.getParentContentId()));
+		Map<Long, ForestIndexEntity> expected = new HashMap<>();
+		repository.findAll().forEach(index -> expected.put(index.getContentId(), index));
+		service.dropIndexes(ForestIndex.DEFAULT_TREE_TYPE);
+		//
+		// index in batch
+		service.index(ForestIndex.DEFAULT_TREE_TYPE, 1L, null);
+		Assert.assertEquals(contents.size(), service.indexAll(ForestIndex.DEFAULT_TREE_TYPE, contents));
+		//
+		assertValidTree(202);
+		repository.findAll().forEach(index -> {
+			Assert.assertEquals(expected.get(index.getContentId()).getLft(), index.getLft());
+			Assert.assertEquals(expected.get(index.getContentId()).getRgt(), index.getRgt());
+		});
+	}
+	
+	@Test
+	public void testIndexAll() {
+		// indexed parents
+		service.index(ForestIndex.DEFAULT_TREE_TYPE, 1L, null);
+		service.index(ForestIndex.DEFAULT_TREE_TYPE, 2L, 1L);
+		service.index(ForestIndex.DEFAULT_TREE_TYPE, 3L, 1L);
+		service.index(ForestIndex.DEFAULT_TREE_TYPE, 4L, 3L);
+		//
+		List<ForestContentNode<Long>> contents = generateContents(100L, 300);
+		Collections.shuffle(contents, r); // parents can be given after children
+		contents.add(new ForestContentNode<>(1000L, null)); // new content root
+		contents.add(new ForestContentNode<>(1001L, 1000L));
+		contents.add(new ForestContentNode<>(3L, 100L)); // indexed content is moved
+		//
+		service.indexAll(ForestIndex.DEFAULT_TREE_TYPE, contents);
+		//
+		assertValidTree(307);
+		Map<Long, Long> parents = new HashMap<>();
+		contents.forEach(content -> parents.put(content.getContentId(), content.getParentContentId()));
+		repository.findAll().forEach(index -> {
+			if (parents.containsKey(index.getContentId())) {
+				Assert.assertEquals(parents.get(index.getContentId()), index.getParent().getContentId());
+			}
+		});
+		Assert.assertEquals(3L, repository.findOneByContentId(4L).getParent().getContentId().longValue());
+	}
+	
+	@Test
+	public void testIndexAllSparse() {
+		DefaultForestIndexEntityService sparseService = new DefaultForestIndexEntityService(repository, entityManager);
+		sparseService.setSparseGap(4);
+		sparseService.index(ForestIndex.DEFAULT_TREE_TYPE, 1L, null);
+		//
+		List<ForestContentNode<Long>> contents = generateContents(100L, 100);
+		Collections.shuffle(contents, r);
+		sparseService.indexAll(ForestIndex.DEFAULT_TREE_TYPE, contents);
+		//
+		assertValidTree(102);
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testIndexAllParentNotIndexed() {
+		service.indexAll(ForestIndex.DEFAULT_TREE_TYPE, Lists.newArrayList(new ForestContentNode<>(2L, 1L)));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testIndexAllCycle() {
+		service.indexAll(ForestIndex.DEFAULT_TREE_TYPE, Lists.newArrayList(
+				new ForestContentNode<>(1L, null),
+				new ForestContentNode<>(2L, 3L), 
+				new ForestContentNode<>(3L, 2L)));
+	}
+	
+	/**
+	 * Generates random content tree structure under content with identifier {@code 1} - parent is before children.
+	 * 
+	 * @param firstContentId
+	 * @param count
+	 * @return
+	 */
+	private List<ForestContentNode<Long>> generateContents(long firstContentId, int count) {
+		List<ForestContentNode<Long>> contents = new ArrayList<>();
+		for (long contentId = firstContentId; contentId < firstContentId + count; contentId++) {
+			Long parentContentId = contents.isEmpty() || r.nextInt(10) == 0 
+					? 1L 
+					: contents.get(r.nextInt(contents.size())).getContentId();
+			contents.add(new ForestContentNode<>(contentId, parentContentId));
+		}
+		return contents;
+	}
+	
+	/**
+	 * Checks all indexes of default tree type against parent references.
+	 * 
+	 * @param nodeCount expected nodes count
+	 */
+	private void assertValidTree(int nodeCount) {
+		List<ForestIndexEntity> indexes = new ArrayList<>();
+		repository.findAll().forEach(indexes::add);
+		Assert.assertEquals(nodeCount, indexes.size());
+		Map<Long, ForestIndexEntity> nodes = new HashMap<>();
+		indexes.forEach(index -> nodes.put(index.getId(), index));
+		Map<Long, Integer> childrenCounts = new HashMap<>();
+		for (ForestIndexEntity index : indexes) {
+			Assert.assertNotNull(index.getLft());
+			Assert.assertNotNull(index.getRgt());
+			Assert.assertTrue(index.getLft() < index.getRgt());
+			childrenCounts.putIfAbsent(index.getId(), 0);
+			ForestIndexEntity parent = index.getParent() == null ? null : nodes.get(index.getParent().getId());
+			if (parent != null) {
+				Assert.assertTrue(index.toString(), parent.getLft() < index.getLft());
+				Assert.assertTrue(index.toString(), parent.getRgt() > index.getRgt());
+			}
+			int depth = 0;
+			while (parent != null) {
+				depth++;
+				childrenCounts.merge(parent.getId(), 1, Integer::sum);
+				parent = parent.getParent() == null ? null : nodes.get(parent.getParent().getId());
+			}
+			Assert.assertEquals(index.toString(), Integer.valueOf(depth), index.getDepth());
+		}
+		for (ForestIndexEntity index : indexes) {
+			int childrenCount = childrenCounts.get(index.getId());
+			Assert.assertEquals(index.toString(), childrenCount, index.getChildrenCount());
+			Assert.assertEquals(index.toString(), childrenCount, repository.findAllChildren(index, null).getTotalElements());
+		}
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void testWrongIndexClass() {
 		((AbstractForestIndexService<ForestIndexEntity, Long>) service).createIndexInstance(WrongForestIndexEntity.class);
@@ -0,0 +1,132 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexIntervals;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.NodeContent;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Contents in any of granted sub trees.
+ * 
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class IntervalsIntegrationTest {
+	
+	@Autowired private ForestIndexService<ForestIndexEntity, Long> indexService;
+	@Autowired private ForestIndexEntityRepository indexRepository;
+	@Autowired private NodeContentService service;
+	@Autowired private EntityManager entityManager;
+	@Autowired private PlatformTransactionManager transactionManager;
+	//
+	private Random r = new Random();
+	
+	@Test
+	public void testContentsInGrantedSubTrees() {
+		List<NodeContent> contents = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			NodeContent parent = contents.isEmpty() || r.nextInt(10) == 0 ? null : contents.get(r.nextInt(contents.size()));
+			contents.add(service.save(new NodeContent(parent, "node " + i)));
+		}
+		String forestTreeType = contents.get(0).getForestTreeType();
+		List<NodeContent> granted = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			granted.add(contents.get(r.nextInt(contents.size())));
+		}
+		//
+		// expected - granted contents and their sub trees
+		Set<Long> expected = new HashSet<>();
+		granted.forEach(content -> {
+			expected.add(content.getId());
+			service
+				.findAllChildren(content.getId(), Pageable.unpaged())
+				.forEach(child -> expected.add(child.getId()));
+		});
+		//
+		ForestIndexIntervals intervals = indexService.getIntervals(forestTreeType, granted
+				.stream()
+				.map(NodeContent::getId)
+				.collect(Collectors.toList()));
+		Assert.assertTrue(intervals.size() <= granted.size());
+		//
+		// in memory
+		Assert.assertEquals(expected, contents
+				.stream()
+				.filter(content -> intervals.contains(indexRepository.findOneByContentId(content.getId())))
+				.map(NodeContent::getId)
+				.collect(Collectors.toSet()));
+		//
+		// criteria
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<NodeContent> query = builder.createQuery(NodeContent.class);
+		Root<NodeContent> root = query.from(NodeContent.class);
+		query.where(intervals.toPredicate(root.join("forestIndex"), builder));
+		Assert.assertEquals(expected, entityManager
+				.createQuery(query)
+				.getResultList()
+				.stream()
+				.map(NodeContent::getId)
+				.collect(Collectors.toSet()));
+		//
+		// jpql
+		Assert.assertEquals(expected, entityManager
+				.createQuery("select e from NodeContent e join e.forestIndex i where i.forestTreeType = :forestTreeType and " 
+						+ intervals.toJpql("i"), NodeContent.class)
+				.setParameter("forestTreeType", forestTreeType)
+				.getResultList()
+				.stream()
+				.map(NodeContent::getId)
+				.collect(Collectors.toSet()));
+		//
+		// snapshot
+		ForestIndexSnapshotManager<Long> snapshotManager = new ForestIndexSnapshotManager<>(indexRepository, transactionManager);
+		ForestIndexSnapshot<Long> snapshot = snapshotManager.load(forestTreeType);
+		ForestIndexIntervals snapshotIntervals = snapshot.getIntervals(granted
+				.stream()
+				.map(NodeContent::getId)
+				.collect(Collectors.toList()));
+		Assert.assertEquals(intervals.toJpql("i"), snapshotIntervals.toJpql("i"));
+		Assert.assertEquals(expected, contents
+				.stream()
+				.map(NodeContent::getId)
+				.filter(contentId -> snapshot.isMember(snapshotIntervals, contentId))
+				.collect(Collectors.toSet()));
+	}
+	
+	@Test
+	public void testEmptyIntervals() {
+		ForestIndexIntervals intervals = indexService.getIntervals("empty", new ArrayList<>());
+		//
+		Assert.assertTrue(intervals.isEmpty());
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<ForestIndexEntity> query = builder.createQuery(ForestIndexEntity.class);
+		query.where(intervals.toPredicate(query.from(ForestIndexEntity.class), builder));
+		Assert.assertTrue(entityManager.createQuery(query).getResultList().isEmpty());
+	}
+}
@@ -0,0 +1,171 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.NodeContent;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.repository.NodeContentRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Keyset pagination over descendants ordered by lft.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class KeysetPaginationIntegrationTest {
+
+	@Autowired private ForestIndexService<ForestIndexEntity, Long> indexService;
+	@Autowired private ForestIndexEntityRepository indexRepository;
+	@Autowired private NodeContentRepository repository;
+	@Autowired private NodeContentService service;
+	@Autowired private EntityManager entityManager;
+	//
+	private Random r = new Random();
+
+	@Test
+	public void testFindAllChildren() {
+		String forestTreeType = "keyset-one";
+		List<NodeContent> roots = generateTree(forestTreeType, 60);
+		NodeContent root = roots.get(0);
+		//
+		List<Long> expected = service
+				.findAllChildren(root.getId(), PageRequest.of(0, Integer.MAX_VALUE, new Sort(Direction.ASC, "forestIndex.lft")))
+				.stream()
+				.map(NodeContent::getId)
+				.collect(Collectors.toList());
+		Assert.assertFalse(expected.isEmpty());
+		//
+		List<Long> results = new ArrayList<>();
+		Long lastLft = null;
+		Slice<NodeContent> slice;
+		do {
+			slice = service.findAllChildren(root.getId(), lastLft, 7);
+			Assert.assertTrue(slice.getNumberOfElements() <= 7);
+			for (NodeContent content : slice) {
+				results.add(content.getId());
+				lastLft = content.getForestIndex().getLft();
+			}
+		} while (slice.hasNext());
+		//
+		Assert.assertEquals(expected, results);
+		// leaf
+		NodeContent leaf = repository.findById(expected.get(expected.size() - 1)).get();
+		Assert.assertFalse(service.findAllChildren(leaf.getId(), null, 7).hasContent());
+	}
+
+	@Test
+	public void testFindAll() {
+		String forestTreeType = "keyset-two";
+		List<NodeContent> roots = generateTree(forestTreeType, 50);
+		//
+		// pre-order of the whole forest - roots with their children
+		List<Long> expected = new ArrayList<>();
+		roots
+			.stream()
+			.sorted((one, two) -> one.getForestIndex().getLft().compareTo(two.getForestIndex().getLft()))
+			.forEach(root -> {
+				expected.add(root.getId());
+				service
+					.findAllChildren(root.getId(), PageRequest.of(0, Integer.MAX_VALUE, new Sort(Direction.ASC, "forestIndex.lft")))
+					.forEach(content -> expected.add(content.getId()));
+			});
+		Assert.assertEquals(50, expected.size());
+		//
+		List<Long> results = new ArrayList<>();
+		Long lastLft = null;
+		Slice<NodeContent> slice;
+		do {
+			slice = service.findAll(forestTreeType, lastLft, 10);
+			for (NodeContent content : slice) {
+				results.add(content.getId());
+				lastLft = content.getForestIndex().getLft();
+			}
+		} while (slice.hasNext());
+		//
+		Assert.assertEquals(expected, results);
+		Assert.assertFalse(service.findAll("keyset-empty", null, 10).hasContent());
+	}
+
+	@Test
+	public void testFindAllIndexChildren() {
+		String forestTreeType = "keyset-three";
+		generateTree(forestTreeType, 40);
+		ForestIndexEntity syntheticRoot = indexRepository.findRoot(forestTreeType);
+		//
+		List<Long> expected = indexRepository
+				.findAllChildren(syntheticRoot, PageRequest.of(0, Integer.MAX_VALUE, new Sort(Direction.ASC, "lft")))
+				.stream()
+				.map(ForestIndexEntity::getId)
+				.collect(Collectors.toList());
+		Assert.assertEquals(40, expected.size());
+		//
+		List<Long> results = new ArrayList<>();
+		Long lastLft = null;
+		Slice<ForestIndexEntity> slice;
+		do {
+			slice = indexRepository.findAllChildren(syntheticRoot, lastLft, PageRequest.of(0, 6));
+			for (ForestIndexEntity index : slice) {
+				results.add(index.getId());
+				lastLft = index.getLft();
+			}
+		} while (slice.hasNext());
+		//
+		Assert.assertEquals(expected, results);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testFindAllNotSupported() {
+		RoutingForestIndexService<ForestIndexEntity, Long> routingService = new RoutingForestIndexService<>(indexRepository, indexService);
+		routingService.register("keyset-path", new DefaultForestPathIndexEntityService(indexRepository, entityManager));
+		DefaultNodeContentService contentService = new DefaultNodeContentService(routingService, repository);
+		//
+		contentService.findAll("keyset-path", null, 10);
+	}
+
+	/**
+	 * Generates random tree with two roots.
+	 *
+	 * @param forestTreeType
+	 * @param count contents count (with roots)
+	 * @return roots
+	 */
+	private List<NodeContent> generateTree(String forestTreeType, int count) {
+		List<NodeContent> roots = new ArrayList<>();
+		roots.add(service.save(new NodeContent(forestTreeType, null, "root-one")));
+		roots.add(service.save(new NodeContent(forestTreeType, null, "root-two")));
+		List<NodeContent> contents = new ArrayList<>(roots);
+		for (int i = 2; i < count; i++) {
+			NodeContent parent = contents.get(r.nextInt(contents.size()));
+			contents.add(service.save(new NodeContent(forestTreeType, parent, "node-" + i)));
+		}
+		// indexes are shifted by bulk updates
+		entityManager.flush();
+		entityManager.clear();
+		return roots
+				.stream()
+				.map(root -> repository.findById(root.getId()).get())
+				.collect(Collectors.toList());
+	}
+}
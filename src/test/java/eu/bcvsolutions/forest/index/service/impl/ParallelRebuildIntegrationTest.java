@@ -0,0 +1,193 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.bcvsolutions.forest.index.domain.ForestIndexMetadata;
+import eu.bcvsolutions.forest.index.domain.ForestIndexRebuildProgress;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.ForestIndexMetadataEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.repository.ForestIndexMetadataEntityRepository;
+
+/**
+ * Parallel numbering and concurrent write-back of chunks of one tree.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ParallelRebuildIntegrationTest {
+
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private ForestIndexMetadataEntityRepository metadataRepository;
+	@Autowired private EntityManager entityManager;
+	@Autowired private PlatformTransactionManager transactionManager;
+	//
+	private Random r = new Random();
+	private TransactionTemplate template;
+	private ForestIndexMetadataManager<ForestIndexMetadataEntity> metadataManager;
+	private DefaultForestIndexEntityService service;
+	private ForestIndexRebuildTask task;
+
+	@Before
+	public void init() {
+		template = new TransactionTemplate(transactionManager);
+		metadataManager = new ForestIndexMetadataManager<>(metadataRepository, ForestIndexMetadataEntity.class, entityManager);
+		service = new DefaultForestIndexEntityService(repository, entityManager);
+		service.setMetadataManager(metadataManager);
+		task = new ForestIndexRebuildTask(service, transactionManager);
+		task.setChunkSize(20);
+		task.setParallelism(4);
+	}
+
+	@Test
+	public void testSameNumberingAsRebuild() {
+		String forestTreeType = "parallel-rebuild";
+		try {
+			generateTree(forestTreeType, 7300000L, 300);
+			template.execute(status -> {
+				service.rebuild(forestTreeType);
+				return null;
+			});
+			Map<Long, ForestIndexEntity> expected = findAll(forestTreeType);
+			template.execute(status -> repository.clearIndexes(forestTreeType));
+			//
+			List<ForestIndexRebuildProgress> progresses = new ArrayList<>();
+			task.setListener(progresses::add);
+			ForestIndexRebuildProgress progress = task.run(forestTreeType);
+			//
+			assertSameIndexes(expected, findAll(forestTreeType));
+			Assert.assertTrue(progress.isFinished());
+			Assert.assertEquals(301, progress.getWritten());
+			Assert.assertEquals(5, progresses.size()); // 4 rounds of 4 chunks + publish
+			Assert.assertEquals(80, progresses.get(0).getDone());
+			ForestIndexMetadata metadata = template.execute(status -> metadataManager.getMetadata(forestTreeType));
+			Assert.assertFalse(metadata.isRebuilding());
+			Assert.assertNull(metadata.getCheckpointPosition());
+			Assert.assertEquals(301, metadata.getNodeCount());
+		} finally {
+			dropIndexes(forestTreeType);
+		}
+	}
+
+	@Test
+	public void testSameNumberingAsSparseRebuild() {
+		String forestTreeType = "parallel-sparse";
+		service.setSparseGap(8);
+		try {
+			generateTree(forestTreeType, 7301000L, 150);
+			template.execute(status -> {
+				service.rebuild(forestTreeType);
+				return null;
+			});
+			Map<Long, ForestIndexEntity> expected = findAll(forestTreeType);
+			template.execute(status -> repository.clearIndexes(forestTreeType));
+			//
+			task.run(forestTreeType);
+			//
+			assertSameIndexes(expected, findAll(forestTreeType));
+		} finally {
+			dropIndexes(forestTreeType);
+		}
+	}
+
+	@Test
+	public void testResumeFromCheckpoint() {
+		String forestTreeType = "parallel-resume";
+		try {
+			generateTree(forestTreeType, 7302000L, 200);
+			template.execute(status -> {
+				service.rebuild(forestTreeType);
+				return null;
+			});
+			Map<Long, ForestIndexEntity> expected = findAll(forestTreeType);
+			template.execute(status -> repository.clearIndexes(forestTreeType));
+			//
+			// interrupted after the first round of chunks
+			task.setListener(progress -> {
+				throw new IllegalStateException("interrupted");
+			});
+			try {
+				task.run(forestTreeType);
+				Assert.fail();
+			} catch (IllegalStateException ex) {
+				Assert.assertEquals("interrupted", ex.getMessage());
+			}
+			ForestIndexMetadata metadata = template.execute(status -> metadataManager.getMetadata(forestTreeType));
+			Assert.assertTrue(metadata.isRebuilding());
+			Assert.assertEquals(Long.valueOf(80L), metadata.getCheckpointPosition());
+			//
+			List<ForestIndexRebuildProgress> progresses = new ArrayList<>();
+			task.setListener(progresses::add);
+			task.run(forestTreeType);
+			//
+			Assert.assertEquals(160, progresses.get(0).getDone());
+			Assert.assertEquals(121, progresses.get(progresses.size() - 1).getWritten());
+			assertSameIndexes(expected, findAll(forestTreeType));
+		} finally {
+			dropIndexes(forestTreeType);
+		}
+	}
+
+	private void generateTree(String forestTreeType, long firstContentId, int count) {
+		template.execute(status -> {
+			List<Long> contentIds = new ArrayList<>();
+			for (long contentId = firstContentId; contentId < firstContentId + count; contentId++) {
+				Long parentContentId = contentIds.isEmpty() ? null : contentIds.get(r.nextInt(contentIds.size()));
+				service.index(forestTreeType, contentId, parentContentId);
+				contentIds.add(contentId);
+			}
+			return null;
+		});
+	}
+
+	private void dropIndexes(String forestTreeType) {
+		template.execute(status -> {
+			service.dropIndexes(forestTreeType);
+			return null;
+		});
+	}
+
+	private Map<Long, ForestIndexEntity> findAll(String forestTreeType) {
+		return template.execute(status -> {
+			Map<Long, ForestIndexEntity> indexes = new HashMap<>();
+			repository.findAll().forEach(index -> {
+				if (forestTreeType.equals(index.getForestTreeType())) {
+					indexes.put(index.getId(), index);
+				}
+			});
+			return indexes;
+		});
+	}
+
+	private void assertSameIndexes(Map<Long, ForestIndexEntity> expected, Map<Long, ForestIndexEntity> indexes) {
+		Assert.assertEquals(expected.size(), indexes.size());
+		expected.values().forEach(index -> {
+			ForestIndexEntity actual = indexes.get(index.getId());
+			Assert.assertEquals(index.toString(), index.getLft(), actual.getLft());
+			Assert.assertEquals(index.toString(), index.getRgt(), actual.getRgt());
+			Assert.assertEquals(index.toString(), index.getDepth(), actual.getDepth());
+			Assert.assertEquals(index.toString(), index.getChildrenCount(), actual.getChildrenCount());
+		});
+	}
+}
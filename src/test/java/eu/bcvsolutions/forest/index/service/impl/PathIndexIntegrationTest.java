@@ -0,0 +1,299 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
+import eu.bcvsolutions.forest.index.domain.ForestIndex;
+import eu.bcvsolutions.forest.index.domain.ForestIndexStrategy;
+import eu.bcvsolutions.forest.index.entity.AbstractForestIndex;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.entity.NodeContent;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.repository.NodeContentRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Materialized path index strategy and routing by tree type.
+ * 
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class PathIndexIntegrationTest {
+	
+	private static final String PATH_TREE_TYPE = "path";
+	//
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private ForestIndexService<ForestIndexEntity, Long> nestedSetService;
+	@Autowired private NodeContentRepository nodeContentRepository;
+	@Autowired private EntityManager entityManager;
+	//
+	private Random r = new Random();
+	private DefaultForestPathIndexEntityService service;
+	
+	@Before
+	public void init() {
+		service = new DefaultForestPathIndexEntityService(repository, entityManager);
+	}
+	
+	@Test
+	public void testSaveTree() {
+		ForestIndexEntity oldroot = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, null));
+		ForestIndexEntity a = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, oldroot, 1L));
+		ForestIndexEntity b = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, oldroot, 2L));
+		service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, a, 3L));
+		service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, b, 4L));
+		ForestIndexEntity bb = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, b, 5L));
+		ForestIndexEntity root = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, null, 6L));
+		//
+		assertValidTree(7);
+		root = repository.findById(root.getId()).get();
+		bb = repository.findById(bb.getId()).get();
+		Assert.assertNull(root.getLft()); // nested set is not used
+		Assert.assertEquals(6, repository.findAllChildrenByPath(root, null).getTotalElements());
+		Assert.assertEquals(5, repository.findAllChildrenByPath(repository.findById(oldroot.getId()).get(), null).getTotalElements());
+		Assert.assertEquals(0, repository.findAllChildrenByPath(bb, null).getTotalElements());
+		Assert.assertEquals(3, bb.getDepth().intValue());
+		Assert.assertEquals(4, ForestIndexPath.decode(bb.getPath()).size());
+	}
+	
+	@Test
+	public void testMoveSubTree() {
+		generateTree(150);
+		//
+		for (int i = 0; i < 30; i++) {
+			List<ForestIndexEntity> indexes = new ArrayList<>();
+			repository.findAll().forEach(indexes::add);
+			ForestIndexEntity node = indexes.get(r.nextInt(indexes.size()));
+			ForestIndexEntity parent = indexes.get(r.nextInt(indexes.size()));
+			if (node.getParent() == null || parent.getPath().startsWith(node.getPath())) {
+				continue;
+			}
+			node.setParent(parent);
+			service.saveNode(node);
+		}
+		assertValidTree(150);
+	}
+	
+	@Test
+	public void testMoveNodeToRoot() {
+		ForestIndexEntity root = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, null, 1L));
+		ForestIndexEntity a = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, root, 2L));
+		service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, a, 3L));
+		service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, root, 4L));
+		//
+		a = repository.findById(a.getId()).get();
+		a.setParent(null);
+		service.saveNode(a);
+		//
+		assertValidTree(4);
+		a = repository.findById(a.getId()).get();
+		Assert.assertNull(a.getParent());
+		Assert.assertEquals(0, a.getDepth().intValue());
+		Assert.assertEquals(3, repository.findAllChildrenByPath(a, null).getTotalElements());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testMoveNodeUnderOwnSubTree() {
+		ForestIndexEntity root = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, null, 1L));
+		ForestIndexEntity a = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, root, 2L));
+		ForestIndexEntity aa = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, a, 3L));
+		//
+		a = repository.findById(a.getId()).get();
+		a.setParent(aa);
+		service.saveNode(a);
+	}
+	
+	@Test
+	public void testMaxDepth() {
+		ForestIndexEntity root = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, null, 7400000L));
+		List<ForestIndexEntity> chain = new ArrayList<>();
+		chain.add(root);
+		for (long i = 1; i <= ForestIndexPath.MAX_DEPTH; i++) {
+			chain.add(service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, chain.get(chain.size() - 1), 7400000L + i)));
+		}
+		ForestIndexEntity deepest = repository.findById(chain.get(ForestIndexPath.MAX_DEPTH).getId()).get();
+		Assert.assertEquals(ForestIndexPath.MAX_DEPTH, deepest.getDepth().intValue());
+		Assert.assertEquals(AbstractForestIndex.PATH_LENGTH, deepest.getPath().length());
+		try {
+			service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, deepest, 7400500L));
+			Assert.fail("Node cannot be appended under the deepest node.");
+		} catch (IllegalArgumentException ex) {
+			// path length is exceeded
+		}
+		//
+		// moved sub tree - the deepest descendant is checked
+		ForestIndexEntity a = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, root, 7400501L));
+		ForestIndexEntity aa = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, a, 7400502L));
+		a = repository.findById(a.getId()).get();
+		a.setParent(repository.findById(chain.get(ForestIndexPath.MAX_DEPTH - 2).getId()).get());
+		service.saveNode(a);
+		Assert.assertEquals(ForestIndexPath.MAX_DEPTH, repository.findById(aa.getId()).get().getDepth().intValue());
+		a = repository.findById(a.getId()).get();
+		a.setParent(repository.findById(chain.get(ForestIndexPath.MAX_DEPTH - 1).getId()).get());
+		try {
+			service.saveNode(a);
+			Assert.fail("Sub tree cannot be moved below the deepest level.");
+		} catch (IllegalArgumentException ex) {
+			// path length of moved descendant is exceeded
+		}
+		//
+		// new root moves tree one level down
+		try {
+			service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, null, 7400503L));
+			Assert.fail("Tree cannot be moved below the deepest level.");
+		} catch (IllegalArgumentException ex) {
+			// path length of the deepest node is exceeded
+		}
+	}
+	
+	@Test
+	public void testDeleteSubTree() {
+		ForestIndexEntity root = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, null, 1L));
+		ForestIndexEntity a = service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, root, 2L));
+		service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, a, 3L));
+		service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, root, 4L));
+		//
+		service.dropIndex(2L);
+		//
+		assertValidTree(2);
+		Assert.assertNull(repository.findOneByContentId(3L));
+	}
+	
+	@Test
+	public void testRebuild() {
+		generateTree(100);
+		service.clearIndexes(PATH_TREE_TYPE);
+		Assert.assertNull(repository.findById(repository.findAll().iterator().next().getId()).get().getPath());
+		//
+		service.rebuild(PATH_TREE_TYPE);
+		//
+		assertValidTree(100);
+	}
+	
+	@Test
+	public void testIndexAll() {
+		service.index(PATH_TREE_TYPE, 1L, null);
+		List<ForestContentNode<Long>> contents = new ArrayList<>();
+		// children before parents
+		for (long contentId = 100; contentId > 1; contentId--) {
+			contents.add(new ForestContentNode<>(contentId, contentId < 10 ? 1L : contentId / 10));
+		}
+		//
+		Assert.assertEquals(99, service.indexAll(PATH_TREE_TYPE, contents));
+		//
+		assertValidTree(101); // with synthetic root
+	}
+	
+	@Test
+	public void testRoutingContentService() {
+		RoutingForestIndexService<ForestIndexEntity, Long> routingService = new RoutingForestIndexService<>(repository, nestedSetService);
+		routingService.register(PATH_TREE_TYPE, service);
+		DefaultNodeContentService contentService = new DefaultNodeContentService(routingService, nodeContentRepository);
+		//
+		Assert.assertEquals(ForestIndexStrategy.NESTED_SET, routingService.getStrategy(ForestIndex.DEFAULT_TREE_TYPE));
+		Assert.assertEquals(ForestIndexStrategy.MATERIALIZED_PATH, routingService.getStrategy(PATH_TREE_TYPE));
+		//
+		// the same structure in both tree types
+		for (String forestTreeType : new String[] { ForestIndex.DEFAULT_TREE_TYPE, PATH_TREE_TYPE }) {
+			NodeContent root = contentService.save(new NodeContent(forestTreeType, null, "root"));
+			NodeContent a = contentService.save(new NodeContent(forestTreeType, root, "a"));
+			NodeContent b = contentService.save(new NodeContent(forestTreeType, root, "b"));
+			NodeContent aa = contentService.save(new NodeContent(forestTreeType, a, "aa"));
+			//
+			Assert.assertEquals(3, contentService.findAllChildren(root.getId(), null).getTotalElements());
+			Assert.assertEquals(1, contentService.findAllChildren(a.getId(), null).getTotalElements());
+			List<NodeContent> parents = contentService.findAllParents(aa.getId(), new Sort(Direction.ASC, "forestIndex.depth"));
+			Assert.assertEquals(2, parents.size());
+			Assert.assertEquals(root.getId(), parents.get(0).getId());
+			Assert.assertEquals(a.getId(), parents.get(1).getId());
+			//
+			// move
+			aa.setParent(b);
+			contentService.save(aa);
+			Assert.assertEquals(0, contentService.findAllChildren(a.getId(), null).getTotalElements());
+			Assert.assertEquals(1, contentService.findAllChildren(b.getId(), null).getTotalElements());
+			Assert.assertEquals(b.getId(), contentService.findAllParents(aa.getId(), null)
+					.stream()
+					.filter(parent -> parent.getId().equals(b.getId()))
+					.findFirst()
+					.get()
+					.getId());
+			//
+			// rebuild
+			contentService.rebuildIndexes(forestTreeType);
+			Assert.assertEquals(3, contentService.findAllChildren(root.getId(), null).getTotalElements());
+			Assert.assertEquals(2, contentService.findAllParents(aa.getId(), null).size());
+			//
+			// delete by routed index
+			contentService.deleteIndex(aa.getId());
+			Assert.assertNull(repository.findOneByContentId(aa.getId()));
+		}
+	}
+	
+	/**
+	 * Checks all indexes of path tree type against parent references.
+	 * 
+	 * @param nodeCount expected nodes count
+	 */
+	private void assertValidTree(int nodeCount) {
+		List<ForestIndexEntity> indexes = new ArrayList<>();
+		repository.findAll().forEach(index -> {
+			if (PATH_TREE_TYPE.equals(index.getForestTreeType())) {
+				indexes.add(index);
+			}
+		});
+		Assert.assertEquals(nodeCount, indexes.size());
+		Map<Long, ForestIndexEntity> nodes = new HashMap<>();
+		indexes.forEach(index -> nodes.put(index.getId(), index));
+		Map<Long, Integer> childrenCounts = new HashMap<>();
+		for (ForestIndexEntity index : indexes) {
+			Assert.assertNotNull(index.toString(), index.getPath());
+			childrenCounts.putIfAbsent(index.getId(), 0);
+			// expected path by parent references
+			List<Long> ids = new ArrayList<>();
+			ForestIndexEntity parent = index;
+			while (parent != null) {
+				ids.add(0, parent.getId());
+				if (parent != index) {
+					childrenCounts.merge(parent.getId(), 1, Integer::sum);
+				}
+				parent = parent.getParent() == null ? null : nodes.get(parent.getParent().getId());
+			}
+			Assert.assertEquals(index.toString(), ids, ForestIndexPath.decode(index.getPath()));
+			Assert.assertEquals(index.toString(), Integer.valueOf(ids.size() - 1), index.getDepth());
+		}
+		for (ForestIndexEntity index : indexes) {
+			Assert.assertEquals(index.toString(), childrenCounts.get(index.getId()).longValue(), 
+					repository.findAllChildrenByPath(index, null).getTotalElements());
+		}
+	}
+	
+	private void generateTree(int nodeCount) {
+		List<ForestIndexEntity> indexes = new ArrayList<>();
+		indexes.add(service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, null, 0L)));
+		for (long i = 1; i < nodeCount; i++) {
+			ForestIndexEntity parent = repository.findById(indexes.get(r.nextInt(indexes.size())).getId()).get();
+			indexes.add(service.saveNode(new ForestIndexEntity(PATH_TREE_TYPE, parent, i)));
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.domain.ForestContentNode;
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+
+/**
+ * Numbering scoped by content roots.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class RootScopeIntegrationTest {
+
+	private static final long W = AbstractForestIndexService.ROOT_SCOPE_SIZE;
+	//
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private EntityManager entityManager;
+	//
+	private Random r = new Random();
+	private DefaultForestIndexEntityService scopedService;
+
+	@Before
+	public void init() {
+		scopedService = new DefaultForestIndexEntityService(repository, entityManager);
+		scopedService.setRootScoped(true);
+	}
+
+	@Test
+	public void testWritesInOneTenant() {
+		String forestTreeType = "scope-tenants";
+		scopedService.index(forestTreeType, 5000001L, null);
+		scopedService.index(forestTreeType, 5000002L, null);
+		for (long contentId = 5000003L; contentId < 5000020L; contentId++) {
+			scopedService.index(forestTreeType, contentId, contentId % 2 == 0 ? 5000002L : 5000001L);
+		}
+		ForestIndexEntity root = repository.findRoot(forestTreeType);
+		Assert.assertEquals(Long.valueOf(1L), root.getLft());
+		Assert.assertEquals(Long.valueOf(3 * W), root.getRgt());
+		Assert.assertEquals(Long.valueOf(W), repository.findOneByContentId(5000001L).getLft());
+		Assert.assertEquals(Long.valueOf(2 * W), repository.findOneByContentId(5000002L).getLft());
+		assertValidTree(forestTreeType, 20);
+		//
+		// new content root and writes in the first tenant don't touch the second tenant
+		Map<Long, ForestIndexEntity> secondTenant = findTree(forestTreeType, 5000002L);
+		entityManager.clear();
+		scopedService.index(forestTreeType, 5000100L, null);
+		scopedService.index(forestTreeType, 5000101L, 5000001L);
+		scopedService.index(forestTreeType, 5000102L, 5000101L);
+		scopedService.index(forestTreeType, 5000005L, 5000101L); // move
+		scopedService.dropIndex(5000007L);
+		Assert.assertEquals(secondTenant.size(), findTree(forestTreeType, 5000002L).size());
+		findTree(forestTreeType, 5000002L).values().forEach(index -> {
+			ForestIndexEntity previous = secondTenant.get(index.getId());
+			Assert.assertEquals(previous.getLft(), index.getLft());
+			Assert.assertEquals(previous.getRgt(), index.getRgt());
+		});
+		Assert.assertEquals(Long.valueOf(3 * W), repository.findOneByContentId(5000100L).getLft());
+		assertValidTree(forestTreeType, 22);
+		//
+		// move into another tenant and into the new content root
+		scopedService.index(forestTreeType, 5000101L, 5000002L);
+		scopedService.index(forestTreeType, 5000003L, null);
+		assertValidTree(forestTreeType, 22);
+		Assert.assertEquals(Long.valueOf(4 * W), repository.findOneByContentId(5000003L).getLft());
+		//
+		// synthetic root interval contains gaps - count query is used
+		root = repository.findRoot(forestTreeType);
+		Assert.assertFalse(ForestIndexPages.isCounted(root));
+		Assert.assertEquals(0, root.getChildrenCount()); // not computed from interval
+		Assert.assertEquals(21, scopedService.findAllChildren(root, PageRequest.of(0, 5)).getTotalElements());
+		//
+		// rebuild allocates ranges in order of content roots
+		scopedService.rebuild(forestTreeType);
+		assertValidTree(forestTreeType, 22);
+		Assert.assertEquals(Long.valueOf(5 * W), repository.findRoot(forestTreeType).getRgt());
+	}
+
+	@Test
+	public void testRebuildAndIndexAll() {
+		String forestTreeType = "scope-rebuild";
+		List<ForestContentNode<Long>> contents = generateContents(5001000L, 60);
+		scopedService.rebuild(forestTreeType, contents.stream());
+		assertValidTree(forestTreeType, 61);
+		//
+		scopedService.dropIndexes(forestTreeType);
+		Assert.assertEquals(60, scopedService.indexAll(forestTreeType, contents));
+		assertValidTree(forestTreeType, 61);
+		//
+		// switch to unscoped numbering
+		DefaultForestIndexEntityService service = new DefaultForestIndexEntityService(repository, entityManager);
+		service.rebuild(forestTreeType);
+		Assert.assertTrue(findAll(forestTreeType).stream().allMatch(index -> index.getTreeId() == null));
+		ForestIndexEntity root = repository.findRoot(forestTreeType);
+		Assert.assertTrue(ForestIndexPages.isCounted(root));
+		Assert.assertEquals(Long.valueOf(122L), root.getRgt());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testBatchNotSupported() {
+		scopedService.inBatch("scope-batch", batch -> batch.index(5002000L, null));
+	}
+
+	@Test
+	public void testNumberTreeNotSupported() {
+		try {
+			scopedService.numberTree("scope-number", ForkJoinPool.commonPool());
+			Assert.fail();
+		} catch (UnsupportedOperationException ex) {
+			Assert.assertTrue(ex.getMessage().startsWith("Numbering of stored tree is not supported"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSparseNotSupported() {
+		scopedService.setSparseGap(4);
+	}
+
+	/**
+	 * Generates contents with more content roots.
+	 *
+	 * @param firstContentId
+	 * @param count
+	 * @return
+	 */
+	private List<ForestContentNode<Long>> generateContents(long firstContentId, int count) {
+		List<ForestContentNode<Long>> contents = new ArrayList<>();
+		for (long contentId = firstContentId; contentId < firstContentId + count; contentId++) {
+			Long parentContentId = contents.isEmpty() || r.nextInt(8) == 0
+					? null
+					: contents.get(r.nextInt(contents.size())).getContentId();
+			contents.add(new ForestContentNode<>(contentId, parentContentId));
+		}
+		return contents;
+	}
+
+	private List<ForestIndexEntity> findAll(String forestTreeType) {
+		entityManager.clear();
+		List<ForestIndexEntity> indexes = new ArrayList<>();
+		repository.findAll().forEach(index -> {
+			if (forestTreeType.equals(index.getForestTreeType())) {
+				indexes.add(index);
+			}
+		});
+		return indexes;
+	}
+
+	private Map<Long, ForestIndexEntity> findTree(String forestTreeType, Long contentId) {
+		Long treeId = repository.findOneByContentId(contentId).getTreeId();
+		return findAll(forestTreeType)
+				.stream()
+				.filter(index -> treeId.equals(index.getTreeId()))
+				.collect(Collectors.toMap(ForestIndexEntity::getId, index -> index));
+	}
+
+	/**
+	 * Checks all indexes of given tree type against parent references - each content root tree is numbered
+	 * without gaps in its own range.
+	 *
+	 * @param forestTreeType
+	 * @param nodeCount expected nodes count
+	 */
+	private void assertValidTree(String forestTreeType, int nodeCount) {
+		List<ForestIndexEntity> indexes = findAll(forestTreeType);
+		Assert.assertEquals(nodeCount, indexes.size());
+		Map<Long, ForestIndexEntity> nodes = new HashMap<>();
+		indexes.forEach(index -> nodes.put(index.getId(), index));
+		Map<Long, Integer> childrenCounts = new HashMap<>();
+		for (ForestIndexEntity index : indexes) {
+			Assert.assertNotNull(index.getLft());
+			Assert.assertNotNull(index.getRgt());
+			Assert.assertTrue(index.getLft() < index.getRgt());
+			childrenCounts.putIfAbsent(index.getId(), 0);
+			ForestIndexEntity parent = index.getParent() == null ? null : nodes.get(index.getParent().getId());
+			if (parent == null) {
+				Assert.assertEquals(index.getId(), index.getTreeId());
+			} else {
+				Assert.assertTrue(index.toString(), parent.getLft() < index.getLft());
+				Assert.assertTrue(index.toString(), parent.getRgt() > index.getRgt());
+			}
+			int depth = 0;
+			ForestIndexEntity contentRoot = index;
+			while (parent != null) {
+				depth++;
+				childrenCounts.merge(parent.getId(), 1, Integer::sum);
+				if (parent.getParent() != null) {
+					contentRoot = parent;
+				}
+				parent = parent.getParent() == null ? null : nodes.get(parent.getParent().getId());
+			}
+			Assert.assertEquals(index.toString(), Integer.valueOf(depth), index.getDepth());
+			if (depth > 0) {
+				// content root tree is numbered in its own range
+				Assert.assertEquals(index.toString(), contentRoot.getId(), index.getTreeId());
+				Assert.assertEquals(index.toString(), contentRoot.getLft() / W, index.getRgt() / W);
+			}
+		}
+		for (ForestIndexEntity index : indexes) {
+			int childrenCount = childrenCounts.get(index.getId());
+			Assert.assertEquals(index.toString(), childrenCount, repository.findAllChildren(index, null).getTotalElements());
+			if (index.getParent() != null) {
+				Assert.assertEquals(index.toString(), childrenCount, index.getChildrenCount());
+				Assert.assertEquals(index.toString(), childrenCount, scopedService.findAllChildren(index, PageRequest.of(0, 1)).getTotalElements());
+			}
+		}
+	}
+}
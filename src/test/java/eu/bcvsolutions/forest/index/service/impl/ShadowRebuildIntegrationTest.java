@@ -0,0 +1,141 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+
+/**
+ * Rebuild in shadow columns published by one statement.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class ShadowRebuildIntegrationTest {
+
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private EntityManager entityManager;
+	//
+	private Random r = new Random();
+
+	@Test
+	public void testSameNumberingAsRebuild() {
+		String forestTreeType = "shadow-dense";
+		DefaultForestIndexEntityService service = new DefaultForestIndexEntityService(repository, entityManager);
+		generateTree(service, forestTreeType, 7000000L, 100);
+		service.rebuild(forestTreeType);
+		Map<Long, ForestIndexEntity> expected = findAll(forestTreeType);
+		//
+		// broken indexes are fixed by shadow rebuild
+		repository.clearIndexes(forestTreeType);
+		service.rebuildShadow(forestTreeType);
+		assertSameIndexes(expected, findAll(forestTreeType));
+	}
+
+	@Test
+	public void testSameNumberingAsSparseRebuild() {
+		String forestTreeType = "shadow-sparse";
+		DefaultForestIndexEntityService service = new DefaultForestIndexEntityService(repository, entityManager);
+		service.setSparseGap(8);
+		generateTree(service, forestTreeType, 7001000L, 100);
+		service.rebuild(forestTreeType);
+		Map<Long, ForestIndexEntity> expected = findAll(forestTreeType);
+		Assert.assertTrue(repository.findRoot(forestTreeType).getRgt() > 2 * expected.size()); // numbered with gaps
+		//
+		repository.clearIndexes(forestTreeType);
+		service.rebuildShadow(forestTreeType);
+		assertSameIndexes(expected, findAll(forestTreeType));
+	}
+
+	@Test
+	public void testShadowIndexesAreNotVisibleBeforePublish() {
+		String forestTreeType = "shadow-publish";
+		DefaultForestIndexEntityService service = new DefaultForestIndexEntityService(repository, entityManager);
+		generateTree(service, forestTreeType, 7002000L, 20);
+		Map<Long, ForestIndexEntity> indexes = findAll(forestTreeType);
+		//
+		// shifted numbering is written into shadow columns only
+		ForestIndexTree tree = new ForestIndexTree();
+		try (Stream<Object[]> structure = repository.streamTreeStructure(forestTreeType)) {
+			structure.forEach(tree::add);
+		}
+		Assert.assertEquals(21, service.getBatchWriter().updateShadowIndexes(tree.number(11L, 1L), false));
+		assertSameIndexes(indexes, findAll(forestTreeType));
+		//
+		Assert.assertEquals(21, repository.publishShadowIndexes(forestTreeType));
+		Map<Long, ForestIndexEntity> published = findAll(forestTreeType);
+		indexes.values().forEach(index -> {
+			Assert.assertEquals(Long.valueOf(index.getLft() + 10), published.get(index.getId()).getLft());
+			Assert.assertEquals(Long.valueOf(index.getRgt() + 10), published.get(index.getId()).getRgt());
+		});
+		// shadow columns are cleared by publish
+		Assert.assertEquals(0, repository.clearShadowIndexes(forestTreeType));
+		//
+		service.rebuildShadow(forestTreeType);
+		assertSameIndexes(indexes, findAll(forestTreeType));
+	}
+
+	@Test
+	public void testRebuildEmptyTree() {
+		DefaultForestIndexEntityService service = new DefaultForestIndexEntityService(repository, entityManager);
+		service.rebuildShadow("shadow-empty");
+		Assert.assertNull(repository.findRoot("shadow-empty"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testRootScopeNotSupported() {
+		DefaultForestIndexEntityService service = new DefaultForestIndexEntityService(repository, entityManager);
+		service.setRootScoped(true);
+		service.rebuildShadow("shadow-scoped");
+	}
+
+	private void generateTree(DefaultForestIndexEntityService service, String forestTreeType, long firstContentId, int count) {
+		List<Long> contentIds = new ArrayList<>();
+		for (long contentId = firstContentId; contentId < firstContentId + count; contentId++) {
+			Long parentContentId = contentIds.isEmpty() ? null : contentIds.get(r.nextInt(contentIds.size()));
+			service.index(forestTreeType, contentId, parentContentId);
+			contentIds.add(contentId);
+		}
+	}
+
+	private Map<Long, ForestIndexEntity> findAll(String forestTreeType) {
+		entityManager.flush();
+		entityManager.clear();
+		Map<Long, ForestIndexEntity> indexes = new HashMap<>();
+		repository.findAll().forEach(index -> {
+			if (forestTreeType.equals(index.getForestTreeType())) {
+				indexes.put(index.getId(), index);
+			}
+		});
+		return indexes;
+	}
+
+	private void assertSameIndexes(Map<Long, ForestIndexEntity> expected, Map<Long, ForestIndexEntity> indexes) {
+		Assert.assertEquals(expected.size(), indexes.size());
+		expected.values().forEach(index -> {
+			ForestIndexEntity actual = indexes.get(index.getId());
+			Assert.assertEquals(index.toString(), index.getLft(), actual.getLft());
+			Assert.assertEquals(index.toString(), index.getRgt(), actual.getRgt());
+			Assert.assertEquals(index.toString(), index.getDepth(), actual.getDepth());
+			Assert.assertEquals(index.toString(), index.getChildrenCount(), actual.getChildrenCount());
+		});
+	}
+}
@@ -0,0 +1,193 @@
+package eu.bcvsolutions.forest.index.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.bcvsolutions.forest.index.entity.ForestIndexEntity;
+import eu.bcvsolutions.forest.index.repository.ForestIndexEntityRepository;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexBatch;
+import eu.bcvsolutions.forest.index.service.api.ForestIndexService;
+
+/**
+ * Index operations in one unit of work - net changes are the same as changes made by single operations.
+ *
+ * @author Radek Tomiška
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Transactional
+public class UnitOfWorkIntegrationTest {
+
+	private static final long OFFSET = 1000000L; // content identifiers of batch tree
+	//
+	@Autowired private ForestIndexService<ForestIndexEntity, Long> service;
+	@Autowired private ForestIndexEntityRepository repository;
+	@Autowired private EntityManager entityManager;
+	//
+	private final Random r = new Random();
+
+	@Test
+	public void testBatchIsEqualToSingleOperations() {
+		Map<Long, Long> parents = new HashMap<>(); // content - parent content
+		List<long[]> operations = createOperations(parents, 300, 0);
+		operations.forEach(operation -> execute(service, "uow-single", operation, 0));
+		service.inBatch("uow-batch", batch -> operations.forEach(operation -> execute(batch, operation, OFFSET)));
+		assertSameTrees("uow-single", "uow-batch");
+		//
+		// changes of existing tree
+		List<long[]> changes = createOperations(parents, 300, 300);
+		changes.forEach(operation -> execute(service, "uow-single", operation, 0));
+		service.inBatch("uow-batch", batch -> changes.forEach(operation -> execute(batch, operation, OFFSET)));
+		assertSameTrees("uow-single", "uow-batch");
+	}
+
+	@Test
+	public void testBatchInSparseMode() {
+		DefaultForestIndexEntityService sparseService = new DefaultForestIndexEntityService(repository, entityManager);
+		sparseService.setSparseGap(8L);
+		Map<Long, Long> parents = new HashMap<>();
+		List<long[]> operations = createOperations(parents, 200, 0);
+		operations.forEach(operation -> execute(sparseService, "uow-sparse", operation, 0));
+		List<long[]> changes = createOperations(parents, 200, 200);
+		sparseService.inBatch("uow-sparse", batch -> changes.forEach(operation -> execute(batch, operation, 0)));
+		//
+		List<ForestIndexEntity> indexes = findIndexes("uow-sparse");
+		Assert.assertEquals(parents.size() + 1, indexes.size()); // + synthetic root
+		for (ForestIndexEntity index : indexes) {
+			Assert.assertTrue(index.toString(), index.getLft() < index.getRgt());
+			ForestIndexEntity parent = index.getParent();
+			if (parent == null) {
+				Assert.assertEquals(Integer.valueOf(0), index.getDepth());
+				continue;
+			}
+			Assert.assertTrue(index.toString(), parent.getLft() < index.getLft() && index.getRgt() < parent.getRgt());
+			Assert.assertEquals(index.toString(), parent.getDepth() + 1, index.getDepth().intValue());
+			Assert.assertEquals(parents.get(index.getContentId()), parent.getContentId());
+			long descendants = indexes
+					.stream()
+					.filter(other -> other.getLft() > index.getLft() && other.getRgt() < index.getRgt())
+					.count();
+			Assert.assertEquals(index.toString(), descendants, index.getChildrenCount());
+		}
+	}
+
+	@Test
+	public void testEmptyBatch() {
+		service.index("uow-empty", 1L, null);
+		service.inBatch("uow-empty", batch -> batch.dropIndex(2L));
+		//
+		Assert.assertEquals(2, findIndexes("uow-empty").size());
+	}
+
+	/**
+	 * Random valid operations {@code [action, contentId, parentContentId]} - action: 0 - index, 1 - drop.
+	 * Given content structure is updated.
+	 *
+	 * @param parents content structure - content - parent content ({@code 0} for content root)
+	 * @param count
+	 * @param start the first new content identifier
+	 * @return
+	 */
+	private List<long[]> createOperations(Map<Long, Long> parents, int count, long start) {
+		List<long[]> operations = new ArrayList<>();
+		long next = start;
+		for (int i = 0; i < count; i++) {
+			List<Long> contents = new ArrayList<>(parents.keySet());
+			int action = r.nextInt(10);
+			if (contents.isEmpty() || action < 6) {
+				long contentId = ++next;
+				Long parentContentId = contents.isEmpty() || r.nextInt(10) == 0 ? null : contents.get(r.nextInt(contents.size()));
+				parents.put(contentId, parentContentId);
+				operations.add(new long[] { 0, contentId, parentContentId == null ? 0 : parentContentId });
+			} else if (action < 9) {
+				long contentId = contents.get(r.nextInt(contents.size()));
+				Long parentContentId = r.nextInt(10) == 0 ? null : contents.get(r.nextInt(contents.size()));
+				if (parentContentId != null && isInSubTree(parents, parentContentId, contentId)) {
+					continue;
+				}
+				parents.put(contentId, parentContentId);
+				operations.add(new long[] { 0, contentId, parentContentId == null ? 0 : parentContentId });
+			} else {
+				long contentId = contents.get(r.nextInt(contents.size()));
+				// drop sub tree
+				List<Long> subTree = new ArrayList<>();
+				contents.forEach(content -> {
+					if (isInSubTree(parents, content, contentId)) {
+						subTree.add(content);
+					}
+				});
+				subTree.forEach(parents::remove);
+				operations.add(new long[] { 1, contentId, 0 });
+			}
+		}
+		return operations;
+	}
+
+	private boolean isInSubTree(Map<Long, Long> parents, Long contentId, Long subTreeRoot) {
+		for (Long ancestor = contentId; ancestor != null; ancestor = parents.get(ancestor)) {
+			if (ancestor.equals(subTreeRoot)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void execute(ForestIndexService<ForestIndexEntity, Long> indexService, String forestTreeType, long[] operation, long offset) {
+		if (operation[0] == 0) {
+			indexService.index(forestTreeType, operation[1] + offset, operation[2] == 0 ? null : operation[2] + offset);
+		} else {
+			indexService.dropIndex(operation[1] + offset);
+		}
+	}
+
+	private void execute(ForestIndexBatch<Long> batch, long[] operation, long offset) {
+		if (operation[0] == 0) {
+			batch.index(operation[1] + offset, operation[2] == 0 ? null : operation[2] + offset);
+		} else {
+			batch.dropIndex(operation[1] + offset);
+		}
+	}
+
+	private void assertSameTrees(String single, String batch) {
+		Map<Long, ForestIndexEntity> batchIndexes = new HashMap<>();
+		findIndexes(batch).forEach(index -> batchIndexes.put(index.getContentId() == null ? null : index.getContentId() - OFFSET, index));
+		List<ForestIndexEntity> singleIndexes = findIndexes(single);
+		Assert.assertEquals(singleIndexes.size(), batchIndexes.size());
+		for (ForestIndexEntity index : singleIndexes) {
+			ForestIndexEntity batchIndex = batchIndexes.get(index.getContentId());
+			Assert.assertNotNull(index.toString(), batchIndex);
+			Assert.assertEquals(index.toString(), index.getLft(), batchIndex.getLft());
+			Assert.assertEquals(index.toString(), index.getRgt(), batchIndex.getRgt());
+			Assert.assertEquals(index.toString(), index.getDepth(), batchIndex.getDepth());
+			if (index.getParent() == null) {
+				Assert.assertNull(batchIndex.getParent());
+			} else if (index.getParent().getContentId() == null) {
+				Assert.assertNull(batchIndex.getParent().getContentId());
+			} else {
+				Assert.assertEquals(index.getParent().getContentId() + OFFSET, batchIndex.getParent().getContentId().longValue());
+			}
+		}
+	}
+
+	private List<ForestIndexEntity> findIndexes(String forestTreeType) {
+		entityManager.clear();
+		return entityManager
+				.createQuery("select e from ForestIndexEntity e where e.forestTreeType = :forestTreeType", ForestIndexEntity.class)
+				.setParameter("forestTreeType", forestTreeType)
+				.getResultList();
+	}
+}